@@ -1,5 +1,8 @@
 package net.querz.mcaselector;
 
+import ar.com.hjg.pngj.FilterType;
+import net.querz.mcaselector.io.CacheFormat;
+import net.querz.mcaselector.io.TileCacheStore;
 import net.querz.mcaselector.io.FileHelper;
 import net.querz.mcaselector.io.WorldDirectories;
 import net.querz.mcaselector.tiles.Tile;
@@ -110,10 +113,22 @@ public final class Config {
 	public static final int DEFAULT_LOAD_THREADS = 1;
 	public static final int DEFAULT_PROCESS_THREADS = Math.max(Runtime.getRuntime().availableProcessors() - 2, 1);
 	public static final int DEFAULT_WRITE_THREADS = Math.min(Runtime.getRuntime().availableProcessors(), 4);
+	// threads that parse overlay data of regions that aren't cached yet
+	public static final int DEFAULT_PARSE_THREADS = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
 	public static final int DEFAULT_MAX_LOADED_FILES = (int) Math.max(Math.ceil(Runtime.getRuntime().maxMemory() / 1_000_000_000D) * 2, 1);
 	public static final boolean DEFAULT_SHADE = true;
 	public static final boolean DEFAULT_SHADE_WATER = true;
 	public static final boolean DEFAULT_DEBUG = false;
+	public static final TileCacheStore.Type DEFAULT_CACHE_STORE = TileCacheStore.Type.PACK;
+	public static final CacheFormat DEFAULT_CACHE_FORMAT = CacheFormat.PNG;
+	public static final FilterType DEFAULT_CACHE_PNG_FILTER = FilterType.FILTER_ADAPTIVE_FAST;
+	public static final int DEFAULT_CACHE_COMPRESSION_LEVEL = 4;
+	// in MiB, an image of a region at zoom level 1 takes up 1 MiB
+	public static final int DEFAULT_IMAGE_POOL_SIZE = (int) Math.max(Math.min(Runtime.getRuntime().maxMemory() / 8 / 1_048_576, 1024), 64);
+	// in seconds, 0 disables the validation of the cache in the background
+	public static final int DEFAULT_CACHE_VALIDATION_INTERVAL = 30;
+	// the number of rings of regions around the visible area that are loaded while nothing else is loading, 0 disables it
+	public static final int DEFAULT_PREFETCH_RINGS = 2;
 	public static final String DEFAULT_MC_SAVES_DIR = FileHelper.getMCSavesDir();
 
 	private static File worldDir = null;
@@ -130,6 +145,7 @@ public final class Config {
 	private static int loadThreads = DEFAULT_LOAD_THREADS;
 	private static int processThreads = DEFAULT_PROCESS_THREADS;
 	private static int writeThreads = DEFAULT_WRITE_THREADS;
+	private static int parseThreads = DEFAULT_PARSE_THREADS;
 	private static int maxLoadedFiles = DEFAULT_MAX_LOADED_FILES;
 	private static boolean shade = DEFAULT_SHADE;
 	private static boolean shadeWater = DEFAULT_SHADE_WATER;
@@ -137,9 +153,16 @@ public final class Config {
 
 	private static boolean debug = DEFAULT_DEBUG;
 
+	private static TileCacheStore.Type cacheStore = DEFAULT_CACHE_STORE;
+	private static CacheFormat cacheFormat = DEFAULT_CACHE_FORMAT;
+	private static FilterType cachePNGFilter = DEFAULT_CACHE_PNG_FILTER;
+	private static int cacheCompressionLevel = DEFAULT_CACHE_COMPRESSION_LEVEL;
+	private static int imagePoolSize = DEFAULT_IMAGE_POOL_SIZE;
+	private static int cacheValidationInterval = DEFAULT_CACHE_VALIDATION_INTERVAL;
+	private static int prefetchRings = DEFAULT_PREFETCH_RINGS;
+
 	public static final float MAX_SCALE = 15.9999f;
 	public static final float MIN_SCALE = 0.2f;
-	public static final double IMAGE_POOL_SIZE = 2.5;
 
 	private static List<OverlayParser> overlays = null;
 
@@ -324,6 +347,11 @@ public final class Config {
 				loadThreads = Integer.parseInt(config.getOrDefault("LoadThreads", DEFAULT_LOAD_THREADS + ""));
 				processThreads = Integer.parseInt(config.getOrDefault("ProcessThreads", DEFAULT_PROCESS_THREADS + ""));
 				writeThreads = Integer.parseInt(config.getOrDefault("WriteThreads", DEFAULT_WRITE_THREADS + ""));
+				parseThreads = Integer.parseInt(config.getOrDefault("ParseThreads", DEFAULT_PARSE_THREADS + ""));
+				if (parseThreads <= 0) {
+					Debug.errorf("invalid ParseThreads %d, using %d", parseThreads, DEFAULT_PARSE_THREADS);
+					parseThreads = DEFAULT_PARSE_THREADS;
+				}
 				maxLoadedFiles = Integer.parseInt(config.getOrDefault("MaxLoadedFiles", DEFAULT_MAX_LOADED_FILES + ""));
 				shade = Boolean.parseBoolean(config.getOrDefault("Shade", DEFAULT_SHADE + ""));
 				shadeWater = Boolean.parseBoolean(config.getOrDefault("ShadeWater", DEFAULT_SHADE_WATER + ""));
@@ -332,6 +360,13 @@ public final class Config {
 					mcSavesDir = DEFAULT_MC_SAVES_DIR;
 				}
 				debug = Boolean.parseBoolean(config.getOrDefault("Debug", DEFAULT_DEBUG + ""));
+				cacheStore = TileCacheStore.Type.valueOf(config.getOrDefault("CacheStore", DEFAULT_CACHE_STORE.name()));
+				cacheFormat = CacheFormat.valueOf(config.getOrDefault("CacheFormat", DEFAULT_CACHE_FORMAT.name()));
+				cachePNGFilter = FilterType.valueOf(config.getOrDefault("CachePNGFilter", DEFAULT_CACHE_PNG_FILTER.name()));
+				cacheCompressionLevel = Integer.parseInt(config.getOrDefault("CacheCompressionLevel", DEFAULT_CACHE_COMPRESSION_LEVEL + ""));
+				imagePoolSize = Integer.parseInt(config.getOrDefault("ImagePoolSize", DEFAULT_IMAGE_POOL_SIZE + ""));
+				cacheValidationInterval = Integer.parseInt(config.getOrDefault("CacheValidationInterval", DEFAULT_CACHE_VALIDATION_INTERVAL + ""));
+				prefetchRings = Integer.parseInt(config.getOrDefault("PrefetchRings", DEFAULT_PREFETCH_RINGS + ""));
 			} catch (Exception ex) {
 				Debug.dumpException("error loading settings", ex);
 			}
@@ -378,11 +413,19 @@ public final class Config {
 		addSettingsLine("LoadThreads", loadThreads, DEFAULT_LOAD_THREADS, lines);
 		addSettingsLine("ProcessThreads", processThreads, DEFAULT_PROCESS_THREADS, lines);
 		addSettingsLine("WriteThreads", writeThreads, DEFAULT_WRITE_THREADS, lines);
+		addSettingsLine("ParseThreads", parseThreads, DEFAULT_PARSE_THREADS, lines);
 		addSettingsLine("MaxLoadedFiles", maxLoadedFiles, DEFAULT_MAX_LOADED_FILES, lines);
 		addSettingsLine("Shade", shade, DEFAULT_SHADE, lines);
 		addSettingsLine("ShadeWater", shadeWater, DEFAULT_SHADE_WATER, lines);
 		addSettingsLine("MCSavesDir", mcSavesDir, DEFAULT_MC_SAVES_DIR, lines);
 		addSettingsLine("Debug", debug, DEFAULT_DEBUG, lines);
+		addSettingsLine("CacheStore", cacheStore.name(), DEFAULT_CACHE_STORE.name(), lines);
+		addSettingsLine("CacheFormat", cacheFormat.name(), DEFAULT_CACHE_FORMAT.name(), lines);
+		addSettingsLine("CachePNGFilter", cachePNGFilter.name(), DEFAULT_CACHE_PNG_FILTER.name(), lines);
+		addSettingsLine("CacheCompressionLevel", cacheCompressionLevel, DEFAULT_CACHE_COMPRESSION_LEVEL, lines);
+		addSettingsLine("ImagePoolSize", imagePoolSize, DEFAULT_IMAGE_POOL_SIZE, lines);
+		addSettingsLine("CacheValidationInterval", cacheValidationInterval, DEFAULT_CACHE_VALIDATION_INTERVAL, lines);
+		addSettingsLine("PrefetchRings", prefetchRings, DEFAULT_PREFETCH_RINGS, lines);
 		if (lines.size() == 0) {
 			if (DEFAULT_BASE_CONFIG_FILE.exists() && !DEFAULT_BASE_CONFIG_FILE.delete()) {
 				Debug.errorf("could not delete %s", DEFAULT_BASE_CONFIG_FILE.getAbsolutePath());
@@ -459,6 +502,14 @@ public final class Config {
 		Config.writeThreads = writeThreads;
 	}
 
+	public static int getParseThreads() {
+		return parseThreads;
+	}
+
+	public static void setParseThreads(int parseThreads) {
+		Config.parseThreads = parseThreads;
+	}
+
 	public static int getMaxLoadedFiles() {
 		return maxLoadedFiles;
 	}
@@ -467,6 +518,62 @@ public final class Config {
 		Config.maxLoadedFiles = maxLoadedFiles;
 	}
 
+	public static TileCacheStore.Type getCacheStore() {
+		return cacheStore;
+	}
+
+	public static void setCacheStore(TileCacheStore.Type cacheStore) {
+		Config.cacheStore = cacheStore;
+	}
+
+	public static CacheFormat getCacheFormat() {
+		return cacheFormat;
+	}
+
+	public static void setCacheFormat(CacheFormat cacheFormat) {
+		Config.cacheFormat = cacheFormat;
+	}
+
+	public static FilterType getCachePNGFilter() {
+		return cachePNGFilter;
+	}
+
+	public static void setCachePNGFilter(FilterType cachePNGFilter) {
+		Config.cachePNGFilter = cachePNGFilter;
+	}
+
+	public static int getCacheCompressionLevel() {
+		return cacheCompressionLevel;
+	}
+
+	public static void setCacheCompressionLevel(int cacheCompressionLevel) {
+		Config.cacheCompressionLevel = cacheCompressionLevel;
+	}
+
+	public static int getImagePoolSize() {
+		return imagePoolSize;
+	}
+
+	public static void setImagePoolSize(int imagePoolSize) {
+		Config.imagePoolSize = imagePoolSize;
+	}
+
+	public static int getCacheValidationInterval() {
+		return cacheValidationInterval;
+	}
+
+	public static void setCacheValidationInterval(int cacheValidationInterval) {
+		Config.cacheValidationInterval = cacheValidationInterval;
+	}
+
+	public static int getPrefetchRings() {
+		return prefetchRings;
+	}
+
+	public static void setPrefetchRings(int prefetchRings) {
+		Config.prefetchRings = prefetchRings;
+	}
+
 	public static int getMaxZoomLevel() {
 		return Tile.getZoomLevel(MAX_SCALE);
 	}
@@ -9,7 +9,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.*;
 
-public class BiomeFilter extends TextFilter<List<Integer>> {
+public class BiomeFilter extends TextFilter<List<Integer>> implements RegionContentsFilter {
 
 	private static final Map<String, Integer> validNames = new HashMap<>();
 	private static final Set<Integer> validIDs = new HashSet<>();
@@ -67,6 +67,25 @@ public class BiomeFilter extends TextFilter<List<Integer>> {
 		return "<biome>[,<biome>,...]";
 	}
 
+	@Override
+	public boolean matchesRegionContents(RegionContents contents) {
+		switch (getComparator()) {
+			case CONTAINS:
+				return RegionContents.containsAll(contents.getBiomeIDs(), value);
+			case INTERSECTS:
+				return RegionContents.containsAny(contents.getBiomeIDs(), value);
+		}
+		return true;
+	}
+
+	static Set<Integer> getBiomeIDs(ChunkData data) {
+		if (data.getRegion() == null) {
+			return Collections.emptySet();
+		}
+		return VersionController.getChunkFilter(data.getRegion().getData().getInt("DataVersion"))
+				.getBiomeIDs(data.getRegion().getData());
+	}
+
 	@Override
 	public boolean contains(List<Integer> value, ChunkData data) {
 		if (data.getRegion() == null) {
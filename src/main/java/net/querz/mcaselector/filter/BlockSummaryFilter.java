@@ -0,0 +1,9 @@
+package net.querz.mcaselector.filter;
+
+import net.querz.mcaselector.io.mca.BlockSummary;
+
+// a filter that only compares the blocks of a chunk, which are stored in the chunk index as a block summary
+public interface BlockSummaryFilter {
+
+	boolean matchesBlockSummary(BlockSummary summary);
+}
@@ -2,7 +2,7 @@ package net.querz.mcaselector.filter;
 
 import net.querz.mcaselector.io.mca.ChunkData;
 
-public class DataVersionFilter extends IntFilter {
+public class DataVersionFilter extends IntFilter implements IndexedFilter {
 
 	public DataVersionFilter() {
 		this(Operator.AND, Comparator.EQUAL, 0);
@@ -29,6 +29,11 @@ public class DataVersionFilter extends IntFilter {
 		}
 	}
 
+	@Override
+	public IndexField getIndexField() {
+		return IndexField.DATA_VERSION;
+	}
+
 	@Override
 	public DataVersionFilter clone() {
 		return new DataVersionFilter(getOperator(), getComparator(), value);
@@ -5,7 +5,7 @@ import net.querz.mcaselector.version.EntityFilter;
 import net.querz.mcaselector.version.VersionController;
 import net.querz.nbt.tag.ListTag;
 
-public class EntityAmountFilter extends IntFilter {
+public class EntityAmountFilter extends IntFilter implements IndexedFilter {
 
 	public EntityAmountFilter() {
 		this(Operator.AND, Comparator.EQUAL, 0);
@@ -34,6 +34,11 @@ public class EntityAmountFilter extends IntFilter {
 		}
 	}
 
+	@Override
+	public IndexField getIndexField() {
+		return IndexField.ENTITY_AMOUNT;
+	}
+
 	@Override
 	public EntityAmountFilter clone() {
 		return new EntityAmountFilter(getOperator(), getComparator(), value);
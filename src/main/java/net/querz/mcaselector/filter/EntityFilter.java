@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
@@ -18,7 +19,7 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class EntityFilter extends TextFilter<List<String>> {
+public class EntityFilter extends TextFilter<List<String>> implements RegionContentsFilter {
 
 	private static final Set<String> validNames = new HashSet<>();
 	private static final Pattern entityNamePattern = Pattern.compile("^(?<space>[a-z_]*)(?::?)(?<id>[a-z_]*)$");
@@ -44,6 +45,32 @@ public class EntityFilter extends TextFilter<List<String>> {
 		setRawValue(String.join(",", value == null ? new ArrayList<>(0) : value));
 	}
 
+	@Override
+	public boolean matchesRegionContents(RegionContents contents) {
+		switch (getComparator()) {
+			case CONTAINS:
+				return RegionContents.containsAll(contents.getEntityIDs(), value);
+			case INTERSECTS:
+				return RegionContents.containsAny(contents.getEntityIDs(), value);
+		}
+		return true;
+	}
+
+	static Set<String> getEntityIDs(ChunkData data) {
+		if (data.getEntities() == null) {
+			return Collections.emptySet();
+		}
+		Tag<?> rawEntities = data.getEntities().getData().getCompoundTag("Level").get("Entities");
+		if (rawEntities == null || rawEntities.getID() == LongArrayTag.ID) {
+			return Collections.emptySet();
+		}
+		Set<String> ids = new HashSet<>();
+		for (CompoundTag entity : ((ListTag<?>) rawEntities).asCompoundTagList()) {
+			ids.add(entity.getString("id"));
+		}
+		return ids;
+	}
+
 	@Override
 	public boolean contains(List<String> value, ChunkData data) {
 		if (data.getEntities() == null) {
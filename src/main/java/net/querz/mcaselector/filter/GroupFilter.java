@@ -1,9 +1,13 @@
 package net.querz.mcaselector.filter;
 
+import net.querz.mcaselector.io.db.ChunkIndex;
+import net.querz.mcaselector.io.mca.BlockSummary;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.point.Point2i;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public class GroupFilter extends Filter<List<Filter<?>>> {
 
@@ -104,27 +108,114 @@ public class GroupFilter extends Filter<List<Filter<?>>> {
 		return negated != currentResult;
 	}
 
+	// the fields of the chunk index that are compared by any filter in this group
+	public Set<IndexField> getIndexFields() {
+		Set<IndexField> fields = EnumSet.noneOf(IndexField.class);
+		for (Filter<?> child : children) {
+			if (child instanceof GroupFilter) {
+				fields.addAll(((GroupFilter) child).getIndexFields());
+			} else if (child instanceof IndexedFilter) {
+				fields.add(((IndexedFilter) child).getIndexField());
+			}
+		}
+		return fields;
+	}
+
+	// whether any filter in this group compares the block summaries of the chunk index
+	public boolean usesBlockSummaries() {
+		for (Filter<?> child : children) {
+			if (child instanceof GroupFilter ? ((GroupFilter) child).usesBlockSummaries() : child instanceof BlockSummaryFilter) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// whether every filter in this group only compares values or block summaries of the chunk index
+	public boolean isIndexed() {
+		for (Filter<?> child : children) {
+			if (child instanceof GroupFilter ? !((GroupFilter) child).isIndexed() : !(child instanceof IndexedFilter || child instanceof BlockSummaryFilter)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// evaluates this group with the values of a chunk in the chunk index. returns null if the result depends on a filter
+	// that is not indexed or on a value or block summary that is missing or couldn't be read.
+	public Boolean matchesIndex(ChunkIndex.Entry index, int chunk) {
+		Boolean result = false;
+		Boolean block = true;
+		for (int i = 0; i < children.size(); i++) {
+			Filter<?> child = children.get(i);
+			if (i != 0 && child.getOperator() == Operator.OR) {
+				result = or(result, block);
+				block = true;
+			}
+			if (block != null && !block) {
+				continue;
+			}
+			Boolean current = null;
+			if (child instanceof GroupFilter) {
+				current = ((GroupFilter) child).matchesIndex(index, chunk);
+			} else if (child instanceof IndexedFilter) {
+				int[] values = index.getValues().get(((IndexedFilter) child).getIndexField());
+				if (values != null && values[chunk] != IndexField.FAILED) {
+					current = ((IndexedFilter) child).matchesIndexValue(values[chunk]);
+				}
+			} else if (child instanceof BlockSummaryFilter) {
+				BlockSummary summary = index.getBlockSummary(chunk);
+				if (summary != null) {
+					current = ((BlockSummaryFilter) child).matchesBlockSummary(summary);
+				}
+			}
+			block = block == null ? current == null || current ? null : false : current;
+		}
+		result = or(result, block);
+		return result == null ? null : negated != result;
+	}
+
+	private static Boolean or(Boolean a, Boolean b) {
+		if (a != null && a || b != null && b) {
+			return true;
+		}
+		return a == null || b == null ? null : false;
+	}
+
+	// whether any filter in this group can reject a region by its contents
+	public boolean usesRegionContents() {
+		for (Filter<?> child : children) {
+			if (child instanceof GroupFilter ? ((GroupFilter) child).usesRegionContents() : child instanceof RegionContentsFilter) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public boolean appliesToRegion(Point2i region) {
+		return appliesToRegion(region, null);
+	}
+
+	// the contents of the region are optional, without them only the location of the region is checked
+	public boolean appliesToRegion(Point2i region, RegionContents contents) {
 		GroupFilter gf = resolveNegations();
 
 		// if we have anything else than xPos and zPos filters, we apply to this region
 		boolean currentResult = true;
 		for (int i = 0; i < gf.children.size(); i++) {
 			Filter<?> child = gf.children.get(i);
-			if (child instanceof GroupFilter && ((GroupFilter) child).appliesToRegion(region)) {
+			if (child instanceof GroupFilter && ((GroupFilter) child).appliesToRegion(region, contents)) {
 				currentResult = true;
-			} else if (child instanceof RegionMatcher) {
-				RegionMatcher regionMatcher = (RegionMatcher) child;
-
+			} else if (child instanceof RegionMatcher || contents != null && child instanceof RegionContentsFilter) {
 				if ((child.getOperator() == Operator.AND || i == 0) && currentResult) {
-					currentResult = regionMatcher.matchesRegion(region);
+					currentResult = matchesRegion(child, region, contents);
 				} else if (child.getOperator() == Operator.OR) {
 					//don't check other conditions if everything before OR is already true
 					if (currentResult) {
 						return true;
 					}
 					//otherwise, reset currentResult
-					currentResult = regionMatcher.matchesRegion(region);
+					currentResult = matchesRegion(child, region, contents);
 				}
 			} else {
 				return true;
@@ -134,6 +225,13 @@ public class GroupFilter extends Filter<List<Filter<?>>> {
 		return currentResult;
 	}
 
+	private static boolean matchesRegion(Filter<?> filter, Point2i region, RegionContents contents) {
+		if (filter instanceof RegionMatcher) {
+			return ((RegionMatcher) filter).matchesRegion(region);
+		}
+		return ((RegionContentsFilter) filter).matchesRegionContents(contents);
+	}
+
 	private GroupFilter resolveNegations() {
 		return resolveNegations(negated);
 	}
@@ -0,0 +1,32 @@
+package net.querz.mcaselector.filter;
+
+import net.querz.mcaselector.io.mca.ChunkData;
+import java.util.function.Function;
+
+// the values of a chunk that are stored in the chunk index. they are read exactly like the filters read them,
+// so a filter that compares an indexed value has the same result as when it reads the chunk.
+public enum IndexField {
+
+	INHABITED_TIME(new InhabitedTimeFilter()::getNumber),
+	DATA_VERSION(new DataVersionFilter()::getNumber),
+	LAST_UPDATE(new LastUpdateFilter()::getNumber),
+	ENTITY_AMOUNT(new EntityAmountFilter()::getNumber),
+	TILE_ENTITY_AMOUNT(new TileEntityAmountFilter()::getNumber),
+	X_POS(new XPosFilter()::getNumber),
+	Z_POS(new ZPosFilter()::getNumber),
+	STATUS(StatusFilter::getStatusValue);
+
+	// the value of a chunk that the filter failed to read
+	public static final int FAILED = Integer.MIN_VALUE;
+
+	private final Function<ChunkData, Number> reader;
+
+	IndexField(Function<ChunkData, Number> reader) {
+		this.reader = reader;
+	}
+
+	// throws an exception if the filter would throw one when reading the value
+	public long getValue(ChunkData data) {
+		return reader.apply(data).longValue();
+	}
+}
@@ -0,0 +1,9 @@
+package net.querz.mcaselector.filter;
+
+// a filter that only compares a value that is stored in the chunk index
+public interface IndexedFilter {
+
+	IndexField getIndexField();
+
+	boolean matchesIndexValue(int value);
+}
@@ -3,7 +3,7 @@ package net.querz.mcaselector.filter;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.text.TextHelper;
 
-public class InhabitedTimeFilter extends LongFilter {
+public class InhabitedTimeFilter extends LongFilter implements IndexedFilter {
 
 	public InhabitedTimeFilter() {
 		this(Operator.AND, Comparator.EQUAL, 0);
@@ -47,6 +47,11 @@ public class InhabitedTimeFilter extends LongFilter {
 		return "duration";
 	}
 
+	@Override
+	public IndexField getIndexField() {
+		return IndexField.INHABITED_TIME;
+	}
+
 	@Override
 	public InhabitedTimeFilter clone() {
 		return new InhabitedTimeFilter(getOperator(), getComparator(), value);
@@ -67,6 +67,10 @@ public abstract class IntFilter extends NumberFilter<Integer> {
 		return a <= b;
 	}
 
+	public boolean matchesIndexValue(int value) {
+		return matches(this.value, value);
+	}
+
 	@Override
 	public String getFormatText() {
 		return "\u00B1int";
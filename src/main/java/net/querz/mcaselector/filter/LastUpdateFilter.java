@@ -3,7 +3,7 @@ package net.querz.mcaselector.filter;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.text.TextHelper;
 
-public class LastUpdateFilter extends IntFilter {
+public class LastUpdateFilter extends IntFilter implements IndexedFilter {
 
 	public LastUpdateFilter() {
 		this(Operator.AND, Comparator.EQUAL, 0);
@@ -43,6 +43,11 @@ public class LastUpdateFilter extends IntFilter {
 		return "LastUpdate " + getComparator().getQueryString() + " \"" + getRawValue() + "\"";
 	}
 
+	@Override
+	public IndexField getIndexField() {
+		return IndexField.LAST_UPDATE;
+	}
+
 	@Override
 	public LastUpdateFilter clone() {
 		return new LastUpdateFilter(getOperator(), getComparator(), value);
@@ -67,6 +67,10 @@ public abstract class LongFilter extends NumberFilter<Long> {
 		return a <= b;
 	}
 
+	public boolean matchesIndexValue(int value) {
+		return matches(this.value, (long) value);
+	}
+
 	@Override
 	public String getFormatText() {
 		return "\u00B1long";
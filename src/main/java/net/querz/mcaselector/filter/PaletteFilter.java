@@ -1,13 +1,16 @@
 package net.querz.mcaselector.filter;
 
+import net.querz.mcaselector.io.mca.BlockSummary;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.text.TextHelper;
 import net.querz.mcaselector.version.VersionController;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
-public class PaletteFilter extends TextFilter<List<String>> {
+public class PaletteFilter extends TextFilter<List<String>> implements BlockSummaryFilter, RegionContentsFilter {
 
 	private static final Comparator[] comparators = {
 		Comparator.CONTAINS,
@@ -45,6 +48,42 @@ public class PaletteFilter extends TextFilter<List<String>> {
 		return false;
 	}
 
+	@Override
+	public boolean matchesBlockSummary(BlockSummary summary) {
+		switch (getComparator()) {
+			case CONTAINS:
+				return summary.matchBlockNames(value);
+			case CONTAINS_NOT:
+				return !summary.matchBlockNames(value);
+			case INTERSECTS:
+				return summary.matchAnyBlockName(value);
+			case EQUAL:
+				return summary.paletteEquals(value);
+		}
+		return false;
+	}
+
+	@Override
+	public boolean matchesRegionContents(RegionContents contents) {
+		switch (getComparator()) {
+			case CONTAINS:
+			case EQUAL:
+				return RegionContents.containsAll(contents.getBlockNames(), value);
+			case INTERSECTS:
+				return RegionContents.containsAny(contents.getBlockNames(), value);
+		}
+		return true;
+	}
+
+	// returns null if the block names of the chunk can't be collected, e.g. if its version doesn't use palettes
+	static Set<String> getBlockNames(ChunkData data) {
+		if (data.getRegion() == null) {
+			return Collections.emptySet();
+		}
+		return VersionController.getChunkFilter(data.getRegion().getData().getInt("DataVersion"))
+				.getBlockNames(data.getRegion().getData());
+	}
+
 	@Override
 	public boolean contains(List<String> value, ChunkData data) {
 		if (data.getRegion() == null) {
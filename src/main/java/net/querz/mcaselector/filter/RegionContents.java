@@ -0,0 +1,112 @@
+package net.querz.mcaselector.filter;
+
+import net.querz.mcaselector.io.mca.ChunkData;
+import net.querz.mcaselector.io.mca.Region;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import static net.querz.mcaselector.validation.ValidationHelper.withDefaultSilent;
+
+// the block names, biome ids, entity ids and structure names of all chunks of a region, read like the filters read them.
+// a filter that needs a value that is not in the contents of a region doesn't match any chunk of the region.
+// a set is null if it couldn't be read from every chunk of the region.
+public final class RegionContents {
+
+	private final Set<String> blockNames;
+	private final Set<Integer> biomeIDs;
+	private final Set<String> entityIDs;
+	private final Set<String> structureNames;
+
+	public RegionContents(Set<String> blockNames, Set<Integer> biomeIDs, Set<String> entityIDs, Set<String> structureNames) {
+		this.blockNames = blockNames;
+		this.biomeIDs = biomeIDs;
+		this.entityIDs = entityIDs;
+		this.structureNames = structureNames;
+	}
+
+	public static RegionContents of(Region region) {
+		Set<String> blockNames = new TreeSet<>();
+		Set<Integer> biomeIDs = new TreeSet<>();
+		Set<String> entityIDs = new TreeSet<>();
+		Set<String> structureNames = new TreeSet<>();
+		for (int i = 0; i < 1024; i++) {
+			ChunkData data = region.getFilterData(i);
+			if (data == null) {
+				continue;
+			}
+			if (blockNames != null) {
+				// null for chunks without palettes and for chunks whose palettes can't be read
+				Set<String> names = withDefaultSilent(() -> PaletteFilter.getBlockNames(data), null);
+				if (names == null) {
+					blockNames = null;
+				} else {
+					blockNames.addAll(names);
+				}
+			}
+			if (biomeIDs != null) {
+				Set<Integer> ids = withDefaultSilent(() -> BiomeFilter.getBiomeIDs(data), null);
+				if (ids == null) {
+					biomeIDs = null;
+				} else {
+					biomeIDs.addAll(ids);
+				}
+			}
+			// the filters fail on chunks whose entities or structures can't be read, so they don't match them
+			entityIDs.addAll(withDefaultSilent(() -> EntityFilter.getEntityIDs(data), Collections.emptySet()));
+			structureNames.addAll(withDefaultSilent(() -> StructureFilter.getStructureNames(data), Collections.emptySet()));
+		}
+		return new RegionContents(blockNames, biomeIDs, entityIDs, structureNames);
+	}
+
+	public Set<String> getBlockNames() {
+		return blockNames;
+	}
+
+	public Set<Integer> getBiomeIDs() {
+		return biomeIDs;
+	}
+
+	public Set<String> getEntityIDs() {
+		return entityIDs;
+	}
+
+	public Set<String> getStructureNames() {
+		return structureNames;
+	}
+
+	// returns true if the set is unknown or contains all values
+	static <T> boolean containsAll(Set<T> set, Iterable<T> values) {
+		if (set == null) {
+			return true;
+		}
+		for (T value : values) {
+			if (!set.contains(value)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// returns true if the set is unknown or contains at least one of the values
+	static <T> boolean containsAny(Set<T> set, Iterable<T> values) {
+		if (set == null) {
+			return true;
+		}
+		for (T value : values) {
+			if (set.contains(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("{blocks=%s, biomes=%s, entities=%s, structures=%s}",
+				size(blockNames), size(biomeIDs), size(entityIDs), size(structureNames));
+	}
+
+	private static String size(Set<?> set) {
+		return set == null ? "?" : String.valueOf(set.size());
+	}
+}
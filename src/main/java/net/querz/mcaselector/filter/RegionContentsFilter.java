@@ -0,0 +1,8 @@
+package net.querz.mcaselector.filter;
+
+// a filter that can tell from the contents of a region that it doesn't match any chunk of the region
+public interface RegionContentsFilter {
+
+	// returns false if no chunk of a region with these contents can match
+	boolean matchesRegionContents(RegionContents contents);
+}
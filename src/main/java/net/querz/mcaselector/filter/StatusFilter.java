@@ -10,7 +10,7 @@ import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
 
-public class StatusFilter extends TextFilter<String> {
+public class StatusFilter extends TextFilter<String> implements IndexedFilter {
 
 	private static final Set<String> validStatus = new HashSet<>();
 	private static final Comparator[] comparators = {
@@ -61,11 +61,38 @@ public class StatusFilter extends TextFilter<String> {
 	}
 
 	public boolean isEqual(String value, ChunkData data) {
+		String status = getStatus(data);
+		return status != null && value.equals(status);
+	}
+
+	private static String getStatus(ChunkData data) {
 		if (data.getRegion() == null) {
-			return false;
+			return null;
 		}
 		StringTag tag = data.getRegion().getData().getCompoundTag("Level").getStringTag("Status");
-		return tag != null && value.equals(tag.getValue());
+		return tag == null ? null : tag.getValue();
+	}
+
+	// the hash code of the status, or 0 for a status that is not equal to any valid status
+	static Integer getStatusValue(ChunkData data) {
+		String status = getStatus(data);
+		return status != null && validStatus.contains(status) ? status.hashCode() : 0;
+	}
+
+	@Override
+	public IndexField getIndexField() {
+		return IndexField.STATUS;
+	}
+
+	@Override
+	public boolean matchesIndexValue(int value) {
+		switch (getComparator()) {
+			case EQUAL:
+				return value == this.value.hashCode();
+			case NOT_EQUAL:
+				return value != this.value.hashCode();
+		}
+		return false;
 	}
 
 	@Override
@@ -10,7 +10,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.*;
 
-public class StructureFilter extends TextFilter<List<String>> {
+public class StructureFilter extends TextFilter<List<String>> implements RegionContentsFilter {
 
 	private static final Map<String, String> validNames = new HashMap<>();
 
@@ -35,6 +35,43 @@ public class StructureFilter extends TextFilter<List<String>> {
 		setRawValue(String.join(",", value == null ? new ArrayList<>(0) : value));
 	}
 
+	@Override
+	public boolean matchesRegionContents(RegionContents contents) {
+		Set<String> names = contents.getStructureNames();
+		if (names == null) {
+			return true;
+		}
+		switch (getComparator()) {
+			case CONTAINS:
+				for (String name : value) {
+					if (!names.contains(name) && !names.contains(validNames.get(name))) {
+						return false;
+					}
+				}
+				return true;
+			case INTERSECTS:
+				for (String name : value) {
+					if (names.contains(name) || names.contains(validNames.get(name))) {
+						return true;
+					}
+				}
+				return false;
+		}
+		return true;
+	}
+
+	// returns the names of all structures the chunk has references to
+	static Set<String> getStructureNames(ChunkData data) {
+		CompoundTag rawStructures = data.getRegion().getData().getCompoundTag("Level").getCompoundTag("Structures").getCompoundTag("References");
+		Set<String> names = new HashSet<>();
+		for (Map.Entry<String, Tag<?>> structure : rawStructures) {
+			if (!structure.getValue().valueToString().equals("[]")) {
+				names.add(structure.getKey());
+			}
+		}
+		return names;
+	}
+
 	@Override
 	public boolean contains(List<String> value, ChunkData data) {
 		CompoundTag rawStructures = data.getRegion().getData().getCompoundTag("Level").getCompoundTag("Structures").getCompoundTag("References");
@@ -5,7 +5,7 @@ import net.querz.nbt.tag.ListTag;
 import net.querz.nbt.tag.LongArrayTag;
 import net.querz.nbt.tag.Tag;
 
-public class TileEntityAmountFilter extends IntFilter {
+public class TileEntityAmountFilter extends IntFilter implements IndexedFilter {
 
 	public TileEntityAmountFilter() {
 		this(Operator.AND, Comparator.EQUAL, 0);
@@ -36,6 +36,11 @@ public class TileEntityAmountFilter extends IntFilter {
 		}
 	}
 
+	@Override
+	public IndexField getIndexField() {
+		return IndexField.TILE_ENTITY_AMOUNT;
+	}
+
 	@Override
 	public TileEntityAmountFilter clone() {
 		return new TileEntityAmountFilter(getOperator(), getComparator(), value);
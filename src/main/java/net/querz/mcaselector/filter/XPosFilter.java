@@ -3,7 +3,7 @@ package net.querz.mcaselector.filter;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.point.Point2i;
 
-public class XPosFilter extends IntFilter implements RegionMatcher {
+public class XPosFilter extends IntFilter implements RegionMatcher, IndexedFilter {
 
 	public XPosFilter() {
 		this(Operator.AND, Comparator.EQUAL, 0);
@@ -33,6 +33,11 @@ public class XPosFilter extends IntFilter implements RegionMatcher {
 		return false;
 	}
 
+	@Override
+	public IndexField getIndexField() {
+		return IndexField.X_POS;
+	}
+
 	@Override
 	public XPosFilter clone() {
 		return new XPosFilter(getOperator(), getComparator(), value);
@@ -3,7 +3,7 @@ package net.querz.mcaselector.filter;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.point.Point2i;
 
-public class ZPosFilter extends IntFilter implements RegionMatcher {
+public class ZPosFilter extends IntFilter implements RegionMatcher, IndexedFilter {
 
 	public ZPosFilter() {
 		this(Operator.AND, Comparator.EQUAL, 0);
@@ -33,6 +33,11 @@ public class ZPosFilter extends IntFilter implements RegionMatcher {
 		return false;
 	}
 
+	@Override
+	public IndexField getIndexField() {
+		return IndexField.Z_POS;
+	}
+
 	@Override
 	public ZPosFilter clone() {
 		return new ZPosFilter(getOperator(), getComparator(), value);
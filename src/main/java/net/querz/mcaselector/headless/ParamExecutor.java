@@ -1,5 +1,6 @@
 package net.querz.mcaselector.headless;
 
+import ar.com.hjg.pngj.FilterType;
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.changer.ChangeParser;
 import net.querz.mcaselector.changer.Field;
@@ -8,11 +9,14 @@ import net.querz.mcaselector.exception.ParseException;
 import net.querz.mcaselector.filter.FilterParser;
 import net.querz.mcaselector.filter.GroupFilter;
 import net.querz.mcaselector.io.*;
+import net.querz.mcaselector.io.db.CacheDBController;
+import net.querz.mcaselector.io.db.OverlayStatistics;
 import net.querz.mcaselector.io.job.ChunkFilterDeleter;
 import net.querz.mcaselector.io.job.ChunkFilterExporter;
 import net.querz.mcaselector.io.job.ChunkFilterSelector;
 import net.querz.mcaselector.io.job.ChunkImporter;
 import net.querz.mcaselector.io.job.FieldChanger;
+import net.querz.mcaselector.io.job.ParseDataJob;
 import net.querz.mcaselector.io.job.SelectionDeleter;
 import net.querz.mcaselector.io.job.SelectionExporter;
 import net.querz.mcaselector.io.job.SelectionImageExporter;
@@ -21,11 +25,20 @@ import net.querz.mcaselector.property.DataProperty;
 import net.querz.mcaselector.range.Range;
 import net.querz.mcaselector.range.RangeParser;
 import net.querz.mcaselector.text.Translation;
+import net.querz.mcaselector.tiles.Tile;
+import net.querz.mcaselector.tiles.overlay.OverlayParser;
+import net.querz.mcaselector.tiles.overlay.OverlayType;
+import net.querz.mcaselector.validation.ShutdownHooks;
 import java.io.File;
 import java.io.IOException;
+import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -95,6 +108,13 @@ public final class ParamExecutor {
 					printHeadlessSettings();
 					image(future);
 					break;
+				case "serve":
+					printHeadlessSettings();
+					serve();
+					break;
+				case "overlay-stats":
+					overlayStats(future);
+					break;
 				case "printMissingTranslations":
 					printMissingTranslations(future);
 					break;
@@ -216,13 +236,13 @@ public final class ParamExecutor {
 
 	private void cache(FutureTask<Boolean> future) throws IOException {
 		Config.setWorldDirs(parseWorldDirectories("region", "poi", "entities"));
-		if (!HeadlessHelper.hasJavaFX()) {
-			throw new IOException("no JavaFX installation found");
-		}
-
 		File output = parseAndCreateDirectory("output");
 		Config.setCacheDir(output);
 		Integer zoomLevel = parseZoomLevel();
+		Config.setCacheStore(parseCacheStore());
+		Config.setCacheFormat(parseCacheFormat());
+		Config.setCachePNGFilter(parsePNGFilter());
+		Config.setCacheCompressionLevel(parseCompressionLevel());
 
 		ConsoleProgress progress = new ConsoleProgress();
 		progress.onDone(future);
@@ -232,10 +252,6 @@ public final class ParamExecutor {
 
 	private void image(FutureTask<Boolean> future) throws IOException {
 		Config.setWorldDirs(parseWorldDirectories("region", "poi", "entities"));
-		if (!HeadlessHelper.hasJavaFX()) {
-			throw new IOException("no JavaFX installation found");
-		}
-
 		File output = parseFileAndCreateParentDirectories("output", "png");
 		SelectionData selection = loadSelection();
 
@@ -273,6 +289,118 @@ public final class ParamExecutor {
 		pixels.set(SelectionImageExporter.exportSelectionImage(info, null, generateProgress));
 	}
 
+	// runs until the process is stopped, so the future is never completed
+	private void serve() throws IOException {
+		Config.setWorldDirs(parseWorldDirectories("region", "poi", "entities"));
+		if (params.containsKey("output")) {
+			Config.setCacheDir(parseAndCreateDirectory("output"));
+		}
+		Config.setCacheStore(parseCacheStore());
+		String host = params.getOrDefault("host", "0.0.0.0");
+		int port = parsePositiveInt("port", 8080);
+		if (port > 65535) {
+			throw new ParseException("invalid port " + port);
+		}
+		int threads = parsePositiveInt("server-threads", 8);
+		int maxRenders = parsePositiveInt("max-renders", Config.getProcessThreads());
+
+		TileServer server = new TileServer(host, port, threads, maxRenders);
+		ShutdownHooks.addShutdownHook(server::stop);
+		server.start();
+	}
+
+	// prints statistics of the overlay data in the cache db of a world
+	private void overlayStats(FutureTask<Boolean> future) throws IOException, SQLException, InterruptedException {
+		Config.setWorldDirs(parseWorldDirectories("region", "poi", "entities"));
+		if (params.containsKey("output")) {
+			Config.setCacheDir(parseAndCreateDirectory("output"));
+		}
+		OverlayParser parser = parseOverlay();
+		int buckets = parsePositiveInt("buckets", 10);
+		int top = parseInt("top", 0);
+		if (top < 0) {
+			throw new ParseException("number cannot be negative: \"" + top + "\"");
+		}
+
+		CacheDBController db = new CacheDBController();
+		db.switchTo(new File(Config.getCacheDir(), "cache.db").toString(), Collections.singletonList(parser));
+		try {
+			if (params.containsKey("update")) {
+				updateOverlayData(db, parser);
+			}
+
+			OverlayStatistics stats = db.getStatistics(parser, buckets);
+			if (stats == null || stats.getChunks() == 0) {
+				System.out.println("no cached data for overlay " + parser.name());
+			} else {
+				System.out.println("overlay: " + parser.name());
+				System.out.println("regions: " + stats.getRegions());
+				System.out.println("chunks:  " + stats.getChunks());
+				System.out.println("min:     " + stats.getMin());
+				System.out.println("max:     " + stats.getMax());
+				System.out.printf("mean:    %.2f%n", stats.getMean());
+				for (int percentile : new int[]{1, 5, 25, 50, 75, 95, 99}) {
+					System.out.printf("p%-7s %d%n", percentile + ":", stats.getPercentile(percentile));
+				}
+				System.out.println("histogram:");
+				for (int i = 0; i < stats.getBuckets(); i++) {
+					long from = (long) Math.ceil(stats.getBucketMin(i));
+					long to = i == stats.getBuckets() - 1 ? stats.getMax() : (long) Math.ceil(stats.getBucketMin(i + 1)) - 1;
+					if (from <= to) {
+						System.out.printf("  %d..%d: %d%n", from, to, stats.getCount(i));
+					}
+				}
+			}
+
+			if (top > 0) {
+				System.out.println("top chunks:");
+				for (OverlayStatistics.ChunkValue value : db.getTopChunks(parser, top)) {
+					System.out.printf("  %d %d: %d%n", value.getChunk().getX(), value.getChunk().getZ(), value.getValue());
+				}
+			}
+		} finally {
+			db.removeCloseShutdownHook();
+			db.close();
+		}
+		future.run();
+	}
+
+	// parses the overlay data of all regions that have no data in the cache or whose region file changed since
+	private void updateOverlayData(CacheDBController db, OverlayParser parser) throws IOException, SQLException, InterruptedException {
+		File[] files = Config.getWorldDirs().getRegion().listFiles((d, n) -> n.matches(FileHelper.MCA_FILE_PATTERN));
+		if (files == null) {
+			return;
+		}
+
+		ThreadPoolExecutor parsers = new ThreadPoolExecutor(
+				Config.getParseThreads(), Config.getParseThreads(),
+				0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>());
+		AtomicInteger parsed = new AtomicInteger();
+		for (File file : files) {
+			Matcher m = FileHelper.REGION_GROUP_PATTERN.matcher(file.getName());
+			if (!m.find()) {
+				continue;
+			}
+			Point2i region = new Point2i(Integer.parseInt(m.group("regionX")), Integer.parseInt(m.group("regionZ")));
+			RegionStamp stamp = RegionStamp.of(file);
+			if (db.getData(parser, region, stamp) != null) {
+				continue;
+			}
+			parsers.execute(() -> {
+				new ParseDataJob(new Tile(region), Config.getWorldDirs().makeRegionDirectories(region), Config.getWorldUUID(), (d, u) -> {
+					if (d != null) {
+						db.setData(parser, region, d, stamp);
+						parsed.incrementAndGet();
+					}
+				}, parser).execute();
+			});
+		}
+		parsers.shutdown();
+		parsers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		Debug.printf("parsed %s data of %d regions", parser.name(), parsed.get());
+	}
+
 	private void printMissingTranslations(FutureTask<Boolean> future) {
 		Set<Locale> locales = Translation.getAvailableLanguages();
 		for (Locale locale : locales) {
@@ -541,6 +669,67 @@ public final class ParamExecutor {
 		return null;
 	}
 
+	private OverlayParser parseOverlay() throws ParseException {
+		String value = params.get("overlay");
+		if (value == null || value.isEmpty()) {
+			throw new ParseException("missing overlay");
+		}
+		for (OverlayType type : OverlayType.values()) {
+			OverlayParser parser = type.instance();
+			if (type.name().equalsIgnoreCase(value) || type.toString().equalsIgnoreCase(value) || parser.name().equalsIgnoreCase(value)) {
+				if (params.containsKey("overlay-data") && !parser.setMultiValues(params.get("overlay-data"))) {
+					throw new ParseException("invalid overlay data \"" + params.get("overlay-data") + "\"");
+				}
+				return parser;
+			}
+		}
+		throw new ParseException("invalid overlay \"" + value + "\"");
+	}
+
+	private TileCacheStore.Type parseCacheStore() throws ParseException {
+		String value = params.get("cache-store");
+		if (value != null && !value.isEmpty()) {
+			try {
+				return TileCacheStore.Type.valueOf(value.toUpperCase());
+			} catch (IllegalArgumentException ex) {
+				throw new ParseException("invalid cache store \"" + value + "\"");
+			}
+		}
+		return Config.DEFAULT_CACHE_STORE;
+	}
+
+	private CacheFormat parseCacheFormat() throws ParseException {
+		String value = params.get("cache-format");
+		if (value != null && !value.isEmpty()) {
+			CacheFormat format = CacheFormat.fromExtension(value);
+			if (format == null) {
+				throw new ParseException("invalid cache format \"" + value + "\"");
+			}
+			return format;
+		}
+		return Config.DEFAULT_CACHE_FORMAT;
+	}
+
+	private FilterType parsePNGFilter() throws ParseException {
+		String value = params.get("png-filter");
+		if (value != null && !value.isEmpty()) {
+			try {
+				return FilterType.valueOf("FILTER_" + value.toUpperCase().replace('-', '_'));
+			} catch (IllegalArgumentException ex) {
+				throw new ParseException("invalid png filter \"" + value + "\"");
+			}
+		}
+		return Config.DEFAULT_CACHE_PNG_FILTER;
+	}
+
+	private int parseCompressionLevel() throws ParseException {
+		int level = parseInt("compression-level", Config.DEFAULT_CACHE_COMPRESSION_LEVEL);
+		if (level < 0 || level > 9) {
+			throw new ParseException("compression level must be between 0 and 9");
+		}
+		return level;
+	}
+
 	private int parseInt(String key, int def) throws ParseException {
 		String value = params.getOrDefault(key, "" + def);
 		if (value != null && !value.isEmpty()) {
@@ -577,6 +766,7 @@ public final class ParamExecutor {
 		Config.setLoadThreads(parsePositiveInt("read-threads", Config.DEFAULT_LOAD_THREADS));
 		Config.setProcessThreads(parsePositiveInt("process-threads", Config.DEFAULT_PROCESS_THREADS));
 		Config.setWriteThreads(parsePositiveInt("write-threads",Config.DEFAULT_WRITE_THREADS));
+		Config.setParseThreads(parsePositiveInt("parse-threads", Config.DEFAULT_PARSE_THREADS));
 		Config.setMaxLoadedFiles(parsePositiveInt("max-loaded-files", Config.DEFAULT_MAX_LOADED_FILES));
 	}
 
@@ -584,5 +774,6 @@ public final class ParamExecutor {
 		Debug.print("read threads:    " + Config.getLoadThreads());
 		Debug.print("process threads: " + Config.getProcessThreads());
 		Debug.print("write threads:   " + Config.getWriteThreads());
+		Debug.print("parse threads:   " + Config.getParseThreads());
 	}
 }
@@ -0,0 +1,290 @@
+package net.querz.mcaselector.headless;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.querz.mcaselector.Config;
+import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.io.CacheHelper;
+import net.querz.mcaselector.io.FileHelper;
+import net.querz.mcaselector.io.ImageHelper;
+import net.querz.mcaselector.io.RegionStamp;
+import net.querz.mcaselector.io.TileCacheStore;
+import net.querz.mcaselector.io.job.RegionImageGenerator;
+import net.querz.mcaselector.point.Point2i;
+import net.querz.mcaselector.tiles.Tile;
+import javax.imageio.ImageIO;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// serves the images of the regions of a world over http, e.g. GET /tiles/2/-1/3.png returns the image of region -1, 3
+// at zoom level 2. images are taken from the tile cache if they were created from the current region file, otherwise
+// the region is rendered through MCAFilePipe and cached. ETag and Last-Modified are derived from the region file and
+// the ETag also from the render settings, so clients only download an image again when the region or the settings changed.
+public final class TileServer {
+
+	private static final Pattern TILE_PATTERN = Pattern.compile("^/tiles/(?<zoomLevel>\\d+)/(?<x>-?\\d+)/(?<z>-?\\d+)\\.png$");
+	private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+	// seconds a request waits for a free render slot before it is answered with 503
+	private static final long RENDER_SLOT_TIMEOUT = 10;
+	// seconds a request waits for its region to be rendered before it is answered with 504. the render keeps its slot
+	// until it is finished, so later requests for the same image wait for the same render.
+	private static final long RENDER_TIMEOUT = 60;
+
+	private final HttpServer server;
+	private final ThreadPoolExecutor executor;
+	// limits the number of regions in MCAFilePipe at once, no matter how many clients request images
+	private final Semaphore renderSlots;
+	// regions that are rendered right now, so concurrent requests for the same image wait for the same result
+	private final Map<String, CompletableFuture<int[]>> rendering = new ConcurrentHashMap<>();
+
+	public TileServer(String host, int port, int threads, int maxRenders) throws IOException {
+		renderSlots = new Semaphore(maxRenders);
+		executor = new ThreadPoolExecutor(
+				threads, threads,
+				0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>());
+		server = HttpServer.create(new InetSocketAddress(host, port), 0);
+		server.createContext("/tiles/", exchange -> {
+			try {
+				handle(exchange);
+			} catch (Throwable ex) {
+				// errors like a NoClassDefFoundError are answered as well, instead of closing the connection
+				Debug.dumpException("failed to handle request " + exchange.getRequestURI(), ex instanceof Exception ? (Exception) ex : new Exception(ex));
+				send(exchange, 500, null);
+			} finally {
+				exchange.close();
+			}
+		});
+		server.setExecutor(executor);
+	}
+
+	public void start() {
+		server.start();
+		Debug.printf("serving tiles of %s on http://%s:%d/tiles/{zoom-level}/{x}/{z}.png",
+				Config.getWorldDir(), server.getAddress().getHostString(), server.getAddress().getPort());
+	}
+
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method)) {
+			send(exchange, 405, null);
+			return;
+		}
+
+		Matcher m = TILE_PATTERN.matcher(exchange.getRequestURI().getPath());
+		if (!m.matches()) {
+			send(exchange, 404, null);
+			return;
+		}
+		int zoomLevel;
+		Point2i region;
+		try {
+			zoomLevel = Integer.parseInt(m.group("zoomLevel"));
+			region = new Point2i(Integer.parseInt(m.group("x")), Integer.parseInt(m.group("z")));
+		} catch (NumberFormatException ex) {
+			send(exchange, 404, null);
+			return;
+		}
+		if (!isValidZoomLevel(zoomLevel)) {
+			send(exchange, 404, null);
+			return;
+		}
+
+		File file = FileHelper.createMCAFilePath(region);
+		RegionStamp stamp = RegionStamp.of(file);
+		if (stamp == null) {
+			send(exchange, 404, null);
+			return;
+		}
+
+		String eTag = String.format("\"%x-%x-%d-%d\"", stamp.getLastModified(), stamp.getLength(), zoomLevel, getRenderSettings());
+		Headers headers = exchange.getResponseHeaders();
+		headers.set("ETag", eTag);
+		headers.set("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME.format(
+				ZonedDateTime.ofInstant(Instant.ofEpochMilli(stamp.getLastModified()), ZoneOffset.UTC)));
+		headers.set("Cache-Control", "no-cache");
+		if (isNotModified(exchange.getRequestHeaders(), eTag, stamp.getLastModified())) {
+			send(exchange, 304, null);
+			return;
+		}
+
+		byte[] image;
+		try {
+			image = getImage(region, zoomLevel, file);
+		} catch (NoRenderSlotException ex) {
+			Debug.dumpf("no render slot for %d/%s", zoomLevel, region);
+			headers.set("Retry-After", "" + RENDER_SLOT_TIMEOUT);
+			send(exchange, 503, null);
+			return;
+		} catch (TimeoutException ex) {
+			Debug.dumpf("rendering %d/%s timed out", zoomLevel, region);
+			send(exchange, 504, null);
+			return;
+		}
+		if (image == null) {
+			// the region doesn't contain any chunks
+			send(exchange, 404, null);
+			return;
+		}
+		headers.set("Content-Type", "image/png");
+		send(exchange, 200, "HEAD".equals(method) ? null : image);
+	}
+
+	private static boolean isValidZoomLevel(int zoomLevel) {
+		for (int z = Config.getMinZoomLevel(); z <= Config.getMaxZoomLevel(); z *= 2) {
+			if (zoomLevel == z) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// the settings that change the rendered image of a region
+	private static int getRenderSettings() {
+		return (Config.shade() ? 1 : 0) | (Config.shadeWater() ? 2 : 0);
+	}
+
+	private static boolean isNotModified(Headers request, String eTag, long lastModified) {
+		String ifNoneMatch = request.getFirst("If-None-Match");
+		if (ifNoneMatch != null) {
+			return ifNoneMatch.contains(eTag) || ifNoneMatch.trim().equals("*");
+		}
+		String ifModifiedSince = request.getFirst("If-Modified-Since");
+		if (ifModifiedSince != null) {
+			try {
+				long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+				// http dates only have a precision of seconds
+				return lastModified / 1000 <= since / 1000;
+			} catch (DateTimeParseException ex) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+		if (body == null) {
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	// returns the png image of a region, or null if the region doesn't contain any chunks.
+	// throws a NoRenderSlotException if the region has to be rendered and no render slot is free
+	// and a TimeoutException if rendering the region takes too long.
+	private byte[] getImage(Point2i region, int zoomLevel, File file) throws IOException, NoRenderSlotException, TimeoutException {
+		TileCacheStore store = TileCacheStore.get(Config.getCacheDir());
+		if (store.exists(zoomLevel, region) && CacheHelper.isUpToDate(store, zoomLevel, region, file)) {
+			byte[] data = store.read(zoomLevel, region);
+			if (data != null) {
+				return isPNG(data) ? data : encodePNG(ImageHelper.readCacheImage(data), Tile.SIZE / zoomLevel);
+			}
+		}
+
+		int[] pixels = render(region, zoomLevel);
+		return pixels == null ? null : encodePNG(pixels, Tile.SIZE / zoomLevel);
+	}
+
+	private int[] render(Point2i region, int zoomLevel) throws IOException, NoRenderSlotException, TimeoutException {
+		String key = zoomLevel + "/" + region;
+		CompletableFuture<int[]> result = new CompletableFuture<>();
+		CompletableFuture<int[]> existing = rendering.putIfAbsent(key, result);
+		if (existing != null) {
+			return await(existing);
+		}
+
+		try {
+			if (!renderSlots.tryAcquire(RENDER_SLOT_TIMEOUT, TimeUnit.SECONDS)) {
+				rendering.remove(key);
+				NoRenderSlotException ex = new NoRenderSlotException();
+				result.completeExceptionally(ex);
+				throw ex;
+			}
+		} catch (InterruptedException ex) {
+			rendering.remove(key);
+			result.completeExceptionally(ex);
+			throw new IOException(ex);
+		}
+
+		// the slot is only released when the region was rendered or rendering failed, even if the request timed out
+		// before, so there are never more regions in MCAFilePipe than render slots
+		result.whenComplete((pixels, ex) -> {
+			rendering.remove(key);
+			renderSlots.release();
+		});
+		Debug.dumpf("rendering %d/%s", zoomLevel, region);
+		try {
+			RegionImageGenerator.generate(new Tile(region), Config.getWorldUUID(), (pixels, world) -> result.complete(pixels),
+					() -> result.completeExceptionally(new IOException("failed to render " + key)),
+					() -> (float) zoomLevel, false, null);
+		} catch (Throwable ex) {
+			result.completeExceptionally(ex);
+			throw ex;
+		}
+
+		return await(result);
+	}
+
+	private static int[] await(CompletableFuture<int[]> result) throws IOException, NoRenderSlotException, TimeoutException {
+		try {
+			return result.get(RENDER_TIMEOUT, TimeUnit.SECONDS);
+		} catch (InterruptedException ex) {
+			throw new IOException(ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof NoRenderSlotException) {
+				throw (NoRenderSlotException) ex.getCause();
+			}
+			throw new IOException(ex.getCause());
+		}
+	}
+
+	private static boolean isPNG(byte[] data) {
+		if (data.length < PNG_SIGNATURE.length) {
+			return false;
+		}
+		for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+			if (data[i] != PNG_SIGNATURE[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] encodePNG(int[] pixels, int size) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ImageIO.write(ImageHelper.toBufferedImage(pixels, size), "png", baos);
+		return baos.toByteArray();
+	}
+
+	private static class NoRenderSlotException extends Exception {}
+}
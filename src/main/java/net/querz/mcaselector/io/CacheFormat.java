@@ -0,0 +1,28 @@
+package net.querz.mcaselector.io;
+
+public enum CacheFormat {
+
+	// deflate compressed png files, filter and compression level are configurable
+	PNG("png"),
+	// uncompressed premultiplied ARGB pixels, for when disk space is cheaper than cpu time
+	RAW("raw");
+
+	private final String extension;
+
+	CacheFormat(String extension) {
+		this.extension = extension;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+	public static CacheFormat fromExtension(String extension) {
+		for (CacheFormat format : values()) {
+			if (format.extension.equalsIgnoreCase(extension)) {
+				return format;
+			}
+		}
+		return null;
+	}
+}
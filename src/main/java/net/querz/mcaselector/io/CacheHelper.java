@@ -1,6 +1,7 @@
 package net.querz.mcaselector.io;
 
 import net.querz.mcaselector.Config;
+import net.querz.mcaselector.io.db.ChunkIndex;
 import net.querz.mcaselector.io.job.RegionImageGenerator;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.tiles.Tile;
@@ -38,15 +39,72 @@ public final class CacheHelper {
 				int z = Integer.parseInt(m.group("regionZ"));
 				boolean scaleOnly = zoomLevel != null;
 				float zoomLevelSupplier = scaleOnly ? zoomLevel : 1;
-				RegionImageGenerator.generate(new Tile(new Point2i(x, z)), null, (i, u) -> {}, () -> zoomLevelSupplier, scaleOnly, progressChannel);
+				Tile tile = new Tile(new Point2i(x, z));
+
+				// a single zoom level can be scaled down from a higher resolution image that is already cached
+				int cachedZoomLevel = scaleOnly ? findCachedZoomLevel(file, tile.getLocation(), zoomLevel) : 0;
+				if (cachedZoomLevel > 0) {
+					RegionImageGenerator.generateFromCache(tile, Config.getWorldUUID(), cachedZoomLevel, () -> zoomLevelSupplier, progressChannel);
+				} else {
+					RegionImageGenerator.generate(tile, Config.getWorldUUID(), (i, u) -> {}, () -> zoomLevelSupplier, scaleOnly, progressChannel);
+				}
+			}
+		}
+	}
+
+	// returns the zoom level closest below zoomLevel with a cached image that was created from the current region file,
+	// or 0. the closest level has the smallest image to scale down from.
+	private static int findCachedZoomLevel(File regionFile, Point2i region, int zoomLevel) {
+		TileCacheStore store = TileCacheStore.get(Config.getCacheDir());
+		for (int i = zoomLevel / 2; i >= 1; i /= 2) {
+			if (store.exists(i, region) && isUpToDate(store, i, region, regionFile)) {
+				return i;
+			}
+		}
+		return 0;
+	}
+
+	// whether the cached image of a region at a zoom level was created from the current version of its region file.
+	// images cached by older versions without a stamp are compared by modification time.
+	public static boolean isUpToDate(TileCacheStore store, int zoomLevel, Point2i region, File regionFile) {
+		RegionStamp current = RegionStamp.of(regionFile);
+		if (current == null) {
+			return false;
+		}
+		try {
+			byte[] data = store.read(TileCacheStore.STAMP, region);
+			RegionStamp stamp = data == null ? null : RegionStamp.read(data);
+			if (stamp != null) {
+				return stamp.matches(current);
 			}
+		} catch (IOException ex) {
+			Debug.dumpException("failed to read stamp of " + region, ex);
 		}
+		return store.lastModified(zoomLevel, region) >= current.getLastModified();
+	}
+
+	// deletes all cached images of a region and their stamp. the edges are kept because they are replaced
+	// by the next rendering of the region, which needs the old ones to shade the borders of its neighbours again.
+	public static void invalidate(TileCacheStore store, Point2i region) {
+		for (int i = Config.getMinZoomLevel(); i <= Config.getMaxZoomLevel(); i *= 2) {
+			store.delete(i, region);
+		}
+		store.delete(TileCacheStore.STAMP, region);
 	}
 
 	public static void clearAllCache(TileMap tileMap) {
-		for (File cacheDir : Config.getCacheDirs()) {
-			FileHelper.deleteDirectory(cacheDir);
+		TileCacheStore store = TileCacheStore.get(Config.getCacheDir());
+		store.clear();
+		if (store.getType() != TileCacheStore.Type.FILES) {
+			// remove cache files of older versions
+			for (File cacheDir : Config.getCacheDirs()) {
+				FileHelper.deleteDirectory(cacheDir);
+			}
+			FileHelper.deleteDirectory(FileHelper.createEdgesDirPath(Config.getCacheDir()));
+			FileHelper.deleteDirectory(FileHelper.createStampsDirPath(Config.getCacheDir()));
+			FileHelper.deleteDirectory(FileHelper.createSuperTilesDirPath(Config.getCacheDir()));
 		}
+		ChunkIndex.get(Config.getCacheDir()).clear();
 		MCAFilePipe.clearQueues();
 		updateVersionFile();
 		tileMap.clear();
@@ -54,59 +112,38 @@ public final class CacheHelper {
 	}
 
 	public static void clearViewCache(TileMap tileMap) {
+		TileCacheStore store = TileCacheStore.get(Config.getCacheDir());
 		for (Point2i regionBlock : tileMap.getVisibleRegions()) {
-			for (File cacheDir : Config.getCacheDirs()) {
-				File file = FileHelper.createPNGFilePath(cacheDir, regionBlock);
-				if (file.exists()) {
-					if (!file.delete()) {
-						Debug.error("could not delete file " + file);
-					}
-				}
-				tileMap.clearTile(regionBlock);
-				tileMap.getOverlayPool().discardData(regionBlock);
-			}
+			store.delete(regionBlock);
+			tileMap.clearTile(regionBlock);
+			tileMap.getOverlayPool().discardData(regionBlock);
 		}
 		tileMap.update();
 	}
 
 	public static void clearSelectionCache(TileMap tileMap) {
+		TileCacheStore store = TileCacheStore.get(Config.getCacheDir());
+		ChunkIndex index = ChunkIndex.get(Config.getCacheDir());
 		if (tileMap.isSelectionInverted()) {
 			SelectionData selection = new SelectionData(tileMap.getMarkedChunks(), tileMap.isSelectionInverted());
-			File[] cacheDirs = Config.getCacheDirs();
-			for (File cacheDir : cacheDirs) {
-				File[] cacheFiles = cacheDir.listFiles((dir, name) -> name.matches("^r\\.-?\\d+\\.-?\\d+\\.png$"));
-				if (cacheFiles == null) {
-					continue;
-				}
-				for (File cacheFile : cacheFiles) {
-					Point2i cacheRegion = FileHelper.parseCacheFileName(cacheFile);
-					if (selection.isRegionSelected(cacheRegion) && cacheFile.exists()) {
-						if (!cacheFile.delete()) {
-							Debug.error("could not delete file " + cacheFile);
-							continue;
-						}
-						tileMap.clearTile(cacheRegion);
-					}
+			for (Point2i cacheRegion : store.getRegions()) {
+				if (selection.isRegionSelected(cacheRegion)) {
+					store.delete(cacheRegion);
+					tileMap.clearTile(cacheRegion);
 				}
 			}
 
 			Map<Point2i, Set<Point2i>> trueSelection = SelectionHelper.getTrueSelection(selection);
 			for (Point2i region : trueSelection.keySet()) {
 				tileMap.getOverlayPool().discardData(region);
+				index.invalidate(region);
 			}
 		} else {
 			for (Map.Entry<Point2i, Set<Point2i>> entry : tileMap.getMarkedChunks().entrySet()) {
-				for (File cacheDir : Config.getCacheDirs()) {
-					File file = FileHelper.createPNGFilePath(cacheDir, entry.getKey());
-					if (file.exists()) {
-						if (!file.delete()) {
-							Debug.error("could not delete file " + file);
-						}
-					}
-					tileMap.clearTile(entry.getKey());
-				}
+				store.delete(entry.getKey());
+				tileMap.clearTile(entry.getKey());
 				tileMap.getOverlayPool().discardData(entry.getKey());
-
+				index.invalidate(entry.getKey());
 			}
 		}
 		tileMap.update();
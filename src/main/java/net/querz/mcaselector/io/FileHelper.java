@@ -36,7 +36,8 @@ public final class FileHelper {
 	public static final String MCA_FILE_PATTERN = "^r\\.-?\\d+\\.-?\\d+\\.mca$";
 	public static final Pattern REGION_GROUP_PATTERN = Pattern.compile("^r\\.(?<regionX>-?\\d+)\\.(?<regionZ>-?\\d+)\\.mca$");
 	public static final Pattern DAT_REGION_GROUP_PATTERN = Pattern.compile("^r\\.(?<regionX>-?\\d+)\\.(?<regionZ>-?\\d+)\\.dat$");
-	public static final Pattern CACHE_REGION_GROUP_PATTERN = Pattern.compile("^r\\.(?<regionX>-?\\d+)\\.(?<regionZ>-?\\d+)\\.png$");
+	public static final String CACHE_FILE_PATTERN = "^r\\.-?\\d+\\.-?\\d+\\.(png|raw)$";
+	public static final Pattern CACHE_REGION_GROUP_PATTERN = Pattern.compile("^r\\.(?<regionX>-?\\d+)\\.(?<regionZ>-?\\d+)\\.(png|raw)$");
 
 	private static final Map<String, String> lastOpenedDirectoryMap = new HashMap<>();
 
@@ -95,7 +96,7 @@ public final class FileHelper {
 	}
 
 	public static Point2i parseCacheFileName(File file) {
-		return parseMCAFileName(file.getName());
+		return parseCacheFileName(file.getName());
 	}
 
 	public static Point2i parseCacheFileName(String name) {
@@ -175,12 +176,36 @@ public final class FileHelper {
 		return new File(Config.getWorldDir(), createMCCFileName(c));
 	}
 
-	public static File createPNGFilePath(File cacheDir, Point2i r) {
-		return new File(cacheDir, createPNGFileName(r));
+	public static File createCacheFilePath(File cacheDir, Point2i r) {
+		return new File(cacheDir, createCacheFileName(r));
+	}
+
+	public static File createCacheFilePath(File cacheDir, int zoomLevel, Point2i r) {
+		return new File(cacheDir, zoomLevel + "/" + createCacheFileName(r));
+	}
+
+	public static File createEdgesDirPath(File cacheDir) {
+		return new File(cacheDir, "edges");
+	}
+
+	public static File createEdgesFilePath(File cacheDir, Point2i r) {
+		return new File(createEdgesDirPath(cacheDir), String.format("r.%d.%d.edges", r.getX(), r.getZ()));
+	}
+
+	public static File createStampsDirPath(File cacheDir) {
+		return new File(cacheDir, "stamps");
+	}
+
+	public static File createStampFilePath(File cacheDir, Point2i r) {
+		return new File(createStampsDirPath(cacheDir), String.format("r.%d.%d.stamp", r.getX(), r.getZ()));
+	}
+
+	public static File createSuperTilesDirPath(File cacheDir) {
+		return new File(cacheDir, "super");
 	}
 
-	public static File createPNGFilePath(File cacheDir, int zoomLevel, Point2i r) {
-		return new File(cacheDir, zoomLevel + "/" + createPNGFileName(r));
+	public static File createSuperTileFilePath(File cacheDir, int zoomLevel, Point2i s) {
+		return new File(createSuperTilesDirPath(cacheDir), String.format("%d/s.%d.%d.dat", zoomLevel, s.getX(), s.getZ()));
 	}
 
 	public static String createMCAFileName(Point2i r) {
@@ -191,8 +216,8 @@ public final class FileHelper {
 		return String.format("c.%d.%d.mcc", c.getX(), c.getZ());
 	}
 
-	public static String createPNGFileName(Point2i r) {
-		return String.format("r.%d.%d.png", r.getX(), r.getZ());
+	public static String createCacheFileName(Point2i r) {
+		return String.format("r.%d.%d.%s", r.getX(), r.getZ(), Config.getCacheFormat().getExtension());
 	}
 
 	public static Attributes getManifestAttributes() throws IOException {
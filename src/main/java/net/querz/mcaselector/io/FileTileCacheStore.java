@@ -0,0 +1,109 @@
+package net.querz.mcaselector.io;
+
+import net.querz.mcaselector.Config;
+import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.point.Point2i;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.HashSet;
+import java.util.Set;
+
+// the cache layout of older versions, one image file per region in a directory per zoom level.
+// useful if the cache images are used by other applications.
+public class FileTileCacheStore extends TileCacheStore {
+
+	private final File cacheDir;
+
+	FileTileCacheStore(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	@Override
+	public Type getType() {
+		return Type.FILES;
+	}
+
+	private File getFile(int layer, Point2i region) {
+		if (layer == EDGES) {
+			return FileHelper.createEdgesFilePath(cacheDir, region);
+		} else if (layer == STAMP) {
+			return FileHelper.createStampFilePath(cacheDir, region);
+		} else if (layer <= SUPER_TILES) {
+			return FileHelper.createSuperTileFilePath(cacheDir, SUPER_TILES - layer, region);
+		}
+		return FileHelper.createCacheFilePath(cacheDir, layer, region);
+	}
+
+	@Override
+	public long lastModified(int layer, Point2i region) {
+		return getFile(layer, region).lastModified();
+	}
+
+	@Override
+	public byte[] read(int layer, Point2i region) throws IOException {
+		try {
+			return Files.readAllBytes(getFile(layer, region).toPath());
+		} catch (NoSuchFileException ex) {
+			return null;
+		}
+	}
+
+	@Override
+	public void write(int layer, Point2i region, byte[] data) throws IOException {
+		File file = getFile(layer, region);
+		if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+			Debug.errorf("failed to create cache directory for %s", file.getAbsolutePath());
+		}
+		Files.write(file.toPath(), data);
+	}
+
+	@Override
+	public void delete(int layer, Point2i region) {
+		deleteFile(getFile(layer, region));
+	}
+
+	@Override
+	public void delete(Point2i region) {
+		deleteFile(getFile(EDGES, region));
+		deleteFile(getFile(STAMP, region));
+		for (int i = Config.getMinZoomLevel(); i <= Config.getMaxZoomLevel(); i *= 2) {
+			deleteFile(getFile(i, region));
+		}
+	}
+
+	private static void deleteFile(File file) {
+		if (file.exists() && !file.delete()) {
+			Debug.error("could not delete file " + file);
+		}
+	}
+
+	@Override
+	public Set<Point2i> getRegions() {
+		Set<Point2i> regions = new HashSet<>();
+		for (int i = Config.getMinZoomLevel(); i <= Config.getMaxZoomLevel(); i *= 2) {
+			File[] cacheFiles = new File(cacheDir, i + "").listFiles((dir, name) -> name.matches(FileHelper.CACHE_FILE_PATTERN));
+			if (cacheFiles == null) {
+				continue;
+			}
+			for (File cacheFile : cacheFiles) {
+				regions.add(FileHelper.parseCacheFileName(cacheFile));
+			}
+		}
+		return regions;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = Config.getMinZoomLevel(); i <= Config.getMaxZoomLevel(); i *= 2) {
+			FileHelper.deleteDirectory(new File(cacheDir, i + ""));
+		}
+		FileHelper.deleteDirectory(FileHelper.createEdgesDirPath(cacheDir));
+		FileHelper.deleteDirectory(FileHelper.createStampsDirPath(cacheDir));
+		FileHelper.deleteDirectory(FileHelper.createSuperTilesDirPath(cacheDir));
+	}
+
+	@Override
+	public void close() {}
+}
@@ -2,62 +2,242 @@ package net.querz.mcaselector.io;
 
 import ar.com.hjg.pngj.FilterType;
 import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineByte;
 import ar.com.hjg.pngj.ImageLineHelper;
 import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.ImageLineSetDefault;
+import ar.com.hjg.pngj.PngReader;
 import ar.com.hjg.pngj.PngWriter;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
+import ar.com.hjg.pngj.PngjException;
+import net.querz.mcaselector.Config;
 import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.progress.Progress;
 import net.querz.mcaselector.progress.Timer;
-import net.querz.mcaselector.property.DataProperty;
-import net.querz.mcaselector.tiles.Tile;
+import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.function.IntFunction;
 
 public final class ImageHelper {
 
+	private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
 	private ImageHelper() {}
 
-	public static BufferedImage scaleImage(BufferedImage before, double newSize) {
-		double w = before.getWidth();
-		double h = before.getHeight();
-		BufferedImage after = new BufferedImage((int) newSize, (int) newSize, BufferedImage.TYPE_INT_ARGB);
-		AffineTransform at = new AffineTransform();
-		at.scale(newSize / w, newSize / h);
-		AffineTransformOp scaleOp = new AffineTransformOp(at, AffineTransformOp.TYPE_BILINEAR);
-		return scaleOp.filter(before, after);
+	// scales a square image with premultiplied ARGB pixels down to newSize by averaging all source pixels
+	// that fall into a target pixel. size must be a multiple of newSize.
+	public static int[] scaleImage(int[] pixels, int size, int newSize) {
+		if (size == newSize) {
+			return pixels;
+		}
+		if (newSize <= 0 || size % newSize != 0) {
+			throw new IllegalArgumentException(String.format("can't scale image from %d to %d", size, newSize));
+		}
+
+		// power of two factors are scaled level by level so that every zoom level is consistent with the next one
+		if (Integer.bitCount(size / newSize) == 1) {
+			while (size > newSize) {
+				pixels = halveImage(pixels, size);
+				size /= 2;
+			}
+			return pixels;
+		}
+
+		int factor = size / newSize;
+		int samples = factor * factor;
+		int[] scaled = new int[newSize * newSize];
+
+		for (int z = 0; z < newSize; z++) {
+			for (int x = 0; x < newSize; x++) {
+				int a = 0, r = 0, g = 0, b = 0;
+				for (int sz = z * factor; sz < z * factor + factor; sz++) {
+					int index = sz * size + x * factor;
+					for (int sx = 0; sx < factor; sx++, index++) {
+						int pixel = pixels[index];
+						a += pixel >>> 24;
+						r += pixel >> 16 & 0xFF;
+						g += pixel >> 8 & 0xFF;
+						b += pixel & 0xFF;
+					}
+				}
+				scaled[z * newSize + x] = a / samples << 24 | r / samples << 16 | g / samples << 8 | b / samples;
+			}
+		}
+		return scaled;
+	}
+
+	// averages every 2x2 block of premultiplied ARGB pixels into one pixel, rounding to the nearest value
+	public static int[] halveImage(int[] pixels, int size) {
+		int newSize = size / 2;
+		int[] halved = new int[newSize * newSize];
+		for (int z = 0; z < newSize; z++) {
+			int top = z * 2 * size;
+			int bottom = top + size;
+			int index = z * newSize;
+			for (int x = 0; x < size; x += 2, index++) {
+				int p0 = pixels[top + x], p1 = pixels[top + x + 1];
+				int p2 = pixels[bottom + x], p3 = pixels[bottom + x + 1];
+				// alpha and green as well as red and blue are summed in pairs, each sum fits into 10 bits
+				int ag = ((p0 >>> 8 & 0xFF00FF) + (p1 >>> 8 & 0xFF00FF) + (p2 >>> 8 & 0xFF00FF) + (p3 >>> 8 & 0xFF00FF) + 0x20002) >> 2;
+				int rb = ((p0 & 0xFF00FF) + (p1 & 0xFF00FF) + (p2 & 0xFF00FF) + (p3 & 0xFF00FF) + 0x20002) >> 2;
+				halved[index] = (ag & 0xFF00FF) << 8 | rb & 0xFF00FF;
+			}
+		}
+		return halved;
+	}
+
+	public static BufferedImage toBufferedImage(int[] pixels, int size) {
+		BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+		image.getRaster().setDataElements(0, 0, size, size, pixels);
+		return image;
 	}
 
-	public static Image renderGradient(int width, float min, float max, float low, float high, boolean inverted) {
-		WritableImage image = new WritableImage(width, 50);
-		PixelWriter pixelWriter = image.getPixelWriter();
-		for (int i = 0; i < width; i++) {
-			float hue = (max - min) * ((float) i / width) + min;
-			float saturation = 1, brightness = 1;
+	// encodes a square image with premultiplied ARGB pixels in the configured cache format
+	public static byte[] encodeCacheImage(int[] pixels, int size) {
+		if (Config.getCacheFormat() == CacheFormat.RAW) {
+			ByteBuffer buffer = ByteBuffer.allocate(pixels.length * 4);
+			buffer.asIntBuffer().put(pixels);
+			return buffer.array();
+		}
+
+		ImageInfo imi = new ImageInfo(size, size, 8, true);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(size * size);
+		PngWriter png = new PngWriter(baos, imi);
+		png.setFilterType(Config.getCachePNGFilter());
+		png.setCompLevel(Config.getCacheCompressionLevel());
 
-			if (hue < low || hue > high) {
-				saturation = 0.3f;
-				brightness = 0.6f;
+		// png stores straight alpha, so the premultiplied pixels are converted row by row into a reused RGBA line
+		ImageLineByte line = new ImageLineByte(imi);
+		byte[] scanline = line.getScanline();
+		for (int z = 0; z < size; z++) {
+			for (int x = 0, i = z * size, b = 0; x < size; x++, i++) {
+				int pixel = pixels[i];
+				int a = pixel >>> 24;
+				if (a == 255 || a == 0) {
+					scanline[b++] = (byte) (pixel >> 16);
+					scanline[b++] = (byte) (pixel >> 8);
+					scanline[b++] = (byte) pixel;
+				} else {
+					scanline[b++] = (byte) unpremultiply(pixel >> 16 & 0xFF, a);
+					scanline[b++] = (byte) unpremultiply(pixel >> 8 & 0xFF, a);
+					scanline[b++] = (byte) unpremultiply(pixel & 0xFF, a);
+				}
+				scanline[b++] = (byte) a;
 			}
-			if (inverted) {
-				hue = max - hue + min;
+			png.writeRow(line);
+		}
+		png.end();
+		return baos.toByteArray();
+	}
+
+	// decodes a cache image of any format
+	public static int[] readCacheImage(byte[] data) throws IOException {
+		return readCacheImage(data, int[]::new);
+	}
+
+	// decodes a cached image into an array returned by buffers for the number of pixels, e.g. PixelBufferPool::take
+	public static int[] readCacheImage(byte[] data, IntFunction<int[]> buffers) throws IOException {
+		if (!isPNG(data)) {
+			if (data.length % 4 != 0) {
+				throw new IOException("invalid raw cache image size " + data.length);
 			}
+			int[] pixels = buffers.apply(data.length / 4);
+			ByteBuffer.wrap(data).asIntBuffer().get(pixels);
+			return pixels;
+		}
 
-			for (int j = 0; j < 50; j++) {
-				pixelWriter.setArgb(i, j, Color.HSBtoRGB(hue, saturation, brightness));
+		PngReader png;
+		try {
+			png = new PngReader(new ByteArrayInputStream(data));
+		} catch (PngjException ex) {
+			throw new IOException(ex);
+		}
+		try {
+			ImageInfo imi = png.imgInfo;
+			if (imi.channels != 4 || imi.bitDepth != 8 || imi.indexed || imi.cols != imi.rows) {
+				// not written by us, let ImageIO deal with it
+				return readImageData(new ByteArrayInputStream(data));
 			}
+			png.setLineSetFactory(ImageLineSetDefault.getFactoryByte());
+			int size = imi.cols;
+			int[] pixels = buffers.apply(size * size);
+			for (int z = 0; z < size; z++) {
+				byte[] scanline = ((ImageLineByte) png.readRow(z)).getScanline();
+				for (int x = 0, i = z * size, b = 0; x < size; x++, i++, b += 4) {
+					int a = scanline[b + 3] & 0xFF;
+					if (a == 255) {
+						pixels[i] = 0xFF000000 | (scanline[b] & 0xFF) << 16 | (scanline[b + 1] & 0xFF) << 8 | scanline[b + 2] & 0xFF;
+					} else if (a != 0) {
+						pixels[i] = a << 24
+								| premultiply(scanline[b] & 0xFF, a) << 16
+								| premultiply(scanline[b + 1] & 0xFF, a) << 8
+								| premultiply(scanline[b + 2] & 0xFF, a);
+					} else {
+						pixels[i] = 0;
+					}
+				}
+			}
+			return pixels;
+		} catch (PngjException ex) {
+			throw new IOException(ex);
+		} finally {
+			png.close();
+		}
+	}
+
+	// a valid premultiplied raw image can't start with the png signature, because the second pixel would have a color
+	// component larger than its alpha
+	private static boolean isPNG(byte[] data) {
+		if (data.length < PNG_SIGNATURE.length) {
+			return false;
+		}
+		for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+			if (data[i] != PNG_SIGNATURE[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int premultiply(int c, int a) {
+		return (c * a + 127) / 255;
+	}
+
+	private static int unpremultiply(int c, int a) {
+		return Math.min(255, (c * 255 + a / 2) / a);
+	}
+
+	// reads an image and returns its pixels as premultiplied ARGB
+	public static int[] readImageData(InputStream is) throws IOException {
+		BufferedImage image = ImageIO.read(is);
+		if (image == null) {
+			throw new IOException("unsupported image format");
+		}
+		int width = image.getWidth();
+		int height = image.getHeight();
+		BufferedImage pre = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D graphics = pre.createGraphics();
+		graphics.drawImage(image, 0, 0, null);
+		graphics.dispose();
+		return (int[]) pre.getRaster().getDataElements(0, 0, width, height, null);
+	}
+
+	public static int[] readImageData(File file) throws IOException {
+		try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+			return readImageData(is);
 		}
-		return image;
 	}
 
 	public static float getHue(int color) {
@@ -89,23 +269,6 @@ public final class ImageHelper {
 		return hue / 360f;
 	}
 
-	private static Image empty;
-
-	public static void reloadEmpty() {
-		WritableImage wImage = new WritableImage(Tile.SIZE, Tile.SIZE);
-		PixelWriter pWriter = wImage.getPixelWriter();
-		for (int x = 0; x < Tile.SIZE; x++) {
-			for (int y = 0; y < Tile.SIZE; y++) {
-				pWriter.setColor(x, y, Tile.EMPTY_COLOR.makeJavaFXColor());
-			}
-		}
-		empty = wImage;
-	}
-
-	public static Image getEmptyTileImage() {
-		return empty;
-	}
-
 	public static void saveImageData(int[] data, int width, int height, File file, Progress progressChannel) throws IOException {
 		progressChannel.setMax(height);
 		progressChannel.updateProgress("", 0);
@@ -8,9 +8,12 @@ import net.querz.mcaselector.io.job.ProcessDataJob;
 import net.querz.mcaselector.io.job.SaveDataJob;
 import net.querz.mcaselector.validation.ShutdownHooks;
 
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
@@ -26,9 +29,13 @@ public final class MCAFilePipe {
 	// saving the cache files may take relatively long, so we do this separately but still single threaded because it's a hdd access
 	private static ThreadPoolExecutor saveDataExecutor;
 
-	// a separate thread pool to parse data independently from the other thread pools
+	// a separate thread pool to parse data independently from the other thread pools.
+	// queued jobs with the lowest priority value run first.
 	private static ThreadPoolExecutor dataParsingExecutor;
 
+	// when more parse jobs are queued, the job with the highest priority value is dropped
+	private static final int MAX_QUEUED_PARSE_JOBS = 256;
+
 	private static final Queue<LoadDataJob> waitingForLoad = new LinkedBlockingQueue<>();
 
 	static {
@@ -70,10 +77,10 @@ public final class MCAFilePipe {
 				new LinkedBlockingQueue<>());
 		Debug.dumpf("created data save ThreadPoolExecutor with %d threads", Config.getWriteThreads());
 		dataParsingExecutor = new ThreadPoolExecutor(
-				1, 1,
+				Config.getParseThreads(), Config.getParseThreads(),
 				0L, TimeUnit.MILLISECONDS,
-				new LinkedBlockingQueue<>());
-		Debug.dumpf("created data parser ThreadPoolExecutor with %d threads", 1);
+				new PriorityBlockingQueue<>(MAX_QUEUED_PARSE_JOBS, Comparator.comparing(r -> (ParseDataJob) r)));
+		Debug.dumpf("created data parser ThreadPoolExecutor with %d threads", Config.getParseThreads());
 	}
 
 	public static void refillDataLoadExecutorQueue() {
@@ -111,7 +118,26 @@ public final class MCAFilePipe {
 	}
 
 	public static void executeParseData(ParseDataJob job) {
-		dataParsingExecutor.execute(job);
+		BlockingQueue<Runnable> queue = dataParsingExecutor.getQueue();
+		synchronized (queue) {
+			if (queue.size() >= MAX_QUEUED_PARSE_JOBS) {
+				ParseDataJob last = null;
+				for (Runnable r : queue) {
+					if (last == null || ((ParseDataJob) r).compareTo(last) > 0) {
+						last = (ParseDataJob) r;
+					}
+				}
+				if (last == null || job.compareTo(last) > 0) {
+					Debug.dumpf("parser queue is full, dropping ParseDataJob for %s", job.getRegionDirectories().getLocationAsFileName());
+					job.cancel();
+					return;
+				}
+				queue.remove(last);
+				last.cancel();
+				Debug.dumpf("parser queue is full, dropping ParseDataJob for %s", last.getRegionDirectories().getLocationAsFileName());
+			}
+			dataParsingExecutor.execute(job);
+		}
 	}
 
 	public static void validateJobs(Predicate<LoadDataJob> p) {
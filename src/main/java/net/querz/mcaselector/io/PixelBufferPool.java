@@ -0,0 +1,32 @@
+package net.querz.mcaselector.io;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+// keeps pixel arrays of decoded images for reuse, so decoding many cached images doesn't allocate a new array for each one.
+// arrays are pooled by length, which only takes one of a few values because all cached images are square regions.
+public final class PixelBufferPool {
+
+	// per length, an array of a zoom level 1 image takes up 1 MiB
+	private static final int MAX_BUFFERS = 8;
+
+	private static final Map<Integer, Queue<int[]>> buffers = new ConcurrentHashMap<>();
+
+	private PixelBufferPool() {}
+
+	// returns an array of the given length with undefined content
+	public static int[] take(int length) {
+		Queue<int[]> queue = buffers.get(length);
+		int[] buffer = queue == null ? null : queue.poll();
+		return buffer == null ? new int[length] : buffer;
+	}
+
+	// the array must not be used anymore after releasing it
+	public static void release(int[] buffer) {
+		if (buffer != null) {
+			buffers.computeIfAbsent(buffer.length, k -> new ArrayBlockingQueue<>(MAX_BUFFERS)).offer(buffer);
+		}
+	}
+}
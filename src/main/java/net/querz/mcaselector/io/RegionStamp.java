@@ -0,0 +1,71 @@
+package net.querz.mcaselector.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+// identifies the version of a region file that cached data was created from by its modification time and length.
+// the header of the file is not compared: MCA Selector saves chunks with their old timestamps in the same layout,
+// so a file can change without changing its header.
+public final class RegionStamp {
+
+	private static final int VERSION = 2;
+
+	private final long lastModified;
+	private final long length;
+
+	public RegionStamp(long lastModified, long length) {
+		this.lastModified = lastModified;
+		this.length = length;
+	}
+
+	// returns null if the file doesn't exist
+	public static RegionStamp of(File file) {
+		long lastModified = file.lastModified();
+		if (lastModified == 0) {
+			return null;
+		}
+		return new RegionStamp(lastModified, file.length());
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	// whether the file described by current is the same as the one this stamp was created from
+	public boolean matches(RegionStamp current) {
+		return current != null && length == current.length && lastModified == current.lastModified;
+	}
+
+	// returns null if the data was written by a different version
+	public static RegionStamp read(byte[] data) throws IOException {
+		try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data))) {
+			if (dis.readByte() != VERSION) {
+				return null;
+			}
+			return new RegionStamp(dis.readLong(), dis.readLong());
+		}
+	}
+
+	public byte[] write() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(17);
+		try (DataOutputStream dos = new DataOutputStream(baos)) {
+			dos.writeByte(VERSION);
+			dos.writeLong(lastModified);
+			dos.writeLong(length);
+		}
+		return baos.toByteArray();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("<%d, %d>", lastModified, length);
+	}
+}
@@ -0,0 +1,87 @@
+package net.querz.mcaselector.io;
+
+import net.querz.mcaselector.Config;
+import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.io.db.PackedTileCacheStore;
+import net.querz.mcaselector.point.Point2i;
+import net.querz.mcaselector.validation.ShutdownHooks;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// stores the cached images and edges of the regions of a world. every entry is identified by a region and a layer,
+// which is either a zoom level, EDGES, STAMP or the layer of super tiles of a zoom level, which are identified by
+// the location of the super tile instead of a region. all methods can be called from multiple threads at once.
+public abstract class TileCacheStore {
+
+	public static final int EDGES = 0;
+	// the RegionStamp of the region file all cached images of a region were created from
+	public static final int STAMP = -1;
+	// the layers below are the super tiles of each zoom level
+	public static final int SUPER_TILES = -16;
+
+	private static final Map<File, TileCacheStore> stores = new ConcurrentHashMap<>();
+
+	static {
+		ShutdownHooks.addShutdownHook(TileCacheStore::closeAll, 100);
+	}
+
+	public enum Type {
+		// one file per region and layer in a directory per zoom level
+		FILES,
+		// all regions and layers in a single sqlite file
+		PACK
+	}
+
+	// returns the store of the cache directory, opening it if necessary
+	public static TileCacheStore get(File cacheDir) {
+		return stores.compute(cacheDir, (dir, store) -> {
+			if (store != null && store.getType() == Config.getCacheStore()) {
+				return store;
+			}
+			if (store != null) {
+				store.close();
+			}
+			Debug.dumpf("opening %s tile cache store in %s", Config.getCacheStore(), dir);
+			return Config.getCacheStore() == Type.PACK ? new PackedTileCacheStore(dir) : new FileTileCacheStore(dir);
+		});
+	}
+
+	public static void closeAll() {
+		stores.values().forEach(TileCacheStore::close);
+		stores.clear();
+	}
+
+	public abstract Type getType();
+
+	public static int getSuperTileLayer(int zoomLevel) {
+		return SUPER_TILES - zoomLevel;
+	}
+
+	// returns the time the entry was last written in milliseconds, or 0 if it doesn't exist
+	public abstract long lastModified(int layer, Point2i region);
+
+	public boolean exists(int layer, Point2i region) {
+		return lastModified(layer, region) != 0;
+	}
+
+	// returns null if the entry doesn't exist
+	public abstract byte[] read(int layer, Point2i region) throws IOException;
+
+	public abstract void write(int layer, Point2i region, byte[] data) throws IOException;
+
+	public abstract void delete(int layer, Point2i region);
+
+	// deletes all layers of a region
+	public abstract void delete(Point2i region);
+
+	// returns all regions that have at least one cached image
+	public abstract Set<Point2i> getRegions();
+
+	// deletes all entries
+	public abstract void clear();
+
+	public abstract void close();
+}
@@ -0,0 +1,146 @@
+package net.querz.mcaselector.io.db;
+
+import net.querz.mcaselector.io.mca.BlockSummary;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// encodes the block summaries of the 1024 chunks of a region. the names of all chunks are stored once in a table at the
+// start of the blob and referenced by their index, followed by the kind, the key, the amounts and the invalid names of
+// every chunk as varints.
+final class BlockSummaryCodec {
+
+	private static final byte FORMAT = 1;
+
+	// the kind of the summary of a chunk
+	private static final byte NO_CHUNK = 0;
+	private static final byte FAILED = 1;
+	private static final byte NO_SECTIONS = 2;
+	private static final byte BLOCKS = 3;
+
+	private BlockSummaryCodec() {}
+
+	// summaries that couldn't be created are null, their key is stored anyway so they are not created again
+	static byte[] encode(BlockSummary[] summaries, long[] keys) {
+		Map<String, Integer> names = new LinkedHashMap<>();
+		for (BlockSummary summary : summaries) {
+			if (summary != null) {
+				for (String name : summary.getBlocks().keySet()) {
+					names.putIfAbsent(name, names.size());
+				}
+				for (String name : summary.getInvalidBlocks()) {
+					names.putIfAbsent(name, names.size());
+				}
+			}
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+		out.write(FORMAT);
+		OverlayDataCodec.writeVarInt(out, names.size());
+		for (String name : names.keySet()) {
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			OverlayDataCodec.writeVarInt(out, bytes.length);
+			out.write(bytes, 0, bytes.length);
+		}
+
+		for (int i = 0; i < OverlayDataCodec.VALUES; i++) {
+			BlockSummary summary = summaries[i];
+			if (summary == BlockSummary.NO_CHUNK) {
+				out.write(NO_CHUNK);
+				continue;
+			}
+			out.write(summary == null ? FAILED : summary.hasSections() ? BLOCKS : NO_SECTIONS);
+			for (int b = 56; b >= 0; b -= 8) {
+				out.write((int) (keys[i] >>> b));
+			}
+			if (summary != null && summary.hasSections()) {
+				OverlayDataCodec.writeVarInt(out, summary.getBlocks().size());
+				for (Map.Entry<String, Integer> block : summary.getBlocks().entrySet()) {
+					OverlayDataCodec.writeVarInt(out, names.get(block.getKey()));
+					OverlayDataCodec.writeVarInt(out, block.getValue());
+				}
+				OverlayDataCodec.writeVarInt(out, summary.getInvalidBlocks().size());
+				for (String name : summary.getInvalidBlocks()) {
+					OverlayDataCodec.writeVarInt(out, names.get(name));
+				}
+			}
+		}
+		return out.toByteArray();
+	}
+
+	// fills the summaries and keys of all chunks, chunks without a summary are null
+	static void decode(byte[] blob, BlockSummary[] summaries, long[] keys) throws IOException {
+		if (blob.length == 0 || blob[0] != FORMAT) {
+			throw new IOException("unknown block summary format");
+		}
+		int[] pos = {1};
+		int nameCount = OverlayDataCodec.readVarInt(blob, pos);
+		List<String> names = new ArrayList<>(nameCount);
+		for (int i = 0; i < nameCount; i++) {
+			int length = OverlayDataCodec.readVarInt(blob, pos);
+			checkLength(blob, pos[0] + length);
+			names.add(new String(blob, pos[0], length, StandardCharsets.UTF_8));
+			pos[0] += length;
+		}
+
+		for (int i = 0; i < OverlayDataCodec.VALUES; i++) {
+			checkLength(blob, pos[0] + 1);
+			byte kind = blob[pos[0]++];
+			if (kind == NO_CHUNK) {
+				summaries[i] = BlockSummary.NO_CHUNK;
+				continue;
+			}
+			checkLength(blob, pos[0] + 8);
+			long key = 0;
+			for (int b = 0; b < 8; b++) {
+				key = key << 8 | blob[pos[0]++] & 0xFF;
+			}
+			keys[i] = key;
+			switch (kind) {
+				case FAILED:
+					summaries[i] = null;
+					break;
+				case NO_SECTIONS:
+					summaries[i] = new BlockSummary(null);
+					break;
+				case BLOCKS:
+					int size = OverlayDataCodec.readVarInt(blob, pos);
+					Map<String, Integer> blocks = new HashMap<>(size * 2);
+					for (int b = 0; b < size; b++) {
+						blocks.put(readName(blob, pos, names), OverlayDataCodec.readVarInt(blob, pos));
+					}
+					int invalidSize = OverlayDataCodec.readVarInt(blob, pos);
+					Set<String> invalid = invalidSize == 0 ? Collections.emptySet() : new HashSet<>(invalidSize * 2);
+					for (int b = 0; b < invalidSize; b++) {
+						invalid.add(readName(blob, pos, names));
+					}
+					summaries[i] = new BlockSummary(blocks, invalid);
+					break;
+				default:
+					throw new IOException("unknown block summary kind " + kind + " at index " + i);
+			}
+		}
+	}
+
+	private static String readName(byte[] blob, int[] pos, List<String> names) throws IOException {
+		int name = OverlayDataCodec.readVarInt(blob, pos);
+		if (name < 0 || name >= names.size()) {
+			throw new IOException("invalid block name index " + name);
+		}
+		return names.get(name);
+	}
+
+	private static void checkLength(byte[] blob, int length) throws IOException {
+		if (length > blob.length || length < 0) {
+			throw new IOException("unexpected end of block summaries");
+		}
+	}
+}
@@ -1,13 +1,11 @@
 package net.querz.mcaselector.io.db;
 
 import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.io.FileHelper;
+import net.querz.mcaselector.io.RegionStamp;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.tiles.overlay.OverlayParser;
 import net.querz.mcaselector.validation.ShutdownHooks;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
@@ -16,17 +14,50 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+// stores the parsed overlay data of regions in one table per overlay. writes are collected for a short time and
+// written in a single transaction, reads see data that is not written yet. reads and writes use their own connection,
+// so reads are not blocked by writes.
 public final class CacheDBController {
 
-	private Connection connection;
+	// milliseconds writes are collected before they are written
+	private static final long FLUSH_DELAY = 200;
+	// the number of regions read with a single query, below the maximum number of parameters of sqlite
+	private static final int MAX_BULK_READ = 500;
+
+	// writeLock guards the writer, readLock the reader. both are held to open or close the connections, always in this order.
+	private final Object writeLock = new Object();
+	private final Object readLock = new Object();
+
+	private Connection writer, reader;
 	private String dbPath;
 	private ShutdownHooks.ShutdownJob closeShutdownHook;
-	private List<String> allTables;
+	private volatile List<String> allTables = new ArrayList<>();
+
+	// prepared statements per table
+	private final Map<String, PreparedStatement> readStatements = new HashMap<>();
+	private final Map<String, PreparedStatement> writeStatements = new HashMap<>();
+	private final Map<String, PreparedStatement> deleteStatements = new HashMap<>();
+
+	// data that is waiting to be written
+	private final Map<PendingKey, PendingWrite> pending = new ConcurrentHashMap<>();
+	private final ScheduledThreadPoolExecutor flusher = new ScheduledThreadPoolExecutor(1);
+	private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
 
 	static {
 		try {
@@ -49,53 +80,165 @@ public final class CacheDBController {
 			dbFile.getParentFile().mkdirs();
 		}
 
-		try {
-			connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
-		} catch (SQLException ex) {
-			Debug.dumpException("failed to open cache db", ex);
-			Debug.dump("attempting to create new cache db");
+		synchronized (writeLock) {
+			synchronized (readLock) {
+				try {
+					openConnections(dbPath);
+				} catch (SQLException ex) {
+					Debug.dumpException("failed to open cache db", ex);
+					Debug.dump("attempting to create new cache db");
+					closeConnections();
 
-			if (new File(dbPath).delete()) {
-				Debug.dump("successfully deleted corrupted cache db");
-				connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
-			} else {
-				Debug.dump("failed to delete corrupted cache db");
-				throw new SQLException("failed to delete corrupted cache db");
+					if (deleteFiles(dbFile)) {
+						Debug.dump("successfully deleted corrupted cache db");
+						openConnections(dbPath);
+					} else {
+						Debug.dump("failed to delete corrupted cache db");
+						throw new SQLException("failed to delete corrupted cache db");
+					}
+				}
+				this.dbPath = dbPath;
 			}
 		}
-
-		this.dbPath = dbPath;
 		addCloseShutdownHook();
 
 		initTables(parsers);
 	}
 
+	private void openConnections(String dbPath) throws SQLException {
+		writer = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+		try (Statement statement = writer.createStatement()) {
+			statement.execute("PRAGMA journal_mode=WAL;");
+			statement.execute("PRAGMA synchronous=NORMAL;");
+		}
+		reader = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+	}
+
+	private void closeConnections() {
+		closeStatements(readStatements);
+		closeStatements(writeStatements);
+		closeStatements(deleteStatements);
+		try {
+			if (reader != null) {
+				reader.close();
+			}
+			if (writer != null) {
+				writer.close();
+			}
+		} catch (SQLException ex) {
+			Debug.dumpException("failed to close cache db connection", ex);
+		}
+		reader = writer = null;
+	}
+
+	private static void closeStatements(Map<String, PreparedStatement> statements) {
+		for (PreparedStatement statement : statements.values()) {
+			try {
+				statement.close();
+			} catch (SQLException ex) {
+				Debug.dumpException("failed to close statement", ex);
+			}
+		}
+		statements.clear();
+	}
+
+	private static boolean deleteFiles(File dbFile) {
+		boolean deleted = !dbFile.exists() || dbFile.delete();
+		for (String suffix : new String[]{"-wal", "-shm"}) {
+			File file = new File(dbFile.getPath() + suffix);
+			if (file.exists() && !file.delete()) {
+				Debug.errorf("failed to delete %s", file);
+			}
+		}
+		return deleted;
+	}
+
+	// every row stores the modification time (m) and length (n) of the region file it was parsed from,
+	// and the smallest value (lo), largest value (hi), sum (s) and number (k) of the values of all existing chunks
 	public void initTables(List<OverlayParser> parsers) throws SQLException {
-		Statement statement = connection.createStatement();
-		for (OverlayParser parser : parsers) {
+		synchronized (writeLock) {
+			if (writer == null) {
+				return;
+			}
+			try (Statement statement = writer.createStatement()) {
+				for (OverlayParser parser : parsers) {
+					createTable(statement, getTable(parser));
+				}
+
+				List<String> tables = new ArrayList<>();
+				try (ResultSet result = statement.executeQuery("SELECT name FROM sqlite_master WHERE type='table';")) {
+					while (result.next()) {
+						tables.add(result.getString(1));
+					}
+				}
+				allTables = tables;
+			}
+		}
+	}
+
+	private static void createTable(Statement statement, String table) throws SQLException {
+		Set<String> columns = getColumns(statement, table);
+		if (!columns.isEmpty() && (!columns.contains("m") || !columns.contains("k"))) {
+			// tables of older versions can't be validated, and their data stores missing chunks as 0,
+			// so the data is parsed again instead of summarizing it
+			statement.executeUpdate(String.format("DROP TABLE IF EXISTS %s;", table));
+			columns.clear();
+		}
+		if (columns.isEmpty()) {
 			statement.executeUpdate(String.format(
-					"CREATE TABLE IF NOT EXISTS %s%s (" +
+					"CREATE TABLE IF NOT EXISTS %s (" +
 							"p BIGINT PRIMARY KEY, " +
-							"d BLOB);", parser.name(), parser.getMultiValuesID()));
+							"d BLOB, " +
+							"m BIGINT, " +
+							"n BIGINT, " +
+							"lo INTEGER, " +
+							"hi INTEGER, " +
+							"s BIGINT, " +
+							"k INTEGER);", table));
+		}
+	}
+
+	// creates the tables of overlays that data was parsed for without being shown and returns all tables.
+	// the tables are created in the current transaction, so they only exist once it is committed.
+	private List<String> createMissingTables(Collection<PendingKey> keys) throws SQLException {
+		List<String> tables = new ArrayList<>(allTables);
+		for (PendingKey key : keys) {
+			if (!tables.contains(key.table)) {
+				try (Statement statement = writer.createStatement()) {
+					createTable(statement, key.table);
+				}
+				tables.add(key.table);
+			}
 		}
+		return tables;
+	}
 
-		allTables = new ArrayList<>();
-		ResultSet result = statement.executeQuery("SELECT name FROM sqlite_master WHERE type='table';");
-		while (result.next()) {
-			allTables.add(result.getString(1));
+	private static String getTable(OverlayParser parser) {
+		return parser.name() + parser.getMultiValuesID();
+	}
+
+	// returns an empty set if the table doesn't exist
+	private static Set<String> getColumns(Statement statement, String table) throws SQLException {
+		Set<String> columns = new HashSet<>();
+		try (ResultSet result = statement.executeQuery(String.format("PRAGMA table_info(%s);", table))) {
+			while (result.next()) {
+				columns.add(result.getString("name"));
+			}
 		}
+		return columns;
 	}
 
+	// writes pending data before closing
 	public void close() throws SQLException {
-		if (connection != null && !connection.isClosed()) {
-			connection.close();
-			if (connection.isClosed()) {
-				Debug.dump("cache db connection closed");
-			} else {
-				Debug.dump("failed to close cache db connection");
+		flush();
+		synchronized (writeLock) {
+			synchronized (readLock) {
+				if (writer != null) {
+					closeConnections();
+					Debug.dump("cache db connection closed");
+				}
+				dbPath = null;
 			}
-			dbPath = null;
-			connection = null;
 		}
 	}
 
@@ -122,53 +265,270 @@ public final class CacheDBController {
 		}
 	}
 
-	public int[] getData(OverlayParser parser, Point2i region) throws IOException, SQLException {
-		Statement statement = connection.createStatement();
-		ResultSet result = statement.executeQuery(String.format(
-				"SELECT d FROM %s%s WHERE p=%s;", parser.name(), parser.getMultiValuesID(), region.asLong()));
-		if (!result.next()) {
-			return null;
+	// returns null if there is no data or if it was parsed from a different version of the region file than current.
+	// current is null if the region file doesn't exist.
+	public int[] getData(OverlayParser parser, Point2i region, RegionStamp current) throws IOException, SQLException {
+		String table = getTable(parser);
+		PendingWrite write = pending.get(new PendingKey(table, region));
+		if (write != null) {
+			return isUpToDate(write.stamp, current, parser, region) ? OverlayDataCodec.decode(write.data) : null;
 		}
-		int[] data = new int[1024];
-		try (DataInputStream dis = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(result.getBytes(1))))) {
-			for (int i = 0; i < 1024; i++) {
-				data[i] = dis.readInt();
+
+		synchronized (readLock) {
+			if (reader == null) {
+				return null;
+			}
+			PreparedStatement ps = getStatement(readStatements, reader, table, "SELECT d, m, n FROM %s WHERE p=?;");
+			ps.setLong(1, region.asLong());
+			try (ResultSet result = ps.executeQuery()) {
+				if (!result.next()) {
+					return null;
+				}
+				if (!isUpToDate(readStamp(result), current, parser, region)) {
+					return null;
+				}
+				return OverlayDataCodec.decode(result.getBytes(1));
+			}
+		}
+	}
+
+	// returns the data of all regions that is up to date with their region files. regions without data are missing in the result.
+	public Map<Point2i, int[]> getData(OverlayParser parser, Collection<Point2i> regions) throws IOException, SQLException {
+		String table = getTable(parser);
+		Map<Point2i, int[]> data = new HashMap<>();
+		Map<Long, Point2i> missing = new HashMap<>();
+		for (Point2i region : regions) {
+			PendingWrite write = pending.get(new PendingKey(table, region));
+			if (write == null) {
+				missing.put(region.asLong(), region);
+			} else if (isUpToDate(write.stamp, RegionStamp.of(FileHelper.createRegionMCAFilePath(region)), parser, region)) {
+				data.put(region, OverlayDataCodec.decode(write.data));
+			}
+		}
+
+		List<Long> keys = new ArrayList<>(missing.keySet());
+		for (int from = 0; from < keys.size(); from += MAX_BULK_READ) {
+			List<Long> batch = keys.subList(from, Math.min(keys.size(), from + MAX_BULK_READ));
+			StringBuilder sql = new StringBuilder("SELECT p, d, m, n FROM ").append(table).append(" WHERE p IN (");
+			for (int i = 0; i < batch.size(); i++) {
+				sql.append(i == 0 ? "?" : ", ?");
+			}
+			sql.append(");");
+
+			synchronized (readLock) {
+				if (reader == null) {
+					return data;
+				}
+				try (PreparedStatement ps = reader.prepareStatement(sql.toString())) {
+					for (int i = 0; i < batch.size(); i++) {
+						ps.setLong(i + 1, batch.get(i));
+					}
+					try (ResultSet result = ps.executeQuery()) {
+						while (result.next()) {
+							Point2i region = missing.get(result.getLong(1));
+							RegionStamp stamp = result.getObject(3) == null ? null
+									: new RegionStamp(result.getLong(3), result.getLong(4));
+							if (isUpToDate(stamp, RegionStamp.of(FileHelper.createRegionMCAFilePath(region)), parser, region)) {
+								data.put(region, OverlayDataCodec.decode(result.getBytes(2)));
+							}
+						}
+					}
+				}
 			}
 		}
 		return data;
 	}
 
-	public void setData(OverlayParser parser, Point2i region, int[] data) throws IOException, SQLException {
-		PreparedStatement ps = connection.prepareStatement(String.format(
-				"INSERT INTO %s%s (p, d) " +
-						"VALUES (?, ?) " +
-						"ON CONFLICT(p) DO UPDATE " +
-						"SET d=?;", parser.name(), parser.getMultiValuesID()));
-		ps.setLong(1, region.asLong());
-		ByteArrayOutputStream baos;
-		try (DataOutputStream dos = new DataOutputStream(new GZIPOutputStream(baos = new ByteArrayOutputStream()))) {
-			for (int i = 0; i < 1024; i++) {
-				dos.writeInt(data[i]);
+	private static RegionStamp readStamp(ResultSet result) throws SQLException {
+		long lastModified = result.getLong(2);
+		return result.wasNull() ? null : new RegionStamp(lastModified, result.getLong(3));
+	}
+
+	private static boolean isUpToDate(RegionStamp stamp, RegionStamp current, OverlayParser parser, Point2i region) {
+		if (stamp == null ? current != null : !stamp.matches(current)) {
+			Debug.dumpf("cached %s data of %s is outdated", parser.name(), region);
+			return false;
+		}
+		return true;
+	}
+
+	private static PreparedStatement getStatement(Map<String, PreparedStatement> statements, Connection connection, String table, String sql) throws SQLException {
+		PreparedStatement statement = statements.get(table);
+		if (statement == null) {
+			statement = connection.prepareStatement(String.format(sql, table));
+			statements.put(table, statement);
+		}
+		return statement;
+	}
+
+	// the data is written with the next flush, which happens at most FLUSH_DELAY milliseconds later
+	public void setData(OverlayParser parser, Point2i region, int[] data, RegionStamp stamp) {
+		pending.put(new PendingKey(getTable(parser), region), new PendingWrite(OverlayDataCodec.encode(data), new Summary(data), stamp));
+		if (flushScheduled.compareAndSet(false, true)) {
+			flusher.schedule(this::flushScheduled, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void flushScheduled() {
+		flushScheduled.set(false);
+		try {
+			flush();
+		} catch (SQLException ex) {
+			Debug.dumpException("failed to write cached overlay data", ex);
+		}
+	}
+
+	// writes all pending data in a single transaction
+	public void flush() throws SQLException {
+		synchronized (writeLock) {
+			if (pending.isEmpty() || writer == null) {
+				return;
+			}
+			Map<PendingKey, PendingWrite> writes = new HashMap<>(pending);
+			Map<String, PreparedStatement> batches = new HashMap<>();
+			writer.setAutoCommit(false);
+			try {
+				List<String> tables = createMissingTables(writes.keySet());
+				for (Map.Entry<PendingKey, PendingWrite> entry : writes.entrySet()) {
+					PreparedStatement ps = getStatement(writeStatements, writer, entry.getKey().table,
+							"INSERT INTO %s (p, d, m, n, lo, hi, s, k) " +
+									"VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+									"ON CONFLICT(p) DO UPDATE " +
+									"SET d=excluded.d, m=excluded.m, n=excluded.n, " +
+									"lo=excluded.lo, hi=excluded.hi, s=excluded.s, k=excluded.k;");
+					PendingWrite write = entry.getValue();
+					ps.setLong(1, entry.getKey().region.asLong());
+					ps.setBytes(2, write.data);
+					if (write.stamp != null) {
+						ps.setLong(3, write.stamp.getLastModified());
+						ps.setLong(4, write.stamp.getLength());
+					} else {
+						ps.setNull(3, Types.BIGINT);
+						ps.setNull(4, Types.BIGINT);
+					}
+					setSummary(ps, 5, write.summary);
+					ps.addBatch();
+					batches.put(entry.getKey().table, ps);
+				}
+				for (PreparedStatement ps : batches.values()) {
+					ps.executeBatch();
+				}
+				writer.commit();
+				allTables = tables;
+			} catch (SQLException ex) {
+				writer.rollback();
+				// the data can be parsed again, keeping it would fail again
+				writes.forEach(pending::remove);
+				throw ex;
+			} finally {
+				writer.setAutoCommit(true);
+			}
+			// data that was replaced while writing is written with the next flush
+			writes.forEach(pending::remove);
+			Debug.dumpf("wrote overlay data of %d regions to cache db", writes.size());
+		}
+	}
+
+	private static void setSummary(PreparedStatement ps, int index, Summary summary) throws SQLException {
+		ps.setInt(index, summary.min);
+		ps.setInt(index + 1, summary.max);
+		ps.setLong(index + 2, summary.sum);
+		ps.setInt(index + 3, summary.count);
+	}
+
+	// returns statistics of all existing chunks in the cache, whether their region files changed since or not.
+	// count, min, max and mean are taken from the summaries of the regions, only the histogram decodes the data.
+	public OverlayStatistics getStatistics(OverlayParser parser, int buckets) throws IOException, SQLException {
+		flush();
+		String table = getTable(parser);
+		synchronized (readLock) {
+			if (reader == null || !allTables.contains(table)) {
+				return null;
+			}
+			int regions, min, max;
+			long chunks, sum;
+			try (Statement statement = reader.createStatement();
+					ResultSet result = statement.executeQuery(String.format("SELECT COUNT(*), SUM(k), MIN(lo), MAX(hi), SUM(s) FROM %s WHERE k > 0;", table))) {
+				result.next();
+				regions = result.getInt(1);
+				chunks = result.getLong(2);
+				min = result.getInt(3);
+				max = result.getInt(4);
+				sum = result.getLong(5);
+			}
+
+			long[] histogram = new long[buckets];
+			int percentileBuckets = OverlayStatistics.getPercentileBuckets(min, max);
+			long[] distribution = new long[percentileBuckets];
+			if (regions > 0) {
+				try (Statement statement = reader.createStatement();
+						ResultSet result = statement.executeQuery(String.format("SELECT d FROM %s WHERE k > 0;", table))) {
+					while (result.next()) {
+						for (int value : OverlayDataCodec.decode(result.getBytes(1))) {
+							if (value != OverlayParser.NO_CHUNK) {
+								histogram[OverlayStatistics.getBucket(value, min, max, buckets)]++;
+								distribution[OverlayStatistics.getBucket(value, min, max, percentileBuckets)]++;
+							}
+						}
+					}
+				}
+			}
+			return new OverlayStatistics(regions, chunks, min, max, sum, histogram, distribution);
+		}
+	}
+
+	// returns the chunks with the largest values in the cache, the largest first.
+	// regions are read in the order of their largest value until no other region can contain a larger value.
+	public List<OverlayStatistics.ChunkValue> getTopChunks(OverlayParser parser, int limit) throws IOException, SQLException {
+		flush();
+		String table = getTable(parser);
+		PriorityQueue<OverlayStatistics.ChunkValue> top = new PriorityQueue<>(limit + 1, Comparator.comparingInt(OverlayStatistics.ChunkValue::getValue));
+		synchronized (readLock) {
+			if (reader == null || limit <= 0 || !allTables.contains(table)) {
+				return new ArrayList<>();
+			}
+			try (Statement statement = reader.createStatement();
+					ResultSet result = statement.executeQuery(String.format("SELECT p, d, hi FROM %s WHERE k > 0 ORDER BY hi DESC;", table))) {
+				while (result.next()) {
+					if (top.size() == limit && result.getInt(3) <= top.peek().getValue()) {
+						break;
+					}
+					Point2i chunk = new Point2i(result.getLong(1)).regionToChunk();
+					int[] data = OverlayDataCodec.decode(result.getBytes(2));
+					for (int i = 0; i < data.length; i++) {
+						if (data[i] == OverlayParser.NO_CHUNK || top.size() == limit && data[i] <= top.peek().getValue()) {
+							continue;
+						}
+						top.offer(new OverlayStatistics.ChunkValue(chunk.add(i % 32, i / 32), data[i]));
+						if (top.size() > limit) {
+							top.poll();
+						}
+					}
+				}
 			}
 		}
-		byte[] gzipped = baos.toByteArray();
-		ps.setBytes(2, gzipped);
-		ps.setBytes(3, gzipped);
-		ps.addBatch();
-		ps.executeBatch();
+		List<OverlayStatistics.ChunkValue> values = new ArrayList<>(top);
+		values.sort(Comparator.comparingInt(OverlayStatistics.ChunkValue::getValue).reversed());
+		return values;
 	}
 
 	public void deleteData(OverlayParser parser, Point2i region) throws SQLException {
-		PreparedStatement ps = connection.prepareStatement(String.format(
-				"DELETE FROM %s%s WHERE p=?;", parser.name(), parser.getMultiValuesID()));
-		ps.setLong(1, region.asLong());
-		ps.execute();
+		deleteData(getTable(parser), region);
 	}
 
 	public void deleteData(Point2i region) throws SQLException {
 		for (String table : allTables) {
-			PreparedStatement ps = connection.prepareStatement(String.format(
-					"DELETE FROM %s WHERE p=?;", table));
+			deleteData(table, region);
+		}
+	}
+
+	private void deleteData(String table, Point2i region) throws SQLException {
+		synchronized (writeLock) {
+			pending.remove(new PendingKey(table, region));
+			if (writer == null) {
+				return;
+			}
+			PreparedStatement ps = getStatement(deleteStatements, writer, table, "DELETE FROM %s WHERE p=?;");
 			ps.setLong(1, region.asLong());
 			ps.execute();
 		}
@@ -179,12 +539,69 @@ public final class CacheDBController {
 			return;
 		}
 		File dbFile = new File(this.dbPath);
+		pending.clear();
 		close();
-		if (dbFile.delete()) {
+		if (deleteFiles(dbFile)) {
 			Debug.dumpf("deleted cache db %s", dbFile);
 		} else {
 			throw new IOException(String.format("failed to delete cache db %s", dbFile.getCanonicalPath()));
 		}
 		switchTo(dbFile.getPath(), parsers);
 	}
+
+	private static final class PendingKey {
+
+		private final String table;
+		private final Point2i region;
+
+		private PendingKey(String table, Point2i region) {
+			this.table = table;
+			this.region = region;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof PendingKey)) {
+				return false;
+			}
+			PendingKey k = (PendingKey) o;
+			return table.equals(k.table) && region.equals(k.region);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(table, region);
+		}
+	}
+
+	private static final class PendingWrite {
+
+		private final byte[] data;
+		private final Summary summary;
+		private final RegionStamp stamp;
+
+		private PendingWrite(byte[] data, Summary summary, RegionStamp stamp) {
+			this.data = data;
+			this.summary = summary;
+			this.stamp = stamp;
+		}
+	}
+
+	// the smallest and largest value, sum and number of values of the existing chunks of a region
+	private static final class Summary {
+
+		private int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE, count;
+		private long sum;
+
+		private Summary(int[] data) {
+			for (int value : data) {
+				if (value != OverlayParser.NO_CHUNK) {
+					min = Math.min(min, value);
+					max = Math.max(max, value);
+					sum += value;
+					count++;
+				}
+			}
+		}
+	}
 }
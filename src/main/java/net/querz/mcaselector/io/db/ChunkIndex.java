@@ -0,0 +1,654 @@
+package net.querz.mcaselector.io.db;
+
+import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.filter.IndexField;
+import net.querz.mcaselector.filter.RegionContents;
+import net.querz.mcaselector.io.RegionDirectories;
+import net.querz.mcaselector.io.RegionStamp;
+import net.querz.mcaselector.io.mca.BlockSummary;
+import net.querz.mcaselector.io.mca.ChunkData;
+import net.querz.mcaselector.io.mca.Region;
+import net.querz.mcaselector.io.mca.RegionMCAFile;
+import net.querz.mcaselector.point.Point2i;
+import net.querz.mcaselector.progress.Timer;
+import net.querz.mcaselector.validation.ShutdownHooks;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// stores the values of every chunk of a world that filters compare, so filters can be evaluated without loading the
+// region files. every field is stored in its own table as a column of the 1024 values of a region, so a query only reads
+// the fields its filter compares. the regions table stores which chunks exist and the region and entities files the
+// values were read from. the blocks table stores the block summaries of the chunks of a region, which are only created
+// when they are needed, and the region file they were created from. the contents table stores which block names, biomes,
+// entities and structures appear anywhere in a region, so filters can skip regions without loading their values.
+// all methods can be called from multiple threads at once.
+public final class ChunkIndex {
+
+	// the number of regions read with a single query, below the maximum number of parameters of sqlite
+	private static final int MAX_BULK_READ = 500;
+
+	private static final Map<File, ChunkIndex> indexes = new ConcurrentHashMap<>();
+
+	static {
+		try {
+			Class.forName("org.sqlite.JDBC");
+		} catch (ClassNotFoundException ex) {
+			Debug.dumpException("failed to load jdbc driver", ex);
+		}
+		ShutdownHooks.addShutdownHook(ChunkIndex::closeAll, 100);
+	}
+
+	private final File dbFile;
+
+	// writeLock guards the writer, readLock the reader. both are held to open or close the connections, always in this order.
+	private final Object writeLock = new Object();
+	private final Object readLock = new Object();
+
+	private Connection writer, reader;
+	private PreparedStatement writeRegionStatement, writeBlocksStatement, writeContentsStatement, deleteRegionStatement, deleteBlocksStatement, deleteContentsStatement;
+	private final Map<IndexField, PreparedStatement> writeStatements = new EnumMap<>(IndexField.class);
+	private final Map<IndexField, PreparedStatement> deleteStatements = new EnumMap<>(IndexField.class);
+
+	private ChunkIndex(File cacheDir) {
+		dbFile = new File(cacheDir, "index.db");
+		synchronized (writeLock) {
+			synchronized (readLock) {
+				open();
+			}
+		}
+	}
+
+	// returns the index of the cache directory, opening it if necessary
+	public static ChunkIndex get(File cacheDir) {
+		return indexes.computeIfAbsent(cacheDir, ChunkIndex::new);
+	}
+
+	public static void closeAll() {
+		indexes.values().forEach(ChunkIndex::close);
+		indexes.clear();
+	}
+
+	private void open() {
+		if (!dbFile.getParentFile().exists() && !dbFile.getParentFile().mkdirs()) {
+			Debug.errorf("failed to create cache directory for %s", dbFile.getAbsolutePath());
+		}
+		try {
+			openConnections();
+		} catch (SQLException ex) {
+			Debug.dumpException("failed to open chunk index " + dbFile, ex);
+			closeConnections();
+			deleteFiles();
+			try {
+				openConnections();
+			} catch (SQLException ex2) {
+				Debug.dumpException("failed to create new chunk index " + dbFile, ex2);
+				closeConnections();
+			}
+		}
+	}
+
+	// the regions table stores the modification time (m) and length (n) of the region file and of the entities file
+	// (em, en) the values were read from, and whether a chunk exists (e). the table of a field has no row for a region
+	// if a value of the region can't be stored.
+	private void openConnections() throws SQLException {
+		writer = DriverManager.getConnection("jdbc:sqlite:" + dbFile);
+		try (Statement statement = writer.createStatement()) {
+			statement.execute("PRAGMA journal_mode=WAL;");
+			statement.execute("PRAGMA synchronous=NORMAL;");
+			statement.executeUpdate("CREATE TABLE IF NOT EXISTS regions (" +
+					"p BIGINT PRIMARY KEY, " +
+					"m BIGINT, " +
+					"n BIGINT, " +
+					"em BIGINT, " +
+					"en BIGINT, " +
+					"e BLOB);");
+			statement.executeUpdate("CREATE TABLE IF NOT EXISTS blocks (" +
+					"p BIGINT PRIMARY KEY, " +
+					"m BIGINT, " +
+					"n BIGINT, " +
+					"d BLOB);");
+			statement.executeUpdate("CREATE TABLE IF NOT EXISTS contents (p BIGINT PRIMARY KEY, d BLOB);");
+			for (IndexField field : IndexField.values()) {
+				statement.executeUpdate(String.format("CREATE TABLE IF NOT EXISTS %s (p BIGINT PRIMARY KEY, d BLOB);", getTable(field)));
+			}
+		}
+		writeRegionStatement = writer.prepareStatement("INSERT OR REPLACE INTO regions (p, m, n, em, en, e) VALUES (?, ?, ?, ?, ?, ?);");
+		writeBlocksStatement = writer.prepareStatement("INSERT OR REPLACE INTO blocks (p, m, n, d) VALUES (?, ?, ?, ?);");
+		writeContentsStatement = writer.prepareStatement("INSERT OR REPLACE INTO contents (p, d) VALUES (?, ?);");
+		deleteRegionStatement = writer.prepareStatement("DELETE FROM regions WHERE p=?;");
+		deleteBlocksStatement = writer.prepareStatement("DELETE FROM blocks WHERE p=?;");
+		deleteContentsStatement = writer.prepareStatement("DELETE FROM contents WHERE p=?;");
+		for (IndexField field : IndexField.values()) {
+			writeStatements.put(field, writer.prepareStatement(String.format("INSERT OR REPLACE INTO %s (p, d) VALUES (?, ?);", getTable(field))));
+			deleteStatements.put(field, writer.prepareStatement(String.format("DELETE FROM %s WHERE p=?;", getTable(field))));
+		}
+
+		reader = DriverManager.getConnection("jdbc:sqlite:" + dbFile);
+		Debug.dumpf("opened chunk index %s", dbFile);
+	}
+
+	private void closeConnections() {
+		try {
+			if (reader != null) {
+				reader.close();
+			}
+			if (writer != null) {
+				writer.close();
+			}
+		} catch (SQLException ex) {
+			Debug.dumpException("failed to close chunk index " + dbFile, ex);
+		}
+		reader = writer = null;
+		writeStatements.clear();
+		deleteStatements.clear();
+	}
+
+	private void deleteFiles() {
+		for (String suffix : new String[]{"", "-wal", "-shm"}) {
+			File file = new File(dbFile.getPath() + suffix);
+			if (file.exists() && !file.delete()) {
+				Debug.errorf("failed to delete %s", file);
+			}
+		}
+	}
+
+	private static String getTable(IndexField field) {
+		return field.name().toLowerCase(Locale.ROOT);
+	}
+
+	// returns the values of the fields of all regions that were indexed from their current files, their block summaries
+	// if blocks is true and their contents if contents is true. regions without an up to date index are missing in the result.
+	public Map<Point2i, Entry> read(RegionDirectories[] regions, Set<IndexField> fields, boolean blocks, boolean contents) throws IOException {
+		Map<Point2i, Entry> entries = new HashMap<>();
+		for (int from = 0; from < regions.length; from += MAX_BULK_READ) {
+			Map<Long, RegionDirectories> batch = new HashMap<>();
+			for (int i = from; i < Math.min(regions.length, from + MAX_BULK_READ); i++) {
+				batch.put(regions[i].getLocation().asLong(), regions[i]);
+			}
+
+			Map<Long, Entry> current = new HashMap<>();
+			try {
+				synchronized (readLock) {
+					if (reader == null) {
+						return entries;
+					}
+					try (PreparedStatement ps = prepareBulkRead("SELECT p, e, m, n, em, en FROM regions", batch.size());
+							ResultSet result = query(ps, batch.keySet())) {
+						while (result.next()) {
+							RegionDirectories dirs = batch.get(result.getLong(1));
+							if (isUpToDate(result, 3, dirs.getRegion()) && isUpToDate(result, 5, dirs.getEntities())) {
+								current.put(result.getLong(1), new Entry(OverlayDataCodec.decode(result.getBytes(2))));
+							} else {
+								Debug.dumpf("chunk index of %s is outdated", dirs.getLocation());
+							}
+						}
+					}
+
+					for (IndexField field : fields) {
+						if (current.isEmpty()) {
+							break;
+						}
+						try (PreparedStatement ps = prepareBulkRead("SELECT p, d FROM " + getTable(field), current.size());
+								ResultSet result = query(ps, current.keySet())) {
+							while (result.next()) {
+								current.get(result.getLong(1)).values.put(field, OverlayDataCodec.decode(result.getBytes(2)));
+							}
+						}
+					}
+
+					if (blocks && !current.isEmpty()) {
+						try (PreparedStatement ps = prepareBulkRead("SELECT p, d, m, n FROM blocks", current.size());
+								ResultSet result = query(ps, current.keySet())) {
+							while (result.next()) {
+								if (isUpToDate(result, 3, batch.get(result.getLong(1)).getRegion())) {
+									Entry entry = current.get(result.getLong(1));
+									entry.blocks = new BlockSummary[OverlayDataCodec.VALUES];
+									BlockSummaryCodec.decode(result.getBytes(2), entry.blocks, new long[OverlayDataCodec.VALUES]);
+								}
+							}
+						}
+					}
+
+					if (contents && !current.isEmpty()) {
+						try (PreparedStatement ps = prepareBulkRead("SELECT p, d FROM contents", current.size());
+								ResultSet result = query(ps, current.keySet())) {
+							while (result.next()) {
+								current.get(result.getLong(1)).contents = RegionContentsCodec.decode(result.getBytes(2));
+							}
+						}
+					}
+				}
+			} catch (SQLException ex) {
+				throw new IOException(ex);
+			}
+
+			for (Map.Entry<Long, Entry> entry : current.entrySet()) {
+				entries.put(batch.get(entry.getKey()).getLocation(), entry.getValue());
+			}
+		}
+		return entries;
+	}
+
+	private PreparedStatement prepareBulkRead(String select, int size) throws SQLException {
+		StringBuilder sql = new StringBuilder(select).append(" WHERE p IN (");
+		for (int i = 0; i < size; i++) {
+			sql.append(i == 0 ? "?" : ", ?");
+		}
+		return reader.prepareStatement(sql.append(");").toString());
+	}
+
+	private static ResultSet query(PreparedStatement ps, Set<Long> regions) throws SQLException {
+		int i = 1;
+		for (long region : regions) {
+			ps.setLong(i++, region);
+		}
+		return ps.executeQuery();
+	}
+
+	// returns the contents of a region if they were indexed from its current files, otherwise null
+	public RegionContents readContents(RegionDirectories dirs) {
+		synchronized (readLock) {
+			if (reader == null) {
+				return null;
+			}
+			try (PreparedStatement ps = reader.prepareStatement("SELECT c.d, r.m, r.n, r.em, r.en FROM regions r JOIN contents c ON r.p=c.p WHERE r.p=?;")) {
+				ps.setLong(1, dirs.getLocation().asLong());
+				try (ResultSet result = ps.executeQuery()) {
+					if (!result.next() || !isUpToDate(result, 2, dirs.getRegion()) || !isUpToDate(result, 4, dirs.getEntities())) {
+						return null;
+					}
+					return RegionContentsCodec.decode(result.getBytes(1));
+				}
+			} catch (SQLException | IOException ex) {
+				Debug.dumpException("failed to read region contents of " + dirs.getLocation(), ex);
+				return null;
+			}
+		}
+	}
+
+	// returns the block summaries of all chunks of a region if they were created from the region file described by the
+	// stamp, otherwise null. chunks without a summary are null.
+	public BlockSummary[] readBlocks(Point2i location, RegionStamp current) throws IOException {
+		if (current == null) {
+			return null;
+		}
+		synchronized (readLock) {
+			if (reader == null) {
+				return null;
+			}
+			try (PreparedStatement ps = reader.prepareStatement("SELECT d, m, n FROM blocks WHERE p=?;")) {
+				ps.setLong(1, location.asLong());
+				try (ResultSet result = ps.executeQuery()) {
+					if (!result.next() || !new RegionStamp(result.getLong(2), result.getLong(3)).matches(current)) {
+						return null;
+					}
+					BlockSummary[] summaries = new BlockSummary[OverlayDataCodec.VALUES];
+					BlockSummaryCodec.decode(result.getBytes(1), summaries, new long[OverlayDataCodec.VALUES]);
+					return summaries;
+				}
+			} catch (SQLException ex) {
+				throw new IOException(ex);
+			}
+		}
+	}
+
+	// creates the block summaries of all chunks of a loaded region file and stores them with the stamp of the file.
+	// summaries of chunks that didn't change since they were stored last time are taken from the index instead of
+	// decoding the blocks of the chunk again. returns the summaries, chunks without a summary are null.
+	public BlockSummary[] writeBlocks(Point2i location, RegionMCAFile region, RegionStamp stamp) {
+		Timer t = new Timer();
+		BlockSummary[] previous = null;
+		long[] previousKeys = new long[OverlayDataCodec.VALUES];
+		synchronized (readLock) {
+			if (reader != null) {
+				try (PreparedStatement ps = reader.prepareStatement("SELECT d FROM blocks WHERE p=?;")) {
+					ps.setLong(1, location.asLong());
+					try (ResultSet result = ps.executeQuery()) {
+						if (result.next()) {
+							previous = new BlockSummary[OverlayDataCodec.VALUES];
+							BlockSummaryCodec.decode(result.getBytes(1), previous, previousKeys);
+						}
+					}
+				} catch (SQLException | IOException ex) {
+					Debug.dumpException("failed to read block summaries of " + location, ex);
+					previous = null;
+				}
+			}
+		}
+
+		BlockSummary[] summaries = new BlockSummary[OverlayDataCodec.VALUES];
+		long[] keys = new long[OverlayDataCodec.VALUES];
+		int reused = 0;
+		for (int i = 0; i < OverlayDataCodec.VALUES; i++) {
+			if (region.getChunk(i) == null) {
+				summaries[i] = BlockSummary.NO_CHUNK;
+				continue;
+			}
+			keys[i] = BlockSummary.getKey(region.getTimestamp(i), region.getChunk(i));
+			if (previous != null && previous[i] != BlockSummary.NO_CHUNK && previousKeys[i] == keys[i]) {
+				summaries[i] = previous[i];
+				reused++;
+			} else {
+				summaries[i] = BlockSummary.of(region.getChunk(i));
+			}
+		}
+
+		synchronized (writeLock) {
+			if (writer != null) {
+				try {
+					writeBlocksStatement.setLong(1, location.asLong());
+					setStamp(writeBlocksStatement, 2, stamp);
+					writeBlocksStatement.setBytes(4, BlockSummaryCodec.encode(summaries, keys));
+					writeBlocksStatement.executeUpdate();
+				} catch (SQLException ex) {
+					Debug.dumpException("failed to write block summaries of " + location, ex);
+				}
+			}
+		}
+		Debug.dumpf("took %s to summarize blocks of %s, %d chunks were unchanged", t, location, reused);
+		return summaries;
+	}
+
+	// whether the values of a region were indexed from the files described by the stamps, entitiesStamp is null if
+	// there is no entities file. block summaries are not checked.
+	public boolean isIndexed(Point2i location, RegionStamp regionStamp, RegionStamp entitiesStamp) {
+		synchronized (readLock) {
+			if (reader == null) {
+				return false;
+			}
+			try (PreparedStatement ps = reader.prepareStatement("SELECT m, n, em, en FROM regions WHERE p=?;")) {
+				ps.setLong(1, location.asLong());
+				try (ResultSet result = ps.executeQuery()) {
+					return result.next() && isUpToDate(result, 1, regionStamp) && isUpToDate(result, 3, entitiesStamp);
+				}
+			} catch (SQLException ex) {
+				Debug.dumpException("failed to read chunk index of " + location, ex);
+				return false;
+			}
+		}
+	}
+
+	// whether the block summaries of a region were created from the region file described by the stamp
+	public boolean hasBlocks(Point2i location, RegionStamp stamp) {
+		synchronized (readLock) {
+			if (reader == null) {
+				return false;
+			}
+			try (PreparedStatement ps = reader.prepareStatement("SELECT m, n FROM blocks WHERE p=?;")) {
+				ps.setLong(1, location.asLong());
+				try (ResultSet result = ps.executeQuery()) {
+					return result.next() && isUpToDate(result, 1, stamp);
+				}
+			} catch (SQLException ex) {
+				Debug.dumpException("failed to read block summaries of " + location, ex);
+				return false;
+			}
+		}
+	}
+
+	// the stamp starts at column index of the result
+	private static boolean isUpToDate(ResultSet result, int index, File file) throws SQLException {
+		return isUpToDate(result, index, file == null ? null : RegionStamp.of(file));
+	}
+
+	private static boolean isUpToDate(ResultSet result, int index, RegionStamp current) throws SQLException {
+		long lastModified = result.getLong(index);
+		if (result.wasNull()) {
+			return current == null;
+		}
+		return new RegionStamp(lastModified, result.getLong(index + 1)).matches(current);
+	}
+
+	// reads the values of all chunks of a loaded region. the stamps describe the region and entities files the region
+	// was loaded from, entitiesStamp is null if there is no entities file.
+	public void write(Point2i location, Region region, RegionStamp regionStamp, RegionStamp entitiesStamp) {
+		Timer t = new Timer();
+		int[] exists = new int[OverlayDataCodec.VALUES];
+		Map<IndexField, int[]> values = new EnumMap<>(IndexField.class);
+		for (IndexField field : IndexField.values()) {
+			values.put(field, new int[OverlayDataCodec.VALUES]);
+		}
+		for (int i = 0; i < OverlayDataCodec.VALUES; i++) {
+			ChunkData data = region.getFilterData(i);
+			if (data == null) {
+				continue;
+			}
+			exists[i] = 1;
+			for (Iterator<Map.Entry<IndexField, int[]>> it = values.entrySet().iterator(); it.hasNext();) {
+				Map.Entry<IndexField, int[]> column = it.next();
+				long value;
+				try {
+					value = column.getKey().getValue(data);
+				} catch (Exception ex) {
+					column.getValue()[i] = IndexField.FAILED;
+					continue;
+				}
+				if (value <= IndexField.FAILED || value > Integer.MAX_VALUE) {
+					// the field of this region is read from the region file when filtering
+					it.remove();
+					continue;
+				}
+				column.getValue()[i] = (int) value;
+			}
+		}
+		RegionContents contents = RegionContents.of(region);
+
+		synchronized (writeLock) {
+			if (writer == null) {
+				return;
+			}
+			try {
+				writer.setAutoCommit(false);
+				writeRegionStatement.setLong(1, location.asLong());
+				setStamp(writeRegionStatement, 2, regionStamp);
+				setStamp(writeRegionStatement, 4, entitiesStamp);
+				writeRegionStatement.setBytes(6, OverlayDataCodec.encode(exists));
+				writeRegionStatement.executeUpdate();
+				for (IndexField field : IndexField.values()) {
+					int[] column = values.get(field);
+					if (column == null) {
+						deleteStatements.get(field).setLong(1, location.asLong());
+						deleteStatements.get(field).executeUpdate();
+					} else {
+						writeStatements.get(field).setLong(1, location.asLong());
+						writeStatements.get(field).setBytes(2, OverlayDataCodec.encode(column));
+						writeStatements.get(field).executeUpdate();
+					}
+				}
+				writeContentsStatement.setLong(1, location.asLong());
+				writeContentsStatement.setBytes(2, RegionContentsCodec.encode(contents));
+				writeContentsStatement.executeUpdate();
+				writer.commit();
+			} catch (SQLException ex) {
+				Debug.dumpException("failed to write chunk index of " + location, ex);
+				try {
+					writer.rollback();
+				} catch (SQLException ex2) {
+					Debug.dumpException("failed to roll back chunk index of " + location, ex2);
+				}
+			} finally {
+				try {
+					writer.setAutoCommit(true);
+				} catch (SQLException ex) {
+					Debug.dumpException("failed to reset auto commit of chunk index", ex);
+				}
+			}
+		}
+		Debug.dumpf("took %s to index %s %s", t, location, contents);
+	}
+
+	// indexes a region again after it was saved to its files, so the index of the region doesn't have to be created
+	// again when it is filtered the next time. block summaries are only created again if the region had some before.
+	public void update(RegionDirectories dirs, Region region) {
+		RegionStamp regionStamp = dirs.getRegion() == null ? null : RegionStamp.of(dirs.getRegion());
+		if (regionStamp == null) {
+			invalidate(dirs.getLocation());
+			return;
+		}
+		write(dirs.getLocation(), region, regionStamp, dirs.getEntities() == null ? null : RegionStamp.of(dirs.getEntities()));
+		if (region.getRegion() != null && hasBlocks(dirs.getLocation())) {
+			writeBlocks(dirs.getLocation(), region.getRegion(), regionStamp);
+		} else {
+			deleteBlocks(dirs.getLocation());
+		}
+	}
+
+	// called by save jobs after they tried to save a region. the saved region is indexed from memory, a region that
+	// failed to save is indexed again when it is filtered.
+	public void afterSave(RegionDirectories dirs, Region region, boolean saved) {
+		try {
+			if (saved) {
+				update(dirs, region);
+			} else {
+				invalidate(dirs.getLocation());
+			}
+		} catch (Exception ex) {
+			Debug.dumpException("failed to update chunk index of " + dirs.getLocationAsFileName(), ex);
+		}
+	}
+
+	private boolean hasBlocks(Point2i location) {
+		synchronized (readLock) {
+			if (reader == null) {
+				return false;
+			}
+			try (PreparedStatement ps = reader.prepareStatement("SELECT 1 FROM blocks WHERE p=?;")) {
+				ps.setLong(1, location.asLong());
+				try (ResultSet result = ps.executeQuery()) {
+					return result.next();
+				}
+			} catch (SQLException ex) {
+				Debug.dumpException("failed to read block summaries of " + location, ex);
+				return false;
+			}
+		}
+	}
+
+	private void deleteBlocks(Point2i location) {
+		synchronized (writeLock) {
+			if (writer == null) {
+				return;
+			}
+			try {
+				deleteBlocksStatement.setLong(1, location.asLong());
+				deleteBlocksStatement.executeUpdate();
+			} catch (SQLException ex) {
+				Debug.dumpException("failed to delete block summaries of " + location, ex);
+			}
+		}
+	}
+
+	// deletes the index of a region after its files were changed without indexing it again. a file that is saved
+	// twice within the precision of its modification time keeps its stamp, so the index can't rely on it.
+	public void invalidate(Point2i location) {
+		synchronized (writeLock) {
+			if (writer == null) {
+				return;
+			}
+			try {
+				writer.setAutoCommit(false);
+				deleteRegionStatement.setLong(1, location.asLong());
+				deleteRegionStatement.executeUpdate();
+				deleteBlocksStatement.setLong(1, location.asLong());
+				deleteBlocksStatement.executeUpdate();
+				deleteContentsStatement.setLong(1, location.asLong());
+				deleteContentsStatement.executeUpdate();
+				for (IndexField field : IndexField.values()) {
+					deleteStatements.get(field).setLong(1, location.asLong());
+					deleteStatements.get(field).executeUpdate();
+				}
+				writer.commit();
+			} catch (SQLException ex) {
+				Debug.dumpException("failed to delete chunk index of " + location, ex);
+				try {
+					writer.rollback();
+				} catch (SQLException ex2) {
+					Debug.dumpException("failed to roll back chunk index of " + location, ex2);
+				}
+			} finally {
+				try {
+					writer.setAutoCommit(true);
+				} catch (SQLException ex) {
+					Debug.dumpException("failed to reset auto commit of chunk index", ex);
+				}
+			}
+		}
+		Debug.dumpf("deleted chunk index of %s", location);
+	}
+
+	private static void setStamp(PreparedStatement ps, int index, RegionStamp stamp) throws SQLException {
+		if (stamp == null) {
+			ps.setNull(index, Types.BIGINT);
+			ps.setNull(index + 1, Types.BIGINT);
+		} else {
+			ps.setLong(index, stamp.getLastModified());
+			ps.setLong(index + 1, stamp.getLength());
+		}
+	}
+
+	public void clear() {
+		synchronized (writeLock) {
+			synchronized (readLock) {
+				closeConnections();
+				deleteFiles();
+				open();
+			}
+		}
+		Debug.dumpf("cleared chunk index %s", dbFile);
+	}
+
+	public void close() {
+		synchronized (writeLock) {
+			synchronized (readLock) {
+				closeConnections();
+			}
+		}
+	}
+
+	// the indexed values of a region
+	public static final class Entry {
+
+		private final int[] exists;
+		private final Map<IndexField, int[]> values = new EnumMap<>(IndexField.class);
+		private BlockSummary[] blocks;
+		private RegionContents contents;
+
+		private Entry(int[] exists) {
+			this.exists = exists;
+		}
+
+		// whether the chunk at the index exists and is passed to filters
+		public boolean exists(int index) {
+			return exists[index] != 0;
+		}
+
+		// fields that could not be indexed for this region are missing
+		public Map<IndexField, int[]> getValues() {
+			return values;
+		}
+
+		// returns null if the block summaries of this region were not read or the chunk has no summary
+		public BlockSummary getBlockSummary(int index) {
+			return blocks == null ? null : blocks[index];
+		}
+
+		// returns null if the contents of this region were not read
+		public RegionContents getContents() {
+			return contents;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package net.querz.mcaselector.io.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+// encodes the 1024 overlay values of a region. most overlays have only a few distinct values that repeat for whole
+// rows of chunks, so the values are stored as runs of equal differences between neighbouring values, as zigzag varints.
+// a region where all chunks have the same value is stored as that value alone, values without any pattern are
+// stored as plain ints when that is smaller.
+// blobs written by older versions are gzip compressed ints and are still decoded.
+final class OverlayDataCodec {
+
+	static final int VALUES = 1024;
+
+	// the first byte of a blob
+	private static final byte FORMAT_SINGLE = 1;
+	private static final byte FORMAT_RUNS = 2;
+	private static final byte FORMAT_RAW = 3;
+	private static final byte GZIP_MAGIC = 0x1f;
+
+	private OverlayDataCodec() {}
+
+	static byte[] encode(int[] data) {
+		boolean single = true;
+		for (int i = 1; i < VALUES; i++) {
+			if (data[i] != data[0]) {
+				single = false;
+				break;
+			}
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(single ? 6 : 64);
+		if (single) {
+			out.write(FORMAT_SINGLE);
+			writeVarInt(out, zigzag(data[0]));
+			return out.toByteArray();
+		}
+
+		out.write(FORMAT_RUNS);
+		int previous = 0;
+		int i = 0;
+		while (i < VALUES) {
+			int delta = data[i] - previous;
+			int count = 1;
+			while (i + count < VALUES && data[i + count] - data[i + count - 1] == delta) {
+				count++;
+			}
+			writeVarInt(out, zigzag(delta));
+			writeVarInt(out, count);
+			previous = data[i + count - 1];
+			i += count;
+		}
+		if (out.size() <= 1 + VALUES * 4) {
+			return out.toByteArray();
+		}
+
+		byte[] raw = new byte[1 + VALUES * 4];
+		raw[0] = FORMAT_RAW;
+		for (i = 0; i < VALUES; i++) {
+			raw[1 + i * 4] = (byte) (data[i] >>> 24);
+			raw[2 + i * 4] = (byte) (data[i] >>> 16);
+			raw[3 + i * 4] = (byte) (data[i] >>> 8);
+			raw[4 + i * 4] = (byte) data[i];
+		}
+		return raw;
+	}
+
+	static int[] decode(byte[] blob) throws IOException {
+		if (blob.length == 0) {
+			throw new IOException("empty overlay data");
+		}
+		int[] data = new int[VALUES];
+		switch (blob[0]) {
+			case FORMAT_SINGLE:
+				int[] pos = {1};
+				int value = unzigzag(readVarInt(blob, pos));
+				for (int i = 0; i < VALUES; i++) {
+					data[i] = value;
+				}
+				return data;
+			case FORMAT_RUNS:
+				return decodeRuns(blob, data);
+			case FORMAT_RAW:
+				if (blob.length != 1 + VALUES * 4) {
+					throw new IOException("invalid overlay data length " + blob.length);
+				}
+				for (int i = 0; i < VALUES; i++) {
+					data[i] = (blob[1 + i * 4] & 0xFF) << 24 | (blob[2 + i * 4] & 0xFF) << 16 | (blob[3 + i * 4] & 0xFF) << 8 | blob[4 + i * 4] & 0xFF;
+				}
+				return data;
+			case GZIP_MAGIC:
+				return decodeGZIP(blob, data);
+			default:
+				throw new IOException("unknown overlay data format " + blob[0]);
+		}
+	}
+
+	private static int[] decodeRuns(byte[] blob, int[] data) throws IOException {
+		int[] pos = {1};
+		int previous = 0;
+		int i = 0;
+		while (i < VALUES) {
+			int delta = unzigzag(readVarInt(blob, pos));
+			int count = readVarInt(blob, pos);
+			if (count <= 0 || i + count > VALUES) {
+				throw new IOException("invalid run length " + count + " at index " + i);
+			}
+			for (int end = i + count; i < end; i++) {
+				data[i] = previous += delta;
+			}
+		}
+		return data;
+	}
+
+	private static int[] decodeGZIP(byte[] blob, int[] data) throws IOException {
+		try (DataInputStream dis = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(blob)))) {
+			for (int i = 0; i < VALUES; i++) {
+				data[i] = dis.readInt();
+			}
+		}
+		return data;
+	}
+
+	private static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	private static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static void writeVarInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	static int readVarInt(byte[] blob, int[] pos) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (pos[0] >= blob.length) {
+				throw new IOException("unexpected end of overlay data");
+			}
+			byte b = blob[pos[0]++];
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("varint too long in overlay data");
+	}
+}
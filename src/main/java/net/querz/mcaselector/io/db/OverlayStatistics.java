@@ -0,0 +1,124 @@
+package net.querz.mcaselector.io.db;
+
+import net.querz.mcaselector.point.Point2i;
+
+// statistics of the values of all chunks of an overlay in the cache db. the histogram divides the range from the
+// smallest to the largest value into buckets of equal size. percentiles are taken from a finer histogram, which is
+// exact for up to PERCENTILE_BUCKETS distinct values and interpolated within its buckets for larger ranges.
+public final class OverlayStatistics {
+
+	static final int PERCENTILE_BUCKETS = 4096;
+
+	private final int regions;
+	private final long chunks;
+	private final int min, max;
+	private final long sum;
+	private final long[] histogram;
+	private final long[] distribution;
+
+	OverlayStatistics(int regions, long chunks, int min, int max, long sum, long[] histogram, long[] distribution) {
+		this.regions = regions;
+		this.chunks = chunks;
+		this.min = min;
+		this.max = max;
+		this.sum = sum;
+		this.histogram = histogram;
+		this.distribution = distribution;
+	}
+
+	static int getPercentileBuckets(int min, int max) {
+		return (int) Math.min((long) max - min + 1, PERCENTILE_BUCKETS);
+	}
+
+	public int getRegions() {
+		return regions;
+	}
+
+	public long getChunks() {
+		return chunks;
+	}
+
+	public int getMin() {
+		return min;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return chunks == 0 ? 0 : (double) sum / chunks;
+	}
+
+	public int getBuckets() {
+		return histogram.length;
+	}
+
+	public long getCount(int bucket) {
+		return histogram[bucket];
+	}
+
+	// the smallest value that falls into a bucket
+	public double getBucketMin(int bucket) {
+		return min + bucket * getBucketWidth(histogram.length);
+	}
+
+	private double getBucketWidth(int buckets) {
+		return ((long) max - min + 1) / (double) buckets;
+	}
+
+	static int getBucket(int value, int min, int max, int buckets) {
+		return (int) (((long) value - min) * buckets / ((long) max - min + 1));
+	}
+
+	// percentile is between 0 and 100
+	public int getPercentile(double percentile) {
+		if (chunks == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * chunks));
+		double width = getBucketWidth(distribution.length);
+		long before = 0;
+		for (int i = 0; i < distribution.length; i++) {
+			if (distribution[i] == 0) {
+				continue;
+			}
+			if (before + distribution[i] >= target) {
+				double fraction = (double) (target - before) / distribution[i];
+				long value = (long) Math.floor(min + (i + fraction) * width - 1e-9);
+				return (int) Math.max(min, Math.min(max, value));
+			}
+			before += distribution[i];
+		}
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("{regions=%d, chunks=%d, min=%d, max=%d, mean=%f}", regions, chunks, min, max, getMean());
+	}
+
+	public static final class ChunkValue {
+
+		private final Point2i chunk;
+		private final int value;
+
+		ChunkValue(Point2i chunk, int value) {
+			this.chunk = chunk;
+			this.value = value;
+		}
+
+		public Point2i getChunk() {
+			return chunk;
+		}
+
+		public int getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return chunk + "=" + value;
+		}
+	}
+}
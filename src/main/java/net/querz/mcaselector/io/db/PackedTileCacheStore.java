@@ -0,0 +1,244 @@
+package net.querz.mcaselector.io.db;
+
+import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.io.TileCacheStore;
+import net.querz.mcaselector.point.Point2i;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+// stores all cached images and edges of a world in a single sqlite file, so a lookup is a single indexed read and
+// clearing the cache only deletes one file. reads use their own connection so they are not blocked by writes.
+public class PackedTileCacheStore extends TileCacheStore {
+
+	private final File dbFile;
+
+	// writeLock guards the writer, readLock the reader. both are held to open or close the connections, always in this order.
+	private final Object writeLock = new Object();
+	private final Object readLock = new Object();
+
+	private Connection writer, reader;
+	private PreparedStatement writeStatement, deleteStatement, deleteLayerStatement;
+	private PreparedStatement readStatement, lastModifiedStatement, regionsStatement;
+
+	static {
+		try {
+			Class.forName("org.sqlite.JDBC");
+		} catch (ClassNotFoundException ex) {
+			Debug.dumpException("failed to load jdbc driver", ex);
+		}
+	}
+
+	public PackedTileCacheStore(File cacheDir) {
+		dbFile = new File(cacheDir, "tiles.db");
+		synchronized (writeLock) {
+			synchronized (readLock) {
+				open();
+			}
+		}
+	}
+
+	@Override
+	public Type getType() {
+		return Type.PACK;
+	}
+
+	private void open() {
+		if (!dbFile.getParentFile().exists() && !dbFile.getParentFile().mkdirs()) {
+			Debug.errorf("failed to create cache directory for %s", dbFile.getAbsolutePath());
+		}
+		try {
+			openConnections();
+		} catch (SQLException ex) {
+			Debug.dumpException("failed to open tile cache db " + dbFile, ex);
+			closeConnections();
+			deleteFiles();
+			try {
+				openConnections();
+			} catch (SQLException ex2) {
+				Debug.dumpException("failed to create new tile cache db " + dbFile, ex2);
+				closeConnections();
+			}
+		}
+	}
+
+	private void openConnections() throws SQLException {
+		writer = DriverManager.getConnection("jdbc:sqlite:" + dbFile);
+		try (Statement statement = writer.createStatement()) {
+			statement.execute("PRAGMA journal_mode=WAL;");
+			statement.execute("PRAGMA synchronous=NORMAL;");
+			statement.executeUpdate("CREATE TABLE IF NOT EXISTS tiles (" +
+					"p BIGINT, " +
+					"l INTEGER, " +
+					"t BIGINT, " +
+					"d BLOB, " +
+					"PRIMARY KEY (p, l));");
+		}
+		writeStatement = writer.prepareStatement("INSERT OR REPLACE INTO tiles (p, l, t, d) VALUES (?, ?, ?, ?);");
+		// super tiles are not layers of a region, even if their location is the same
+		deleteStatement = writer.prepareStatement("DELETE FROM tiles WHERE p=? AND l>?;");
+		deleteLayerStatement = writer.prepareStatement("DELETE FROM tiles WHERE p=? AND l=?;");
+
+		reader = DriverManager.getConnection("jdbc:sqlite:" + dbFile);
+		readStatement = reader.prepareStatement("SELECT d FROM tiles WHERE p=? AND l=?;");
+		lastModifiedStatement = reader.prepareStatement("SELECT t FROM tiles WHERE p=? AND l=?;");
+		regionsStatement = reader.prepareStatement("SELECT DISTINCT p FROM tiles WHERE l>0;");
+		Debug.dumpf("opened tile cache db %s", dbFile);
+	}
+
+	private void closeConnections() {
+		try {
+			if (reader != null) {
+				reader.close();
+			}
+			if (writer != null) {
+				writer.close();
+			}
+		} catch (SQLException ex) {
+			Debug.dumpException("failed to close tile cache db " + dbFile, ex);
+		}
+		reader = writer = null;
+	}
+
+	private void deleteFiles() {
+		for (String suffix : new String[]{"", "-wal", "-shm"}) {
+			File file = new File(dbFile.getPath() + suffix);
+			if (file.exists() && !file.delete()) {
+				Debug.errorf("failed to delete %s", file);
+			}
+		}
+	}
+
+	@Override
+	public long lastModified(int layer, Point2i region) {
+		synchronized (readLock) {
+			if (reader == null) {
+				return 0;
+			}
+			try {
+				lastModifiedStatement.setLong(1, region.asLong());
+				lastModifiedStatement.setInt(2, layer);
+				try (ResultSet result = lastModifiedStatement.executeQuery()) {
+					return result.next() ? result.getLong(1) : 0;
+				}
+			} catch (SQLException ex) {
+				Debug.dumpException("failed to read timestamp of " + layer + "/" + region + " from tile cache db", ex);
+				return 0;
+			}
+		}
+	}
+
+	@Override
+	public byte[] read(int layer, Point2i region) throws IOException {
+		synchronized (readLock) {
+			if (reader == null) {
+				return null;
+			}
+			try {
+				readStatement.setLong(1, region.asLong());
+				readStatement.setInt(2, layer);
+				try (ResultSet result = readStatement.executeQuery()) {
+					return result.next() ? result.getBytes(1) : null;
+				}
+			} catch (SQLException ex) {
+				throw new IOException(ex);
+			}
+		}
+	}
+
+	@Override
+	public void write(int layer, Point2i region, byte[] data) throws IOException {
+		synchronized (writeLock) {
+			if (writer == null) {
+				throw new IOException("tile cache db " + dbFile + " is not open");
+			}
+			try {
+				writeStatement.setLong(1, region.asLong());
+				writeStatement.setInt(2, layer);
+				writeStatement.setLong(3, System.currentTimeMillis());
+				writeStatement.setBytes(4, data);
+				writeStatement.executeUpdate();
+			} catch (SQLException ex) {
+				throw new IOException(ex);
+			}
+		}
+	}
+
+	@Override
+	public void delete(int layer, Point2i region) {
+		synchronized (writeLock) {
+			if (writer == null) {
+				return;
+			}
+			try {
+				deleteLayerStatement.setLong(1, region.asLong());
+				deleteLayerStatement.setInt(2, layer);
+				deleteLayerStatement.executeUpdate();
+			} catch (SQLException ex) {
+				Debug.dumpException("failed to delete " + layer + "/" + region + " from tile cache db", ex);
+			}
+		}
+	}
+
+	@Override
+	public void delete(Point2i region) {
+		synchronized (writeLock) {
+			if (writer == null) {
+				return;
+			}
+			try {
+				deleteStatement.setLong(1, region.asLong());
+				deleteStatement.setInt(2, SUPER_TILES);
+				deleteStatement.executeUpdate();
+			} catch (SQLException ex) {
+				Debug.dumpException("failed to delete " + region + " from tile cache db", ex);
+			}
+		}
+	}
+
+	@Override
+	public Set<Point2i> getRegions() {
+		Set<Point2i> regions = new HashSet<>();
+		synchronized (readLock) {
+			if (reader == null) {
+				return regions;
+			}
+			try (ResultSet result = regionsStatement.executeQuery()) {
+				while (result.next()) {
+					regions.add(new Point2i(result.getLong(1)));
+				}
+			} catch (SQLException ex) {
+				Debug.dumpException("failed to read regions from tile cache db", ex);
+			}
+		}
+		return regions;
+	}
+
+	@Override
+	public void clear() {
+		synchronized (writeLock) {
+			synchronized (readLock) {
+				closeConnections();
+				deleteFiles();
+				open();
+			}
+		}
+		Debug.dumpf("cleared tile cache db %s", dbFile);
+	}
+
+	@Override
+	public void close() {
+		synchronized (writeLock) {
+			synchronized (readLock) {
+				closeConnections();
+			}
+		}
+	}
+}
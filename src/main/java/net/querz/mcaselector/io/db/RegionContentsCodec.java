@@ -0,0 +1,84 @@
+package net.querz.mcaselector.io.db;
+
+import net.querz.mcaselector.filter.RegionContents;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+// encodes the contents of a region as the block names, biome ids, entity ids and structure names in this order. every
+// set starts with its size + 1 as a varint, 0 if the set is unknown. biome ids are stored as zigzag encoded varints.
+final class RegionContentsCodec {
+
+	private static final byte FORMAT = 1;
+
+	private RegionContentsCodec() {}
+
+	static byte[] encode(RegionContents contents) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		out.write(FORMAT);
+		writeNames(out, contents.getBlockNames());
+		if (contents.getBiomeIDs() == null) {
+			OverlayDataCodec.writeVarInt(out, 0);
+		} else {
+			OverlayDataCodec.writeVarInt(out, contents.getBiomeIDs().size() + 1);
+			for (int id : contents.getBiomeIDs()) {
+				OverlayDataCodec.writeVarInt(out, id << 1 ^ id >> 31);
+			}
+		}
+		writeNames(out, contents.getEntityIDs());
+		writeNames(out, contents.getStructureNames());
+		return out.toByteArray();
+	}
+
+	static RegionContents decode(byte[] blob) throws IOException {
+		if (blob.length == 0 || blob[0] != FORMAT) {
+			throw new IOException("unknown region contents format");
+		}
+		int[] pos = {1};
+		Set<String> blockNames = readNames(blob, pos);
+		Set<Integer> biomeIDs = null;
+		int size = OverlayDataCodec.readVarInt(blob, pos) - 1;
+		if (size >= 0) {
+			biomeIDs = new TreeSet<>();
+			for (int i = 0; i < size; i++) {
+				int id = OverlayDataCodec.readVarInt(blob, pos);
+				biomeIDs.add(id >>> 1 ^ -(id & 1));
+			}
+		}
+		Set<String> entityIDs = readNames(blob, pos);
+		Set<String> structureNames = readNames(blob, pos);
+		return new RegionContents(blockNames, biomeIDs, entityIDs, structureNames);
+	}
+
+	private static void writeNames(ByteArrayOutputStream out, Set<String> names) {
+		if (names == null) {
+			OverlayDataCodec.writeVarInt(out, 0);
+			return;
+		}
+		OverlayDataCodec.writeVarInt(out, names.size() + 1);
+		for (String name : names) {
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			OverlayDataCodec.writeVarInt(out, bytes.length);
+			out.write(bytes, 0, bytes.length);
+		}
+	}
+
+	private static Set<String> readNames(byte[] blob, int[] pos) throws IOException {
+		int size = OverlayDataCodec.readVarInt(blob, pos) - 1;
+		if (size < 0) {
+			return null;
+		}
+		Set<String> names = new TreeSet<>();
+		for (int i = 0; i < size; i++) {
+			int length = OverlayDataCodec.readVarInt(blob, pos);
+			if (length < 0 || pos[0] + length > blob.length) {
+				throw new IOException("unexpected end of region contents");
+			}
+			names.add(new String(blob, pos[0], length, StandardCharsets.UTF_8));
+			pos[0] += length;
+		}
+		return names;
+	}
+}
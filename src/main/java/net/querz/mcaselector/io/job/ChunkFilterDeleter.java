@@ -2,12 +2,14 @@ package net.querz.mcaselector.io.job;
 
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.filter.GroupFilter;
+import net.querz.mcaselector.filter.RegionContents;
 import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.io.MCAFilePipe;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.SelectionData;
 import net.querz.mcaselector.io.SelectionHelper;
 import net.querz.mcaselector.io.WorldDirectories;
+import net.querz.mcaselector.io.db.ChunkIndex;
 import net.querz.mcaselector.io.mca.Region;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.progress.Progress;
@@ -61,7 +63,8 @@ public class ChunkFilterDeleter {
 			// load all files
 			Point2i location = getRegionDirectories().getLocation();
 
-			if (!filter.appliesToRegion(location) || selection != null && !selection.containsKey(location)) {
+			RegionContents contents = filter.usesRegionContents() ? ChunkIndex.get(Config.getCacheDir()).readContents(getRegionDirectories()) : null;
+			if (!filter.appliesToRegion(location, contents) || selection != null && !selection.containsKey(location)) {
 				Debug.dump("filter does not apply to region " + getRegionDirectories().getLocation());
 				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
 				return;
@@ -124,11 +127,14 @@ public class ChunkFilterDeleter {
 
 		@Override
 		public void execute() {
+			boolean saved = false;
 			try {
 				getData().deFragment();
+				saved = true;
 			} catch (Exception ex) {
 				Debug.dumpException("failed to delete filtered chunks from " + getRegionDirectories().getLocationAsFileName(), ex);
 			}
+			ChunkIndex.get(Config.getCacheDir()).afterSave(getRegionDirectories(), getData(), saved);
 			progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
 		}
 	}
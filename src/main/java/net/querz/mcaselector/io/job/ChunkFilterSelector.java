@@ -2,11 +2,14 @@ package net.querz.mcaselector.io.job;
 
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.filter.GroupFilter;
+import net.querz.mcaselector.filter.IndexField;
 import net.querz.mcaselector.io.MCAFilePipe;
 import net.querz.mcaselector.io.RegionDirectories;
+import net.querz.mcaselector.io.RegionStamp;
 import net.querz.mcaselector.io.SelectionData;
 import net.querz.mcaselector.io.SelectionHelper;
 import net.querz.mcaselector.io.WorldDirectories;
+import net.querz.mcaselector.io.db.ChunkIndex;
 import net.querz.mcaselector.io.mca.Region;
 import net.querz.mcaselector.tiles.Tile;
 import net.querz.mcaselector.debug.Debug;
@@ -14,6 +17,8 @@ import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.progress.Progress;
 import net.querz.mcaselector.progress.Timer;
 import net.querz.mcaselector.text.Translation;
+import java.io.File;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -43,9 +48,148 @@ public class ChunkFilterSelector {
 		progressChannel.setMax(rd.length);
 		progressChannel.updateProgress(rd[0].getLocationAsFileName(), 0);
 
+		Map<Point2i, ChunkIndex.Entry> index = readIndex(filter, rd);
+		boolean indexed = filter.isIndexed();
+		int fromIndex = 0, skipped = 0;
+
 		for (RegionDirectories r : rd) {
+			Point2i location = r.getLocation();
+			ChunkIndex.Entry entry = index.get(location);
+			if (entry != null && !filter.appliesToRegion(location, entry.getContents())) {
+				progressChannel.incrementProgress(r.getLocationAsFileName());
+				skipped++;
+				continue;
+			}
+			if (entry != null) {
+				Set<Point2i> chunks = selectFromIndex(filter, indexed, location, entry, sel == null ? null : sel.get(location));
+				if (chunks != null) {
+					accept(location, chunks, sel, radius, callback);
+					progressChannel.incrementProgress(r.getLocationAsFileName());
+					fromIndex++;
+					continue;
+				}
+			}
 			MCAFilePipe.addJob(new MCASelectFilterLoadJob(r, filter, sel, radius, callback, progressChannel));
 		}
+		Debug.dumpf("selected chunks of %d of %d regions from the chunk index, skipped %d regions by their contents", fromIndex, rd.length, skipped);
+	}
+
+	private static Map<Point2i, ChunkIndex.Entry> readIndex(GroupFilter filter, RegionDirectories[] rd) {
+		Set<IndexField> fields = filter.getIndexFields();
+		boolean blocks = filter.usesBlockSummaries();
+		boolean contents = filter.usesRegionContents();
+		if (fields.isEmpty() && !blocks && !contents) {
+			return Collections.emptyMap();
+		}
+		Timer t = new Timer();
+		try {
+			Map<Point2i, ChunkIndex.Entry> index = ChunkIndex.get(Config.getCacheDir()).read(rd, fields, blocks, contents);
+			Debug.dumpf("took %s to read the chunk index of %d regions", t, index.size());
+			return index;
+		} catch (Exception ex) {
+			Debug.dumpException("failed to read chunk index", ex);
+			return Collections.emptyMap();
+		}
+	}
+
+	// returns the chunks of a region that match the filter, or null if the region has to be loaded to find them.
+	// chunks that only match because of indexed values are not enough if the filter also reads other data of a chunk.
+	private static Set<Point2i> selectFromIndex(GroupFilter filter, boolean indexed, Point2i location, ChunkIndex.Entry entry, Set<Point2i> selection) {
+		Set<Point2i> chunks = new HashSet<>();
+		Point2i origin = location.regionToChunk();
+		for (int i = 0; i < Tile.CHUNKS; i++) {
+			if (!entry.exists(i)) {
+				continue;
+			}
+			Point2i chunk = origin.add(i % Tile.SIZE_IN_CHUNKS, i / Tile.SIZE_IN_CHUNKS);
+			if (selection != null && !selection.contains(chunk)) {
+				continue;
+			}
+			Boolean matches = filter.matchesIndex(entry, i);
+			if (matches == null || matches && !indexed) {
+				return null;
+			}
+			if (matches) {
+				chunks.add(chunk);
+			}
+		}
+		return chunks;
+	}
+
+	private static void accept(Point2i location, Set<Point2i> chunks, Map<Point2i, Set<Point2i>> selection, int radius, Consumer<Map<Point2i, Set<Point2i>>> callback) {
+		if (chunks.size() > 0) {
+			if (chunks.size() == Tile.CHUNKS) {
+				chunks = null;
+			}
+			Map<Point2i, Set<Point2i>> region = new HashMap<>();
+			region.put(location, chunks);
+
+			region = applyRadius(region, selection, radius);
+
+			callback.accept(region);
+		}
+	}
+
+	private static Map<Point2i, Set<Point2i>> applyRadius(Map<Point2i, Set<Point2i>> region, Map<Point2i, Set<Point2i>> selection, int radius) {
+		if (radius <= 0) {
+			return region;
+		}
+
+		Map<Point2i, Set<Point2i>> output = new HashMap<>();
+
+		for (Map.Entry<Point2i, Set<Point2i>> reg : region.entrySet()) {
+			if (reg.getValue() == null) {
+				output.put(reg.getKey(), null);
+				// full region
+				Point2i startChunk = reg.getKey().regionToChunk();
+				Point2i endChunk = startChunk.add(Tile.SIZE_IN_CHUNKS - 1);
+
+				for (int x = startChunk.getX() - radius; x <= endChunk.getX() + radius; x++) {
+					for (int z = startChunk.getZ() - radius; z <= endChunk.getZ() + radius; z++) {
+						Point2i currentChunk = new Point2i(x, z);
+						if (!selectionContainsChunk(selection, currentChunk)) {
+							continue;
+						}
+						Point2i currentRegion = currentChunk.chunkToRegion();
+
+						if (currentRegion.equals(reg.getKey())) {
+							z += Tile.SIZE_IN_CHUNKS - 1;
+							continue;
+						}
+
+						if (!output.containsKey(currentRegion)) {
+							output.put(currentRegion, new HashSet<>());
+						}
+
+						output.get(currentRegion).add(currentChunk);
+					}
+				}
+			} else {
+				output.put(reg.getKey(), new HashSet<>(reg.getValue()));
+				for (Point2i chunk : reg.getValue()) {
+					for (int x = chunk.getX() - radius; x <= chunk.getX() + radius; x++) {
+						for (int z = chunk.getZ() - radius; z <= chunk.getZ() + radius; z++) {
+							Point2i currentChunk = new Point2i(x, z);
+							if (!selectionContainsChunk(selection, currentChunk)) {
+								continue;
+							}
+							Point2i currentRegion = currentChunk.chunkToRegion();
+							if (!output.containsKey(currentRegion)) {
+								output.put(currentRegion, new HashSet<>());
+							}
+							output.get(currentRegion).add(currentChunk);
+						}
+					}
+				}
+			}
+		}
+		return output;
+	}
+
+	private static boolean selectionContainsChunk(Map<Point2i, Set<Point2i>> selection, Point2i chunk) {
+		Point2i region = chunk.chunkToRegion();
+		Set<Point2i> chunks;
+		return selection.containsKey(region) && ((chunks = selection.get(chunk)) == null || chunks.contains(chunk));
 	}
 
 	private static class MCASelectFilterLoadJob extends LoadDataJob {
@@ -76,6 +220,10 @@ public class ChunkFilterSelector {
 				return;
 			}
 
+			// the stamps are taken before loading, so a file that changes while it is loaded is indexed again next time
+			RegionStamp regionStamp = stamp(getRegionDirectories().getRegion());
+			RegionStamp entitiesStamp = stamp(getRegionDirectories().getEntities());
+
 			byte[] regionData = loadRegion();
 			byte[] poiData = loadPoi();
 			byte[] entitiesData = loadEntities();
@@ -84,9 +232,13 @@ public class ChunkFilterSelector {
 				Debug.errorf("failed to load any data from %s", getRegionDirectories().getLocationAsFileName());
 				progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
 			} else {
-				MCAFilePipe.executeProcessData(new MCASelectFilterProcessJob(getRegionDirectories(), regionData, poiData, entitiesData, filter, selection, callback, location, radius, progressChannel));
+				MCAFilePipe.executeProcessData(new MCASelectFilterProcessJob(getRegionDirectories(), regionData, poiData, entitiesData, filter, selection, callback, location, radius, progressChannel, regionStamp, entitiesStamp));
 			}
 		}
+
+		private static RegionStamp stamp(File file) {
+			return file == null ? null : RegionStamp.of(file);
+		}
 	}
 
 	private static class MCASelectFilterProcessJob extends ProcessDataJob {
@@ -97,8 +249,9 @@ public class ChunkFilterSelector {
 		private final Consumer<Map<Point2i, Set<Point2i>>> callback;
 		private final Point2i location;
 		private final int radius;
+		private final RegionStamp regionStamp, entitiesStamp;
 
-		private MCASelectFilterProcessJob(RegionDirectories dirs, byte[] regionData, byte[] poiData, byte[] entitiesData, GroupFilter filter, Map<Point2i, Set<Point2i>> selection, Consumer<Map<Point2i, Set<Point2i>>> callback, Point2i location, int radius,  Progress progressChannel) {
+		private MCASelectFilterProcessJob(RegionDirectories dirs, byte[] regionData, byte[] poiData, byte[] entitiesData, GroupFilter filter, Map<Point2i, Set<Point2i>> selection, Consumer<Map<Point2i, Set<Point2i>>> callback, Point2i location, int radius,  Progress progressChannel, RegionStamp regionStamp, RegionStamp entitiesStamp) {
 			super(dirs, regionData, poiData, entitiesData);
 			this.filter = filter;
 			this.selection = selection;
@@ -106,6 +259,8 @@ public class ChunkFilterSelector {
 			this.location = location;
 			this.progressChannel = progressChannel;
 			this.radius = radius;
+			this.regionStamp = regionStamp;
+			this.entitiesStamp = entitiesStamp;
 		}
 
 		@Override
@@ -116,16 +271,17 @@ public class ChunkFilterSelector {
 				Region region = Region.loadRegion(getRegionDirectories(), getRegionData(), getPoiData(), getEntitiesData());
 
 				Set<Point2i> chunks = region.getFilteredChunks(filter, selection == null ? null : selection.get(getRegionDirectories().getLocation()));
-				if (chunks.size() > 0) {
-					if (chunks.size() == Tile.CHUNKS) {
-						chunks = null;
-					}
-					Map<Point2i, Set<Point2i>> selection = new HashMap<>();
-					selection.put(location, chunks);
-
-					selection = applyRadius(selection, this.selection);
+				accept(location, chunks, selection, radius, callback);
 
-					callback.accept(selection);
+				// regions are only indexed if their index is missing or was created from different files
+				if (getRegionData() != null && regionStamp != null) {
+					ChunkIndex index = ChunkIndex.get(Config.getCacheDir());
+					if (!index.isIndexed(location, regionStamp, entitiesStamp)) {
+						index.write(location, region, regionStamp, entitiesStamp);
+					}
+					if (filter.usesBlockSummaries() && !index.hasBlocks(location, regionStamp)) {
+						index.writeBlocks(location, region.getRegion(), regionStamp);
+					}
 				}
 				Debug.dumpf("took %s to select chunks in %s", t, getRegionDirectories().getLocationAsFileName());
 			} catch (Exception ex) {
@@ -133,67 +289,5 @@ public class ChunkFilterSelector {
 			}
 			progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
 		}
-
-		private boolean selectionContainsChunk(Map<Point2i, Set<Point2i>> selection, Point2i chunk) {
-			Point2i region = chunk.chunkToRegion();
-			Set<Point2i> chunks;
-			return selection.containsKey(region) && ((chunks = selection.get(chunk)) == null || chunks.contains(chunk));
-		}
-
-		private Map<Point2i, Set<Point2i>> applyRadius(Map<Point2i, Set<Point2i>> region, Map<Point2i, Set<Point2i>> selection) {
-			if (radius <= 0) {
-				return region;
-			}
-
-			Map<Point2i, Set<Point2i>> output = new HashMap<>();
-
-			for (Map.Entry<Point2i, Set<Point2i>> reg : region.entrySet()) {
-				if (reg.getValue() == null) {
-					output.put(reg.getKey(), null);
-					// full region
-					Point2i startChunk = reg.getKey().regionToChunk();
-					Point2i endChunk = startChunk.add(Tile.SIZE_IN_CHUNKS - 1);
-
-					for (int x = startChunk.getX() - radius; x <= endChunk.getX() + radius; x++) {
-						for (int z = startChunk.getZ() - radius; z <= endChunk.getZ() + radius; z++) {
-							Point2i currentChunk = new Point2i(x, z);
-							if (!selectionContainsChunk(selection, currentChunk)) {
-								continue;
-							}
-							Point2i currentRegion = currentChunk.chunkToRegion();
-
-							if (currentRegion.equals(reg.getKey())) {
-								z += Tile.SIZE_IN_CHUNKS - 1;
-								continue;
-							}
-
-							if (!output.containsKey(currentRegion)) {
-								output.put(currentRegion, new HashSet<>());
-							}
-
-							output.get(currentRegion).add(currentChunk);
-						}
-					}
-				} else {
-					output.put(reg.getKey(), new HashSet<>(reg.getValue()));
-					for (Point2i chunk : reg.getValue()) {
-						for (int x = chunk.getX() - radius; x <= chunk.getX() + radius; x++) {
-							for (int z = chunk.getZ() - radius; z <= chunk.getZ() + radius; z++) {
-								Point2i currentChunk = new Point2i(x, z);
-								if (!selectionContainsChunk(selection, currentChunk)) {
-									continue;
-								}
-								Point2i currentRegion = currentChunk.chunkToRegion();
-								if (!output.containsKey(currentRegion)) {
-									output.put(currentRegion, new HashSet<>());
-								}
-								output.get(currentRegion).add(currentChunk);
-							}
-						}
-					}
-				}
-			}
-			return output;
-		}
 	}
 }
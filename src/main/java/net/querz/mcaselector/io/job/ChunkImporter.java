@@ -8,6 +8,7 @@ import net.querz.mcaselector.io.MCAFilePipe;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.SelectionData;
 import net.querz.mcaselector.io.WorldDirectories;
+import net.querz.mcaselector.io.db.ChunkIndex;
 import net.querz.mcaselector.io.mca.EntitiesMCAFile;
 import net.querz.mcaselector.io.mca.PoiMCAFile;
 import net.querz.mcaselector.io.mca.Region;
@@ -465,11 +466,14 @@ public class ChunkImporter {
 		@Override
 		public void execute() {
 			Timer t = new Timer();
+			boolean saved = false;
 			try {
 				getData().saveWithTempFiles();
+				saved = true;
 			} catch (Exception ex) {
 				Debug.dumpException("failed to save imported chunks to " + getRegionDirectories().getLocationAsFileName(), ex);
 			}
+			ChunkIndex.get(Config.getCacheDir()).afterSave(getRegionDirectories(), getData(), saved);
 			progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
 			Debug.dumpf("took %s to save data for %s", t, getRegionDirectories().getLocationAsFileName());
 		}
@@ -8,6 +8,7 @@ import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.SelectionData;
 import net.querz.mcaselector.io.SelectionHelper;
 import net.querz.mcaselector.io.WorldDirectories;
+import net.querz.mcaselector.io.db.ChunkIndex;
 import net.querz.mcaselector.io.mca.Region;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.progress.Progress;
@@ -130,11 +131,14 @@ public class FieldChanger {
 		@Override
 		public void execute() {
 			Timer t = new Timer();
+			boolean saved = false;
 			try {
 				getData().saveWithTempFiles();
+				saved = true;
 			} catch (Exception ex) {
 				Debug.dumpException("failed to save changed fields for " + getRegionDirectories().getLocationAsFileName(), ex);
 			}
+			ChunkIndex.get(Config.getCacheDir()).afterSave(getRegionDirectories(), getData(), saved);
 			progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
 			Debug.dumpf("took %s to save data for %s", t, getRegionDirectories().getLocationAsFileName());
 		}
@@ -1,8 +1,12 @@
 package net.querz.mcaselector.io.job;
 
+import net.querz.mcaselector.Config;
 import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.io.ByteArrayPointer;
 import net.querz.mcaselector.io.RegionDirectories;
+import net.querz.mcaselector.io.RegionStamp;
+import net.querz.mcaselector.io.db.ChunkIndex;
+import net.querz.mcaselector.io.mca.BlockSummary;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.io.mca.EntitiesMCAFile;
 import net.querz.mcaselector.io.mca.PoiMCAFile;
@@ -10,28 +14,41 @@ import net.querz.mcaselector.io.mca.RegionMCAFile;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.progress.Timer;
 import net.querz.mcaselector.tiles.Tile;
+import net.querz.mcaselector.tiles.overlay.BlockAmountParser;
 import net.querz.mcaselector.tiles.overlay.OverlayParser;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 
-public class ParseDataJob extends LoadDataJob {
+public class ParseDataJob extends LoadDataJob implements Comparable<ParseDataJob> {
 
 	private static final Set<Point2i> loading = ConcurrentHashMap.newKeySet();
+	private static final AtomicLong sequence = new AtomicLong();
 
-	private final BiConsumer<int[], UUID> dataCallback;
+	private final BiConsumer<int[][], UUID> dataCallback;
 	private final UUID world;
-	private final OverlayParser parser;
+	private final List<OverlayParser> parsers;
 	private final Tile tile;
+	// jobs with a lower priority value run first, jobs with the same priority value in the order they were created
+	private double priority;
+	private final long order = sequence.getAndIncrement();
 
 	public ParseDataJob(Tile tile, RegionDirectories dirs, UUID world, BiConsumer<int[], UUID> dataCallback, OverlayParser parser) {
+		this(tile, dirs, world, (d, u) -> dataCallback.accept(d == null ? null : d[0], u), Collections.singletonList(parser));
+	}
+
+	// parses the data of all parsers from the same loaded region. the callback receives the data in the order of the parsers.
+	public ParseDataJob(Tile tile, RegionDirectories dirs, UUID world, BiConsumer<int[][], UUID> dataCallback, List<OverlayParser> parsers) {
 		super(dirs);
 		this.tile = tile;
 		this.dataCallback = dataCallback;
 		this.world = world;
-		this.parser = parser;
+		this.parsers = parsers;
 		setLoading(tile, true);
 	}
 
@@ -51,6 +68,16 @@ public class ParseDataJob extends LoadDataJob {
 		return tile;
 	}
 
+	public void setPriority(double priority) {
+		this.priority = priority;
+	}
+
+	@Override
+	public int compareTo(ParseDataJob o) {
+		int c = Double.compare(priority, o.priority);
+		return c != 0 ? c : Long.compare(order, o.order);
+	}
+
 	@Override
 	public void run() {
 		execute();
@@ -60,6 +87,21 @@ public class ParseDataJob extends LoadDataJob {
 	public void execute() {
 		Timer t = new Timer();
 
+		// the stamp is taken now, so it describes the file before it is loaded
+		RegionStamp regionStamp = null;
+		if (usesBlockSummaries(parsers) && getRegionDirectories().getRegion() != null) {
+			regionStamp = RegionStamp.of(getRegionDirectories().getRegion());
+			if (regionStamp != null) {
+				int[][] data = parseBlockSummaries(regionStamp);
+				if (data != null) {
+					dataCallback.accept(data, world);
+					setLoading(tile, false);
+					Debug.dumpf("took %s to parse data of %d overlays for region %s from its block summaries", t, parsers.size(), getRegionDirectories().getLocation());
+					return;
+				}
+			}
+		}
+
 		RegionMCAFile regionMCAFile = null;
 		if (getRegionDirectories().getRegion() != null && getRegionDirectories().getRegion().exists() && getRegionDirectories().getRegion().length() > 0) {
 			byte[] regionData = loadRegion();
@@ -112,23 +154,100 @@ public class ParseDataJob extends LoadDataJob {
 			return;
 		}
 
-		int[] data = new int[1024];
+		int[][] data = parseData(regionMCAFile, poiMCAFile, entitiesMCAFile, parsers, regionStamp);
+
+		dataCallback.accept(data, world);
+		setLoading(tile, false);
+
+		Debug.dumpf("took %s to load and parse data of %d overlays for region %s", t, parsers.size(), getRegionDirectories().getLocation());
+	}
+
+	private static boolean usesBlockSummaries(List<OverlayParser> parsers) {
+		for (OverlayParser parser : parsers) {
+			if (parser instanceof BlockAmountParser) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// returns the data of all parsers from the block summaries in the chunk index without loading the region file,
+	// or null if a parser needs other data or the summaries are missing for the current region file
+	private int[][] parseBlockSummaries(RegionStamp regionStamp) {
+		for (OverlayParser parser : parsers) {
+			if (!(parser instanceof BlockAmountParser)) {
+				return null;
+			}
+		}
+		BlockSummary[] summaries;
+		try {
+			summaries = ChunkIndex.get(Config.getCacheDir()).readBlocks(getRegionDirectories().getLocation(), regionStamp);
+		} catch (Exception ex) {
+			Debug.dumpException("failed to read block summaries of " + getRegionDirectories().getLocation(), ex);
+			return null;
+		}
+		if (summaries == null) {
+			return null;
+		}
+		int[][] data = new int[parsers.size()][1024];
+		for (int i = 0; i < 1024; i++) {
+			if (summaries[i] == null) {
+				return null;
+			}
+			for (int p = 0; p < parsers.size(); p++) {
+				if (summaries[i] == BlockSummary.NO_CHUNK) {
+					data[p][i] = OverlayParser.NO_CHUNK;
+					continue;
+				}
+				try {
+					data[p][i] = ((BlockAmountParser) parsers.get(p)).parseValue(summaries[i]);
+				} catch (Exception ex) {
+					Debug.dumpException("failed to parse " + parsers.get(p).name() + " chunk data at index " + i, ex);
+				}
+			}
+		}
+		return data;
+	}
+
+	// returns the data of every chunk for every parser, in the order of the parsers. any of the files can be null.
+	// chunks that don't exist in any of the files have the value OverlayParser.NO_CHUNK.
+	public static int[][] parseData(RegionMCAFile regionMCAFile, PoiMCAFile poiMCAFile, EntitiesMCAFile entitiesMCAFile, List<OverlayParser> parsers) {
+		return parseData(regionMCAFile, poiMCAFile, entitiesMCAFile, parsers, null);
+	}
+
+	// if regionStamp describes the region file, block amounts are counted from the block summaries of the region, which
+	// are stored in the chunk index and only created for chunks that changed since they were stored last time.
+	public static int[][] parseData(RegionMCAFile regionMCAFile, PoiMCAFile poiMCAFile, EntitiesMCAFile entitiesMCAFile, List<OverlayParser> parsers, RegionStamp regionStamp) {
+		BlockSummary[] summaries = null;
+		if (regionMCAFile != null && regionStamp != null && usesBlockSummaries(parsers)) {
+			summaries = ChunkIndex.get(Config.getCacheDir()).writeBlocks(regionMCAFile.getLocation(), regionMCAFile, regionStamp);
+		}
+
+		int[][] data = new int[parsers.size()][1024];
 		for (int i = 0; i < 1024; i++) {
 			ChunkData chunkData = new ChunkData(
 					regionMCAFile == null ? null : regionMCAFile.getChunk(i),
 					poiMCAFile == null ? null : poiMCAFile.getChunk(i),
 					entitiesMCAFile == null ? null : entitiesMCAFile.getChunk(i));
-			try {
-				data[i] = chunkData.parseData(parser);
-			} catch (Exception ex) {
-				Debug.dumpException("failed to parse chunk data at index " + i, ex);
+			if (chunkData.getRegion() == null && chunkData.getPoi() == null && chunkData.getEntities() == null) {
+				for (int p = 0; p < parsers.size(); p++) {
+					data[p][i] = OverlayParser.NO_CHUNK;
+				}
+				continue;
+			}
+			for (int p = 0; p < parsers.size(); p++) {
+				try {
+					if (summaries != null && summaries[i] != null && parsers.get(p) instanceof BlockAmountParser) {
+						data[p][i] = ((BlockAmountParser) parsers.get(p)).parseValue(summaries[i]);
+						continue;
+					}
+					data[p][i] = chunkData.parseData(parsers.get(p));
+				} catch (Exception ex) {
+					Debug.dumpException("failed to parse " + parsers.get(p).name() + " chunk data at index " + i, ex);
+				}
 			}
 		}
-
-		dataCallback.accept(data, world);
-		setLoading(tile, false);
-
-		Debug.dumpf("took %s to load and parse data for region %s", t, getRegionDirectories().getLocation());
+		return data;
 	}
 
 	@Override
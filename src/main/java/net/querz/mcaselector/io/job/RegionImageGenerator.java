@@ -1,24 +1,25 @@
 package net.querz.mcaselector.io.job;
 
-import javafx.embed.swing.SwingFXUtils;
-import javafx.scene.image.Image;
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.io.CacheHelper;
 import net.querz.mcaselector.io.FileHelper;
 import net.querz.mcaselector.io.ImageHelper;
 import net.querz.mcaselector.io.MCAFilePipe;
 import net.querz.mcaselector.io.RegionDirectories;
+import net.querz.mcaselector.io.RegionStamp;
+import net.querz.mcaselector.io.TileCacheStore;
 import net.querz.mcaselector.io.mca.RegionMCAFile;
 import net.querz.mcaselector.tiles.Tile;
+import net.querz.mcaselector.tiles.TileEdges;
 import net.querz.mcaselector.tiles.TileImage;
 import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.progress.Progress;
 import net.querz.mcaselector.progress.Timer;
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -31,11 +32,26 @@ public class RegionImageGenerator {
 	private static final Set<Point2i> loading = ConcurrentHashMap.newKeySet();
 	private static final Set<Point2i> saving = ConcurrentHashMap.newKeySet();
 	private static final Map<Point2i, Runnable> onSaved = new ConcurrentHashMap<>();
+	private static volatile BiConsumer<Point2i, UUID> onCacheUpdated;
+	private static volatile BiConsumer<Point2i, UUID> onImageCached;
+	private static volatile RegionLoadedAction onRegionLoaded;
+	// serializes reading and patching the edges of neighbouring regions
+	private static final Object edgeLock = new Object();
 
 	private RegionImageGenerator() {}
 
-	public static void generate(Tile tile, UUID world, BiConsumer<Image, UUID> callback, Supplier<Float> scaleSupplier, boolean scaleOnly, Progress progressChannel) {
-		MCAFilePipe.addJob(new MCAImageLoadJob(tile, world, callback, scaleSupplier, scaleOnly, progressChannel));
+	public static void generate(Tile tile, UUID world, BiConsumer<int[], UUID> callback, Supplier<Float> scaleSupplier, boolean scaleOnly, Progress progressChannel) {
+		generate(tile, world, callback, null, scaleSupplier, scaleOnly, progressChannel);
+	}
+
+	// onFailed is called instead of callback if the job is cancelled or fails with an unexpected exception
+	public static void generate(Tile tile, UUID world, BiConsumer<int[], UUID> callback, Runnable onFailed, Supplier<Float> scaleSupplier, boolean scaleOnly, Progress progressChannel) {
+		MCAFilePipe.addJob(new MCAImageLoadJob(tile, world, callback, onFailed, scaleSupplier, scaleOnly, progressChannel));
+	}
+
+	// scales an already cached image of a region down to the zoom level supplied by scaleSupplier without reading the region file
+	public static void generateFromCache(Tile tile, UUID world, int cachedZoomLevel, Supplier<Float> scaleSupplier, Progress progressChannel) {
+		MCAFilePipe.addJob(new CachedImageLoadJob(tile, world, cachedZoomLevel, scaleSupplier, progressChannel));
 	}
 
 	public static boolean isLoading(Tile tile) {
@@ -59,7 +75,11 @@ public class RegionImageGenerator {
 	}
 
 	public static boolean isSaving(Tile tile) {
-		return saving.contains(tile.getLocation());
+		return isSaving(tile.getLocation());
+	}
+
+	public static boolean isSaving(Point2i region) {
+		return saving.contains(region);
 	}
 
 	public static void setOnSaved(Tile tile, Runnable action) {
@@ -70,20 +90,162 @@ public class RegionImageGenerator {
 		return onSaved.containsKey(tile.getLocation());
 	}
 
+	// called with a region and its world when cached images of the region were changed without regenerating them
+	public static void setOnCacheUpdated(BiConsumer<Point2i, UUID> action) {
+		onCacheUpdated = action;
+	}
+
+	// called with a region and its world when the images of the region were rendered and written to the cache
+	public static void setOnImageCached(BiConsumer<Point2i, UUID> action) {
+		onImageCached = action;
+	}
+
+	public interface RegionLoadedAction {
+
+		void accept(Point2i region, RegionMCAFile mcaFile, RegionStamp stamp, UUID world);
+	}
+
+	// called with the loaded region file of a region while its image is rendered, so other data can be taken from it
+	// without reading the file again. the action runs before the image is handed to its callback, so it should only
+	// hand the region file to another thread. it must not modify the region file.
+	public static void setOnRegionLoaded(RegionLoadedAction action) {
+		onRegionLoaded = action;
+	}
+
+	private static TileEdges[] loadNeighbourEdges(UUID world, Point2i region) {
+		TileEdges[] neighbours = new TileEdges[4];
+		if (!Config.shade()) {
+			return neighbours;
+		}
+		TileCacheStore store = getStore(world);
+		for (int side = 0; side < 4; side++) {
+			Point2i neighbour = TileEdges.getNeighbour(region, side);
+			try {
+				byte[] data = store.read(TileCacheStore.EDGES, neighbour);
+				if (data != null) {
+					neighbours[side] = TileEdges.read(data);
+				}
+			} catch (IOException ex) {
+				Debug.dumpException("failed to read edges of " + neighbour, ex);
+			}
+		}
+		return neighbours;
+	}
+
+	// saves the edges of a region and shades the borders between it and its cached neighbours again
+	// where one of them was rendered before the other one existed in the cache or before the region changed.
+	private static void saveEdges(UUID world, Point2i region, TileEdges edges) {
+		synchronized (edgeLock) {
+			TileCacheStore store = getStore(world);
+			TileEdges previous = null;
+			try {
+				byte[] previousData = store.read(TileCacheStore.EDGES, region);
+				if (previousData != null) {
+					previous = TileEdges.read(previousData);
+				}
+			} catch (IOException ex) {
+				Debug.dumpException("failed to read previous edges of " + region, ex);
+			}
+
+			for (int side = 0; side < 4; side++) {
+				Point2i neighbour = TileEdges.getNeighbour(region, side);
+				int facing = TileEdges.opposite(side);
+
+				try {
+					byte[] neighbourData = store.read(TileCacheStore.EDGES, neighbour);
+					if (neighbourData == null) {
+						continue;
+					}
+					TileEdges neighbourEdges = TileEdges.read(neighbourData);
+					if (neighbourEdges == null) {
+						continue;
+					}
+
+					// the neighbour was rendered before this region, or with a previous version of it
+					if (!neighbourEdges.isSeamless(facing) || previous != null) {
+						short[] oldHeights = neighbourEdges.isSeamless(facing) ? previous.getOuterHeights(side) : null;
+						shadeBorder(store, world, neighbour, neighbourEdges, facing, oldHeights, edges.getOuterHeights(side));
+						store.write(TileCacheStore.EDGES, neighbour, neighbourEdges.write());
+					}
+
+					// the neighbour was rendered while this region was rendered
+					if (!edges.isSeamless(side)) {
+						shadeBorder(store, world, region, edges, side, null, neighbourEdges.getOuterHeights(facing));
+					}
+				} catch (IOException ex) {
+					Debug.dumpException("failed to shade border between " + region + " and " + neighbour, ex);
+				}
+			}
+
+			try {
+				store.write(TileCacheStore.EDGES, region, edges.write());
+			} catch (IOException ex) {
+				Debug.dumpException("failed to write edges of " + region, ex);
+			}
+		}
+	}
+
+	// shades the border of a side of all cached images of a region again, which was shaded with oldHeights
+	// of the neighbour facing it, or without neighbour if oldHeights is null
+	private static void shadeBorder(TileCacheStore store, UUID world, Point2i region, TileEdges edges, int side, short[] oldHeights, short[] neighbourHeights) throws IOException {
+		int[] oldLine = edges.shadeSide(side, oldHeights);
+		int[] newLine = edges.shadeSide(side, neighbourHeights);
+		edges.setSeamless(side, neighbourHeights);
+		if (Arrays.equals(oldLine, newLine)) {
+			return;
+		}
+
+		for (int i = Config.getMinZoomLevel(); i <= Config.getMaxZoomLevel(); i *= 2) {
+			byte[] data = store.read(i, region);
+			if (data == null) {
+				continue;
+			}
+			int size = Tile.SIZE / i;
+			int[] image = ImageHelper.readCacheImage(data);
+			if (image.length != size * size) {
+				continue;
+			}
+			TileEdges.patchSide(image, size, side, oldLine, newLine);
+			store.write(i, region, ImageHelper.encodeCacheImage(image, size));
+		}
+		Debug.dumpf("shaded border of %s on side %d", region, side);
+
+		BiConsumer<Point2i, UUID> action = onCacheUpdated;
+		if (action != null) {
+			action.accept(region, world);
+		}
+	}
+
+	private static void failed(Runnable onFailed) {
+		if (onFailed != null) {
+			onFailed.run();
+		}
+	}
+
+	// the cache dir of the current world can be overridden, e.g. by the output of the headless cache mode
+	private static TileCacheStore getStore(UUID world) {
+		if (world.equals(Config.getWorldUUID())) {
+			return TileCacheStore.get(Config.getCacheDir());
+		}
+		return TileCacheStore.get(Config.getCacheDirForWorldUUID(world));
+	}
+
 	public static class MCAImageLoadJob extends LoadDataJob {
 
 		private final Tile tile;
 		private final UUID world;
-		private final BiConsumer<Image, UUID> callback;
+		private final BiConsumer<int[], UUID> callback;
+		private final Runnable onFailed;
 		private final Supplier<Float> scaleSupplier;
 		private final boolean scaleOnly;
 		private final Progress progressChannel;
 
-		private MCAImageLoadJob(Tile tile, UUID world, BiConsumer<Image, UUID> callback, Supplier<Float> scaleSupplier, boolean scaleOnly, Progress progressChannel) {
+		private MCAImageLoadJob(Tile tile, UUID world, BiConsumer<int[], UUID> callback, Runnable onFailed, Supplier<Float> scaleSupplier, boolean scaleOnly, Progress progressChannel) {
 			super(new RegionDirectories(tile.getLocation(), null, null, null));
 			this.tile = tile;
 			this.world = world;
 			this.callback = callback;
+			this.onFailed = onFailed;
 			this.scaleSupplier = scaleSupplier;
 			this.scaleOnly = scaleOnly;
 			this.progressChannel = progressChannel;
@@ -91,9 +253,17 @@ public class RegionImageGenerator {
 
 		@Override
 		public void execute() {
-			byte[] data = load(tile.getMCAFile());
-			if (data != null) {
-				MCAFilePipe.executeProcessData(new MCAImageProcessJob(tile.getMCAFile(), data, tile, world, callback, scaleSupplier, scaleOnly, progressChannel));
+			// stat the file before reading it, so a change while reading makes the stamp outdated instead of the image
+			try {
+				RegionStamp stamp = RegionStamp.of(tile.getMCAFile());
+				byte[] data = load(tile.getMCAFile());
+				if (data != null) {
+					MCAFilePipe.executeProcessData(new MCAImageProcessJob(tile.getMCAFile(), data, stamp, tile, world, callback, onFailed, scaleSupplier, scaleOnly, progressChannel));
+					return;
+				}
+			} catch (RuntimeException ex) {
+				Debug.dumpException("failed to load region file of " + tile.getLocation(), ex);
+				failed(onFailed);
 				return;
 			}
 			callback.accept(null, world);
@@ -105,6 +275,7 @@ public class RegionImageGenerator {
 		@Override
 		public void cancel() {
 			setLoading(tile, false);
+			failed(onFailed);
 		}
 
 		public Tile getTile() {
@@ -115,19 +286,23 @@ public class RegionImageGenerator {
 	private static class MCAImageProcessJob extends ProcessDataJob {
 
 		private final File file;
+		private final RegionStamp stamp;
 		private final Tile tile;
 		private final UUID world;
-		private final BiConsumer<Image, UUID> callback;
+		private final BiConsumer<int[], UUID> callback;
+		private final Runnable onFailed;
 		private final Supplier<Float> scaleSupplier;
 		private final boolean scaleOnly;
 		private final Progress progressChannel;
 
-		private MCAImageProcessJob(File file, byte[] data, Tile tile, UUID world, BiConsumer<Image, UUID> callback, Supplier<Float> scaleSupplier, boolean scaleOnly, Progress progressChannel) {
+		private MCAImageProcessJob(File file, byte[] data, RegionStamp stamp, Tile tile, UUID world, BiConsumer<int[], UUID> callback, Runnable onFailed, Supplier<Float> scaleSupplier, boolean scaleOnly, Progress progressChannel) {
 			super(new RegionDirectories(tile.getLocation(), null, null, null), data, null, null);
 			this.file = file;
+			this.stamp = stamp;
 			this.tile = tile;
 			this.world = world;
 			this.callback = callback;
+			this.onFailed = onFailed;
 			this.scaleSupplier = scaleSupplier;
 			this.scaleOnly = scaleOnly;
 			this.progressChannel = progressChannel;
@@ -142,21 +317,25 @@ public class RegionImageGenerator {
 			File file = tile.getMCAFile();
 			ByteArrayPointer ptr = new ByteArrayPointer(getRegionData());
 			RegionMCAFile mcaFile = new RegionMCAFile(file);
-			Image image = null;
+			int[] image = null;
+			TileEdges edges = null;
 			try {
 				mcaFile.load(ptr);
 				Debug.dumpf("took %s to read mca file %s", t, mcaFile.getFile().getName());
 
 				t.reset();
 
-				image = TileImage.generateImage(tile, world, callback, scaleSupplier, mcaFile);
+				edges = Config.shade() ? new TileEdges() : null;
+				image = TileImage.createMCAImage(mcaFile, loadNeighbourEdges(world, tile.getLocation()), edges);
+
+				RegionLoadedAction action = onRegionLoaded;
+				if (image != null && action != null) {
+					action.accept(tile.getLocation(), mcaFile, stamp, world);
+				}
 
 				if (image != null) {
-					BufferedImage img = SwingFXUtils.fromFXImage(image, null);
 					int zoomLevel = Tile.getZoomLevel(scaleSupplier.get());
-					BufferedImage scaled = ImageHelper.scaleImage(img, (double) Tile.SIZE / zoomLevel);
-					Image scaledImage = SwingFXUtils.toFXImage(scaled, null);
-					callback.accept(scaledImage, world);
+					callback.accept(ImageHelper.scaleImage(image, Tile.SIZE, Tile.SIZE / zoomLevel), world);
 				} else {
 					callback.accept(null, world);
 				}
@@ -165,12 +344,16 @@ public class RegionImageGenerator {
 			} catch (IOException ex) {
 				Debug.errorf("failed to read mca file header from %s", file);
 				callback.accept(null, world);
+			} catch (RuntimeException ex) {
+				Debug.dumpException("failed to generate image for " + tile.getLocation(), ex);
+				failed(onFailed);
+				image = null;
 			}
 
 
 			if (image != null) {
 				setSaving(tile, true);
-				MCAFilePipe.executeSaveData(new MCAImageSaveCacheJob(image, mcaFile, tile, world, scaleSupplier, scaleOnly, progressChannel));
+				MCAFilePipe.executeSaveData(new MCAImageSaveCacheJob(image, 1, edges, stamp, tile, world, scaleSupplier, scaleOnly, progressChannel));
 			} else {
 				if (progressChannel != null) {
 					progressChannel.incrementProgress(FileHelper.createMCAFileName(tile.getLocation()));
@@ -181,6 +364,7 @@ public class RegionImageGenerator {
 		@Override
 		public void cancel() {
 			setLoading(tile, false);
+			failed(onFailed);
 		}
 
 		public Tile getTile() {
@@ -188,19 +372,96 @@ public class RegionImageGenerator {
 		}
 	}
 
-	private static class MCAImageSaveCacheJob extends SaveDataJob<Image> {
+	private static class CachedImageLoadJob extends LoadDataJob {
 
 		private final Tile tile;
-		private final RegionMCAFile mcaFile;
+		private final UUID world;
+		private final int cachedZoomLevel;
+		private final Supplier<Float> scaleSupplier;
+		private final Progress progressChannel;
+
+		private CachedImageLoadJob(Tile tile, UUID world, int cachedZoomLevel, Supplier<Float> scaleSupplier, Progress progressChannel) {
+			super(new RegionDirectories(tile.getLocation(), null, null, null));
+			this.tile = tile;
+			this.world = world;
+			this.cachedZoomLevel = cachedZoomLevel;
+			this.scaleSupplier = scaleSupplier;
+			this.progressChannel = progressChannel;
+		}
+
+		@Override
+		public void execute() {
+			byte[] data = null;
+			try {
+				data = getStore(world).read(cachedZoomLevel, tile.getLocation());
+			} catch (IOException ex) {
+				Debug.dumpException("failed to read cached image of " + tile.getLocation(), ex);
+			}
+			if (data != null) {
+				MCAFilePipe.executeProcessData(new CachedImageProcessJob(data, tile, world, cachedZoomLevel, scaleSupplier, progressChannel));
+				return;
+			}
+			if (progressChannel != null) {
+				progressChannel.incrementProgress(FileHelper.createMCAFileName(tile.getLocation()));
+			}
+		}
+	}
+
+	private static class CachedImageProcessJob extends ProcessDataJob {
+
+		private final Tile tile;
+		private final UUID world;
+		private final int cachedZoomLevel;
+		private final Supplier<Float> scaleSupplier;
+		private final Progress progressChannel;
+
+		private CachedImageProcessJob(byte[] data, Tile tile, UUID world, int cachedZoomLevel, Supplier<Float> scaleSupplier, Progress progressChannel) {
+			super(new RegionDirectories(tile.getLocation(), null, null, null), data, null, null);
+			this.tile = tile;
+			this.world = world;
+			this.cachedZoomLevel = cachedZoomLevel;
+			this.scaleSupplier = scaleSupplier;
+			this.progressChannel = progressChannel;
+		}
+
+		@Override
+		public void execute() {
+			int[] image = null;
+			try {
+				image = ImageHelper.readCacheImage(getRegionData());
+			} catch (IOException ex) {
+				Debug.dumpException("failed to read cached image of " + tile.getLocation(), ex);
+			}
+
+			int size = Tile.SIZE / cachedZoomLevel;
+			if (image != null && image.length == size * size) {
+				setSaving(tile, true);
+				MCAFilePipe.executeSaveData(new MCAImageSaveCacheJob(image, cachedZoomLevel, null, null, tile, world, scaleSupplier, true, progressChannel));
+			} else if (progressChannel != null) {
+				progressChannel.incrementProgress(FileHelper.createMCAFileName(tile.getLocation()));
+			}
+		}
+	}
+
+	private static class MCAImageSaveCacheJob extends SaveDataJob<int[]> {
+
+		private final Tile tile;
+		private final int dataZoomLevel;
+		private final TileEdges edges;
+		private final RegionStamp stamp;
 		private final UUID world;
 		private final Supplier<Float> scaleSupplier;
 		private final boolean scaleOnly;
 		private final Progress progressChannel;
 
-		private MCAImageSaveCacheJob(Image data, RegionMCAFile mcaFile, Tile tile, UUID world, Supplier<Float> scaleSupplier, boolean scaleOnly, Progress progressChannel) {
+		// dataZoomLevel is the zoom level of the image in data, the cache can only be written for the same or higher zoom levels.
+		// stamp is null if the image was created from another cached image, which is as recent as the other cached images.
+		private MCAImageSaveCacheJob(int[] data, int dataZoomLevel, TileEdges edges, RegionStamp stamp, Tile tile, UUID world, Supplier<Float> scaleSupplier, boolean scaleOnly, Progress progressChannel) {
 			super(new RegionDirectories(tile.getLocation(), null, null, null), data);
 			this.tile = tile;
-			this.mcaFile = mcaFile;
+			this.dataZoomLevel = dataZoomLevel;
+			this.edges = edges;
+			this.stamp = stamp;
 			this.world = world;
 			this.scaleSupplier = scaleSupplier;
 			this.scaleOnly = scaleOnly;
@@ -213,36 +474,51 @@ public class RegionImageGenerator {
 
 			//save image to cache
 			try {
-				BufferedImage img = SwingFXUtils.fromFXImage(getData(), null);
-				if (scaleOnly) {
-					int zoomLevel = Tile.getZoomLevel(scaleSupplier.get());
-					File cacheFile = FileHelper.createPNGFilePath(Config.getCacheDirForWorldUUID(world, zoomLevel), tile.getLocation());
-					if (!cacheFile.getParentFile().exists() && !cacheFile.getParentFile().mkdirs()) {
-						Debug.errorf("failed to create cache directory for %s", cacheFile.getAbsolutePath());
+				TileCacheStore store = getStore(world);
+				if (stamp != null) {
+					// remove the images of other zoom levels that were created from a different version of the region file
+					byte[] oldStamp = store.read(TileCacheStore.STAMP, tile.getLocation());
+					RegionStamp old = oldStamp == null ? null : RegionStamp.read(oldStamp);
+					if (old == null || !old.matches(stamp)) {
+						CacheHelper.invalidate(store, tile.getLocation());
 					}
+				}
 
-					BufferedImage scaled = ImageHelper.scaleImage(img, (double) Tile.SIZE / (double) zoomLevel);
-					Debug.dumpf("writing cache file %s", cacheFile.getAbsolutePath());
-					ImageIO.write(scaled, "png", cacheFile);
-
+				int[] img = getData();
+				if (scaleOnly) {
+					int zoomLevel = Tile.getZoomLevel(scaleSupplier.get());
+					writeCacheFile(ImageHelper.scaleImage(img, Tile.SIZE / dataZoomLevel, Tile.SIZE / zoomLevel), zoomLevel);
 				} else {
+					// every zoom level is halved from the previous one instead of scaling the full image again
+					int imgZoomLevel = dataZoomLevel;
 					for (int i = Config.getMinZoomLevel(); i <= Config.getMaxZoomLevel(); i *= 2) {
-						File cacheFile = FileHelper.createPNGFilePath(Config.getCacheDirForWorldUUID(world, i), tile.getLocation());
-						if (!cacheFile.getParentFile().exists() && !cacheFile.getParentFile().mkdirs()) {
-							Debug.errorf("failed to create cache directory for %s", cacheFile.getAbsolutePath());
+						if (i < dataZoomLevel) {
+							continue;
 						}
-
-						BufferedImage scaled = ImageHelper.scaleImage(img, (double) Tile.SIZE / (double) i);
-						Debug.dumpf("writing cache file %s", cacheFile.getAbsolutePath());
-						ImageIO.write(scaled, "png", cacheFile);
+						img = ImageHelper.scaleImage(img, Tile.SIZE / imgZoomLevel, Tile.SIZE / i);
+						imgZoomLevel = i;
+						writeCacheFile(img, i);
 					}
 				}
+
+				if (stamp != null) {
+					store.write(TileCacheStore.STAMP, tile.getLocation(), stamp.write());
+				}
 			} catch (IOException ex) {
 				Debug.dumpException("failed to save images to cache for " + tile.getLocation(), ex);
 			}
 
+			if (edges != null) {
+				saveEdges(world, tile.getLocation(), edges);
+			}
+
 			setSaving(tile, false);
 
+			BiConsumer<Point2i, UUID> action = onImageCached;
+			if (action != null) {
+				action.accept(tile.getLocation(), world);
+			}
+
 			Runnable r = onSaved.get(tile.getLocation());
 			if (r != null) {
 				r.run();
@@ -253,7 +529,12 @@ public class RegionImageGenerator {
 				progressChannel.incrementProgress(FileHelper.createMCAFileName(tile.getLocation()));
 			}
 
-			Debug.dumpf("took %s to cache image of %s to %s", t, tile.getMCAFile().getName(), FileHelper.createPNGFileName(tile.getLocation()));
+			Debug.dumpf("took %s to cache image of %s", t, tile.getMCAFile().getName());
+		}
+
+		private void writeCacheFile(int[] img, int zoomLevel) throws IOException {
+			Debug.dumpf("writing cache image %d/%s", zoomLevel, tile.getLocation());
+			getStore(world).write(zoomLevel, tile.getLocation(), ImageHelper.encodeCacheImage(img, Tile.SIZE / zoomLevel));
 		}
 
 		@Override
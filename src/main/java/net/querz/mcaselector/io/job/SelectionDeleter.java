@@ -1,11 +1,13 @@
 package net.querz.mcaselector.io.job;
 
+import net.querz.mcaselector.Config;
 import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.io.FileHelper;
 import net.querz.mcaselector.io.MCAFilePipe;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.SelectionData;
 import net.querz.mcaselector.io.SelectionHelper;
+import net.querz.mcaselector.io.db.ChunkIndex;
 import net.querz.mcaselector.io.mca.Region;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.progress.Progress;
@@ -135,6 +137,8 @@ public class SelectionDeleter {
 			Timer t = new Timer();
 			try {
 				getData().deFragment();
+				// only the headers were loaded, so the region is indexed again when it is filtered the next time
+				ChunkIndex.get(Config.getCacheDir()).invalidate(getRegionDirectories().getLocation());
 			} catch (Exception ex) {
 				Debug.dumpException("failed to delete selected chunks from " + getRegionDirectories().getLocationAsFileName(), ex);
 			}
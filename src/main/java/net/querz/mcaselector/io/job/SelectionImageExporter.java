@@ -1,27 +1,24 @@
 package net.querz.mcaselector.io.job;
 
-import javafx.embed.swing.SwingFXUtils;
-import javafx.scene.image.Image;
-import javafx.scene.image.PixelFormat;
-import javafx.scene.image.PixelReader;
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.io.ByteArrayPointer;
 import net.querz.mcaselector.io.FileHelper;
 import net.querz.mcaselector.io.ImageHelper;
 import net.querz.mcaselector.io.MCAFilePipe;
+import net.querz.mcaselector.io.PixelBufferPool;
 import net.querz.mcaselector.io.RegionDirectories;
 import net.querz.mcaselector.io.SelectionData;
 import net.querz.mcaselector.io.SelectionHelper;
 import net.querz.mcaselector.io.SelectionInfo;
+import net.querz.mcaselector.io.TileCacheStore;
 import net.querz.mcaselector.io.mca.RegionMCAFile;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.progress.Progress;
 import net.querz.mcaselector.tiles.OverlayPool;
 import net.querz.mcaselector.tiles.Tile;
 import net.querz.mcaselector.tiles.TileImage;
-import java.awt.*;
-import java.awt.image.BufferedImage;
+import net.querz.mcaselector.ui.Color;
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
@@ -97,14 +94,23 @@ public class SelectionImageExporter {
 
 		@Override
 		public void execute() {
-			Image image = null;
+			int[] image = null;
 
 			// test if the image is already in cache
-			File cacheImage = FileHelper.createPNGFilePath(Config.getCacheDir(), 1, region);
 			File regionFile = FileHelper.createRegionMCAFilePath(region);
-			if (cacheImage.exists()) {
+			byte[] cacheImage = null;
+			try {
+				cacheImage = TileCacheStore.get(Config.getCacheDir()).read(1, region);
+			} catch (IOException ex) {
+				Debug.dumpException("failed to read cached image of " + region, ex);
+			}
+			if (cacheImage != null) {
 				// load cached image
-				image = new Image(cacheImage.toURI().toString(), false);
+				try {
+					image = ImageHelper.readCacheImage(cacheImage, PixelBufferPool::take);
+				} catch (IOException ex) {
+					Debug.dumpException("failed to decode cached image of " + region, ex);
+				}
 			} else if (regionFile.exists()) {
 				// generate image from region file
 
@@ -125,18 +131,16 @@ public class SelectionImageExporter {
 				image = TileImage.createMCAImage(mcaFile);
 			}
 
-			if (image == null) {
+			if (image == null || image.length != Tile.PIXELS) {
+				PixelBufferPool.release(image);
 				progressChannel.incrementProgress(regionFile.getName());
 				return;
 			}
 
-			Image overlay = null;
+			int[] overlay = null;
 			if (overlayPool != null && overlayPool.getParser() != null) {
-				// load overlay image
-				overlay = overlayPool.getImage(region);
-				// scale up
-				BufferedImage scaled = ImageHelper.scaleImage(SwingFXUtils.fromFXImage(overlay, null), 512);
-				overlay = SwingFXUtils.toFXImage(scaled, null);
+				// load overlay colors, one per chunk
+				overlay = overlayPool.getColors(region);
 			}
 
 			MCAFilePipe.executeProcessData(new ExportSelectionImageProcessJob(region, chunks, image, overlay, selectionInfo, pixels, progressChannel));
@@ -150,10 +154,10 @@ public class SelectionImageExporter {
 		private final Set<Point2i> chunks;
 		private final SelectionInfo selectionInfo;
 		private final Progress progressChannel;
-		private final Image source;
-		private final Image overlay;
+		private final int[] source;
+		private final int[] overlay;
 
-		public ExportSelectionImageProcessJob(Point2i region, Set<Point2i> chunks, Image source, Image overlay, SelectionInfo selectionInfo, int[] pixels, Progress progressChannel) {
+		public ExportSelectionImageProcessJob(Point2i region, Set<Point2i> chunks, int[] source, int[] overlay, SelectionInfo selectionInfo, int[] pixels, Progress progressChannel) {
 			super(new RegionDirectories(region, null, null, null), null, null, null);
 			this.pixels = pixels;
 			this.chunks = chunks;
@@ -165,40 +169,26 @@ public class SelectionImageExporter {
 
 		@Override
 		public void execute() {
-			PixelReader pixelReader;
-
-			// if we have an overlay, merge it
-			if (overlay != null) {
-				BufferedImage sourceBuf = SwingFXUtils.fromFXImage(source, null);
-				Graphics2D graphics2D = sourceBuf.createGraphics();
-				AlphaComposite ac = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f);
-				BufferedImage overlayBuf = SwingFXUtils.fromFXImage(overlay, null);
-				graphics2D.setComposite(ac);
-				graphics2D.drawImage(overlayBuf, 0, 0, null);
-				pixelReader = SwingFXUtils.toFXImage(sourceBuf, null).getPixelReader();
-			} else {
-				 pixelReader = source.getPixelReader();
-			}
-
 			iterateChunks(chunks, getRegionDirectories().getLocation(), chunk -> {
 				Point2i relChunk = chunk.mod(32);
 				int x = relChunk.getX() >= 0 ? relChunk.getX() : (32 + relChunk.getX());
 				int z = relChunk.getZ() >= 0 ? relChunk.getZ() : (32 + relChunk.getZ());
 				Point2i relBlock = new Point2i(x, z).chunkToBlock();
 
-				int[] pixelData = new int[256];
-				pixelReader.getPixels(relBlock.getX(), relBlock.getZ(), Tile.CHUNK_SIZE, Tile.CHUNK_SIZE, PixelFormat.getIntArgbPreInstance(), pixelData, 0, Tile.CHUNK_SIZE);
+				// if we have an overlay, merge it
+				int overlayColor = overlay != null ? overlay[z * Tile.SIZE_IN_CHUNKS + x] : 0;
 
 				Point2i blockInSelection = selectionInfo.getPointInSelection(chunk).chunkToBlock();
 
 				for (int cx = 0; cx < Tile.CHUNK_SIZE; cx++) {
 					for (int cz = 0; cz < Tile.CHUNK_SIZE; cz++) {
-						int srcIndex = cz * Tile.CHUNK_SIZE + cx;
+						int srcIndex = (relBlock.getZ() + cz) * Tile.SIZE + relBlock.getX() + cx;
 						int dstIndex = (blockInSelection.getZ() + cz) * (int) selectionInfo.getWidth() * 16 + (blockInSelection.getX() + cx);
-						pixels[dstIndex] = pixelData[srcIndex];
+						pixels[dstIndex] = overlay != null ? Color.blend(source[srcIndex], overlayColor, 0.5f) : source[srcIndex];
 					}
 				}
 			});
+			PixelBufferPool.release(source);
 			progressChannel.incrementProgress(getRegionDirectories().getLocationAsFileName());
 		}
 	}
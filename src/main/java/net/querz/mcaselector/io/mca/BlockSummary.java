@@ -0,0 +1,146 @@
+package net.querz.mcaselector.io.mca;
+
+import net.querz.mcaselector.version.ChunkFilter;
+import net.querz.mcaselector.version.VersionController;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.ListTag;
+import net.querz.nbt.tag.LongArrayTag;
+import net.querz.nbt.tag.Tag;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import static net.querz.mcaselector.validation.ValidationHelper.withDefaultSilent;
+
+// the block names in the palettes of a chunk and the amount of blocks of every name, so palette filters and block
+// amounts can be answered without decoding the block states of the chunk again. names that are in a palette without
+// any block using them have an amount of 0. the results are the same as the ones of the ChunkFilter of the chunk.
+public final class BlockSummary {
+
+	// a chunk that doesn't exist in its region file
+	public static final BlockSummary NO_CHUNK = new BlockSummary(null);
+
+	// null if the chunk has no sections
+	private final Map<String, Integer> blocks;
+	// the names in the palettes of sections whose block states can't be decoded
+	private final Set<String> invalid;
+
+	public BlockSummary(Map<String, Integer> blocks) {
+		this(blocks, Collections.emptySet());
+	}
+
+	public BlockSummary(Map<String, Integer> blocks, Set<String> invalid) {
+		this.blocks = blocks;
+		this.invalid = invalid;
+	}
+
+	// returns null if the summary of the chunk can't be created, e.g. if its version doesn't use palettes
+	public static BlockSummary of(RegionChunk chunk) {
+		if (chunk == null) {
+			return NO_CHUNK;
+		}
+		if (chunk.isEmpty()) {
+			return new BlockSummary(null);
+		}
+		try {
+			ChunkFilter filter = VersionController.getChunkFilter(chunk.getData().getInt("DataVersion"));
+			return filter.getBlockSummary(chunk.getData());
+		} catch (Exception ex) {
+			return null;
+		}
+	}
+
+	// identifies the block data a summary was created from by the timestamp of the chunk and a hash of its sections,
+	// because editing a chunk doesn't update its timestamp.
+	public static long getKey(int timestamp, RegionChunk chunk) {
+		int hash = 0;
+		if (chunk != null && !chunk.isEmpty()) {
+			CompoundTag data = chunk.getData();
+			ListTag<CompoundTag> sections = withDefaultSilent(() -> data.getCompoundTag("Level").getListTag("Sections").asCompoundTagList(), null);
+			if (sections != null) {
+				for (CompoundTag section : sections) {
+					hash = 31 * hash + Objects.hashCode(section.get("Palette"));
+					Tag<?> blockStates = section.get("BlockStates");
+					hash = 31 * hash + (blockStates instanceof LongArrayTag ? Arrays.hashCode(((LongArrayTag) blockStates).getValue()) : 0);
+				}
+			}
+		}
+		return (long) timestamp << 32 | hash & 0xFFFFFFFFL;
+	}
+
+	public Map<String, Integer> getBlocks() {
+		return blocks == null ? Collections.emptyMap() : blocks;
+	}
+
+	public Set<String> getInvalidBlocks() {
+		return invalid;
+	}
+
+	public boolean hasSections() {
+		return blocks != null;
+	}
+
+	// returns true if ALL block names are present
+	public boolean matchBlockNames(Collection<String> names) {
+		if (blocks == null) {
+			return false;
+		}
+		for (String name : names) {
+			if (!blocks.containsKey(name)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// returns true if AT LEAST ONE block name is present
+	public boolean matchAnyBlockName(Collection<String> names) {
+		if (blocks == null) {
+			return false;
+		}
+		for (String name : names) {
+			if (blocks.containsKey(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public boolean paletteEquals(Collection<String> names) {
+		if (blocks == null) {
+			return false;
+		}
+		int size = blocks.size() - (blocks.containsKey("minecraft:air") ? 1 : 0);
+		if (size != names.size()) {
+			return false;
+		}
+		for (String name : names) {
+			if (name.equals("minecraft:air") || !blocks.containsKey(name)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// throws an exception if the blocks of a name can't be counted, like the ChunkFilter does
+	public int getBlockAmount(String[] names) {
+		if (blocks == null) {
+			return 0;
+		}
+		int result = 0;
+		Set<String> counted = new HashSet<>();
+		for (String name : names) {
+			if (invalid.contains(name)) {
+				throw new IllegalStateException("invalid block states in a section containing " + name);
+			}
+			Integer amount = blocks.get(name);
+			if (amount != null && counted.add(name)) {
+				result += amount;
+			}
+		}
+		return result;
+	}
+}
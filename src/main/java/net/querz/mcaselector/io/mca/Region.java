@@ -377,17 +377,12 @@ public class Region {
 		Set<Point2i> chunks = new HashSet<>();
 
 		for (int i = 0; i < 1024; i++) {
-			RegionChunk region = this.region.getChunk(i);
-			EntitiesChunk entities = this.entities == null ? null : this.entities.getChunk(i);
-			PoiChunk poi = this.poi == null ? null : this.poi.getChunk(i);
-
-			if (region == null || region.isEmpty()) {
+			ChunkData filterData = getFilterData(i);
+			if (filterData == null) {
 				continue;
 			}
 
-			ChunkData filterData = new ChunkData(this.region.getTimestamp(i), region, poi, entities);
-
-			Point2i location = region.getAbsoluteLocation();
+			Point2i location = filterData.getRegion().getAbsoluteLocation();
 			try {
 				if (filter.matches(filterData)) {
 					if (location == null) {
@@ -404,6 +399,17 @@ public class Region {
 		return chunks;
 	}
 
+	// returns the data of a chunk like it is passed to filters, or null if the chunk doesn't exist
+	public ChunkData getFilterData(int index) {
+		RegionChunk region = this.region.getChunk(index);
+		if (region == null || region.isEmpty()) {
+			return null;
+		}
+		EntitiesChunk entities = this.entities == null ? null : this.entities.getChunk(index);
+		PoiChunk poi = this.poi == null ? null : this.poi.getChunk(index);
+		return new ChunkData(this.region.getTimestamp(index), region, poi, entities);
+	}
+
 	public void applyFieldChanges(List<Field<?>> fields, boolean force, Set<Point2i> selection) {
 		Timer t = new Timer();
 		for (int x = 0; x < 32; x++) {
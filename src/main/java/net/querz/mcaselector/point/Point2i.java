@@ -16,6 +16,12 @@ public class Point2i implements Cloneable, Serializable {
 		this.z = z;
 	}
 
+	// the inverse of asLong()
+	public Point2i(long l) {
+		this.x = (int) (l >> 32);
+		this.z = (int) l;
+	}
+
 	public int getX() {
 		return x;
 	}
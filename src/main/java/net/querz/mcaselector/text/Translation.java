@@ -69,6 +69,7 @@ public enum Translation {
 	DIALOG_SETTINGS_READ_THREADS("dialog.settings.read_threads"),
 	DIALOG_SETTINGS_PROCESS_THREADS("dialog.settings.process_threads"),
 	DIALOG_SETTINGS_WRITE_THREADS("dialog.settings.write_threads"),
+	DIALOG_SETTINGS_PARSE_THREADS("dialog.settings.parse_threads"),
 	DIALOG_SETTINGS_MAX_FILES("dialog.settings.max_files"),
 	DIALOG_SETTINGS_REGION_COLOR("dialog.settings.region_color"),
 	DIALOG_SETTINGS_CHUNK_COLOR("dialog.settings.chunk_color"),
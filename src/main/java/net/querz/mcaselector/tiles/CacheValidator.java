@@ -0,0 +1,93 @@
+package net.querz.mcaselector.tiles;
+
+import javafx.application.Platform;
+import net.querz.mcaselector.Config;
+import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.io.CacheHelper;
+import net.querz.mcaselector.io.FileHelper;
+import net.querz.mcaselector.io.TileCacheStore;
+import net.querz.mcaselector.io.WorldDirectories;
+import net.querz.mcaselector.io.job.RegionImageGenerator;
+import net.querz.mcaselector.point.Point2i;
+import net.querz.mcaselector.progress.Timer;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// compares the cached images of the current world with their region files in the background and removes
+// the images of regions that changed, so only those are rendered again while the world is open.
+public class CacheValidator {
+
+	private final TileMap tileMap;
+
+	private final ScheduledThreadPoolExecutor validator = new ScheduledThreadPoolExecutor(1);
+	private ScheduledFuture<?> task;
+
+	public CacheValidator(TileMap tileMap) {
+		this.tileMap = tileMap;
+	}
+
+	// validates the cache of the current world now and then every Config.getCacheValidationInterval() seconds
+	public void start() {
+		if (task != null) {
+			task.cancel(false);
+			task = null;
+		}
+		int interval = Config.getCacheValidationInterval();
+		if (interval <= 0) {
+			return;
+		}
+		task = validator.scheduleWithFixedDelay(this::validate, 0, interval, TimeUnit.SECONDS);
+	}
+
+	private void validate() {
+		UUID world = Config.getWorldUUID();
+		File cacheDir = Config.getCacheDir();
+		WorldDirectories worldDirs = Config.getWorldDirs();
+		if (world == null || cacheDir == null || worldDirs == null) {
+			return;
+		}
+
+		try {
+			Timer t = new Timer();
+			TileCacheStore store = TileCacheStore.get(cacheDir);
+			List<Point2i> outdated = new ArrayList<>();
+			for (Point2i region : store.getRegions()) {
+				// the stamp of a region that is being saved is written after its images
+				if (RegionImageGenerator.isSaving(region)) {
+					continue;
+				}
+				File regionFile = new File(worldDirs.getRegion(), FileHelper.createMCAFileName(region));
+				if (!CacheHelper.isUpToDate(store, getCachedZoomLevel(store, region), region, regionFile)) {
+					CacheHelper.invalidate(store, region);
+					outdated.add(region);
+				}
+			}
+			Debug.dumpf("took %s to validate cache of %s, %d regions changed", t, world, outdated.size());
+
+			if (!outdated.isEmpty()) {
+				Platform.runLater(() -> {
+					if (world.equals(Config.getWorldUUID())) {
+						tileMap.reloadTiles(outdated);
+					}
+				});
+			}
+		} catch (Exception ex) {
+			Debug.dumpException("failed to validate cache of " + world, ex);
+		}
+	}
+
+	// the lowest cached zoom level, which is only used for images cached without stamp
+	private static int getCachedZoomLevel(TileCacheStore store, Point2i region) {
+		for (int i = Config.getMinZoomLevel(); i <= Config.getMaxZoomLevel(); i *= 2) {
+			if (store.exists(i, region)) {
+				return i;
+			}
+		}
+		return Config.getMinZoomLevel();
+	}
+}
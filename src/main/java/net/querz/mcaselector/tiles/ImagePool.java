@@ -2,37 +2,58 @@ package net.querz.mcaselector.tiles;
 
 import javafx.application.Platform;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.debug.Debug;
-import net.querz.mcaselector.io.FileHelper;
+import net.querz.mcaselector.io.CacheHelper;
+import net.querz.mcaselector.io.ImageHelper;
+import net.querz.mcaselector.io.PixelBufferPool;
+import net.querz.mcaselector.io.TileCacheStore;
 import net.querz.mcaselector.io.job.RegionImageGenerator;
 import net.querz.mcaselector.point.Point2i;
-import java.io.File;
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public final class ImagePool {
 
-	private final Map<Integer, LinkedHashMap<Point2i, Image>> pool = new HashMap<>();
+	// images of all zoom levels in access order, the least recently used image comes first
+	private final LinkedHashMap<PoolKey, Image> pool = new LinkedHashMap<>(64, 0.75f, true);
 	private final Set<Point2i> noMCA = new HashSet<>();
 	private final TileMap tileMap;
 
-	private final double poolSize;
+	private long poolBytes = 0;
 
-	// poolSize is a percentage indicating the amount of images cached in relation to the visible region
-	public ImagePool(TileMap tileMap, double poolSize) {
-		// initialize pool
-		int maxZoomLevel = Config.getMaxZoomLevel();
-		for (int i = 0; i < maxZoomLevel; i++) {
-			pool.put((int) Math.pow(2, i), new LinkedHashMap<>());
-		}
+	private long hits = 0;
+	private long fallbackHits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long prefetches = 0;
+
+	// reads and decodes cached images
+	private final ThreadPoolExecutor cacheLoader = new ThreadPoolExecutor(
+			2, 2,
+			0L, TimeUnit.MILLISECONDS,
+			new LinkedBlockingQueue<>());
 
+	// the size of the pool in bytes is limited by Config.getImagePoolSize()
+	public ImagePool(TileMap tileMap) {
 		this.tileMap = tileMap;
-		this.poolSize = poolSize;
+
+		// borders of cached images are shaded again when a neighbouring region is rendered
+		RegionImageGenerator.setOnCacheUpdated((region, world) -> Platform.runLater(() -> {
+			if (world.equals(Config.getWorldUUID())) {
+				tileMap.reloadTileImage(region);
+			}
+		}));
 	}
 
 	public void requestImage(Tile tile, int scale) {
@@ -48,109 +69,233 @@ public final class ImagePool {
 		}
 
 		// check if image exists in pool
-		Image img = pool.get(scale).get(tile.location);
+		Image img = pool.get(new PoolKey(scale, tile.location));
 		if (img != null) {
 			Debug.dumpf("image was cached in image pool: %d/%s", scale, tile.location);
+			hits++;
 			tile.setImage(img);
 			tile.setLoaded(true);
 			return;
 		}
 
-		// check if image exists in cache
-		File cachedImgFile = FileHelper.createPNGFilePath(Config.getCacheDir(), scale, tile.location);
-		if (cachedImgFile.exists()) {
-			// load cached file
-			loadImageFromDiskCache(tile, cachedImgFile, scale);
+		// show a coarser image from the pool while the requested one is loading
+		Image fallback = tile.getImage() == null ? getCoarserImage(scale, tile.location) : null;
+		if (fallback != null) {
+			Debug.dumpf("using coarser image from image pool for %d/%s", scale, tile.location);
+			fallbackHits++;
+			tile.setImage(fallback);
+		} else {
+			misses++;
+		}
 
-		} else if (RegionImageGenerator.isSaving(tile) && !RegionImageGenerator.hasActionOnSave(tile)) {
-			// wait for saving to finish, then pull cached image from disk
-			RegionImageGenerator.setOnSaved(tile, () -> loadImageFromDiskCache(tile, cachedImgFile, scale));
+		loadImage(tile, TileCacheStore.get(Config.getCacheDir()), scale);
+	}
 
-		} else {
-			Debug.dump("image does not exist: " + cachedImgFile.getAbsolutePath());
+	// loads the image of a region that is not visible into the pool, rendering it into the cache first if it isn't cached.
+	// if the pool is too full to keep more images, only the cache is filled. returns false if there is nothing to do.
+	boolean prefetch(Point2i region, int scale) {
+		Tile tile = new Tile(region);
+		if (noMCA.contains(region) || RegionImageGenerator.isLoading(tile) || RegionImageGenerator.isSaving(tile)
+				|| pool.containsKey(new PoolKey(scale, region))) {
+			return false;
+		}
 
+		TileCacheStore store = TileCacheStore.get(Config.getCacheDir());
+		boolean cached = store.exists(scale, region);
+		// a quarter of the pool is kept for the images that are requested while the map is moved
+		long bytes = (long) (Tile.SIZE / scale) * (Tile.SIZE / scale) * 4;
+		boolean fits = poolBytes + bytes <= Config.getImagePoolSize() * 1_048_576L * 3 / 4;
+		if (cached && !fits) {
+			return false;
+		}
+		if (!cached && !tile.getMCAFile().exists()) {
+			noMCA.add(region);
+			return false;
+		}
+
+		Debug.dumpf("prefetching image %d/%s", scale, region);
+		prefetches++;
+		if (fits) {
+			loadImage(tile, store, scale);
+		} else {
 			RegionImageGenerator.setLoading(tile, true);
-			RegionImageGenerator.generate(tile, Config.getWorldUUID(), (i, u) -> Platform.runLater(() -> {
-				RegionImageGenerator.setLoading(tile, false);
-				if (u.equals(Config.getWorldUUID())) {
-					// check if scale is still correct
-					tile.setImage(i);
-					tile.setLoaded(true);
-					if (i == null) {
-						Debug.dumpf("image of %s is null", tile.getLocation());
-						noMCA.add(tile.location);
-						return;
-					}
-					push(scale, tile.location, i);
-					Debug.dumpf("pushed image for %s with scale %d to pool (contains=%s, value=%s)", tile.location, scale, pool.get(scale).containsKey(tile.location), pool.get(scale).get(tile.location));
-					tileMap.update();
-				}
-			}),
-			() -> (float) scale, false, null);
+			RegionImageGenerator.generate(tile, Config.getWorldUUID(), (p, u) -> Platform.runLater(() -> RegionImageGenerator.setLoading(tile, false)),
+					() -> (float) scale, false, null);
 		}
+		return true;
 	}
 
-	private void loadImageFromDiskCache(Tile tile, File cachedImgFile, int scale) {
+	// the cache is only queried by the cache loader, so the JavaFX thread doesn't wait for the store
+	private void loadImage(Tile tile, TileCacheStore store, int scale) {
 		RegionImageGenerator.setLoading(tile, true);
+		cacheLoader.execute(() -> {
+			// check if image exists in cache
+			if (store.exists(scale, tile.location)) {
+				// load cached image
+				readImageFromDiskCache(tile, store, scale);
+
+			} else if (RegionImageGenerator.isSaving(tile) && !RegionImageGenerator.hasActionOnSave(tile)) {
+				// wait for saving to finish, then pull cached image from disk
+				RegionImageGenerator.setLoading(tile, false);
+				RegionImageGenerator.setOnSaved(tile, () -> loadImageFromDiskCache(tile, store, scale));
 
-		Image cachedImg = new Image(cachedImgFile.toURI().toString(), true);
-		cachedImg.progressProperty().addListener((v, o, n) -> {
-			if (n.intValue() == 1) {
-				// run the following on the JavaFX main thread because concurrency
-				Platform.runLater(() -> {
-					RegionImageGenerator.setLoading(tile, false);
-					if (cachedImg.isError()) {
-						tile.setImage(null);
-						tile.setLoaded(true);
-						Debug.dump("failed to load image from cache: " + cachedImgFile.getAbsolutePath());
-						return;
-					}
-
-					Debug.dump("image loaded: " + cachedImgFile.getAbsolutePath());
-
-					tile.setImage(cachedImg);
-					tile.setLoaded(true);
-					push(scale, tile.location, cachedImg);
-					tileMap.update();
-				});
+			} else {
+				Debug.dumpf("image does not exist in cache: %d/%s", scale, tile.location);
+				generateImage(tile, scale);
 			}
 		});
 	}
 
-	private void push(int scale, Point2i location, Image img) {
-		pool.get(scale).put(location, img);
-		trim(scale);
+	private void generateImage(Tile tile, int scale) {
+		RegionImageGenerator.generate(tile, Config.getWorldUUID(), (p, u) -> tileMap.runOnNextFrame(() -> {
+			RegionImageGenerator.setLoading(tile, false);
+			if (u.equals(Config.getWorldUUID())) {
+				// check if scale is still correct
+				Image i = p == null ? null : toImage(p, Tile.SIZE / scale);
+				tile.setImage(i);
+				tile.setLoaded(true);
+				if (i == null) {
+					Debug.dumpf("image of %s is null", tile.getLocation());
+					noMCA.add(tile.location);
+					return;
+				}
+				push(scale, tile.location, i);
+				Debug.dumpf("pushed image for %s with scale %d to pool (bytes=%d)", tile.location, scale, poolBytes);
+			}
+		}),
+		() -> (float) scale, false, null);
 	}
 
-	private void trim(int scale) {
-		LinkedHashMap<Point2i, Image> scaleEntry = pool.get(scale);
-		if (scaleEntry.size() <= tileMap.getVisibleTiles() * poolSize) {
+	private void loadImageFromDiskCache(Tile tile, TileCacheStore store, int scale) {
+		RegionImageGenerator.setLoading(tile, true);
+		cacheLoader.execute(() -> readImageFromDiskCache(tile, store, scale));
+	}
+
+	// called by the cache loader
+	private void readImageFromDiskCache(Tile tile, TileCacheStore store, int scale) {
+		if (!CacheHelper.isUpToDate(store, scale, tile.location, tile.getMCAFile())) {
+			// the region file changed since the image was cached
+			Debug.dumpf("cached image %d/%s is outdated", scale, tile.location);
+			CacheHelper.invalidate(store, tile.location);
+			// the next update requests the image again, which renders it from the region file
+			tileMap.runOnNextFrame(() -> {
+				RegionImageGenerator.setLoading(tile, false);
+				tile.setLoaded(false);
+			});
 			return;
 		}
-		Iterator<Point2i> it = scaleEntry.keySet().iterator();
-		while (it.hasNext() && scaleEntry.size() > tileMap.getVisibleTiles() * poolSize) {
-			Point2i removed = it.next();
+
+		int[] pixels = null;
+		try {
+			byte[] data = store.read(scale, tile.location);
+			if (data != null) {
+				pixels = ImageHelper.readCacheImage(data, PixelBufferPool::take);
+			}
+		} catch (IOException ex) {
+			Debug.dumpException("failed to read cached image " + scale + "/" + tile.location, ex);
+		}
+		int size = Tile.SIZE / scale;
+		if (pixels != null && pixels.length != size * size) {
+			PixelBufferPool.release(pixels);
+			pixels = null;
+		}
+
+		// all images decoded until the next frame are handed to their tiles at once
+		int[] finalPixels = pixels;
+		tileMap.runOnNextFrame(() -> {
+			Image img = null;
+			if (finalPixels != null) {
+				img = toImage(finalPixels, size);
+				PixelBufferPool.release(finalPixels);
+			}
+			onCachedImageLoaded(tile, scale, img);
+		});
+	}
+
+	private void onCachedImageLoaded(Tile tile, int scale, Image cachedImg) {
+		RegionImageGenerator.setLoading(tile, false);
+		if (cachedImg == null) {
+			tile.setImage(null);
+			tile.setLoaded(true);
+			Debug.dumpf("failed to load image from cache: %d/%s", scale, tile.location);
+			return;
+		}
+
+		Debug.dumpf("image loaded from cache: %d/%s", scale, tile.location);
+
+		tile.setImage(cachedImg);
+		tile.setLoaded(true);
+		push(scale, tile.location, cachedImg);
+	}
+
+	// only called on the JavaFX thread, the image generation itself works on plain pixel data
+	private static Image toImage(int[] pixels, int size) {
+		WritableImage image = new WritableImage(size, size);
+		image.getPixelWriter().setPixels(0, 0, size, size, PixelFormat.getIntArgbPreInstance(), pixels, 0, size);
+		return image;
+	}
+
+	private Image getCoarserImage(int scale, Point2i location) {
+		for (int s = scale * 2; s <= Config.getMaxZoomLevel(); s *= 2) {
+			Image img = pool.get(new PoolKey(s, location));
+			if (img != null) {
+				return img;
+			}
+		}
+		return null;
+	}
+
+	private static long getBytes(Image img) {
+		return (long) img.getWidth() * (long) img.getHeight() * 4;
+	}
+
+	private void push(int scale, Point2i location, Image img) {
+		Image previous = pool.put(new PoolKey(scale, location), img);
+		if (previous != null) {
+			poolBytes -= getBytes(previous);
+		}
+		poolBytes += getBytes(img);
+		trim();
+	}
+
+	// evicts the least recently used images until the pool fits into its budget
+	private void trim() {
+		long maxBytes = Config.getImagePoolSize() * 1_048_576L;
+		Iterator<Map.Entry<PoolKey, Image>> it = pool.entrySet().iterator();
+		while (poolBytes > maxBytes && it.hasNext()) {
+			Map.Entry<PoolKey, Image> removed = it.next();
 			it.remove();
-			Debug.dumpf("removed %s for scale %d from pool", removed, scale);
+			poolBytes -= getBytes(removed.getValue());
+			evictions++;
+			Debug.dumpf("removed %s for scale %d from pool", removed.getKey().location, removed.getKey().scale);
 		}
 	}
 
 	public void clear() {
-		for (Map.Entry<Integer, LinkedHashMap<Point2i, Image>> scale : pool.entrySet()) {
-			scale.getValue().clear();
-		}
+		pool.clear();
+		poolBytes = 0;
 		clearNoMCACache();
 		Debug.dumpf("cleared pool");
 	}
 
 	public void discardImage(Point2i region) {
-		for (Map.Entry<Integer, LinkedHashMap<Point2i, Image>> scale : pool.entrySet()) {
-			scale.getValue().remove(region);
+		for (int scale = 1; scale <= Config.getMaxZoomLevel(); scale *= 2) {
+			Image removed = pool.remove(new PoolKey(scale, region));
+			if (removed != null) {
+				poolBytes -= getBytes(removed);
+			}
 		}
 		Debug.dumpf("removed images for %s from image pool", region);
 		noMCA.remove(region);
 	}
 
+	public void dumpMetrics() {
+		long requests = hits + fallbackHits + misses;
+		Debug.dumpf("ImagePool: images=%d, bytes=%d, maxBytes=%d, hits=%d, fallbackHits=%d, misses=%d, hitRate=%.2f, evictions=%d, prefetches=%d",
+				pool.size(), poolBytes, Config.getImagePoolSize() * 1_048_576L, hits, fallbackHits, misses,
+				requests == 0 ? 0 : (double) (hits + fallbackHits) / requests, evictions, prefetches);
+	}
+
 	public void clearNoMCACache() {
 		noMCA.clear();
 	}
@@ -158,4 +303,29 @@ public final class ImagePool {
 	public boolean hasNoMCA(Point2i p) {
 		return noMCA.contains(p);
 	}
+
+	private static final class PoolKey {
+
+		private final int scale;
+		private final Point2i location;
+
+		private PoolKey(int scale, Point2i location) {
+			this.scale = scale;
+			this.location = location;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof PoolKey)) {
+				return false;
+			}
+			PoolKey k = (PoolKey) o;
+			return scale == k.scale && location.equals(k.location);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(scale, location);
+		}
+	}
 }
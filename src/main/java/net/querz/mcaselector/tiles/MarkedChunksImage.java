@@ -0,0 +1,74 @@
+package net.querz.mcaselector.tiles;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import net.querz.mcaselector.Config;
+import java.util.Arrays;
+
+// the image of the marked chunks of a tile, drawn by the TileMap on top of the tile. it is kept at the resolution of
+// the zoom level and only the chunks that were marked or unmarked since it was written last are written again.
+final class MarkedChunksImage {
+
+	// the pixels of a marked and an unmarked chunk, shared by all images. they are only used on the JavaFX thread.
+	private static int[] filled, cleared;
+	private static int filledColor;
+
+	private WritableImage image;
+	// the marked chunks and selection inversion that the image shows
+	private final long[] imageMask = new long[Tile.CHUNKS / 64];
+	private boolean imageInverted;
+
+	// makes the image show the chunks of markedMask at the resolution of the zoom level. only the chunks that were
+	// marked or unmarked since the last call are written, unless the zoom level or the selection inversion changed.
+	Image update(long[] markedMask, int zoomLevel, boolean inverted) {
+		int size = Tile.SIZE / zoomLevel;
+		boolean all = inverted != imageInverted;
+		if (image == null || (int) image.getWidth() != size) {
+			image = new WritableImage(size, size);
+			all = true;
+		}
+
+		int block = Tile.CHUNK_SIZE / zoomLevel;
+		updateBlocks(block);
+
+		PixelWriter writer = image.getPixelWriter();
+		for (int i = 0; i < markedMask.length; i++) {
+			long flipped = all ? -1L : markedMask[i] ^ imageMask[i];
+			while (flipped != 0) {
+				int bit = Long.numberOfTrailingZeros(flipped);
+				flipped &= flipped - 1;
+				int index = i * 64 + bit;
+				boolean marked = (markedMask[i] >>> bit & 1) == 1;
+				writer.setPixels(index % Tile.SIZE_IN_CHUNKS * block, index / Tile.SIZE_IN_CHUNKS * block, block, block,
+						PixelFormat.getIntArgbInstance(), marked != inverted ? filled : cleared, 0, block);
+			}
+			imageMask[i] = markedMask[i];
+		}
+		imageInverted = inverted;
+		return image;
+	}
+
+	void cancel() {
+		if (image != null) {
+			image.cancel();
+		}
+	}
+
+	private static void updateBlocks(int block) {
+		javafx.scene.paint.Color c = Config.getChunkSelectionColor().makeJavaFXColor();
+		int color = (int) Math.round(c.getOpacity() * 255) << 24
+				| (int) Math.round(c.getRed() * 255) << 16
+				| (int) Math.round(c.getGreen() * 255) << 8
+				| (int) Math.round(c.getBlue() * 255);
+		if (filled == null || filled.length != block * block) {
+			filled = new int[block * block];
+			cleared = new int[block * block];
+		} else if (color == filledColor) {
+			return;
+		}
+		Arrays.fill(filled, color);
+		filledColor = color;
+	}
+}
@@ -8,17 +8,31 @@ import net.querz.mcaselector.Config;
 import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.io.FileHelper;
 import net.querz.mcaselector.io.MCAFilePipe;
+import net.querz.mcaselector.io.RegionStamp;
 import net.querz.mcaselector.io.db.CacheDBController;
 import net.querz.mcaselector.io.job.ParseDataJob;
+import net.querz.mcaselector.io.job.RegionImageGenerator;
+import net.querz.mcaselector.io.mca.RegionMCAFile;
+import net.querz.mcaselector.point.Point2f;
 import net.querz.mcaselector.point.Point2i;
+import net.querz.mcaselector.progress.Timer;
 import net.querz.mcaselector.property.DataProperty;
 import net.querz.mcaselector.tiles.overlay.OverlayParser;
 import java.awt.*;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -41,7 +55,20 @@ public class OverlayPool {
 			0L, TimeUnit.MILLISECONDS,
 			new LinkedBlockingQueue<>());
 
+	// requested regions that are loaded from db together
+	private final Queue<Request> requests = new ConcurrentLinkedQueue<>();
+	private static final int MAX_BATCH_SIZE = 64;
+
+	// regions that are parsed from the region file that was loaded to render their image
+	private final Set<Point2i> parsingLoaded = ConcurrentHashMap.newKeySet();
+	// the number of loaded region files waiting to be parsed, more are dropped to limit the memory they use
+	private static final int MAX_LOADED_QUEUE = 16;
+
 	private final CacheDBController dataCache = new CacheDBController();
+
+	// the colors of the hue range of the current overlay
+	private static final int COLOR_GRADES = 1024;
+	private volatile ColorGrades colorGrades;
 	private OverlayParser parser;
 
 	private Point2i hoveredRegion;
@@ -49,6 +76,7 @@ public class OverlayPool {
 
 	public OverlayPool(TileMap tileMap) {
 		this.tileMap = tileMap;
+		RegionImageGenerator.setOnRegionLoaded(this::onRegionLoaded);
 	}
 
 	public OverlayParser getParser() {
@@ -74,7 +102,7 @@ public class OverlayPool {
 			return;
 		}
 
-		if (ParseDataJob.isLoading(tile)) {
+		if (ParseDataJob.isLoading(tile) || parsingLoaded.contains(tile.location)) {
 			// skip if we are already loading this tile
 			return;
 		}
@@ -85,60 +113,160 @@ public class OverlayPool {
 
 		ParseDataJob.setLoading(tile, true);
 
-		overlayCacheLoaders.execute(() -> {
-			int[] data = null;
+		// the view is only read on the JavaFX thread, so its center is taken when the region is requested
+		requests.add(new Request(tile, parser, getViewCenter()));
+		overlayCacheLoaders.execute(this::loadRequests);
+	}
+
+	// loads the cached data of all requested regions with one query per overlay, regions without cached data are parsed
+	private void loadRequests() {
+		Map<OverlayParser, List<Request>> batch = new LinkedHashMap<>();
+		Request request;
+		for (int i = 0; i < MAX_BATCH_SIZE && (request = requests.poll()) != null; i++) {
+			batch.computeIfAbsent(request.parser, k -> new ArrayList<>()).add(request);
+		}
+
+		for (Map.Entry<OverlayParser, List<Request>> entry : batch.entrySet()) {
+			OverlayParser parser = entry.getKey();
+			List<Point2i> regions = new ArrayList<>(entry.getValue().size());
+			for (Request r : entry.getValue()) {
+				regions.add(r.tile.location);
+			}
+
+			Map<Point2i, int[]> data = Collections.emptyMap();
 			try {
-				data = dataCache.getData(parser, tile.location);
+				data = dataCache.getData(parser, regions);
 			} catch (Exception ex) {
-				Debug.dumpException("failed to load cached overlay data for region " + tile.location, ex);
+				Debug.dumpException("failed to load cached overlay data for regions " + regions, ex);
 			}
 
-			if (data != null) {
-				tile.overlay = parseColorGrades(data, parser.min(), parser.max(), parser.getMinHue(), parser.getMaxHue());
-				tile.overlayLoaded = true;
-				ParseDataJob.setLoading(tile, false);
-				Platform.runLater(tileMap::update);
-			} else {
-				// calculate data
-				MCAFilePipe.executeParseData(new ParseDataJob(tile, FileHelper.createRegionDirectories(tile.location), Config.getWorldUUID(),
-						(d, u) -> Platform.runLater(() -> {
-					if (u.equals(Config.getWorldUUID())) {
-						if (d == null) {
-							noData.add(tile.location);
-							tile.overlayLoaded = true;
-							return;
-						}
+			for (Request r : entry.getValue()) {
+				Tile tile = r.tile;
+				int[] d = data.get(tile.location);
+				if (d != null) {
+					int[] colors = getColorGrades(d, parser, true);
+					tileMap.runOnNextFrame(() -> {
+						ParseDataJob.setLoading(tile, false);
 						if (parser.equals(this.parser)) {
-							push(tile.location, d);
-							tile.overlay = parseColorGrades(d, parser.min(), parser.max(), parser.getMinHue(), parser.getMaxHue());
+							tile.overlayData = d;
+							tile.overlay = toImage(colors);
 							tile.overlayLoaded = true;
-							tileMap.update();
 						}
+					});
+				} else if (parser.isRegionOnly() && RegionImageGenerator.isLoading(tile)) {
+					// the region file is loaded for the image right now, the overlay is parsed from it and requested again after that
+					ParseDataJob.setLoading(tile, false);
+				} else {
+					parseData(tile, parser, r.viewCenter);
+				}
+			}
+		}
+	}
+
+	// parses the active overlays that only need the region file from a region file that was loaded to render its image
+	private void onRegionLoaded(Point2i region, RegionMCAFile mcaFile, RegionStamp stamp, UUID world) {
+		if (!world.equals(Config.getWorldUUID())
+				|| overlayCacheLoaders.getQueue().size() >= MAX_LOADED_QUEUE || !parsingLoaded.add(region)) {
+			return;
+		}
+
+		overlayCacheLoaders.execute(() -> {
+			try {
+				List<OverlayParser> parsers = new ArrayList<>();
+				for (OverlayParser parser : tileMap.getOverlayParsers()) {
+					if (parser.isActive() && parser.isValid() && parser.isRegionOnly() && dataCache.getData(parser, region, stamp) == null) {
+						parsers.add(parser);
 					}
-				}), parser));
+				}
+				if (parsers.isEmpty()) {
+					return;
+				}
+
+				Timer t = new Timer();
+				int[][] data = ParseDataJob.parseData(mcaFile, null, null, parsers, stamp);
+				for (int i = 0; i < parsers.size(); i++) {
+					push(parsers.get(i), region, data[i], stamp);
+				}
+				Debug.dumpf("took %s to parse data of %d overlays for region %s from its rendered region file", t, parsers.size(), region);
+			} catch (Exception ex) {
+				Debug.dumpException("failed to parse overlay data of loaded region " + region, ex);
+			} finally {
+				parsingLoaded.remove(region);
+				// tiles that skipped their overlay request while the region was parsed request it again
+				tileMap.requestUpdate();
 			}
 		});
 	}
 
-	public Image getImage(Point2i location) {
+	// parses the data of all active overlays at once, so switching to another overlay doesn't load the region again
+	private void parseData(Tile tile, OverlayParser parser, Point2f viewCenter) {
+		List<OverlayParser> parsers = new ArrayList<>();
+		parsers.add(parser);
+		for (OverlayParser p : tileMap.getOverlayParsers()) {
+			if (p.isActive() && p.isValid() && !p.equals(parser)) {
+				parsers.add(p);
+			}
+		}
+
+		// the stamp is taken now, so it describes the file before it is parsed
+		RegionStamp stamp = RegionStamp.of(FileHelper.createRegionMCAFilePath(tile.location));
+		ParseDataJob job = new ParseDataJob(tile, FileHelper.createRegionDirectories(tile.location), Config.getWorldUUID(),
+				(d, u) -> tileMap.runOnNextFrame(() -> {
+			if (u.equals(Config.getWorldUUID())) {
+				if (d == null) {
+					noData.add(tile.location);
+					tile.overlayLoaded = true;
+					return;
+				}
+				for (int i = 0; i < parsers.size(); i++) {
+					push(parsers.get(i), tile.location, d[i], stamp);
+				}
+				if (parser.equals(this.parser)) {
+					tile.overlayData = d[0];
+					tile.overlay = toImage(getColorGrades(d[0], parser, true));
+					tile.overlayLoaded = true;
+				}
+			}
+		}), parsers);
+		job.setPriority(getDistanceToCenter(tile.location, viewCenter));
+		MCAFilePipe.executeParseData(job);
+	}
+
+	// the center of the visible area in blocks, only called on the JavaFX thread
+	private Point2f getViewCenter() {
+		Point2f offset = tileMap.getOffset();
+		float scale = tileMap.getScale();
+		return new Point2f(offset.getX() + tileMap.getWidth() * scale / 2, offset.getY() + tileMap.getHeight() * scale / 2);
+	}
+
+	// the squared distance in blocks between the center of a region and the center of the visible area,
+	// so regions in the center of the screen are parsed first
+	private static double getDistanceToCenter(Point2i region, Point2f viewCenter) {
+		double dx = viewCenter.getX() - (region.getX() * 512 + 256);
+		double dz = viewCenter.getY() - (region.getZ() * 512 + 256);
+		return dx * dx + dz * dz;
+	}
+
+	// returns the overlay colors of all chunks in a region as 32x32 ARGB pixels
+	public int[] getColors(Point2i location) {
 		try {
-			int[] data = dataCache.getData(parser, location);
+			int[] data = dataCache.getData(parser, location, RegionStamp.of(FileHelper.createRegionMCAFilePath(location)));
 			if (data != null) {
-				return parseColorGrades(data, parser.min(), parser.max(), parser.getMinHue(), parser.getMaxHue());
+				return getColorGrades(data, parser, false);
 			}
 		} catch (Exception ex) {
 			Debug.dumpException("failed to load cached overlay data for region " + location, ex);
 			return null;
 		}
 
-		DataProperty<Image> image = new DataProperty<>();
+		DataProperty<int[]> image = new DataProperty<>();
 		new ParseDataJob(
 				new Tile(location),
 				Config.getWorldDirs().makeRegionDirectories(location),
 				Config.getWorldUUID(),
 				(i, u) -> {
 					if (i != null) {
-						image.set(parseColorGrades(i, parser.min(), parser.max(), parser.getMinHue(), parser.getMaxHue()));
+						image.set(getColorGrades(i, parser, false));
 					}
 				},
 				parser
@@ -146,35 +274,63 @@ public class OverlayPool {
 		return image.get();
 	}
 
-	private static Image parseColorGrades(int[] data, int min, int max, float minHue, float maxHue) {
-		int[] colors = new int[1024];
-		for (int i = 0; i < 1024; i++) {
-			colors[i] = getColorGrade(data[i], min, max, minHue, maxHue);
+	// colours the overlays of tiles again from the data they already have, after only the colours of the overlay changed.
+	// tiles without data load it again. only called on the JavaFX thread.
+	public void recolor(Collection<Tile> tiles) {
+		for (Tile tile : tiles) {
+			if (tile.overlayData != null) {
+				tile.overlay = toImage(getColorGrades(tile.overlayData, parser, true));
+				tile.overlayLoaded = true;
+			} else {
+				tile.overlay = null;
+				tile.overlayLoaded = false;
+			}
 		}
+	}
 
+	// only called on the JavaFX thread
+	private static Image toImage(int[] colors) {
 		WritableImage image = new WritableImage(32, 32);
 		image.getPixelWriter().setPixels(0, 0, 32, 32, PixelFormat.getIntArgbPreInstance(), colors, 0, 32);
 
 		return image;
 	}
 
-	private static int getColorGrade(int value, int min, int max, float minHue, float maxHue) {
-		if (value <= min) {
-			return Color.HSBtoRGB(minHue, 1, 1);
-		}
-		if (value >= max) {
-			return Color.HSBtoRGB(maxHue, 1, 1);
+	// returns opaque colors, or colors with half the opacity to be drawn over the image of a tile
+	private int[] getColorGrades(int[] data, OverlayParser parser, boolean translucent) {
+		ColorGrades grades = getColorGrades(parser.getMinHue(), parser.getMaxHue());
+		int[] lut = translucent ? grades.translucent : grades.opaque;
+		int min = parser.min();
+		int max = parser.max();
+		int[] colors = new int[1024];
+		for (int i = 0; i < 1024; i++) {
+			int value = data[i];
+			if (value <= min) {
+				colors[i] = lut[0];
+			} else if (value >= max) {
+				colors[i] = lut[COLOR_GRADES - 1];
+			} else {
+				colors[i] = lut[(int) ((long) (value - min) * (COLOR_GRADES - 1) / (max - min))];
+			}
 		}
+		return colors;
+	}
 
-		float percent = (float) (value - min) / (max - min);
-		float hue = minHue + percent * (maxHue - minHue);
+	private ColorGrades getColorGrades(float minHue, float maxHue) {
+		ColorGrades grades = colorGrades;
+		if (grades == null || grades.minHue != minHue || grades.maxHue != maxHue) {
+			colorGrades = grades = new ColorGrades(minHue, maxHue);
+		}
+		return grades;
+	}
 
-		return Color.HSBtoRGB(hue, 1, 1);
+	public void push(Point2i location, int[] data, RegionStamp stamp) {
+		push(tileMap.getOverlay(), location, data, stamp);
 	}
 
-	public void push(Point2i location, int[] data) {
+	private void push(OverlayParser parser, Point2i location, int[] data, RegionStamp stamp) {
 		try {
-			dataCache.setData(tileMap.getOverlay(), location, data);
+			dataCache.setData(parser, location, data, stamp);
 		} catch (Exception ex) {
 			Debug.dumpException("failed to cache data for region " + location, ex);
 		}
@@ -223,7 +379,7 @@ public class OverlayPool {
 		Point2i normalizedChunk = chunk.normalizeChunkInRegion();
 		if (region.equals(hoveredRegion)) {
 			if (hoveredRegionData != null) {
-				callback.accept(hoveredRegionData[normalizedChunk.getZ() * 32 + normalizedChunk.getX()]);
+				callback.accept(getValue(hoveredRegionData, normalizedChunk));
 			} else {
 				callback.accept(null);
 			}
@@ -231,14 +387,14 @@ public class OverlayPool {
 			overlayValueLoader.getQueue().clear(); // no need to load anything else
 			overlayValueLoader.execute(() -> {
 				try {
-					int[] regionData = dataCache.getData(parser, region);
+					int[] regionData = dataCache.getData(parser, region, RegionStamp.of(FileHelper.createRegionMCAFilePath(region)));
 					hoveredRegion = region;
 					hoveredRegionData = regionData;
 					if (regionData == null) {
 						Platform.runLater(() -> callback.accept(null));
 						return;
 					}
-					Platform.runLater(() -> callback.accept(regionData[normalizedChunk.getZ() * 32 + normalizedChunk.getX()]));
+					Platform.runLater(() -> callback.accept(getValue(regionData, normalizedChunk)));
 				} catch (IOException | SQLException ex) {
 					Debug.dumpException("failed to load data for overlay value", ex);
 					Platform.runLater(() -> callback.accept(null));
@@ -246,4 +402,45 @@ public class OverlayPool {
 			});
 		}
 	}
+
+	// returns null if the chunk doesn't exist
+	private static Integer getValue(int[] data, Point2i normalizedChunk) {
+		int value = data[normalizedChunk.getZ() * 32 + normalizedChunk.getX()];
+		return value == OverlayParser.NO_CHUNK ? null : value;
+	}
+
+	private static final class Request {
+
+		private final Tile tile;
+		private final OverlayParser parser;
+		private final Point2f viewCenter;
+
+		private Request(Tile tile, OverlayParser parser, Point2f viewCenter) {
+			this.tile = tile;
+			this.parser = parser;
+			this.viewCenter = viewCenter;
+		}
+	}
+
+	private static final class ColorGrades {
+
+		private final float minHue, maxHue;
+		private final int[] opaque = new int[COLOR_GRADES];
+		// premultiplied with an alpha of 0.5
+		private final int[] translucent = new int[COLOR_GRADES];
+
+		private ColorGrades(float minHue, float maxHue) {
+			this.minHue = minHue;
+			this.maxHue = maxHue;
+			for (int i = 0; i < COLOR_GRADES; i++) {
+				float hue = minHue + (float) i / (COLOR_GRADES - 1) * (maxHue - minHue);
+				int color = Color.HSBtoRGB(hue, 1, 1);
+				opaque[i] = color;
+				translucent[i] = 0x80000000
+						| ((color >> 16 & 0xFF) * 0x80 / 0xFF) << 16
+						| ((color >> 8 & 0xFF) * 0x80 / 0xFF) << 8
+						| (color & 0xFF) * 0x80 / 0xFF;
+			}
+		}
+	}
 }
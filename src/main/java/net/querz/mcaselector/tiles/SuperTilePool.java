@@ -0,0 +1,371 @@
+package net.querz.mcaselector.tiles;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import net.querz.mcaselector.Config;
+import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.io.CacheHelper;
+import net.querz.mcaselector.io.FileHelper;
+import net.querz.mcaselector.io.ImageHelper;
+import net.querz.mcaselector.io.PixelBufferPool;
+import net.querz.mcaselector.io.TileCacheStore;
+import net.querz.mcaselector.io.job.RegionImageGenerator;
+import net.querz.mcaselector.point.Point2i;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// images of SIZE_IN_REGIONS x SIZE_IN_REGIONS regions that are drawn instead of the images of single regions at low
+// zoom levels, so the map draws and loads a few hundred images at most. a super tile is stitched together from the
+// cached images of its regions and cached itself. it is only built when all of its regions are cached, until then
+// the map draws its regions one by one, which renders the missing ones.
+public final class SuperTilePool {
+
+	public static final int SIZE_IN_REGIONS = 8;
+	// the lowest zoom level that is drawn with super tiles
+	public static final int MIN_ZOOM_LEVEL = 4;
+
+	private static final int VERSION = 1;
+
+	private final TileMap tileMap;
+
+	// super tiles of all zoom levels in access order, the least recently used one comes first
+	private final LinkedHashMap<PoolKey, Image> pool = new LinkedHashMap<>(16, 0.75f, true);
+	private long poolBytes = 0;
+	// super tiles that are read from the cache or built
+	private final Set<PoolKey> loading = new HashSet<>();
+	// super tiles with regions that are not cached, with one bit per missing region at z * SIZE_IN_REGIONS + x.
+	// a super tile is loaded again once all of its missing regions were cached.
+	private final Map<PoolKey, Long> incomplete = new HashMap<>();
+	// the regions of loading super tiles that were cached while they were loading, in the same layout
+	private final Map<PoolKey, Long> changed = new HashMap<>();
+	// super tiles in the pool with regions that were cached again since they were loaded
+	private final Set<PoolKey> outdated = new HashSet<>();
+
+	private long hits = 0;
+	private long cacheReads = 0;
+	private long builds = 0;
+	private long incompletes = 0;
+
+	private final ThreadPoolExecutor builder = new ThreadPoolExecutor(
+			1, 1,
+			0L, TimeUnit.MILLISECONDS,
+			new LinkedBlockingQueue<>());
+
+	// the size of the pool is limited to a quarter of Config.getImagePoolSize()
+	public SuperTilePool(TileMap tileMap) {
+		this.tileMap = tileMap;
+
+		RegionImageGenerator.setOnImageCached((region, world) -> tileMap.runOnNextFrame(() -> {
+			if (world.equals(Config.getWorldUUID())) {
+				discard(region);
+			}
+		}));
+	}
+
+	public static Point2i getSuperTile(Point2i region) {
+		return new Point2i(Math.floorDiv(region.getX(), SIZE_IN_REGIONS), Math.floorDiv(region.getZ(), SIZE_IN_REGIONS));
+	}
+
+	// returns the image of a super tile and starts loading it if it isn't loaded yet. returns null while it is loading
+	// for the first time or if it has regions that are not cached. an outdated image is returned while it is built again.
+	Image requestImage(Point2i superTile, int zoomLevel) {
+		PoolKey key = new PoolKey(zoomLevel, superTile);
+		Image img = pool.get(key);
+		if (img != null && !outdated.contains(key)) {
+			hits++;
+			return img;
+		}
+		if (!loading.contains(key) && !incomplete.containsKey(key)) {
+			load(key);
+		}
+		return img;
+	}
+
+	boolean isIncomplete(Point2i superTile, int zoomLevel) {
+		return incomplete.containsKey(new PoolKey(zoomLevel, superTile));
+	}
+
+	// called when the cached images of a region changed, the super tiles containing it are built again
+	void discard(Point2i region) {
+		Point2i superTile = getSuperTile(region);
+		Point2i firstRegion = superTile.mul(SIZE_IN_REGIONS);
+		long bit = 1L << ((region.getZ() - firstRegion.getZ()) * SIZE_IN_REGIONS + region.getX() - firstRegion.getX());
+		for (int zoomLevel = MIN_ZOOM_LEVEL; zoomLevel <= Config.getMaxZoomLevel(); zoomLevel *= 2) {
+			PoolKey key = new PoolKey(zoomLevel, superTile);
+			Long missing = incomplete.get(key);
+			if (missing != null) {
+				if ((missing & ~bit) == 0) {
+					incomplete.remove(key);
+				} else {
+					incomplete.put(key, missing & ~bit);
+				}
+			}
+			if (loading.contains(key)) {
+				changed.merge(key, bit, (a, b) -> a | b);
+			}
+			if (pool.containsKey(key)) {
+				outdated.add(key);
+			}
+		}
+	}
+
+	private void load(PoolKey key) {
+		loading.add(key);
+		outdated.remove(key);
+		UUID world = Config.getWorldUUID();
+		builder.execute(() -> {
+			long[] missing = new long[1];
+			int[] pixels = loadPixels(key, missing);
+			tileMap.runOnNextFrame(() -> {
+				loading.remove(key);
+				long changedRegions = changed.getOrDefault(key, 0L);
+				changed.remove(key);
+				if (!world.equals(Config.getWorldUUID())) {
+					return;
+				}
+				if (pixels == null) {
+					incompletes++;
+					remove(key);
+					// regions that were cached while loading are not missing anymore
+					if ((missing[0] & ~changedRegions) != 0) {
+						incomplete.put(key, missing[0] & ~changedRegions);
+					}
+					return;
+				}
+				push(key, toImage(pixels, getSize(key.zoomLevel)));
+				if (changedRegions != 0) {
+					outdated.add(key);
+				}
+			});
+		});
+	}
+
+	private static int getSize(int zoomLevel) {
+		return Tile.SIZE / zoomLevel * SIZE_IN_REGIONS;
+	}
+
+	// reads the super tile from the cache if it is newer than the images of all of its regions, otherwise builds it
+	// from them. returns null if a region is not cached or its cached image is outdated, those regions are set in missing.
+	// outdated images are not invalidated here, they are rendered again when the map requests the region.
+	private int[] loadPixels(PoolKey key, long[] missing) {
+		TileCacheStore store = TileCacheStore.get(Config.getCacheDir());
+		int layer = TileCacheStore.getSuperTileLayer(key.zoomLevel);
+		Point2i firstRegion = key.location.mul(SIZE_IN_REGIONS);
+
+		// one bit per region without region file, at z * SIZE_IN_REGIONS + x
+		long empty = 0;
+		long newest = 0;
+		for (int z = 0; z < SIZE_IN_REGIONS; z++) {
+			for (int x = 0; x < SIZE_IN_REGIONS; x++) {
+				Point2i region = firstRegion.add(x, z);
+				File file = FileHelper.createMCAFilePath(region);
+				if (!file.exists()) {
+					empty |= 1L << (z * SIZE_IN_REGIONS + x);
+					continue;
+				}
+				long modified = store.lastModified(key.zoomLevel, region);
+				if (modified == 0 || !CacheHelper.isUpToDate(store, key.zoomLevel, region, file)) {
+					missing[0] |= 1L << (z * SIZE_IN_REGIONS + x);
+					continue;
+				}
+				newest = Math.max(newest, modified);
+			}
+		}
+		if (missing[0] != 0) {
+			return null;
+		}
+
+		int[] pixels = null;
+		if (store.lastModified(layer, key.location) >= newest) {
+			try {
+				pixels = read(store.read(layer, key.location), empty, getSize(key.zoomLevel));
+			} catch (IOException ex) {
+				Debug.dumpException("failed to read super tile " + key.zoomLevel + "/" + key.location, ex);
+			}
+		}
+		if (pixels != null) {
+			cacheReads++;
+		} else {
+			pixels = build(store, key, empty, missing);
+			if (pixels == null) {
+				return null;
+			}
+			builds++;
+		}
+
+		// regions without region file are filled with the current color of empty tiles
+		fillEmpty(pixels, empty, Tile.SIZE / key.zoomLevel);
+		return pixels;
+	}
+
+	private int[] build(TileCacheStore store, PoolKey key, long empty, long[] missing) {
+		int regionSize = Tile.SIZE / key.zoomLevel;
+		int size = getSize(key.zoomLevel);
+		int[] pixels = new int[size * size];
+		Point2i firstRegion = key.location.mul(SIZE_IN_REGIONS);
+		for (int z = 0; z < SIZE_IN_REGIONS; z++) {
+			for (int x = 0; x < SIZE_IN_REGIONS; x++) {
+				if ((empty >>> (z * SIZE_IN_REGIONS + x) & 1) == 1) {
+					continue;
+				}
+				Point2i region = firstRegion.add(x, z);
+				int[] image = null;
+				try {
+					byte[] data = store.read(key.zoomLevel, region);
+					if (data != null) {
+						image = ImageHelper.readCacheImage(data, PixelBufferPool::take);
+					}
+				} catch (IOException ex) {
+					Debug.dumpException("failed to read cached image " + key.zoomLevel + "/" + region, ex);
+				}
+				if (image == null || image.length != regionSize * regionSize) {
+					if (image != null) {
+						PixelBufferPool.release(image);
+					}
+					missing[0] |= 1L << (z * SIZE_IN_REGIONS + x);
+					return null;
+				}
+				for (int row = 0; row < regionSize; row++) {
+					System.arraycopy(image, row * regionSize, pixels, (z * regionSize + row) * size + x * regionSize, regionSize);
+				}
+				PixelBufferPool.release(image);
+			}
+		}
+
+		try {
+			byte[] image = ImageHelper.encodeCacheImage(pixels, size);
+			store.write(TileCacheStore.getSuperTileLayer(key.zoomLevel), key.location, ByteBuffer.allocate(9 + image.length)
+					.put((byte) VERSION)
+					.putLong(empty)
+					.put(image)
+					.array());
+		} catch (IOException ex) {
+			Debug.dumpException("failed to cache super tile " + key.zoomLevel + "/" + key.location, ex);
+		}
+		Debug.dumpf("built super tile %d/%s", key.zoomLevel, key.location);
+		return pixels;
+	}
+
+	// returns null if the data is missing, was written by a different version or for other empty regions
+	private static int[] read(byte[] data, long empty, int size) throws IOException {
+		if (data == null || data.length < 9) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		if (buffer.get() != VERSION || buffer.getLong() != empty) {
+			return null;
+		}
+		int[] pixels = ImageHelper.readCacheImage(Arrays.copyOfRange(data, 9, data.length));
+		return pixels.length == size * size ? pixels : null;
+	}
+
+	private static void fillEmpty(int[] pixels, long empty, int regionSize) {
+		if (empty == 0) {
+			return;
+		}
+		javafx.scene.paint.Color c = Tile.EMPTY_COLOR.makeJavaFXColor();
+		int color = (int) Math.round(c.getOpacity() * 255) << 24
+				| (int) Math.round(c.getRed() * c.getOpacity() * 255) << 16
+				| (int) Math.round(c.getGreen() * c.getOpacity() * 255) << 8
+				| (int) Math.round(c.getBlue() * c.getOpacity() * 255);
+		int size = regionSize * SIZE_IN_REGIONS;
+		for (int i = 0; i < SIZE_IN_REGIONS * SIZE_IN_REGIONS; i++) {
+			if ((empty >>> i & 1) == 0) {
+				continue;
+			}
+			int x = i % SIZE_IN_REGIONS, z = i / SIZE_IN_REGIONS;
+			for (int row = 0; row < regionSize; row++) {
+				int start = (z * regionSize + row) * size + x * regionSize;
+				Arrays.fill(pixels, start, start + regionSize, color);
+			}
+		}
+	}
+
+	// only called on the JavaFX thread
+	private static Image toImage(int[] pixels, int size) {
+		WritableImage image = new WritableImage(size, size);
+		image.getPixelWriter().setPixels(0, 0, size, size, PixelFormat.getIntArgbPreInstance(), pixels, 0, size);
+		return image;
+	}
+
+	private static long getBytes(Image img) {
+		return (long) img.getWidth() * (long) img.getHeight() * 4;
+	}
+
+	private void push(PoolKey key, Image img) {
+		Image previous = pool.put(key, img);
+		if (previous != null) {
+			poolBytes -= getBytes(previous);
+		}
+		poolBytes += getBytes(img);
+
+		long maxBytes = Config.getImagePoolSize() * 1_048_576L / 4;
+		Iterator<Map.Entry<PoolKey, Image>> it = pool.entrySet().iterator();
+		while (poolBytes > maxBytes && it.hasNext()) {
+			Map.Entry<PoolKey, Image> removed = it.next();
+			it.remove();
+			outdated.remove(removed.getKey());
+			poolBytes -= getBytes(removed.getValue());
+		}
+	}
+
+	private void remove(PoolKey key) {
+		Image removed = pool.remove(key);
+		if (removed != null) {
+			poolBytes -= getBytes(removed);
+		}
+		outdated.remove(key);
+	}
+
+	public void clear() {
+		pool.clear();
+		poolBytes = 0;
+		incomplete.clear();
+		changed.clear();
+		outdated.clear();
+	}
+
+	public void dumpMetrics() {
+		Debug.dumpf("SuperTilePool: images=%d, bytes=%d, incomplete=%d, outdated=%d, hits=%d, cacheReads=%d, builds=%d, incompletes=%d",
+				pool.size(), poolBytes, incomplete.size(), outdated.size(), hits, cacheReads, builds, incompletes);
+	}
+
+	private static final class PoolKey {
+
+		private final int zoomLevel;
+		private final Point2i location;
+
+		private PoolKey(int zoomLevel, Point2i location) {
+			this.zoomLevel = zoomLevel;
+			this.location = location;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof PoolKey)) {
+				return false;
+			}
+			PoolKey k = (PoolKey) o;
+			return zoomLevel == k.zoomLevel && location.equals(k.location);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(zoomLevel, location);
+		}
+	}
+}
@@ -4,8 +4,8 @@ import javafx.scene.image.Image;
 import net.querz.mcaselector.ui.Color;
 import net.querz.mcaselector.io.FileHelper;
 import net.querz.mcaselector.point.Point2i;
-import net.querz.mcaselector.io.ImageHelper;
 import java.io.*;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -24,18 +24,27 @@ public class Tile {
 
 	final Point2i location;
 
-	Image markedChunksImage;
-
 	Image image;
 	boolean loaded = false;
 
 	boolean marked = false;
 	// a set of all marked chunks in the tile in chunk locations
 	Set<Point2i> markedChunks = new HashSet<>();
+	// the same chunks with one bit per chunk at z * SIZE_IN_CHUNKS + x
+	final long[] markedMask = new long[CHUNKS / 64];
+	// incremented whenever the marked chunks change
+	private int selectionChanges = 0;
 
 	Image overlay;
+	// the values the overlay was colored from
+	int[] overlayData;
 	boolean overlayLoaded = false;
 
+	// what the map showed for this tile when it was drawn last
+	private boolean drawn = false;
+	private Image drawnImage, drawnOverlay;
+	private int drawnSelectionChanges;
+
 	public Tile(Point2i location) {
 		this.location = location;
 	}
@@ -69,6 +78,18 @@ public class Tile {
 		return image;
 	}
 
+	void setDrawn() {
+		drawn = true;
+		drawnImage = image;
+		drawnOverlay = overlay;
+		drawnSelectionChanges = selectionChanges;
+	}
+
+	// whether the image, overlay or selection of this tile changed since it was drawn last
+	boolean needsRedraw() {
+		return !drawn || image != drawnImage || overlay != drawnOverlay || selectionChanges != drawnSelectionChanges;
+	}
+
 	public Image getOverlay() {
 		return overlay;
 	}
@@ -82,7 +103,7 @@ public class Tile {
 	}
 
 	public boolean isEmpty() {
-		return image == null || image == ImageHelper.getEmptyTileImage();
+		return image == null || image == TileMap.getEmptyTileImage();
 	}
 
 	public boolean isLoaded() {
@@ -105,21 +126,21 @@ public class Tile {
 		if (image != null) {
 			image.cancel();
 		}
-		if (markedChunksImage != null) {
-			markedChunksImage.cancel();
-			markedChunksImage = null;
-		}
 		if (overlay && this.overlay != null) {
 			this.overlay.cancel();
 			this.overlay = null;
 		}
+		if (overlay) {
+			overlayData = null;
+		}
 		loaded = false;
 	}
 
 	public void mark(boolean marked) {
 		this.marked = marked;
 		markedChunks = new HashSet<>();
-		markedChunksImage = null;
+		Arrays.fill(markedMask, 0);
+		selectionChanges++;
 	}
 
 	public void mark(Point2i chunk) {
@@ -127,15 +148,26 @@ public class Tile {
 		if (isMarked()) {
 			return;
 		}
-		int sizeBefore = markedChunks.size();
-		markedChunks.add(chunk);
-		if (markedChunks.size() == CHUNKS) {
-			mark(true);
-		} else if (sizeBefore != markedChunks.size()) {
-			markedChunksImage = null; // reset markedChunksImage if there was a change
+		if (markedChunks.add(chunk)) {
+			if (markedChunks.size() == CHUNKS) {
+				mark(true);
+			} else {
+				setMaskBit(chunk, true);
+			}
 		}
 	}
 
+	private void setMaskBit(Point2i chunk, boolean marked) {
+		Point2i regionChunk = chunk.and(0x1F);
+		int index = regionChunk.getZ() * SIZE_IN_CHUNKS + regionChunk.getX();
+		if (marked) {
+			markedMask[index >> 6] |= 1L << index;
+		} else {
+			markedMask[index >> 6] &= ~(1L << index);
+		}
+		selectionChanges++;
+	}
+
 	public boolean isMarked() {
 		return marked;
 	}
@@ -153,14 +185,15 @@ public class Tile {
 					markedChunks.add(regionChunk.add(x, z));
 				}
 			}
+			Arrays.fill(markedMask, -1L);
+		}
+		if (markedChunks.remove(chunkBlock)) {
+			setMaskBit(chunkBlock, false);
 		}
-		markedChunks.remove(chunkBlock);
-		markedChunksImage = null; //reset markedChunksImage
 	}
 
 	public void clearMarks() {
 		mark(false);
-		markedChunks = new HashSet<>();
 	}
 
 	public Set<Point2i> getMarkedChunks() {
@@ -0,0 +1,217 @@
+package net.querz.mcaselector.tiles;
+
+import net.querz.mcaselector.point.Point2i;
+import net.querz.mcaselector.ui.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// the outermost pixel lines of a rendered region image, which is all that's needed to shade the border
+// of a neighbouring region seamlessly, or to shade the border of this region again once a neighbour exists.
+public final class TileEdges {
+
+	public static final int NORTH = 0;
+	public static final int SOUTH = 1;
+	public static final int WEST = 2;
+	public static final int EAST = 3;
+
+	private static final int VERSION = 1;
+
+	// heights of the outermost pixel line and of the line next to it
+	private final short[][] outer = new short[4][Tile.SIZE];
+	private final short[][] inner = new short[4][Tile.SIZE];
+	// the unshaded color of each pixel of the outermost line, 0 if the pixel is not shaded by slope
+	private final int[][] colors = new int[4][Tile.SIZE];
+	// the slope along the edge, which doesn't depend on the neighbour facing this edge
+	private final short[][] along = new short[4][Tile.SIZE];
+	// whether the edge was shaded using the heights of the neighbour facing it
+	private final boolean[] seamless = new boolean[4];
+
+	public TileEdges() {}
+
+	public static int opposite(int side) {
+		return side ^ 1;
+	}
+
+	public static Point2i getNeighbour(Point2i region, int side) {
+		switch (side) {
+			case NORTH:
+				return region.add(0, -1);
+			case SOUTH:
+				return region.add(0, 1);
+			case WEST:
+				return region.add(-1, 0);
+			default:
+				return region.add(1, 0);
+		}
+	}
+
+	private static int getIndex(int side, int i) {
+		switch (side) {
+			case NORTH:
+				return i;
+			case SOUTH:
+				return (Tile.SIZE - 1) * Tile.SIZE + i;
+			case WEST:
+				return i * Tile.SIZE;
+			default:
+				return i * Tile.SIZE + Tile.SIZE - 1;
+		}
+	}
+
+	// index offset from the outermost line to the line next to it
+	private static int getInnerOffset(int side) {
+		switch (side) {
+			case NORTH:
+				return Tile.SIZE;
+			case SOUTH:
+				return -Tile.SIZE;
+			case WEST:
+				return 1;
+			default:
+				return -1;
+		}
+	}
+
+	// called with the unshaded pixels of a region. neighbours contains the outer heights of the edges facing this region.
+	void capture(int[] pixelBuffer, short[] terrainHeights, short[] heights, short[][] neighbours) {
+		for (int side = 0; side < 4; side++) {
+			int innerOffset = getInnerOffset(side);
+			boolean horizontal = side == NORTH || side == SOUTH;
+			for (int i = 0; i < Tile.SIZE; i++) {
+				int index = getIndex(side, i);
+				outer[side][i] = heights[index];
+				inner[side][i] = heights[index + innerOffset];
+				colors[side][i] = pixelBuffer[index] != 0 && terrainHeights[index] == heights[index] ? pixelBuffer[index] : 0;
+				int x = horizontal ? i : (side == WEST ? 0 : Tile.SIZE - 1);
+				int z = horizontal ? (side == NORTH ? 0 : Tile.SIZE - 1) : i;
+				along[side][i] = (short) (horizontal
+						? TileImage.getSlopeX(heights, index, x, z, neighbours[WEST], neighbours[EAST])
+						: TileImage.getSlopeZ(heights, index, x, z, neighbours[NORTH], neighbours[SOUTH]));
+			}
+			seamless[side] = neighbours[side] != null;
+		}
+	}
+
+	public short[] getOuterHeights(int side) {
+		return outer[side];
+	}
+
+	public boolean isSeamless(int side) {
+		return seamless[side];
+	}
+
+	// marks a side as shaded with the outer heights of the neighbour facing it. the slope along the adjacent sides
+	// depends on that neighbour at their corners with this side, so it is updated as well.
+	public void setSeamless(int side, short[] neighbour) {
+		seamless[side] = true;
+		boolean low = side == NORTH || side == WEST;
+		int corner = low ? 0 : Tile.SIZE - 1;
+		for (int adjacent : side == NORTH || side == SOUTH ? new int[]{WEST, EAST} : new int[]{NORTH, SOUTH}) {
+			short height = neighbour[adjacent == NORTH || adjacent == WEST ? 0 : Tile.SIZE - 1];
+			along[adjacent][corner] = (short) (low ? (outer[adjacent][1] - height) * 2 : (height - outer[adjacent][Tile.SIZE - 2]) * 2);
+		}
+	}
+
+	// returns the shaded outermost line of a side. the pixels that are not shaded by slope are 0.
+	// neighbour contains the outer heights of the edge facing this side, if it is null the edge is shaded as it is without neighbour.
+	public int[] shadeSide(int side, short[] neighbour) {
+		int[] shaded = new int[Tile.SIZE];
+		for (int i = 0; i < Tile.SIZE; i++) {
+			int color = colors[side][i];
+			if (color == 0) {
+				continue;
+			}
+			int perpendicular;
+			if (neighbour != null) {
+				perpendicular = (side == NORTH || side == WEST ? inner[side][i] - neighbour[i] : neighbour[i] - inner[side][i]) * 2;
+			} else {
+				perpendicular = side == NORTH || side == WEST ? inner[side][i] - outer[side][i] : outer[side][i] - inner[side][i];
+			}
+			shaded[i] = Color.shade(color, TileImage.getShade(along[side][i] + perpendicular, outer[side][i]));
+		}
+		return shaded;
+	}
+
+	// applies the difference between two versions of the outermost line of a side to an image of the given size.
+	// images with a smaller size than Tile.SIZE receive the averaged difference.
+	public static void patchSide(int[] image, int size, int side, int[] oldLine, int[] newLine) {
+		int factor = Tile.SIZE / size;
+		int samples = factor * factor;
+		for (int k = 0; k < size; k++) {
+			int da = 0, dr = 0, dg = 0, db = 0;
+			for (int i = k * factor; i < (k + 1) * factor; i++) {
+				int o = oldLine[i], n = newLine[i];
+				da += (n >>> 24) - (o >>> 24);
+				dr += (n >> 16 & 0xFF) - (o >> 16 & 0xFF);
+				dg += (n >> 8 & 0xFF) - (o >> 8 & 0xFF);
+				db += (n & 0xFF) - (o & 0xFF);
+			}
+			if (da == 0 && dr == 0 && dg == 0 && db == 0) {
+				continue;
+			}
+			int index;
+			switch (side) {
+				case NORTH:
+					index = k;
+					break;
+				case SOUTH:
+					index = (size - 1) * size + k;
+					break;
+				case WEST:
+					index = k * size;
+					break;
+				default:
+					index = k * size + size - 1;
+			}
+			int p = image[index];
+			image[index] = patchChannel(p >>> 24, da, samples) << 24
+					| patchChannel(p >> 16 & 0xFF, dr, samples) << 16
+					| patchChannel(p >> 8 & 0xFF, dg, samples) << 8
+					| patchChannel(p & 0xFF, db, samples);
+		}
+	}
+
+	private static int patchChannel(int value, int delta, int samples) {
+		return Math.max(0, Math.min(255, value + Math.round((float) delta / samples)));
+	}
+
+	// returns null if the data was written by a different version
+	public static TileEdges read(byte[] data) throws IOException {
+		try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data))) {
+			if (dis.readByte() != VERSION) {
+				return null;
+			}
+			TileEdges edges = new TileEdges();
+			for (int side = 0; side < 4; side++) {
+				edges.seamless[side] = dis.readBoolean();
+				for (int i = 0; i < Tile.SIZE; i++) {
+					edges.outer[side][i] = dis.readShort();
+					edges.inner[side][i] = dis.readShort();
+					edges.colors[side][i] = dis.readInt();
+					edges.along[side][i] = dis.readShort();
+				}
+			}
+			return edges;
+		}
+	}
+
+	public byte[] write() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(1 + 4 * (1 + Tile.SIZE * 10));
+		try (DataOutputStream dos = new DataOutputStream(baos)) {
+			dos.writeByte(VERSION);
+			for (int side = 0; side < 4; side++) {
+				dos.writeBoolean(seamless[side]);
+				for (int i = 0; i < Tile.SIZE; i++) {
+					dos.writeShort(outer[side][i]);
+					dos.writeShort(inner[side][i]);
+					dos.writeInt(colors[side][i]);
+					dos.writeShort(along[side][i]);
+				}
+			}
+		}
+		return baos.toByteArray();
+	}
+}
@@ -1,122 +1,73 @@
 package net.querz.mcaselector.tiles;
 
-import javafx.scene.SnapshotParameters;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.image.Image;
-import javafx.scene.image.PixelFormat;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.debug.Debug;
-import net.querz.mcaselector.io.FileHelper;
 import net.querz.mcaselector.io.mca.Chunk;
 import net.querz.mcaselector.io.mca.RegionMCAFile;
-import net.querz.mcaselector.point.Point2f;
-import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.progress.Timer;
 import net.querz.mcaselector.ui.Color;
 import net.querz.mcaselector.io.ImageHelper;
 import net.querz.mcaselector.version.VersionController;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
 import java.util.function.Supplier;
 
 public final class TileImage {
 
 	private static final int[] corruptedChunkOverlay = new int[256];
 
-	static {
-		Image corrupted = FileHelper.getIconFromResources("img/corrupted");
-		PixelReader pr = corrupted.getPixelReader();
-		pr.getPixels(0, 0, 16, 16, PixelFormat.getIntArgbPreInstance(), corruptedChunkOverlay, 0, 16);
-	}
-
-	private TileImage() {}
+	// depths beyond this are clamped to fully opaque or fully transparent water
+	private static final int WATER_SHADE_DEPTH = 41;
+	// the blend ratio per water depth. these stay floats because the rounding in Color.blend depends on them.
+	private static final float[] waterShadeRatios = new float[WATER_SHADE_DEPTH * 2 + 1];
 
-	public static void draw(Tile tile, GraphicsContext ctx, float scale, Point2f offset, boolean selectionInverted, boolean overlay) {
-		if (tile.image != null) {
-			ctx.drawImage(tile.getImage(), offset.getX(), offset.getY(), Tile.SIZE / scale, Tile.SIZE / scale);
+	private static final ForkJoinPool renderPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
 
-			if (overlay && tile.overlay != null) {
-				ctx.setGlobalAlpha(0.5);
-				ctx.drawImage(tile.getOverlay(), offset.getX(), offset.getY(), Tile.SIZE / scale, Tile.SIZE / scale);
-				ctx.setGlobalAlpha(1);
-			}
-		} else {
-			ctx.drawImage(ImageHelper.getEmptyTileImage(), offset.getX(), offset.getY(), Tile.SIZE / scale, Tile.SIZE / scale);
+	static {
+		try (InputStream is = Objects.requireNonNull(TileImage.class.getClassLoader().getResourceAsStream("img/corrupted.png"))) {
+			System.arraycopy(ImageHelper.readImageData(is), 0, corruptedChunkOverlay, 0, corruptedChunkOverlay.length);
+		} catch (IOException ex) {
+			Debug.dumpException("failed to load corrupted chunk overlay", ex);
 		}
 
-		if (tile.marked && tile.markedChunks.isEmpty() && !selectionInverted || !tile.marked && tile.markedChunks.isEmpty() && selectionInverted) {
-			//draw marked region
-			ctx.setFill(Config.getRegionSelectionColor().makeJavaFXColor());
-			ctx.fillRect(offset.getX(), offset.getY(), Tile.SIZE / scale, Tile.SIZE / scale);
-		} else if (tile.markedChunks.size() > 0) {
-
-			if (tile.markedChunksImage == null) {
-				createMarkedChunksImage(tile, Tile.getZoomLevel(scale), selectionInverted);
-			}
-
-			// apply markedChunksImage to ctx
-			ctx.drawImage(tile.markedChunksImage, offset.getX(), offset.getY(), Tile.SIZE / scale, Tile.SIZE / scale);
+		for (int i = 0; i < waterShadeRatios.length; i++) {
+			waterShadeRatios[i] = 0.5f - 0.5f / 40f * (float) (i - WATER_SHADE_DEPTH);
 		}
 	}
 
-	static void createMarkedChunksImage(Tile tile, int zoomLevel, boolean inverted) {
-		WritableImage wImage = new WritableImage(Tile.SIZE / zoomLevel, Tile.SIZE / zoomLevel);
-
-		Canvas canvas = new Canvas(Tile.SIZE / (float) zoomLevel, Tile.SIZE / (float) zoomLevel);
-		GraphicsContext ctx = canvas.getGraphicsContext2D();
-		ctx.setFill(Config.getChunkSelectionColor().makeJavaFXColor());
-
-		if (inverted) {
-			ctx.fillRect(0, 0, Tile.SIZE, Tile.SIZE);
-		}
-
-		for (Point2i markedChunk : tile.markedChunks) {
-			Point2i regionChunk = markedChunk.mod(Tile.SIZE_IN_CHUNKS);
-			if (regionChunk.getX() < 0) {
-				regionChunk.setX(regionChunk.getX() + Tile.SIZE_IN_CHUNKS);
-			}
-			if (regionChunk.getZ() < 0) {
-				regionChunk.setZ(regionChunk.getZ() + Tile.SIZE_IN_CHUNKS);
-			}
-
-			if (inverted) {
-				ctx.clearRect(regionChunk.getX() * Tile.CHUNK_SIZE / (float) zoomLevel, regionChunk.getZ() * Tile.CHUNK_SIZE / (float) zoomLevel, Tile.CHUNK_SIZE / (float) zoomLevel, Tile.CHUNK_SIZE / (float) zoomLevel);
-			} else {
-				ctx.fillRect(regionChunk.getX() * Tile.CHUNK_SIZE / (float) zoomLevel, regionChunk.getZ() * Tile.CHUNK_SIZE / (float) zoomLevel, Tile.CHUNK_SIZE / (float) zoomLevel, Tile.CHUNK_SIZE / (float) zoomLevel);
-			}
-		}
-
-		SnapshotParameters params = new SnapshotParameters();
-		params.setFill(Color.TRANSPARENT.makeJavaFXColor());
-
-		canvas.snapshot(params, wImage);
-
-		tile.markedChunksImage = wImage;
-	}
+	private TileImage() {}
 
-	public static Image generateImage(Tile tile, UUID world, BiConsumer<Image, UUID> callback, Supplier<Float> scaleSupplier, RegionMCAFile mcaFile) {
+	public static int[] generateImage(Tile tile, UUID world, BiConsumer<int[], UUID> callback, Supplier<Float> scaleSupplier, RegionMCAFile mcaFile) {
 		Timer t = new Timer();
 
-		Image image = createMCAImage(mcaFile);
+		int[] image = createMCAImage(mcaFile);
 
 		return image;
 	}
 
-	public static Image createMCAImage(RegionMCAFile mcaFile) {
+	// returns the image of a region as premultiplied ARGB pixels with a size of Tile.SIZE * Tile.SIZE
+	public static int[] createMCAImage(RegionMCAFile mcaFile) {
+		return createMCAImage(mcaFile, new TileEdges[4], null);
+	}
+
+	// neighbours contains the edges of the regions to the north, south, west and east, or null where there is no cached region.
+	// if edges is not null, it receives the edges of this region.
+	public static int[] createMCAImage(RegionMCAFile mcaFile, TileEdges[] neighbours, TileEdges edges) {
 		try {
-			WritableImage finalImage = new WritableImage(Tile.SIZE, Tile.SIZE);
-			PixelWriter writer = finalImage.getPixelWriter();
 			int[] pixelBuffer = new int[Tile.PIXELS];
 			int[] waterPixels = Config.shade() && Config.shadeWater() ? new int[Tile.PIXELS] : null;
 			short[] terrainHeights = new short[Tile.PIXELS];
 			short[] waterHeights = Config.shade() && Config.shadeWater() ? new short[Tile.PIXELS] : null;
 
-			for (int cx = 0; cx < Tile.SIZE_IN_CHUNKS; cx++) {
-				for (int cz = 0; cz < Tile.SIZE_IN_CHUNKS; cz++) {
+			// draw all chunk rows in bands. every band writes to its own rows, so no synchronization is necessary.
+			renderPool.invoke(new ChunkRowTask(0, Tile.SIZE_IN_CHUNKS, cz -> {
+				for (int cx = 0; cx < Tile.SIZE_IN_CHUNKS; cx++) {
 					int index = cz  * Tile.SIZE_IN_CHUNKS + cx;
 
 					Chunk data = mcaFile.getChunk(index);
@@ -127,15 +78,29 @@ public final class TileImage {
 
 					drawChunkImage(data, cx * Tile.CHUNK_SIZE, cz * Tile.CHUNK_SIZE, pixelBuffer, waterPixels, terrainHeights, waterHeights);
 				}
-			}
+			}));
 
 			if (Config.shade()) {
-				shade(pixelBuffer, waterPixels, terrainHeights, waterHeights);
-			}
+				// shading reads one halo row above and below each band, which is why it can only start
+				// after all chunk rows have been drawn.
+				short[] shadeHeights = Config.shadeWater() ? waterHeights : terrainHeights;
+
+				short[][] neighbourHeights = new short[4][];
+				for (int side = 0; side < 4; side++) {
+					if (neighbours[side] != null) {
+						neighbourHeights[side] = neighbours[side].getOuterHeights(TileEdges.opposite(side));
+					}
+				}
 
-			writer.setPixels(0, 0, Tile.SIZE, Tile.SIZE, PixelFormat.getIntArgbPreInstance(), pixelBuffer,  0, Tile.SIZE);
+				if (edges != null) {
+					edges.capture(pixelBuffer, terrainHeights, shadeHeights, neighbourHeights);
+				}
+
+				renderPool.invoke(new ChunkRowTask(0, Tile.SIZE_IN_CHUNKS, cz ->
+						shade(pixelBuffer, waterPixels, terrainHeights, shadeHeights, neighbourHeights, cz * Tile.CHUNK_SIZE, (cz + 1) * Tile.CHUNK_SIZE)));
+			}
 
-			return finalImage;
+			return pixelBuffer;
 		} catch (Exception ex) {
 			Debug.dumpException("failed to create image for MCAFile " + mcaFile.getFile().getName(), ex);
 		}
@@ -173,61 +138,88 @@ public final class TileImage {
 		}
 	}
 
-	private static void shade(int[] pixelBuffer, int[] waterPixels, short[] terrainHeights, short[] waterHeights) {
-		if (!Config.shadeWater() || !Config.shade()) {
-			waterHeights = terrainHeights;
-		}
-
-		int index = 0;
-		for (int z = 0; z < Tile.SIZE; z++) {
+	// shades the pixel rows [fromZ, toZ). waterHeights must be terrainHeights if water shading is disabled.
+	private static void shade(int[] pixelBuffer, int[] waterPixels, short[] terrainHeights, short[] waterHeights, short[][] neighbours, int fromZ, int toZ) {
+		int index = fromZ * Tile.SIZE;
+		for (int z = fromZ; z < toZ; z++) {
 			for (int x = 0; x < Tile.SIZE; x++, index++) {
-				float xShade, zShade;
-
 				if (pixelBuffer[index] == 0) {
 					continue;
 				}
 
-				if (terrainHeights[index] != waterHeights[index]) {
-					float ratio = 0.5f - 0.5f / 40f * (float) ((waterHeights[index]) - (terrainHeights[index]));
-					pixelBuffer[index] = Color.blend(pixelBuffer[index], waterPixels[index], ratio);
+				int height = waterHeights[index];
+
+				if (terrainHeights[index] != height) {
+					pixelBuffer[index] = Color.blend(pixelBuffer[index], waterPixels[index], getWaterShadeRatio(height - terrainHeights[index]));
 				} else {
-					if (z == 0) {
-						zShade = (waterHeights[index + Tile.SIZE]) - (waterHeights[index]);
-					} else if (z == Tile.SIZE - 1) {
-						zShade = (waterHeights[index]) - (waterHeights[index - Tile.SIZE]);
-					} else {
-						zShade = ((waterHeights[index + Tile.SIZE]) - (waterHeights[index - Tile.SIZE])) * 2;
-					}
+					int xShade = getSlopeX(waterHeights, index, x, z, neighbours[TileEdges.WEST], neighbours[TileEdges.EAST]);
+					int zShade = getSlopeZ(waterHeights, index, x, z, neighbours[TileEdges.NORTH], neighbours[TileEdges.SOUTH]);
+					pixelBuffer[index] = Color.shade(pixelBuffer[index], getShade(xShade + zShade, height));
+				}
+			}
+		}
+	}
 
-					if (x == 0) {
-						xShade = (waterHeights[index + 1]) - (waterHeights[index]);
-					} else if (x == Tile.SIZE - 1) {
-						xShade = (waterHeights[index]) - (waterHeights[index - 1]);
-					} else {
-						xShade = ((waterHeights[index + 1]) - (waterHeights[index - 1])) * 2;
-					}
+	// the height difference along the x-axis at a pixel. west and east are the outer heights of the neighbouring regions' edges
+	// and are used at the border of the region if they exist.
+	static int getSlopeX(short[] heights, int index, int x, int z, short[] west, short[] east) {
+		if (x == 0) {
+			return west != null ? (heights[index + 1] - west[z]) * 2 : heights[index + 1] - heights[index];
+		} else if (x == Tile.SIZE - 1) {
+			return east != null ? (east[z] - heights[index - 1]) * 2 : heights[index] - heights[index - 1];
+		}
+		return (heights[index + 1] - heights[index - 1]) * 2;
+	}
 
-					float shade = xShade + zShade;
-					if (shade < -8) {
-						shade = -8;
-					}
-					if (shade > 8) {
-						shade = 8;
-					}
+	static int getSlopeZ(short[] heights, int index, int x, int z, short[] north, short[] south) {
+		if (z == 0) {
+			return north != null ? (heights[index + Tile.SIZE] - north[x]) * 2 : heights[index + Tile.SIZE] - heights[index];
+		} else if (z == Tile.SIZE - 1) {
+			return south != null ? (south[x] - heights[index - Tile.SIZE]) * 2 : heights[index] - heights[index - Tile.SIZE];
+		}
+		return (heights[index + Tile.SIZE] - heights[index - Tile.SIZE]) * 2;
+	}
 
-					int altitudeShade = 16 * ((waterHeights[index]) - 64) / 255;
-					if (altitudeShade < -4) {
-						altitudeShade = -4;
-					}
-					if (altitudeShade > 24) {
-						altitudeShade = 24;
-					}
+	// the amount passed to Color.shade for a pixel with the given slope and height
+	static int getShade(int slope, int height) {
+		int shade = Math.max(-8, Math.min(8, slope));
+		int altitudeShade = Math.max(-4, Math.min(24, 16 * (height - 64) / 255));
+		return (shade + altitudeShade) * 8;
+	}
 
-					shade += altitudeShade;
+	private static float getWaterShadeRatio(int depth) {
+		if (depth < -WATER_SHADE_DEPTH) {
+			depth = -WATER_SHADE_DEPTH;
+		} else if (depth > WATER_SHADE_DEPTH) {
+			depth = WATER_SHADE_DEPTH;
+		}
+		return waterShadeRatios[depth + WATER_SHADE_DEPTH];
+	}
+
+	// executes an action for each chunk row in [from, to), splitting the range into bands of BAND_SIZE rows
+	private static class ChunkRowTask extends RecursiveAction {
+
+		private static final int BAND_SIZE = 4;
+
+		private final int from, to;
+		private final IntConsumer action;
+
+		private ChunkRowTask(int from, int to, IntConsumer action) {
+			this.from = from;
+			this.to = to;
+			this.action = action;
+		}
 
-					pixelBuffer[index] = Color.shade(pixelBuffer[index], (int) (shade * 8));
+		@Override
+		protected void compute() {
+			if (to - from <= BAND_SIZE) {
+				for (int i = from; i < to; i++) {
+					action.accept(i);
 				}
+				return;
 			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new ChunkRowTask(from, mid, action), new ChunkRowTask(mid, to, action));
 		}
 	}
 }
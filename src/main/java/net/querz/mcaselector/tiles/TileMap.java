@@ -1,10 +1,12 @@
 package net.querz.mcaselector.tiles;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
 import javafx.scene.input.*;
 import net.querz.mcaselector.Config;
@@ -28,13 +30,18 @@ import java.awt.datatransfer.ClipboardOwner;
 import java.awt.datatransfer.Transferable;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 public class TileMap extends Canvas implements ClipboardOwner {
@@ -55,6 +62,8 @@ public class TileMap extends Canvas implements ClipboardOwner {
 
 	private final Map<Point2i, Tile> tiles = new HashMap<>();
 	private final Set<Tile> visibleTiles = ConcurrentHashMap.newKeySet();
+	// the images of the marked chunks of the tiles, only used on the JavaFX thread
+	private final Map<Point2i, MarkedChunksImage> markedChunksImages = new HashMap<>();
 
 	private int selectedChunks = 0;
 	private Point2f mouseHoverLocation = null;
@@ -70,12 +79,60 @@ public class TileMap extends Canvas implements ClipboardOwner {
 
 	private long totalUpdates = 0;
 
+	// results of background jobs waiting for the next frame, which also draws the map at most once
+	private final Queue<Runnable> frameTasks = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean updateRequested = new AtomicBoolean(false);
+	private final AtomicBoolean frameScheduled = new AtomicBoolean(false);
+	private final AtomicLong requestedUpdates = new AtomicLong();
+	private final AtomicLong coalescedUpdates = new AtomicLong();
+	private long frames = 0;
+	private long frameTasksRun = 0;
+
+	// the state of the map when it was drawn completely the last time. if any of it changed, the next frame draws
+	// everything again, otherwise only the tiles that changed since they were drawn.
+	private Point2f drawnOffset;
+	private float drawnScale;
+	private double drawnWidth, drawnHeight;
+	private boolean drawnSelectionInverted, drawnShowRegionGrid, drawnShowChunkGrid;
+	private Object drawnOverlayParser;
+	private boolean fullRedrawRequested = true;
+	private long fullDraws = 0;
+	private long partialDraws = 0;
+	private long tilesRedrawn = 0;
+
+	private final AnimationTimer frameTimer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			onFrame();
+		}
+	};
+
 	private boolean disabled = true;
 
 	private boolean trackpadScrolling = false;
 
 	private final ImagePool imgPool;
+	private final SuperTilePool superTilePool;
 	private final OverlayPool overlayPool;
+	private final CacheValidator cacheValidator;
+	private final TilePrefetcher prefetcher;
+
+	private static Image empty;
+
+	public static void reloadEmpty() {
+		WritableImage wImage = new WritableImage(Tile.SIZE, Tile.SIZE);
+		PixelWriter pWriter = wImage.getPixelWriter();
+		for (int x = 0; x < Tile.SIZE; x++) {
+			for (int y = 0; y < Tile.SIZE; y++) {
+				pWriter.setColor(x, y, Tile.EMPTY_COLOR.makeJavaFXColor());
+			}
+		}
+		empty = wImage;
+	}
+
+	public static Image getEmptyTileImage() {
+		return empty;
+	}
 
 	private List<OverlayParser> overlayParsers = Collections.singletonList(null);
 	private OverlayParser overlayParser = null;
@@ -113,14 +170,17 @@ public class TileMap extends Canvas implements ClipboardOwner {
 		keyActivator.registerAction(KeyCode.LEFT, c -> offset = offset.sub((c.contains(KeyCode.SHIFT) ? 10 : 5) * scale, 0));
 		keyActivator.registerAction(KeyCode.DOWN, c -> offset = offset.add(0, (c.contains(KeyCode.SHIFT) ? 10 : 5) * scale));
 		keyActivator.registerAction(KeyCode.RIGHT, c -> offset = offset.add((c.contains(KeyCode.SHIFT) ? 10 : 5) * scale, 0));
-		keyActivator.registerGlobalAction(() -> Platform.runLater(this::update));
+		keyActivator.registerGlobalAction(this::requestUpdate);
 		this.setOnKeyPressed(this::onKeyPressed);
 		this.setOnKeyReleased(this::onKeyReleased);
 		this.setOnKeyTyped(this::onKeyTyped);
 		offset = new Point2f(-(double) width / 2, -(double) height / 2);
 
 		overlayPool = new OverlayPool(this);
-		imgPool = new ImagePool(this, Config.IMAGE_POOL_SIZE);
+		imgPool = new ImagePool(this);
+		superTilePool = new SuperTilePool(this);
+		cacheValidator = new CacheValidator(this);
+		prefetcher = new TilePrefetcher(this, imgPool);
 
 		setOverlays(Config.getOverlays());
 
@@ -143,7 +203,7 @@ public class TileMap extends Canvas implements ClipboardOwner {
 					pastedChunksCache.clear();
 				}
 			}
-			update();
+			requestUpdate();
 		}
 	}
 
@@ -178,6 +238,17 @@ public class TileMap extends Canvas implements ClipboardOwner {
 		overlayParsers = new ArrayList<>(overlays.size() + 1);
 		overlayParsers.addAll(overlays);
 		overlayParsers.add(null);
+
+		// if only the colors of the current overlay changed, it stays visible and is colored again from the data the tiles have
+		for (OverlayParser overlay : overlays) {
+			if (overlay.isActive() && overlay.isValid() && overlay.hasSameData(overlayParser)) {
+				overlayParser = overlay;
+				overlayPool.setParser(overlay);
+				overlayPool.recolor(visibleTiles);
+				update();
+				return;
+			}
+		}
 		setOverlay(null);
 		MCAFilePipe.clearParserQueue();
 	}
@@ -187,6 +258,7 @@ public class TileMap extends Canvas implements ClipboardOwner {
 		this.overlayPool.setParser(overlay);
 		for (Tile tile : visibleTiles) {
 			tile.overlay = null;
+			tile.overlayData = null;
 			tile.overlayLoaded = false;
 		}
 		update();
@@ -296,7 +368,7 @@ public class TileMap extends Canvas implements ClipboardOwner {
 
 			} else {
 				offset = offset.sub(new Point2f(event.getDeltaX(), event.getDeltaY()).mul(scale));
-				update();
+				requestUpdate();
 			}
 		} else {
 			if (event.getDeltaY() > 0) {
@@ -329,7 +401,7 @@ public class TileMap extends Canvas implements ClipboardOwner {
 			} else if (event.getButton() == MouseButton.SECONDARY) {
 				mark(event.getX(), event.getY(), selectionInverted);
 			}
-			update();
+			requestUpdate();
 		}
 	}
 
@@ -359,7 +431,7 @@ public class TileMap extends Canvas implements ClipboardOwner {
 		} else if (!disabled && event.getButton() == MouseButton.SECONDARY) {
 			mark(event.getX(), event.getY(), selectionInverted);
 		}
-		update();
+		requestUpdate();
 	}
 
 	private void onDragOver(DragEvent event) {
@@ -385,17 +457,54 @@ public class TileMap extends Canvas implements ClipboardOwner {
 	}
 
 	public void redrawOverlays() {
-		for (Map.Entry<Point2i, Tile> entry : tiles.entrySet()) {
-			if (entry.getValue().markedChunksImage != null) {
-				TileImage.createMarkedChunksImage(entry.getValue(), getZoomLevel(), selectionInverted);
-			}
-		}
+		// the selection color may have changed, so the images are written again completely
+		markedChunksImages.values().forEach(MarkedChunksImage::cancel);
+		markedChunksImages.clear();
 		if (pastedChunksCache != null) {
 			pastedChunksCache.clear();
 		}
 	}
 
+	// can be called from any thread. the map is drawn in the next frame, no matter how often this is called until then.
+	public void requestUpdate() {
+		requestedUpdates.incrementAndGet();
+		if (!updateRequested.compareAndSet(false, true)) {
+			coalescedUpdates.incrementAndGet();
+			return;
+		}
+		if (frameScheduled.compareAndSet(false, true)) {
+			Platform.runLater(frameTimer::start);
+		}
+	}
+
+	// can be called from any thread. runs the task on the JavaFX thread in the next frame before the map is drawn.
+	public void runOnNextFrame(Runnable task) {
+		frameTasks.offer(task);
+		requestUpdate();
+	}
+
+	private void onFrame() {
+		frameTimer.stop();
+		frameScheduled.set(false);
+		// the flag is reset before the tasks are taken, so a task that is added after this is either run now or in another frame
+		boolean update = updateRequested.getAndSet(false);
+		Runnable task;
+		while ((task = frameTasks.poll()) != null) {
+			task.run();
+			frameTasksRun++;
+		}
+		if (update) {
+			frames++;
+			update(false);
+		}
+	}
+
+	// draws the whole map again
 	public void update() {
+		update(true);
+	}
+
+	private void update(boolean full) {
 		Timer t = new Timer();
 
 		// removes jobs from queue that are no longer needed
@@ -424,7 +533,7 @@ public class TileMap extends Canvas implements ClipboardOwner {
 				visibleTiles.remove(tile);
 				// unload tile if it is currently loading neither the image nor the overlay
 				if (!RegionImageGenerator.isLoading(tile) && !ParseDataJob.isLoading(tile)) {
-					tile.unload(true);
+					unloadTile(tile, true);
 					if (!tile.isMarked() && tile.getMarkedChunks().size() == 0) {
 						tiles.remove(tile.getLocation());
 					}
@@ -447,7 +556,9 @@ public class TileMap extends Canvas implements ClipboardOwner {
 			});
 		}
 
+		fullRedrawRequested |= full;
 		draw(context);
+		prefetcher.onUpdate();
 		totalUpdates++;
 		if (mouseHoverLocation != null) {
 			hoveredBlock = getMouseBlock(mouseHoverLocation.getX(), mouseHoverLocation.getY());
@@ -472,6 +583,10 @@ public class TileMap extends Canvas implements ClipboardOwner {
 				imgPool.hasNoMCA(tile.getKey())
 			);
 		}
+		Debug.dumpf("TileMap: updates=%d, frames=%d, requestedUpdates=%d, coalescedUpdates=%d, frameTasks=%d, fullDraws=%d, partialDraws=%d, tilesRedrawn=%d",
+				totalUpdates, frames, requestedUpdates.get(), coalescedUpdates.get(), frameTasksRun, fullDraws, partialDraws, tilesRedrawn);
+		imgPool.dumpMetrics();
+		superTilePool.dumpMetrics();
 	}
 
 	public void disable(boolean disabled) {
@@ -550,8 +665,11 @@ public class TileMap extends Canvas implements ClipboardOwner {
 	public void clear() {
 		tiles.clear();
 		visibleTiles.clear();
+		markedChunksImages.clear();
 		imgPool.clear();
+		superTilePool.clear();
 		overlayPool.clear();
+		prefetcher.clear();
 		selectedChunks = 0;
 		selectionInverted = false;
 
@@ -570,8 +688,41 @@ public class TileMap extends Canvas implements ClipboardOwner {
 			selectedChunks -= tile.isMarked() ? Tile.CHUNKS : 0;
 			imgPool.discardImage(tile.getLocation());
 			overlayPool.discardData(tile.getLocation());
-			tile.unload(true);
+			unloadTile(tile, true);
+		}
+		superTilePool.discard(p);
+	}
+
+	// reloads the image of a tile from the cache without changing its selection
+	public void reloadTileImage(Point2i region) {
+		imgPool.discardImage(region);
+		superTilePool.discard(region);
+		Tile tile = tiles.get(region);
+		if (tile != null) {
+			tile.setLoaded(false);
 		}
+		requestUpdate();
+	}
+
+	// discards the images and overlay data of regions whose region file changed, so they are loaded again
+	// while the outdated images are still displayed
+	public void reloadTiles(Collection<Point2i> regions) {
+		for (Point2i region : regions) {
+			imgPool.discardImage(region);
+			superTilePool.discard(region);
+			overlayPool.discardData(region);
+			Tile tile = tiles.get(region);
+			if (tile != null) {
+				tile.setLoaded(false);
+				tile.overlayData = null;
+				tile.overlayLoaded = false;
+			}
+		}
+		requestUpdate();
+	}
+
+	public CacheValidator getCacheValidator() {
+		return cacheValidator;
 	}
 
 	public OverlayPool getOverlayPool() {
@@ -603,7 +754,15 @@ public class TileMap extends Canvas implements ClipboardOwner {
 
 	public void unloadTiles(boolean overlay) {
 		for (Tile tile : visibleTiles) {
-			tile.unload(overlay);
+			unloadTile(tile, overlay);
+		}
+	}
+
+	private void unloadTile(Tile tile, boolean overlay) {
+		tile.unload(overlay);
+		MarkedChunksImage markedChunksImage = markedChunksImages.remove(tile.getLocation());
+		if (markedChunksImage != null) {
+			markedChunksImage.cancel();
 		}
 	}
 
@@ -760,7 +919,6 @@ public class TileMap extends Canvas implements ClipboardOwner {
 			Point2i chunkBlock = getMouseChunkBlock(mouseX, mouseY);
 			Point2i firstChunkBlock = getMouseChunkBlock(firstMouseLocation.getX(), firstMouseLocation.getY());
 			sortPoints(firstChunkBlock, chunkBlock);
-			Set<Tile> changedTiles = new HashSet<>();
 			for (int x = firstChunkBlock.getX(); x <= chunkBlock.getX(); x++) {
 				for (int z = firstChunkBlock.getZ(); z <= chunkBlock.getZ(); z++) {
 					Point2i chunk = new Point2i(x, z);
@@ -772,46 +930,58 @@ public class TileMap extends Canvas implements ClipboardOwner {
 						if (tile.isMarked(chunk) && !marked) {
 							selectedChunks--;
 							tile.unMark(chunk);
-							changedTiles.add(tile);
 						} else if (!tile.isMarked(chunk) && marked) {
 							selectedChunks++;
 							tile.mark(chunk);
-							changedTiles.add(tile);
 						}
 					}
 				}
 			}
-			changedTiles.forEach(tile -> TileImage.createMarkedChunksImage(tile, getZoomLevel(), selectionInverted));
 		}
 	}
 
 	private void draw(GraphicsContext ctx) {
-		ctx.clearRect(0, 0, getWidth(), getHeight());
+		boolean moved = drawnOffset == null || !offset.equals(drawnOffset) || scale != drawnScale
+				|| getWidth() != drawnWidth || getHeight() != drawnHeight;
+		boolean changed = selectionInverted != drawnSelectionInverted || overlayParser != drawnOverlayParser
+				|| showRegionGrid != drawnShowRegionGrid || showChunkGrid != drawnShowChunkGrid;
 		int zoomLevel = getZoomLevel();
-		runOnVisibleRegions(region -> {
-			if (!tiles.containsKey(region)) {
-				tiles.put(region, new Tile(region));
-			}
-			Tile tile = tiles.get(region);
-			visibleTiles.add(tile);
-
-			Point2i regionOffset = region.regionToBlock().sub((int) offset.getX(), (int) offset.getY());
-
-			if (Config.getWorldDir() != null) {
-				if (!tile.isLoaded() || !tile.matchesZoomLevel(zoomLevel)) {
-					imgPool.requestImage(tile, zoomLevel);
-				}
+		// at low zoom levels, groups of regions are drawn as one image. this doesn't work with overlays and inverted
+		// selections, because they are drawn for every region.
+		boolean superTiles = zoomLevel >= SuperTilePool.MIN_ZOOM_LEVEL && overlayParser == null && !selectionInverted
+				&& Config.getWorldDir() != null;
+		// pasted chunks are drawn across region borders and super tiles contain many regions, so they are always drawn completely
+		if (!fullRedrawRequested && !moved && !changed && pastedChunks == null && !superTiles && drawChangedTiles(ctx)) {
+			return;
+		}
+		fullRedrawRequested = false;
+		drawnOffset = offset.clone();
+		drawnScale = scale;
+		drawnWidth = getWidth();
+		drawnHeight = getHeight();
+		drawnSelectionInverted = selectionInverted;
+		drawnOverlayParser = overlayParser;
+		drawnShowRegionGrid = showRegionGrid;
+		drawnShowChunkGrid = showChunkGrid;
+		fullDraws++;
 
-				if (overlayParser != null && !tile.isOverlayLoaded()) {
-					overlayPool.requestImage(tile, overlayParser);
+		ctx.clearRect(0, 0, getWidth(), getHeight());
+		if (superTiles) {
+			drawSuperTiles(ctx, zoomLevel);
+		} else {
+			runOnVisibleRegions(region -> {
+				if (!tiles.containsKey(region)) {
+					tiles.put(region, new Tile(region));
 				}
-			}
+				Tile tile = tiles.get(region);
+				visibleTiles.add(tile);
 
-			Point2f p = new Point2f(regionOffset.getX() / scale, regionOffset.getZ() / scale);
+				requestImages(tile, zoomLevel);
 
-			TileImage.draw(tile, ctx, scale, p, selectionInverted, overlayParser != null);
+				drawTile(tile, ctx, scale, getTilePosition(region), selectionInverted, overlayParser != null);
 
-		}, new Point2f());
+			}, new Point2f());
+		}
 
 		if (pastedChunks != null) {
 			runOnVisibleRegions(region -> {
@@ -822,12 +992,135 @@ public class TileMap extends Canvas implements ClipboardOwner {
 			}, pastedChunksOffset.mul(16).toPoint2f());
 		}
 
+		drawGrid(ctx, 0, 0, getWidth(), getHeight());
+	}
+
+	// draws one image per super tile. the regions of a super tile that has regions that are not cached are drawn and
+	// requested one by one. while a super tile is loading, only the regions that have an image already are drawn.
+	private void drawSuperTiles(GraphicsContext ctx, int zoomLevel) {
+		Point2i min = offset.toPoint2i().blockToRegion();
+		Point2i max = offset.add((float) getWidth() * scale, (float) getHeight() * scale).toPoint2i().blockToRegion();
+		Point2i superMin = SuperTilePool.getSuperTile(min);
+		Point2i superMax = SuperTilePool.getSuperTile(max);
+		float size = SuperTilePool.SIZE_IN_REGIONS * Tile.SIZE / scale;
+		Set<Point2i> drawnRegions = new HashSet<>();
+
+		for (int x = superMin.getX(); x <= superMax.getX(); x++) {
+			for (int z = superMin.getZ(); z <= superMax.getZ(); z++) {
+				Point2i superTile = new Point2i(x, z);
+				Point2i firstRegion = superTile.mul(SuperTilePool.SIZE_IN_REGIONS);
+				Image img = superTilePool.requestImage(superTile, zoomLevel);
+				if (img != null) {
+					Point2f p = getTilePosition(firstRegion);
+					ctx.drawImage(img, p.getX(), p.getY(), size, size);
+					continue;
+				}
+
+				boolean incomplete = superTilePool.isIncomplete(superTile, zoomLevel);
+				Point2i from = new Point2i(Math.max(min.getX(), firstRegion.getX()), Math.max(min.getZ(), firstRegion.getZ()));
+				Point2i to = new Point2i(
+						Math.min(max.getX(), firstRegion.getX() + SuperTilePool.SIZE_IN_REGIONS - 1),
+						Math.min(max.getZ(), firstRegion.getZ() + SuperTilePool.SIZE_IN_REGIONS - 1));
+				for (int rx = from.getX(); rx <= to.getX(); rx++) {
+					for (int rz = from.getZ(); rz <= to.getZ(); rz++) {
+						Point2i region = new Point2i(rx, rz);
+						Tile tile = incomplete ? tiles.computeIfAbsent(region, Tile::new) : tiles.get(region);
+						if (tile == null || !incomplete && tile.getImage() == null) {
+							continue;
+						}
+						visibleTiles.add(tile);
+						if (incomplete) {
+							requestImages(tile, zoomLevel);
+						}
+						drawTile(tile, ctx, scale, getTilePosition(region), selectionInverted, false);
+						drawnRegions.add(region);
+					}
+				}
+			}
+		}
+
+		// the selection of regions that were drawn as part of a super tile
+		for (Tile tile : tiles.values()) {
+			Point2i region = tile.location;
+			if ((tile.isMarked() || !tile.getMarkedChunks().isEmpty()) && !drawnRegions.contains(region)
+					&& region.getX() >= min.getX() && region.getX() <= max.getX() && region.getZ() >= min.getZ() && region.getZ() <= max.getZ()) {
+				drawTileSelection(tile, ctx, scale, getTilePosition(region), selectionInverted);
+			}
+		}
+	}
+
+	private void requestImages(Tile tile, int zoomLevel) {
+		if (Config.getWorldDir() != null) {
+			if (!tile.isLoaded() || !tile.matchesZoomLevel(zoomLevel)) {
+				imgPool.requestImage(tile, zoomLevel);
+			}
+
+			if (overlayParser != null && !tile.isOverlayLoaded()) {
+				overlayPool.requestImage(tile, overlayParser);
+			}
+		}
+	}
+
+	private Point2f getTilePosition(Point2i region) {
+		Point2i regionOffset = region.regionToBlock().sub((int) offset.getX(), (int) offset.getY());
+		return new Point2f(regionOffset.getX() / scale, regionOffset.getZ() / scale);
+	}
+
+	// only draws the tiles whose image, overlay or selection changed since they were drawn.
+	// returns false without drawing anything if so many tiles changed that drawing everything is faster.
+	private boolean drawChangedTiles(GraphicsContext ctx) {
+		int zoomLevel = getZoomLevel();
+		List<Tile> changed = new ArrayList<>();
+		int onScreen = 0;
+		for (Tile tile : visibleTiles) {
+			if (!tile.isVisible(this)) {
+				continue;
+			}
+			onScreen++;
+			requestImages(tile, zoomLevel);
+			if (tile.needsRedraw()) {
+				changed.add(tile);
+			}
+		}
+		if (changed.size() > onScreen / 2) {
+			return false;
+		}
+		partialDraws++;
+
+		float size = Tile.SIZE / scale;
+		for (Tile tile : changed) {
+			// the tile is drawn at sub-pixel positions, so the pixels on its border are shared with its neighbours.
+			// they are cleared as well and the neighbours are drawn into them again.
+			Point2f p = getTilePosition(tile.location);
+			double minX = Math.floor(p.getX()), minY = Math.floor(p.getY());
+			double maxX = Math.ceil(p.getX() + size), maxY = Math.ceil(p.getY() + size);
+			ctx.save();
+			ctx.beginPath();
+			ctx.rect(minX, minY, maxX - minX, maxY - minY);
+			ctx.clip();
+			ctx.clearRect(minX, minY, maxX - minX, maxY - minY);
+			for (int x = -1; x <= 1; x++) {
+				for (int z = -1; z <= 1; z++) {
+					Tile t = x == 0 && z == 0 ? tile : tiles.get(tile.location.add(x, z));
+					if (t != null && visibleTiles.contains(t)) {
+						drawTile(t, ctx, scale, getTilePosition(t.location), selectionInverted, overlayParser != null);
+					}
+				}
+			}
+			drawGrid(ctx, minX, minY, maxX, maxY);
+			ctx.restore();
+			tilesRedrawn++;
+		}
+		return true;
+	}
+
+	private void drawGrid(GraphicsContext ctx, double minX, double minY, double maxX, double maxY) {
 		if (showRegionGrid) {
-			drawRegionGrid(ctx);
+			drawRegionGrid(ctx, minX, minY, maxX, maxY);
 		}
 
 		if (showChunkGrid && scale <= CHUNK_GRID_SCALE) {
-			drawChunkGrid(ctx);
+			drawChunkGrid(ctx, minX, minY, maxX, maxY);
 		}
 	}
 
@@ -882,43 +1175,52 @@ public class TileMap extends Canvas implements ClipboardOwner {
 		}
 	}
 
-	private void drawRegionGrid(GraphicsContext ctx) {
+	// only draws the lines that are within the given area
+	private void drawRegionGrid(GraphicsContext ctx, double minX, double minY, double maxX, double maxY) {
 		ctx.setLineWidth(Tile.GRID_LINE_WIDTH);
 		ctx.setStroke(Tile.REGION_GRID_COLOR.makeJavaFXColor());
 
 		Point2f p = getRegionGridMin(offset, scale);
 
-		for (float x = p.getX(); x <= getWidth(); x += Tile.SIZE / scale) {
-			ctx.strokeLine(x, 0, x, getHeight());
+		for (float x = p.getX(); x <= maxX; x += Tile.SIZE / scale) {
+			if (x >= minX - Tile.GRID_LINE_WIDTH) {
+				ctx.strokeLine(x, minY, x, maxY);
+			}
 		}
 
-		for (float y = p.getY(); y <= getHeight(); y += Tile.SIZE / scale) {
-			ctx.strokeLine(0, y, getWidth(), y);
+		for (float y = p.getY(); y <= maxY; y += Tile.SIZE / scale) {
+			if (y >= minY - Tile.GRID_LINE_WIDTH) {
+				ctx.strokeLine(minX, y, maxX, y);
+			}
 		}
 	}
 
-	private void drawChunkGrid(GraphicsContext ctx) {
+	private void drawChunkGrid(GraphicsContext ctx, double minX, double minY, double maxX, double maxY) {
 		ctx.setLineWidth(Tile.GRID_LINE_WIDTH);
 		ctx.setStroke(Tile.CHUNK_GRID_COLOR.makeJavaFXColor());
 
 		Point2f p = getChunkGridMin(offset, scale);
 		Point2f pReg = getRegionGridMin(offset, scale);
 
-		for (float x = p.getX() + Tile.CHUNK_SIZE / scale; x <= getWidth(); x += Tile.CHUNK_SIZE / scale) {
+		for (float x = p.getX() + Tile.CHUNK_SIZE / scale; x <= maxX; x += Tile.CHUNK_SIZE / scale) {
 			if (showRegionGrid && (int) (pReg.getX() + Tile.SIZE / scale) == (int) x) {
 				pReg.setX(pReg.getX() + Tile.SIZE / scale);
 				continue;
 			}
 
-			ctx.strokeLine(x, 0, x, getHeight());
+			if (x >= minX - Tile.GRID_LINE_WIDTH) {
+				ctx.strokeLine(x, minY, x, maxY);
+			}
 		}
 
-		for (float y = p.getY() + Tile.CHUNK_SIZE / scale; y <= getHeight(); y += Tile.CHUNK_SIZE / scale) {
+		for (float y = p.getY() + Tile.CHUNK_SIZE / scale; y <= maxY; y += Tile.CHUNK_SIZE / scale) {
 			if (showRegionGrid && (int) (pReg.getY() + Tile.SIZE / scale) == (int) y) {
 				pReg.setY(pReg.getY() + Tile.SIZE / scale);
 				continue;
 			}
-			ctx.strokeLine(0, y, getWidth(), y);
+			if (y >= minY - Tile.GRID_LINE_WIDTH) {
+				ctx.strokeLine(minX, y, maxX, y);
+			}
 		}
 	}
 
@@ -1008,4 +1310,35 @@ public class TileMap extends Canvas implements ClipboardOwner {
 	public void lostOwnership(Clipboard clipboard, Transferable transferable) {
 		Debug.dump("TileMap lost ownership");
 	}
+
+	private void drawTile(Tile tile, GraphicsContext ctx, float scale, Point2f offset, boolean selectionInverted, boolean overlay) {
+		if (tile.image != null) {
+			ctx.drawImage(tile.getImage(), offset.getX(), offset.getY(), Tile.SIZE / scale, Tile.SIZE / scale);
+
+			// the overlay colors are already translucent
+			if (overlay && tile.overlay != null) {
+				ctx.drawImage(tile.getOverlay(), offset.getX(), offset.getY(), Tile.SIZE / scale, Tile.SIZE / scale);
+			}
+		} else {
+			ctx.drawImage(empty, offset.getX(), offset.getY(), Tile.SIZE / scale, Tile.SIZE / scale);
+		}
+
+		drawTileSelection(tile, ctx, scale, offset, selectionInverted);
+		tile.setDrawn();
+	}
+
+	private void drawTileSelection(Tile tile, GraphicsContext ctx, float scale, Point2f offset, boolean selectionInverted) {
+		if (tile.marked && tile.markedChunks.isEmpty() && !selectionInverted || !tile.marked && tile.markedChunks.isEmpty() && selectionInverted) {
+			//draw marked region
+			ctx.setFill(Config.getRegionSelectionColor().makeJavaFXColor());
+			ctx.fillRect(offset.getX(), offset.getY(), Tile.SIZE / scale, Tile.SIZE / scale);
+		} else if (tile.markedChunks.size() > 0) {
+			Image markedChunksImage = markedChunksImages.computeIfAbsent(tile.location, l -> new MarkedChunksImage())
+					.update(tile.markedMask, Tile.getZoomLevel(scale), selectionInverted);
+
+			// apply markedChunksImage to ctx
+			ctx.drawImage(markedChunksImage, offset.getX(), offset.getY(), Tile.SIZE / scale, Tile.SIZE / scale);
+		}
+	}
+
 }
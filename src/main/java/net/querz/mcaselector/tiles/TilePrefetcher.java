@@ -0,0 +1,174 @@
+package net.querz.mcaselector.tiles;
+
+import javafx.application.Platform;
+import net.querz.mcaselector.Config;
+import net.querz.mcaselector.io.MCAFilePipe;
+import net.querz.mcaselector.io.job.RegionImageGenerator;
+import net.querz.mcaselector.point.Point2f;
+import net.querz.mcaselector.point.Point2i;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// loads the images of the regions around the visible area one at a time while no other jobs are running,
+// so they are already in the pool when the map is moved or zoomed. regions in the direction the map was
+// moved last are loaded first. a new image is only requested when the previous one is done, so jobs
+// started by the user never wait for more than one prefetched image. nothing is scheduled once all
+// regions around the visible area were requested, until the map is moved or zoomed again.
+public class TilePrefetcher {
+
+	// time in milliseconds the map has to stand still before images are prefetched
+	private static final long IDLE_TIME = 300;
+	// time in milliseconds between checks whether other jobs or the last prefetched image are done
+	private static final long POLL_TIME = 100;
+
+	private final TileMap tileMap;
+	private final ImagePool imgPool;
+
+	private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
+	private ScheduledFuture<?> next;
+
+	private Point2f lastOffset;
+	private float lastScale;
+	private long lastMove;
+	// the last direction the map was moved in, with a length of 1
+	private Point2f direction = new Point2f();
+
+	// the images to prefetch in the order they are requested, null if it has to be created for the current view
+	private Deque<Request> queue;
+	private Point2i current;
+
+	public TilePrefetcher(TileMap tileMap, ImagePool imgPool) {
+		this.tileMap = tileMap;
+		this.imgPool = imgPool;
+		timer.setRemoveOnCancelPolicy(true);
+	}
+
+	// runs prefetch() on the JavaFX thread after the delay, as soon as no other jobs are running
+	private synchronized void schedule(long delay) {
+		if (next != null) {
+			next.cancel(false);
+		}
+		next = timer.schedule(() -> {
+			if (MCAFilePipe.getActiveJobs() != 0) {
+				schedule(POLL_TIME);
+			} else {
+				Platform.runLater(this::prefetch);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	// called on every update of the map to track its movement
+	void onUpdate() {
+		Point2f offset = tileMap.getOffset();
+		float scale = tileMap.getScale();
+		if (lastOffset != null && scale == lastScale && offset.equals(lastOffset)) {
+			return;
+		}
+		if (lastOffset != null && scale == lastScale) {
+			Point2f d = offset.sub(lastOffset);
+			float length = (float) Math.sqrt(d.getX() * d.getX() + d.getY() * d.getY());
+			direction = d.div(length);
+		}
+		lastOffset = offset;
+		lastScale = scale;
+		lastMove = System.currentTimeMillis();
+		queue = null;
+		schedule(IDLE_TIME);
+	}
+
+	public void clear() {
+		queue = null;
+		current = null;
+		schedule(IDLE_TIME);
+	}
+
+	private void prefetch() {
+		int rings = Config.getPrefetchRings();
+		if (rings <= 0 || tileMap.isDisabled() || Config.getWorldDir() == null) {
+			return;
+		}
+		if (System.currentTimeMillis() - lastMove < IDLE_TIME || MCAFilePipe.getActiveJobs() != 0) {
+			schedule(POLL_TIME);
+			return;
+		}
+		if (current != null) {
+			Tile tile = new Tile(current);
+			if (RegionImageGenerator.isLoading(tile) || RegionImageGenerator.isSaving(tile)) {
+				schedule(POLL_TIME);
+				return;
+			}
+			current = null;
+		}
+
+		if (queue == null) {
+			queue = createQueue(rings);
+		}
+		Request request;
+		while ((request = queue.poll()) != null) {
+			if (imgPool.prefetch(request.region, request.zoomLevel)) {
+				current = request.region;
+				schedule(POLL_TIME);
+				return;
+			}
+		}
+	}
+
+	private Deque<Request> createQueue(int rings) {
+		Point2f offset = tileMap.getOffset();
+		float scale = tileMap.getScale();
+		Point2i min = offset.toPoint2i().blockToRegion();
+		Point2i max = offset.add((float) tileMap.getWidth() * scale, (float) tileMap.getHeight() * scale).toPoint2i().blockToRegion();
+		int zoomLevel = tileMap.getZoomLevel();
+
+		// the visible regions are requested by the map itself. zooming in only shows regions that are visible now,
+		// zooming out shows about as many regions around them as the rings.
+		Deque<Request> queue = new ArrayDeque<>();
+		addRings(queue, zoomLevel, min, max, 1, rings);
+		if (zoomLevel / 2 >= Config.getMinZoomLevel()) {
+			addRings(queue, zoomLevel / 2, min, max, 0, 0);
+		}
+		if (zoomLevel * 2 <= Config.getMaxZoomLevel()) {
+			addRings(queue, zoomLevel * 2, min, max, 0, rings);
+		}
+		return queue;
+	}
+
+	// adds the regions of the rings around min and max, closest to the expected next view first
+	private void addRings(Deque<Request> queue, int zoomLevel, Point2i min, Point2i max, int fromRing, int toRing) {
+		// the center of the area that is expected to be visible next
+		float centerX = (min.getX() + max.getX()) / 2f + direction.getX() * (max.getX() - min.getX() + 1) / 2f;
+		float centerZ = (min.getZ() + max.getZ()) / 2f + direction.getY() * (max.getZ() - min.getZ() + 1) / 2f;
+
+		for (int ring = fromRing; ring <= toRing; ring++) {
+			List<Point2i> regions = new ArrayList<>();
+			for (int x = min.getX() - ring; x <= max.getX() + ring; x++) {
+				for (int z = min.getZ() - ring; z <= max.getZ() + ring; z++) {
+					if (ring == 0 || x == min.getX() - ring || x == max.getX() + ring || z == min.getZ() - ring || z == max.getZ() + ring) {
+						regions.add(new Point2i(x, z));
+					}
+				}
+			}
+			regions.sort(Comparator.comparingDouble(r -> (r.getX() - centerX) * (r.getX() - centerX) + (r.getZ() - centerZ) * (r.getZ() - centerZ)));
+			for (Point2i region : regions) {
+				queue.add(new Request(region, zoomLevel));
+			}
+		}
+	}
+
+	private static class Request {
+
+		private final Point2i region;
+		private final int zoomLevel;
+
+		private Request(Point2i region, int zoomLevel) {
+			this.region = region;
+			this.zoomLevel = zoomLevel;
+		}
+	}
+}
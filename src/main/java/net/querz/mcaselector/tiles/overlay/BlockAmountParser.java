@@ -1,5 +1,6 @@
 package net.querz.mcaselector.tiles.overlay;
 
+import net.querz.mcaselector.io.mca.BlockSummary;
 import net.querz.mcaselector.io.mca.ChunkData;
 import net.querz.mcaselector.text.TextHelper;
 import net.querz.mcaselector.version.VersionController;
@@ -19,6 +20,11 @@ public class BlockAmountParser extends OverlayParser {
 		return VersionController.getChunkFilter(chunkData.getRegion().getData().getInt("DataVersion")).getBlockAmount(chunkData.getRegion().getData(), multiValues());
 	}
 
+	// returns the same value as parseValue() from the block summary of the chunk
+	public int parseValue(BlockSummary summary) {
+		return summary.getBlockAmount(multiValues());
+	}
+
 	@Override
 	public String name() {
 		return "Blocks";
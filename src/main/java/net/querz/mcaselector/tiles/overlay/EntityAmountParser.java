@@ -21,6 +21,11 @@ public class EntityAmountParser extends AmountParser {
 		return entities.size();
 	}
 
+	@Override
+	public boolean isRegionOnly() {
+		return false;
+	}
+
 	@Override
 	public String name() {
 		return "EntityAmount";
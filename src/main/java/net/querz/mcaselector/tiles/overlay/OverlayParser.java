@@ -8,6 +8,9 @@ import java.util.UUID;
 
 public abstract class OverlayParser implements Cloneable {
 
+	// the value of chunks that don't exist in any of the region, poi and entities files
+	public static final int NO_CHUNK = Integer.MIN_VALUE;
+
 	private final OverlayType type;
 	private boolean active;
 	private Integer min;
@@ -118,6 +121,12 @@ public abstract class OverlayParser implements Cloneable {
 
 	public abstract int parseValue(ChunkData chunkData);
 
+	// whether parseValue only reads the region chunk, so the value can be parsed from a region file that was
+	// loaded for something else without loading the poi and entities files
+	public boolean isRegionOnly() {
+		return true;
+	}
+
 	public abstract String name();
 
 	public abstract boolean setMin(String raw);
@@ -182,6 +191,11 @@ public abstract class OverlayParser implements Cloneable {
 		return String.format("{min=%s, max=%s, active=%s, valid=%s, minHue=%f, maxHue=%f}", minString(), maxString(), active, isValid(), minHue, maxHue);
 	}
 
+	// whether both parsers parse the same data, so they only differ in how it is colored
+	public boolean hasSameData(OverlayParser other) {
+		return other != null && type == other.type && Arrays.equals(multiValues(), other.multiValues());
+	}
+
 	@Override
 	public boolean equals(Object other) {
 		if (!(other instanceof OverlayParser)) {
@@ -10,6 +10,7 @@ import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.io.*;
+import net.querz.mcaselector.io.db.ChunkIndex;
 import net.querz.mcaselector.io.job.ChunkFilterDeleter;
 import net.querz.mcaselector.io.job.ChunkFilterExporter;
 import net.querz.mcaselector.io.job.ChunkFilterSelector;
@@ -255,10 +256,12 @@ public class DialogHelper {
 		result.ifPresent(r -> {
 			if (Config.getLoadThreads() != r.getReadThreads()
 					|| Config.getProcessThreads() != r.getProcessThreads()
-					|| Config.getWriteThreads() != r.getWriteThreads()) {
+					|| Config.getWriteThreads() != r.getWriteThreads()
+					|| Config.getParseThreads() != r.getParseThreads()) {
 				Config.setLoadThreads(r.getReadThreads());
 				Config.setProcessThreads(r.getProcessThreads());
 				Config.setWriteThreads(r.getWriteThreads());
+				Config.setParseThreads(r.getParseThreads());
 				MCAFilePipe.init();
 			}
 			Config.setMaxLoadedFiles(r.getMaxLoadedFiles());
@@ -426,6 +429,10 @@ public class DialogHelper {
 				}
 			}
 
+			ChunkIndex index = ChunkIndex.get(Config.getCacheDir());
+			index.invalidate(fromRegion);
+			index.invalidate(toRegion);
+
 			t.done(Translation.DIALOG_PROGRESS_DONE.toString());
 
 			Platform.runLater(() -> CacheHelper.clearSelectionCache(tileMap));
@@ -512,6 +519,7 @@ public class DialogHelper {
 				tileMap.getWindow().getOptionBar().setWorldDependentMenuItemsEnabled(true, tileMap);
 				tileMap.getWindow().setTitleSuffix(file.toString());
 				tileMap.getOverlayPool().switchTo(new File(Config.getCacheDir(), "cache.db").toString());
+				tileMap.getCacheValidator().start();
 			} else {
 				new ErrorDialog(primaryStage, String.format("no mca files found in %s", file));
 			}
@@ -556,6 +564,7 @@ public class DialogHelper {
 		tileMap.getWindow().getOptionBar().setWorldDependentMenuItemsEnabled(true, tileMap);
 		tileMap.getWindow().setTitleSuffix(worldDirectories.getRegion().getParent());
 		tileMap.getOverlayPool().switchTo(new File(Config.getCacheDir(), "cache.db").toString());
+		tileMap.getCacheValidator().start();
 	}
 
 	public static void importSelection(TileMap tileMap, Stage primaryStage) {
@@ -3,12 +3,13 @@ package net.querz.mcaselector.ui;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
 import javafx.scene.layout.Background;
 import javafx.scene.layout.BackgroundImage;
 import javafx.scene.layout.BackgroundPosition;
 import javafx.scene.layout.BackgroundRepeat;
 import javafx.scene.layout.BackgroundSize;
-import net.querz.mcaselector.io.ImageHelper;
 
 public class HueRangeSlider extends RangeSlider {
 
@@ -73,8 +74,30 @@ public class HueRangeSlider extends RangeSlider {
 	}
 
 	private void renderBackground() {
-		Image bg = ImageHelper.renderGradient(width, 0, (float) getMax(), (float) getLow(), (float) getHigh(), invertedProperty.get());
+		Image bg = renderGradient(width, 0, (float) getMax(), (float) getLow(), (float) getHigh(), invertedProperty.get());
 		BackgroundImage bgi = new BackgroundImage(bg, BackgroundRepeat.NO_REPEAT, BackgroundRepeat.REPEAT, BackgroundPosition.DEFAULT, BackgroundSize.DEFAULT);
 		setBackground(new Background(bgi));
 	}
+
+	public static Image renderGradient(int width, float min, float max, float low, float high, boolean inverted) {
+		WritableImage image = new WritableImage(width, 50);
+		PixelWriter pixelWriter = image.getPixelWriter();
+		for (int i = 0; i < width; i++) {
+			float hue = (max - min) * ((float) i / width) + min;
+			float saturation = 1, brightness = 1;
+
+			if (hue < low || hue > high) {
+				saturation = 0.3f;
+				brightness = 0.6f;
+			}
+			if (inverted) {
+				hue = max - hue + min;
+			}
+
+			for (int j = 0; j < 50; j++) {
+				pixelWriter.setArgb(i, j, java.awt.Color.HSBtoRGB(hue, saturation, brightness));
+			}
+		}
+		return image;
+	}
 }
@@ -20,7 +20,6 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import net.querz.mcaselector.io.FileHelper;
-import net.querz.mcaselector.io.ImageHelper;
 import net.querz.mcaselector.text.Translation;
 import net.querz.mcaselector.tiles.overlay.OverlayParser;
 import net.querz.mcaselector.tiles.overlay.OverlayType;
@@ -160,7 +159,7 @@ public class OverlayBox extends BorderPane {
 			max = 0.85f - (float) hueSlider.getLow();
 		}
 
-		gradient.setBackground(new Background((new BackgroundImage(ImageHelper.renderGradient(
+		gradient.setBackground(new Background((new BackgroundImage(HueRangeSlider.renderGradient(
 			50,
 			min, max, min, max,
 			hueSlider.isInverted()),
@@ -6,7 +6,6 @@ import javafx.geometry.Pos;
 import javafx.scene.layout.HBox;
 import javafx.scene.paint.Color;
 import javafx.stage.Stage;
-import net.querz.mcaselector.io.ImageHelper;
 import net.querz.mcaselector.tiles.Tile;
 import net.querz.mcaselector.tiles.TileMap;
 import net.querz.mcaselector.debug.Debug;
@@ -105,7 +104,7 @@ public class TileMapBox extends HBox {
 		gridLineWidthProperty.addListener((o, r, n) -> Tile.GRID_LINE_WIDTH = gridLineWidthProperty.get());
 		emptyColorProperty.addListener((o, r, n) -> {
 			Tile.EMPTY_COLOR = new net.querz.mcaselector.ui.Color(emptyColorProperty.get());
-			ImageHelper.reloadEmpty();
+			TileMap.reloadEmpty();
 		});
 	}
 
@@ -13,9 +13,11 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
+import net.querz.mcaselector.Config;
 import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.io.mca.CompressionType;
 import net.querz.mcaselector.io.FileHelper;
+import net.querz.mcaselector.io.db.ChunkIndex;
 import net.querz.mcaselector.io.mca.Chunk;
 import net.querz.mcaselector.io.mca.EntitiesChunk;
 import net.querz.mcaselector.io.mca.EntitiesMCAFile;
@@ -274,6 +276,7 @@ public class NBTEditorDialog extends Dialog<NBTEditorDialog.Result> {
 		try {
 			mcaFile.saveSingleChunk(selectedChunk, chunk);
 			Debug.dumpf("saved single chunk to %s", mcaFile.getFile());
+			ChunkIndex.get(Config.getCacheDir()).invalidate(selectedChunk.chunkToRegion());
 		} catch (IOException ex) {
 			Debug.dumpException("failed to save single chunk to " + mcaFile.getFile(), ex);
 			throw ex;
@@ -47,6 +47,7 @@ public class SettingsDialog extends Dialog<SettingsDialog.Result> {
 	private final Slider readThreadsSlider = createSlider(1, processorCount, 1, Config.getLoadThreads());
 	private final Slider processThreadsSlider = createSlider(1, processorCount * 2, 1, Config.getProcessThreads());
 	private final Slider writeThreadsSlider = createSlider(1, processorCount, 1, Config.getWriteThreads());
+	private final Slider parseThreadsSlider = createSlider(1, processorCount, 1, Config.getParseThreads());
 	private final Slider maxLoadedFilesSlider = createSlider(1, (int) Math.max(Math.ceil(maxMemory / 1_000_000_000D) * 6, 4), 1, Config.getMaxLoadedFiles());
 	private final Button regionSelectionColorPreview = new Button();
 	private final Button chunkSelectionColorPreview = new Button();
@@ -75,6 +76,7 @@ public class SettingsDialog extends Dialog<SettingsDialog.Result> {
 			readThreadsSlider.setValue(Config.DEFAULT_LOAD_THREADS);
 			processThreadsSlider.setValue(Config.DEFAULT_PROCESS_THREADS);
 			writeThreadsSlider.setValue(Config.DEFAULT_WRITE_THREADS);
+			parseThreadsSlider.setValue(Config.DEFAULT_PARSE_THREADS);
 			maxLoadedFilesSlider.setValue(Config.DEFAULT_MAX_LOADED_FILES);
 			regionSelectionColor = Config.DEFAULT_REGION_SELECTION_COLOR.makeJavaFXColor();
 			regionSelectionColorPreview.setBackground(new Background(new BackgroundFill(Config.DEFAULT_REGION_SELECTION_COLOR.makeJavaFXColor(), CornerRadii.EMPTY, Insets.EMPTY)));
@@ -95,6 +97,7 @@ public class SettingsDialog extends Dialog<SettingsDialog.Result> {
 						(int) readThreadsSlider.getValue(),
 						(int) processThreadsSlider.getValue(),
 						(int) writeThreadsSlider.getValue(),
+						(int) parseThreadsSlider.getValue(),
 						(int) maxLoadedFilesSlider.getValue(),
 						regionSelectionColor,
 						chunkSelectionColor,
@@ -178,30 +181,33 @@ public class SettingsDialog extends Dialog<SettingsDialog.Result> {
 		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_READ_THREADS), 0, 1, 1, 1);
 		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_PROCESS_THREADS), 0, 2, 1, 1);
 		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_WRITE_THREADS), 0, 3, 1, 1);
-		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_MAX_FILES), 0, 4, 1, 1);
-		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_REGION_COLOR), 0, 5, 1, 1);
-		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_CHUNK_COLOR), 0, 6, 1, 1);
-		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_PASTED_CHUNKS_COLOR), 0, 7, 1, 1);
-		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_SHADE), 0, 8, 1, 1);
-		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_SHADE_WATER), 0, 9, 1, 1);
-		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_MC_SAVES_DIR), 0, 10, 1, 1);
-		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_PRINT_DEBUG), 0, 11, 1, 1);
+		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_PARSE_THREADS), 0, 4, 1, 1);
+		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_MAX_FILES), 0, 5, 1, 1);
+		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_REGION_COLOR), 0, 6, 1, 1);
+		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_CHUNK_COLOR), 0, 7, 1, 1);
+		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_PASTED_CHUNKS_COLOR), 0, 8, 1, 1);
+		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_SHADE), 0, 9, 1, 1);
+		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_SHADE_WATER), 0, 10, 1, 1);
+		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_MC_SAVES_DIR), 0, 11, 1, 1);
+		grid.add(UIFactory.label(Translation.DIALOG_SETTINGS_PRINT_DEBUG), 0, 12, 1, 1);
 		grid.add(languages, 1, 0, 2, 1);
 		grid.add(readThreadsSlider, 1, 1, 1, 1);
 		grid.add(processThreadsSlider, 1, 2, 1, 1);
 		grid.add(writeThreadsSlider, 1, 3, 1, 1);
-		grid.add(maxLoadedFilesSlider, 1, 4, 1, 1);
-		grid.add(regionSelectionColorPreview, 1, 5, 2, 1);
-		grid.add(chunkSelectionColorPreview, 1, 6, 2, 1);
-		grid.add(pasteChunksColorPreview, 1, 7, 2, 1);
-		grid.add(shadeCheckBox, 1, 8, 2, 1);
-		grid.add(shadeWaterCheckBox, 1, 9, 2, 1);
-		grid.add(mcSavesDir, 1, 10, 2, 1);
-		grid.add(debugBox, 1, 11, 2, 1);
+		grid.add(parseThreadsSlider, 1, 4, 1, 1);
+		grid.add(maxLoadedFilesSlider, 1, 5, 1, 1);
+		grid.add(regionSelectionColorPreview, 1, 6, 2, 1);
+		grid.add(chunkSelectionColorPreview, 1, 7, 2, 1);
+		grid.add(pasteChunksColorPreview, 1, 8, 2, 1);
+		grid.add(shadeCheckBox, 1, 9, 2, 1);
+		grid.add(shadeWaterCheckBox, 1, 10, 2, 1);
+		grid.add(mcSavesDir, 1, 11, 2, 1);
+		grid.add(debugBox, 1, 12, 2, 1);
 		grid.add(UIFactory.attachTextFieldToSlider(readThreadsSlider), 2, 1, 1, 1);
 		grid.add(UIFactory.attachTextFieldToSlider(processThreadsSlider), 2, 2, 1, 1);
 		grid.add(UIFactory.attachTextFieldToSlider(writeThreadsSlider), 2, 3, 1, 1);
-		grid.add(UIFactory.attachTextFieldToSlider(maxLoadedFilesSlider), 2, 4, 1, 1);
+		grid.add(UIFactory.attachTextFieldToSlider(parseThreadsSlider), 2, 4, 1, 1);
+		grid.add(UIFactory.attachTextFieldToSlider(maxLoadedFilesSlider), 2, 5, 1, 1);
 
 		getDialogPane().setContent(grid);
 	}
@@ -216,7 +222,7 @@ public class SettingsDialog extends Dialog<SettingsDialog.Result> {
 
 	public static class Result {
 
-		private final int readThreads, processThreads, writeThreads, maxLoadedFiles;
+		private final int readThreads, processThreads, writeThreads, parseThreads, maxLoadedFiles;
 		private final Color regionColor, chunkColor, pasteColor;
 		private final boolean shadeWater;
 		private final boolean shade;
@@ -224,11 +230,12 @@ public class SettingsDialog extends Dialog<SettingsDialog.Result> {
 		private final boolean debug;
 		private final Locale locale;
 
-		public Result(Locale locale, int readThreads, int processThreads, int writeThreads, int maxLoadedFiles, Color regionColor, Color chunkColor, Color pasteColor, boolean shade, boolean shadeWater, File mcSavesDir, boolean debug) {
+		public Result(Locale locale, int readThreads, int processThreads, int writeThreads, int parseThreads, int maxLoadedFiles, Color regionColor, Color chunkColor, Color pasteColor, boolean shade, boolean shadeWater, File mcSavesDir, boolean debug) {
 			this.locale = locale;
 			this.readThreads = readThreads;
 			this.processThreads = processThreads;
 			this.writeThreads = writeThreads;
+			this.parseThreads = parseThreads;
 			this.maxLoadedFiles = maxLoadedFiles;
 			this.regionColor = regionColor;
 			this.chunkColor = chunkColor;
@@ -259,6 +266,10 @@ public class SettingsDialog extends Dialog<SettingsDialog.Result> {
 			return writeThreads;
 		}
 
+		public int getParseThreads() {
+			return parseThreads;
+		}
+
 		public int getMaxLoadedFiles() {
 			return maxLoadedFiles;
 		}
@@ -13,7 +13,9 @@ public final class ShutdownHooks {
 
 	static {
 		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-			for (ShutdownJob hook : hooks) {
+			// hooks remove themselves while running, so they are taken from the queue in the order of their priority
+			ShutdownJob hook;
+			while ((hook = hooks.poll()) != null) {
 				hook.run();
 			}
 		}));
@@ -1,10 +1,12 @@
 package net.querz.mcaselector.version;
 
+import net.querz.mcaselector.io.mca.BlockSummary;
 import net.querz.nbt.io.SNBTUtil;
 import net.querz.nbt.tag.CompoundTag;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
 
 public interface ChunkFilter {
 
@@ -22,6 +24,12 @@ public interface ChunkFilter {
 	// returns true if AT LEAST ONE biome is present
 	boolean matchAnyBiomeID(CompoundTag data, Collection<Integer> ids);
 
+	// returns the block names in the palettes of the chunk, or null if this version doesn't store blocks in palettes
+	Set<String> getBlockNames(CompoundTag data);
+
+	// returns the ids of all biomes of the chunk like matchBiomeIDs() compares them
+	Set<Integer> getBiomeIDs(CompoundTag data);
+
 	void changeBiome(CompoundTag data, int id);
 
 	void forceBiome(CompoundTag data, int id);
@@ -32,6 +40,10 @@ public interface ChunkFilter {
 
 	int getBlockAmount(CompoundTag data, String[] blocks);
 
+	// returns the block names in the palettes of the chunk and the amount of blocks of each name,
+	// or null if this version doesn't store blocks in palettes
+	BlockSummary getBlockSummary(CompoundTag data);
+
 	class BlockReplaceData {
 
 		private String name;
@@ -1,6 +1,7 @@
 package net.querz.mcaselector.version.anvil112;
 
 import net.querz.mcaselector.debug.Debug;
+import net.querz.mcaselector.io.mca.BlockSummary;
 import net.querz.mcaselector.tiles.Tile;
 import net.querz.mcaselector.version.ChunkFilter;
 import net.querz.nbt.tag.CompoundTag;
@@ -285,6 +286,24 @@ public class Anvil112ChunkFilter implements ChunkFilter {
 		return false;
 	}
 
+	@Override
+	public Set<String> getBlockNames(CompoundTag data) {
+		// blocks are stored as ids, which are mapped to names when filtering
+		return null;
+	}
+
+	@Override
+	public Set<Integer> getBiomeIDs(CompoundTag data) {
+		Set<Integer> ids = new HashSet<>();
+		if (!data.containsKey("Level") || withDefault(() -> data.getCompoundTag("Level").getByteArray("Biomes"), null) == null) {
+			return ids;
+		}
+		for (byte id : data.getCompoundTag("Level").getByteArray("Biomes")) {
+			ids.add((int) id);
+		}
+		return ids;
+	}
+
 	@Override
 	public void changeBiome(CompoundTag data, int id) {
 		if (!data.containsKey("Level") || withDefault(() -> data.getCompoundTag("Level").getByteArray("Biomes"), null) == null) {
@@ -473,4 +492,10 @@ public class Anvil112ChunkFilter implements ChunkFilter {
 		}
 		return result;
 	}
+
+	@Override
+	public BlockSummary getBlockSummary(CompoundTag data) {
+		// blocks are stored as ids, which are mapped to names when filtering
+		return null;
+	}
 }
@@ -1,5 +1,6 @@
 package net.querz.mcaselector.version.anvil113;
 
+import net.querz.mcaselector.io.mca.BlockSummary;
 import net.querz.mcaselector.math.Bits;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.point.Point3i;
@@ -165,6 +166,52 @@ public class Anvil113ChunkFilter implements ChunkFilter {
 		return false;
 	}
 
+	@Override
+	public Set<String> getBlockNames(CompoundTag data) {
+		Set<String> names = new HashSet<>();
+		CompoundTag level = withDefault(() -> data.getCompoundTag("Level"), null);
+		if (level == null) {
+			return names;
+		}
+		Tag<?> rawSections = level.get("Sections");
+		if (rawSections == null || rawSections.getID() == LongArrayTag.ID) {
+			return names;
+		}
+		ListTag<CompoundTag> sections = catchClassCastException(((ListTag<?>) rawSections)::asCompoundTagList);
+		if (sections == null) {
+			return names;
+		}
+		for (CompoundTag t : sections) {
+			ListTag<?> rawPalette = withDefault(() -> t.getListTag("Palette"), null);
+			if (rawPalette == null) {
+				continue;
+			}
+			ListTag<CompoundTag> palette = catchClassCastException(rawPalette::asCompoundTagList);
+			if (palette == null) {
+				continue;
+			}
+			for (CompoundTag p : palette) {
+				String name = withDefault(() -> p.getString("Name"), null);
+				if (name != null) {
+					names.add(name);
+				}
+			}
+		}
+		return names;
+	}
+
+	@Override
+	public Set<Integer> getBiomeIDs(CompoundTag data) {
+		Set<Integer> ids = new HashSet<>();
+		if (!data.containsKey("Level") || withDefault(() -> data.getCompoundTag("Level").getIntArrayTag("Biomes"), null) == null) {
+			return ids;
+		}
+		for (int id : data.getCompoundTag("Level").getIntArray("Biomes")) {
+			ids.add(id);
+		}
+		return ids;
+	}
+
 	@Override
 	public void changeBiome(CompoundTag data, int id) {
 		if (!data.containsKey("Level") || withDefault(() -> data.getCompoundTag("Level").getIntArrayTag("Biomes"), null) == null) {
@@ -307,6 +354,58 @@ public class Anvil113ChunkFilter implements ChunkFilter {
 		return new Point3i(x, y, z);
 	}
 
+	@Override
+	public BlockSummary getBlockSummary(CompoundTag data) {
+		CompoundTag level = withDefault(() -> data.getCompoundTag("Level"), null);
+		if (level == null) {
+			return new BlockSummary(null);
+		}
+		Tag<?> rawSections = level.get("Sections");
+		if (rawSections == null || rawSections.getID() == LongArrayTag.ID) {
+			return new BlockSummary(null);
+		}
+		ListTag<CompoundTag> sections = catchClassCastException(((ListTag<?>) rawSections)::asCompoundTagList);
+		if (sections == null) {
+			return new BlockSummary(null);
+		}
+
+		Map<String, Integer> blocks = new HashMap<>();
+		Set<String> invalid = new HashSet<>();
+		for (CompoundTag section : sections) {
+			ListTag<CompoundTag> palette = ValidationHelper.withDefaultSilent(() -> section.getListTag("Palette").asCompoundTagList(), null);
+			if (palette == null) {
+				continue;
+			}
+
+			// decode the block states once and count the blocks of every palette index.
+			// block states that getBlockAmount() fails to decode make all names of the section invalid.
+			int[] amounts = new int[palette.size()];
+			boolean valid = true;
+			long[] blockStates = withDefault(() -> section.getLongArray("BlockStates"), null);
+			if (blockStates != null) {
+				try {
+					for (int k = 0; k < 4096; k++) {
+						amounts[getPaletteIndex(k, blockStates)]++;
+					}
+				} catch (Exception ex) {
+					valid = false;
+				}
+			}
+
+			for (int i = 0; i < palette.size(); i++) {
+				CompoundTag blockState = palette.get(i);
+				String name = ValidationHelper.withDefaultSilent(() -> blockState.getString("Name"), null);
+				if (name != null) {
+					blocks.merge(name, valid ? amounts[i] : 0, Integer::sum);
+					if (!valid) {
+						invalid.add(name);
+					}
+				}
+			}
+		}
+		return new BlockSummary(blocks, invalid);
+	}
+
 	// returns the block state at the given index
 	protected CompoundTag getBlockAt(int index, long[] blockStates, ListTag<CompoundTag> palette) {
 		return palette.get(getPaletteIndex(index, blockStates));
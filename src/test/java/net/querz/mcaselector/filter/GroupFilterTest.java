@@ -1,7 +1,11 @@
 package net.querz.mcaselector.filter;
 
+import net.querz.mcaselector.exception.ParseException;
 import net.querz.mcaselector.point.Point2i;
 import org.junit.Test;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import static org.junit.Assert.*;
 
 public class GroupFilterTest {
@@ -53,4 +57,46 @@ public class GroupFilterTest {
 		assertTrue(gf.appliesToRegion(new Point2i(-1, 0)));
 		assertTrue(gf.appliesToRegion(new Point2i(-2, 0)));
 	}
+
+	@Test
+	public void testAppliesToRegionWithContents() throws ParseException {
+		RegionContents contents = new RegionContents(
+				new HashSet<>(Arrays.asList("minecraft:air", "minecraft:stone", "minecraft:dirt")),
+				new HashSet<>(Arrays.asList(1, 4)),
+				new HashSet<>(Collections.singletonList("minecraft:zombie")),
+				Collections.emptySet());
+		RegionContents unknown = new RegionContents(null, null, Collections.emptySet(), Collections.emptySet());
+		Point2i region = new Point2i(0, 0);
+
+		assertAppliesToRegion("Palette contains \"stone,dirt\"", region, contents, true);
+		assertAppliesToRegion("Palette contains \"stone,diamond_ore\"", region, contents, false);
+		assertAppliesToRegion("Palette intersects \"stone,diamond_ore\"", region, contents, true);
+		assertAppliesToRegion("Palette intersects \"gold_ore,diamond_ore\"", region, contents, false);
+		// other comparators can match chunks without the names
+		assertAppliesToRegion("Palette !contains \"diamond_ore\"", region, contents, true);
+		assertAppliesToRegion("Entities contains \"zombie\"", region, contents, true);
+		assertAppliesToRegion("Entities contains \"creeper\"", region, contents, false);
+
+		// unknown sets can't reject a region, known ones still can
+		assertAppliesToRegion("Palette contains \"diamond_ore\"", region, unknown, true);
+		assertAppliesToRegion("Entities contains \"creeper\"", region, unknown, false);
+		// without contents only the location of the region is checked
+		assertAppliesToRegion("Palette contains \"diamond_ore\"", region, null, true);
+
+		assertAppliesToRegion("Palette contains \"diamond_ore\" AND xPos < 16", region, contents, false);
+		assertAppliesToRegion("Palette contains \"diamond_ore\" OR xPos < 16", region, contents, true);
+		assertAppliesToRegion("Palette contains \"diamond_ore\" OR xPos > 100", region, contents, false);
+		assertAppliesToRegion("Palette contains \"stone\" AND xPos > 100", region, contents, false);
+		assertAppliesToRegion("xPos > 100 OR (Entities contains \"creeper\" OR Palette contains \"dirt\")", region, contents, true);
+		// filters that don't use the contents or the location make every region apply
+		assertAppliesToRegion("Palette contains \"diamond_ore\" OR InhabitedTime > 0", region, contents, true);
+		// negated groups can't reject a region by its contents
+		assertAppliesToRegion("!(Palette contains \"stone\")", region, contents, true);
+		assertAppliesToRegion("!(Palette contains \"diamond_ore\")", region, contents, true);
+	}
+
+	private static void assertAppliesToRegion(String query, Point2i region, RegionContents contents, boolean expected) throws ParseException {
+		GroupFilter gf = new FilterParser(query).parse();
+		assertEquals(query, expected, gf.appliesToRegion(region, contents));
+	}
 }
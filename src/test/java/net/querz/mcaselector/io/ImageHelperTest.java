@@ -0,0 +1,55 @@
+package net.querz.mcaselector.io;
+
+import org.junit.Test;
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.*;
+
+public class ImageHelperTest {
+
+	@Test
+	public void testHalveImage() {
+		Random random = new Random(0);
+		int size = 64;
+		int[] pixels = new int[size * size];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = random.nextInt();
+		}
+
+		int[] halved = ImageHelper.halveImage(pixels, size);
+		assertEquals(size * size / 4, halved.length);
+		for (int z = 0; z < size / 2; z++) {
+			for (int x = 0; x < size / 2; x++) {
+				int p0 = pixels[z * 2 * size + x * 2], p1 = pixels[z * 2 * size + x * 2 + 1];
+				int p2 = pixels[(z * 2 + 1) * size + x * 2], p3 = pixels[(z * 2 + 1) * size + x * 2 + 1];
+				int expected = 0;
+				for (int shift = 0; shift < 32; shift += 8) {
+					int sum = (p0 >>> shift & 0xFF) + (p1 >>> shift & 0xFF) + (p2 >>> shift & 0xFF) + (p3 >>> shift & 0xFF);
+					expected |= (sum + 2) / 4 << shift;
+				}
+				assertEquals(String.format("pixel %d/%d", x, z), expected, halved[z * size / 2 + x]);
+			}
+		}
+	}
+
+	@Test
+	public void testHalveImageUniform() {
+		int[] pixels = new int[16 * 16];
+		Arrays.fill(pixels, 0xFF7F3A01);
+		for (int pixel : ImageHelper.halveImage(pixels, 16)) {
+			assertEquals(0xFF7F3A01, pixel);
+		}
+	}
+
+	@Test
+	public void testScaleImageByLevels() {
+		Random random = new Random(1);
+		int[] pixels = new int[128 * 128];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = random.nextInt();
+		}
+		int[] expected = ImageHelper.halveImage(ImageHelper.halveImage(pixels, 128), 64);
+		assertArrayEquals(expected, ImageHelper.scaleImage(pixels, 128, 32));
+		assertSame(pixels, ImageHelper.scaleImage(pixels, 128, 128));
+	}
+}
@@ -0,0 +1,66 @@
+package net.querz.mcaselector.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+
+public class RegionStampTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testMissingFile() throws IOException {
+		assertNull(RegionStamp.of(new File(folder.getRoot(), "r.0.0.mca")));
+		RegionStamp stamp = RegionStamp.of(createFile((byte) 1, 8192 * 2));
+		assertFalse(stamp.matches(null));
+	}
+
+	@Test
+	public void testMatches() throws IOException {
+		File file = createFile((byte) 1, 8192 * 2);
+		RegionStamp stamp = RegionStamp.of(file);
+		assertTrue(stamp.matches(RegionStamp.of(file)));
+
+		// a file that only changed after its header, with the same length and a new modification time
+		byte[] data = Files.readAllBytes(file.toPath());
+		data[data.length - 1] = 42;
+		Files.write(file.toPath(), data);
+		assertTrue(file.setLastModified(stamp.getLastModified() + 2000));
+		assertFalse(stamp.matches(RegionStamp.of(file)));
+
+		// a different length
+		Files.write(file.toPath(), Arrays.copyOf(data, data.length + 4096));
+		assertTrue(file.setLastModified(stamp.getLastModified()));
+		assertFalse(stamp.matches(RegionStamp.of(file)));
+	}
+
+	@Test
+	public void testReadWrite() throws IOException {
+		File file = createFile((byte) 7, 8192 + 4096);
+		RegionStamp stamp = RegionStamp.of(file);
+		byte[] written = stamp.write();
+
+		RegionStamp read = RegionStamp.read(written);
+		assertNotNull(read);
+		assertEquals(stamp.getLastModified(), read.getLastModified());
+		assertEquals(stamp.getLength(), read.getLength());
+		assertTrue(read.matches(RegionStamp.of(file)));
+
+		written[0]++;
+		assertNull(RegionStamp.read(written));
+	}
+
+	private File createFile(byte value, int length) throws IOException {
+		File file = folder.newFile();
+		byte[] data = new byte[length];
+		Arrays.fill(data, value);
+		Files.write(file.toPath(), data);
+		return file;
+	}
+}
@@ -0,0 +1,112 @@
+package net.querz.mcaselector.io;
+
+import net.querz.mcaselector.io.db.PackedTileCacheStore;
+import net.querz.mcaselector.point.Point2i;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import static org.junit.Assert.*;
+
+public class TileCacheStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testPackedStore() throws IOException {
+		File dir = folder.newFolder();
+		TileCacheStore store = new PackedTileCacheStore(dir);
+		try {
+			testStore(store);
+		} finally {
+			store.close();
+		}
+	}
+
+	@Test
+	public void testFileStore() throws IOException {
+		testStore(new FileTileCacheStore(folder.newFolder()));
+	}
+
+	@Test
+	public void testPackedStoreIsPersistent() throws IOException {
+		File dir = folder.newFolder();
+		Point2i region = new Point2i(-3, 7);
+		TileCacheStore store = new PackedTileCacheStore(dir);
+		store.write(1, region, new byte[]{1, 2, 3});
+		store.close();
+
+		store = new PackedTileCacheStore(dir);
+		try {
+			assertArrayEquals(new byte[]{1, 2, 3}, store.read(1, region));
+			assertEquals(Collections.singleton(region), store.getRegions());
+		} finally {
+			store.close();
+		}
+	}
+
+	// both stores must behave the same, so switching the store type doesn't change what is cached
+	private void testStore(TileCacheStore store) throws IOException {
+		Point2i a = new Point2i(0, 0);
+		Point2i b = new Point2i(-1, 5);
+		int superTiles = TileCacheStore.getSuperTileLayer(4);
+
+		assertNull(store.read(1, a));
+		assertFalse(store.exists(1, a));
+		assertEquals(0, store.lastModified(1, a));
+
+		long before = System.currentTimeMillis() - 2000;
+		store.write(1, a, new byte[]{1});
+		store.write(2, a, new byte[]{2, 2});
+		store.write(TileCacheStore.EDGES, a, new byte[]{3});
+		store.write(TileCacheStore.STAMP, a, new byte[]{4});
+		store.write(superTiles, a, new byte[]{5});
+		store.write(TileCacheStore.EDGES, b, new byte[]{6});
+
+		assertArrayEquals(new byte[]{1}, store.read(1, a));
+		assertArrayEquals(new byte[]{2, 2}, store.read(2, a));
+		assertArrayEquals(new byte[]{3}, store.read(TileCacheStore.EDGES, a));
+		assertArrayEquals(new byte[]{4}, store.read(TileCacheStore.STAMP, a));
+		assertArrayEquals(new byte[]{5}, store.read(superTiles, a));
+		assertTrue(store.exists(1, a));
+		assertTrue(store.lastModified(1, a) >= before);
+		assertNull(store.read(1, b));
+
+		// only regions with a cached image are returned, not regions that only have edges or super tiles
+		assertEquals(Collections.singleton(a), store.getRegions());
+
+		store.write(1, a, new byte[]{7, 7, 7});
+		assertArrayEquals(new byte[]{7, 7, 7}, store.read(1, a));
+
+		store.delete(2, a);
+		assertNull(store.read(2, a));
+		assertTrue(store.exists(1, a));
+
+		store.write(4, b, new byte[]{8});
+		assertEquals(new HashSet<>(Arrays.asList(a, b)), store.getRegions());
+
+		// deleting a region keeps the super tile with the same location
+		store.delete(a);
+		assertNull(store.read(1, a));
+		assertNull(store.read(TileCacheStore.EDGES, a));
+		assertNull(store.read(TileCacheStore.STAMP, a));
+		assertArrayEquals(new byte[]{5}, store.read(superTiles, a));
+		assertArrayEquals(new byte[]{8}, store.read(4, b));
+		assertEquals(Collections.singleton(b), store.getRegions());
+
+		store.clear();
+		assertNull(store.read(4, b));
+		assertNull(store.read(TileCacheStore.EDGES, b));
+		assertNull(store.read(superTiles, a));
+		assertTrue(store.getRegions().isEmpty());
+
+		// the store can still be used after it was cleared
+		store.write(1, b, new byte[]{9});
+		assertArrayEquals(new byte[]{9}, store.read(1, b));
+	}
+}
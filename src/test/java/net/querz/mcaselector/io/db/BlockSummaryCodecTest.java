@@ -0,0 +1,93 @@
+package net.querz.mcaselector.io.db;
+
+import net.querz.mcaselector.MCASelectorTestCase;
+import net.querz.mcaselector.io.mca.BlockSummary;
+import net.querz.mcaselector.io.mca.RegionMCAFile;
+import org.junit.Test;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import static org.junit.Assert.*;
+
+public class BlockSummaryCodecTest {
+
+	@Test
+	public void testRegion() throws IOException {
+		RegionMCAFile region = MCASelectorTestCase.loadRegionMCAFileFromResource("anvil116/r.0.0.mca");
+		BlockSummary[] summaries = new BlockSummary[OverlayDataCodec.VALUES];
+		long[] keys = new long[OverlayDataCodec.VALUES];
+		for (int i = 0; i < OverlayDataCodec.VALUES; i++) {
+			summaries[i] = BlockSummary.of(region.getChunk(i));
+			keys[i] = BlockSummary.getKey(region.getTimestamp(i), region.getChunk(i));
+		}
+		assertRoundTrip(summaries, keys);
+	}
+
+	@Test
+	public void testKinds() throws IOException {
+		BlockSummary[] summaries = new BlockSummary[OverlayDataCodec.VALUES];
+		long[] keys = new long[OverlayDataCodec.VALUES];
+		Arrays.fill(summaries, BlockSummary.NO_CHUNK);
+
+		Map<String, Integer> blocks = new HashMap<>();
+		blocks.put("minecraft:air", 4000);
+		blocks.put("minecraft:stone", 96);
+		blocks.put("minecraft:unused", 0);
+		blocks.put("minecraft:schön", 1000000);
+		summaries[0] = new BlockSummary(blocks);
+		keys[0] = Long.MIN_VALUE;
+		summaries[1] = new BlockSummary(blocks, new HashSet<>(Arrays.asList("minecraft:stone", "minecraft:broken")));
+		keys[1] = -1;
+		// a summary that couldn't be created
+		summaries[2] = null;
+		keys[2] = 42;
+		summaries[3] = new BlockSummary(null);
+		keys[3] = Long.MAX_VALUE;
+		summaries[1023] = new BlockSummary(Collections.emptyMap());
+		keys[1023] = 7;
+		assertRoundTrip(summaries, keys);
+	}
+
+	@Test
+	public void testInvalid() {
+		BlockSummary[] summaries = new BlockSummary[OverlayDataCodec.VALUES];
+		Arrays.fill(summaries, new BlockSummary(Collections.singletonMap("minecraft:stone", 1)));
+		byte[] blob = BlockSummaryCodec.encode(summaries, new long[OverlayDataCodec.VALUES]);
+		assertDecodeFails(new byte[0]);
+		assertDecodeFails(new byte[]{2});
+		assertDecodeFails(Arrays.copyOf(blob, blob.length - 1));
+		assertDecodeFails(Arrays.copyOf(blob, 20));
+	}
+
+	private static void assertRoundTrip(BlockSummary[] summaries, long[] keys) throws IOException {
+		BlockSummary[] decoded = new BlockSummary[OverlayDataCodec.VALUES];
+		long[] decodedKeys = new long[OverlayDataCodec.VALUES];
+		BlockSummaryCodec.decode(BlockSummaryCodec.encode(summaries, keys), decoded, decodedKeys);
+		for (int i = 0; i < OverlayDataCodec.VALUES; i++) {
+			String message = "chunk " + i;
+			if (summaries[i] == null || summaries[i] == BlockSummary.NO_CHUNK) {
+				assertSame(message, summaries[i], decoded[i]);
+			} else {
+				assertNotNull(message, decoded[i]);
+				assertEquals(message, summaries[i].hasSections(), decoded[i].hasSections());
+				assertEquals(message, summaries[i].getBlocks(), decoded[i].getBlocks());
+				assertEquals(message, summaries[i].getInvalidBlocks(), decoded[i].getInvalidBlocks());
+			}
+			if (summaries[i] != BlockSummary.NO_CHUNK) {
+				assertEquals(message, keys[i], decodedKeys[i]);
+			}
+		}
+	}
+
+	private static void assertDecodeFails(byte[] blob) {
+		try {
+			BlockSummaryCodec.decode(blob, new BlockSummary[OverlayDataCodec.VALUES], new long[OverlayDataCodec.VALUES]);
+			fail("decoded invalid block summaries");
+		} catch (IOException ex) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package net.querz.mcaselector.io.db;
+
+import net.querz.mcaselector.MCASelectorTestCase;
+import net.querz.mcaselector.exception.ParseException;
+import net.querz.mcaselector.filter.FilterParser;
+import net.querz.mcaselector.filter.GroupFilter;
+import net.querz.mcaselector.filter.IndexField;
+import net.querz.mcaselector.filter.RegionContents;
+import net.querz.mcaselector.io.RegionDirectories;
+import net.querz.mcaselector.io.RegionStamp;
+import net.querz.mcaselector.io.mca.BlockSummary;
+import net.querz.mcaselector.io.mca.ChunkData;
+import net.querz.mcaselector.io.mca.Region;
+import net.querz.mcaselector.point.Point2i;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.EnumSet;
+import java.util.Map;
+import static org.junit.Assert.*;
+
+public class ChunkIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Point2i location = new Point2i(0, 0);
+	private RegionDirectories dirs;
+	private Region region;
+	private ChunkIndex index;
+
+	@Before
+	public void load() throws IOException {
+		File file = new File(folder.newFolder("region"), "r.0.0.mca");
+		Files.copy(MCASelectorTestCase.getResourceFile("anvil116/r.0.0.mca").toPath(), file.toPath());
+		dirs = new RegionDirectories(location, file, null, null);
+		region = Region.loadRegion(dirs);
+		index = ChunkIndex.get(folder.newFolder("cache"));
+	}
+
+	@After
+	public void close() {
+		ChunkIndex.closeAll();
+	}
+
+	@Test
+	public void testReadWrite() throws IOException {
+		assertTrue(read().isEmpty());
+		index.write(location, region, RegionStamp.of(dirs.getRegion()), null);
+
+		ChunkIndex.Entry entry = read().get(location);
+		assertNotNull(entry);
+		int chunks = 0;
+		for (int i = 0; i < 1024; i++) {
+			ChunkData data = region.getFilterData(i);
+			assertEquals(data != null, entry.exists(i));
+			if (data == null) {
+				continue;
+			}
+			chunks++;
+			for (Map.Entry<IndexField, int[]> values : entry.getValues().entrySet()) {
+				assertEquals(values.getKey() + " of chunk " + i, values.getKey().getValue(data), values.getValue()[i]);
+			}
+		}
+		assertTrue(chunks > 0);
+		assertTrue(entry.getValues().containsKey(IndexField.INHABITED_TIME));
+		assertTrue(entry.getValues().containsKey(IndexField.X_POS));
+	}
+
+	@Test
+	public void testOutdated() throws IOException {
+		index.write(location, region, RegionStamp.of(dirs.getRegion()), null);
+		assertTrue(dirs.getRegion().setLastModified(dirs.getRegion().lastModified() + 2000));
+		assertTrue(read().isEmpty());
+
+		// indexing the region again after it was saved makes it up to date
+		index.update(dirs, region);
+		assertNotNull(read().get(location));
+	}
+
+	@Test
+	public void testIsIndexed() {
+		RegionStamp stamp = RegionStamp.of(dirs.getRegion());
+		RegionStamp changed = new RegionStamp(stamp.getLastModified() + 1, stamp.getLength());
+		assertFalse(index.isIndexed(location, stamp, null));
+		assertFalse(index.hasBlocks(location, stamp));
+
+		index.write(location, region, stamp, null);
+		assertTrue(index.isIndexed(location, stamp, null));
+		assertFalse(index.isIndexed(location, changed, null));
+		assertFalse(index.isIndexed(location, stamp, changed));
+		assertFalse(index.hasBlocks(location, stamp));
+
+		index.writeBlocks(location, region.getRegion(), stamp);
+		assertTrue(index.hasBlocks(location, stamp));
+		assertFalse(index.hasBlocks(location, changed));
+
+		index.invalidate(location);
+		assertFalse(index.isIndexed(location, stamp, null));
+		assertFalse(index.hasBlocks(location, stamp));
+	}
+
+	@Test
+	public void testInvalidate() throws IOException {
+		index.write(location, region, RegionStamp.of(dirs.getRegion()), null);
+		// a region file that was changed without changing its stamp
+		index.invalidate(location);
+		assertTrue(read().isEmpty());
+
+		index.update(dirs, region);
+		assertNotNull(read().get(location));
+	}
+
+	@Test
+	public void testContents() throws IOException {
+		assertNull(index.readContents(dirs));
+		index.write(location, region, RegionStamp.of(dirs.getRegion()), null);
+
+		RegionContents expected = RegionContents.of(region);
+		assertNotNull(expected.getBlockNames());
+		assertFalse(expected.getBlockNames().isEmpty());
+		assertContents(expected, index.readContents(dirs));
+		ChunkIndex.Entry entry = index.read(new RegionDirectories[]{dirs}, EnumSet.noneOf(IndexField.class), false, true).get(location);
+		assertContents(expected, entry.getContents());
+
+		index.invalidate(location);
+		assertNull(index.readContents(dirs));
+
+		index.update(dirs, region);
+		assertContents(expected, index.readContents(dirs));
+		assertTrue(dirs.getRegion().setLastModified(dirs.getRegion().lastModified() + 2000));
+		assertNull(index.readContents(dirs));
+	}
+
+	@Test
+	public void testBlocks() throws IOException {
+		RegionStamp stamp = RegionStamp.of(dirs.getRegion());
+		assertNull(index.readBlocks(location, stamp));
+		BlockSummary[] written = index.writeBlocks(location, region.getRegion(), stamp);
+		assertBlocks(written, index.readBlocks(location, stamp));
+
+		index.write(location, region, stamp, null);
+		ChunkIndex.Entry entry = index.read(new RegionDirectories[]{dirs}, EnumSet.noneOf(IndexField.class), true, false).get(location);
+		for (int i = 0; i < 1024; i++) {
+			assertBlocks(written[i], entry.getBlockSummary(i));
+		}
+
+		// summaries are only read for the region file they were created from
+		RegionStamp changed = new RegionStamp(stamp.getLastModified() + 1, stamp.getLength());
+		assertNull(index.readBlocks(location, changed));
+		assertNull(index.readBlocks(location, null));
+	}
+
+	@Test
+	public void testBlocksAfterSave() throws IOException {
+		RegionStamp stamp = RegionStamp.of(dirs.getRegion());
+		BlockSummary[] written = index.writeBlocks(location, region.getRegion(), stamp);
+
+		// a region that is saved and indexed again gets new summaries from the region in memory
+		int chunk = 0;
+		while (region.getRegion().getChunk(chunk) == null) {
+			chunk++;
+		}
+		region.getRegion().setChunk(chunk, null);
+		index.update(dirs, region);
+		BlockSummary[] updated = index.readBlocks(location, stamp);
+		assertNotNull(updated);
+		assertSame(BlockSummary.NO_CHUNK, updated[chunk]);
+		for (int i = chunk + 1; i < 1024; i++) {
+			assertBlocks(written[i], updated[i]);
+		}
+
+		// a region that is saved without indexing it loses its summaries
+		index.invalidate(location);
+		assertNull(index.readBlocks(location, stamp));
+		// and doesn't get them again without filtering by blocks
+		index.update(dirs, region);
+		assertNull(index.readBlocks(location, stamp));
+	}
+
+	@Test
+	public void testMatchesIndex() throws IOException, ParseException {
+		index.write(location, region, RegionStamp.of(dirs.getRegion()), null);
+		ChunkIndex.Entry entry = read().get(location);
+
+		// LightPopulated is not indexed, so its result is unknown unless the other filters decide the result
+		assertMatchesIndex(entry, "xPos >= 0", true);
+		assertMatchesIndex(entry, "xPos < 0", false);
+		assertMatchesIndex(entry, "LightPopulated = 1", null);
+		assertMatchesIndex(entry, "xPos < 0 AND LightPopulated = 1", false);
+		assertMatchesIndex(entry, "LightPopulated = 1 AND xPos < 0", false);
+		assertMatchesIndex(entry, "xPos >= 0 AND LightPopulated = 1", null);
+		assertMatchesIndex(entry, "xPos >= 0 OR LightPopulated = 1", true);
+		assertMatchesIndex(entry, "LightPopulated = 1 OR xPos >= 0", true);
+		assertMatchesIndex(entry, "xPos < 0 OR LightPopulated = 1", null);
+		assertMatchesIndex(entry, "!(xPos < 0 AND LightPopulated = 1)", true);
+		assertMatchesIndex(entry, "!(xPos >= 0 AND LightPopulated = 1)", null);
+		assertMatchesIndex(entry, "xPos < 0 AND LightPopulated = 1 OR zPos >= 0", true);
+		assertMatchesIndex(entry, "xPos >= 0 AND (LightPopulated = 1 OR zPos < 0)", null);
+		assertMatchesIndex(entry, "xPos >= 0 AND !(LightPopulated = 1 OR zPos >= 0)", false);
+
+		// a known result is the same as when the filter reads the chunk
+		GroupFilter filter = new FilterParser("InhabitedTime > 0 AND xPos < 16 OR DataVersion < 100 AND Status = \"full\"").parse();
+		for (int i = 0; i < 1024; i++) {
+			ChunkData data = region.getFilterData(i);
+			if (data != null) {
+				Boolean result = filter.matchesIndex(entry, i);
+				assertNotNull(result);
+				assertEquals("chunk " + i, filter.matches(data), result);
+			}
+		}
+	}
+
+	private static void assertContents(RegionContents expected, RegionContents actual) {
+		assertNotNull(actual);
+		assertEquals(expected.getBlockNames(), actual.getBlockNames());
+		assertEquals(expected.getBiomeIDs(), actual.getBiomeIDs());
+		assertEquals(expected.getEntityIDs(), actual.getEntityIDs());
+		assertEquals(expected.getStructureNames(), actual.getStructureNames());
+	}
+
+	private static void assertBlocks(BlockSummary[] expected, BlockSummary[] actual) {
+		assertNotNull(actual);
+		for (int i = 0; i < 1024; i++) {
+			assertBlocks(expected[i], actual[i]);
+		}
+	}
+
+	private static void assertBlocks(BlockSummary expected, BlockSummary actual) {
+		if (expected == null || expected == BlockSummary.NO_CHUNK) {
+			assertSame(expected, actual);
+		} else {
+			assertNotNull(actual);
+			assertEquals(expected.getBlocks(), actual.getBlocks());
+		}
+	}
+
+	private void assertMatchesIndex(ChunkIndex.Entry entry, String query, Boolean expected) throws ParseException {
+		GroupFilter filter = new FilterParser(query).parse();
+		for (int i = 0; i < 1024; i++) {
+			if (entry.exists(i)) {
+				assertEquals(query + " of chunk " + i, expected, filter.matchesIndex(entry, i));
+			}
+		}
+	}
+
+	private Map<Point2i, ChunkIndex.Entry> read() throws IOException {
+		return index.read(new RegionDirectories[]{dirs}, EnumSet.allOf(IndexField.class), false, false);
+	}
+}
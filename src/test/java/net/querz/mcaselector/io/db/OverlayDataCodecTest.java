@@ -0,0 +1,105 @@
+package net.querz.mcaselector.io.db;
+
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import static org.junit.Assert.*;
+
+public class OverlayDataCodecTest {
+
+	@Test
+	public void testSingleValue() throws IOException {
+		for (int value : new int[]{0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+			int[] data = new int[OverlayDataCodec.VALUES];
+			Arrays.fill(data, value);
+			byte[] blob = OverlayDataCodec.encode(data);
+			assertTrue(blob.length <= 6);
+			assertArrayEquals(data, OverlayDataCodec.decode(blob));
+		}
+	}
+
+	@Test
+	public void testRuns() throws IOException {
+		int[] data = new int[OverlayDataCodec.VALUES];
+		for (int i = 0; i < data.length; i++) {
+			// rows of chunks with the same value and a few gradients
+			data[i] = i < 512 ? i / 32 * 100 : 2000 - i;
+		}
+		data[700] = -5;
+		byte[] blob = OverlayDataCodec.encode(data);
+		assertTrue(blob.length < 256);
+		assertArrayEquals(data, OverlayDataCodec.decode(blob));
+	}
+
+	@Test
+	public void testRandom() throws IOException {
+		Random random = new Random(0);
+		int[] data = new int[OverlayDataCodec.VALUES];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = random.nextInt();
+		}
+		// values without any pattern are never stored larger than plain ints
+		byte[] blob = OverlayDataCodec.encode(data);
+		assertTrue(blob.length <= 1 + OverlayDataCodec.VALUES * 4);
+		assertArrayEquals(data, OverlayDataCodec.decode(blob));
+
+		for (int i = 0; i < data.length; i++) {
+			data[i] = random.nextInt(20) - 10;
+		}
+		assertArrayEquals(data, OverlayDataCodec.decode(OverlayDataCodec.encode(data)));
+	}
+
+	@Test
+	public void testGZIP() throws IOException {
+		int[] data = new int[OverlayDataCodec.VALUES];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = i * 31 - 4000;
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (DataOutputStream dos = new DataOutputStream(new GZIPOutputStream(baos))) {
+			for (int value : data) {
+				dos.writeInt(value);
+			}
+		}
+		assertArrayEquals(data, OverlayDataCodec.decode(baos.toByteArray()));
+	}
+
+	@Test
+	public void testInvalid() {
+		int[] data = new int[OverlayDataCodec.VALUES];
+		data[1] = 1;
+		byte[] blob = OverlayDataCodec.encode(data);
+		assertDecodeFails(new byte[0]);
+		assertDecodeFails(new byte[]{42});
+		assertDecodeFails(Arrays.copyOf(blob, blob.length - 1));
+		assertDecodeFails(new byte[]{3, 0, 0, 0, 1});
+	}
+
+	@Test
+	public void testVarInt() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+		for (int value : values) {
+			OverlayDataCodec.writeVarInt(out, value);
+		}
+		byte[] blob = out.toByteArray();
+		int[] pos = {0};
+		for (int value : values) {
+			assertEquals(value, OverlayDataCodec.readVarInt(blob, pos));
+		}
+		assertEquals(blob.length, pos[0]);
+	}
+
+	private static void assertDecodeFails(byte[] blob) {
+		try {
+			OverlayDataCodec.decode(blob);
+			fail("decoded invalid overlay data " + Arrays.toString(blob));
+		} catch (IOException ex) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package net.querz.mcaselector.io.db;
+
+import net.querz.mcaselector.point.Point2i;
+import net.querz.mcaselector.tiles.overlay.InhabitedTimeParser;
+import net.querz.mcaselector.tiles.overlay.OverlayParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+
+public class OverlayStatisticsTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final OverlayParser parser = new InhabitedTimeParser();
+	private final CacheDBController db = new CacheDBController();
+	private File dbFile;
+
+	@Before
+	public void open() throws IOException, SQLException {
+		dbFile = new File(folder.newFolder(), "cache.db");
+		db.switchTo(dbFile.getPath(), Collections.singletonList(parser));
+	}
+
+	@After
+	public void close() throws SQLException {
+		db.removeCloseShutdownHook();
+		db.close();
+	}
+
+	@Test
+	public void testStatistics() throws IOException, SQLException {
+		Random random = new Random(0);
+		List<Integer> values = new ArrayList<>();
+		for (int r = 0; r < 4; r++) {
+			int[] data = new int[OverlayDataCodec.VALUES];
+			for (int i = 0; i < data.length; i++) {
+				if (random.nextInt(4) == 0) {
+					data[i] = OverlayParser.NO_CHUNK;
+				} else {
+					data[i] = random.nextInt(10000) - 100;
+					values.add(data[i]);
+				}
+			}
+			db.setData(parser, new Point2i(r, -r), data, null);
+		}
+		// regions without chunks are not counted
+		int[] empty = new int[OverlayDataCodec.VALUES];
+		Arrays.fill(empty, OverlayParser.NO_CHUNK);
+		db.setData(parser, new Point2i(9, 9), empty, null);
+
+		Collections.sort(values);
+		long sum = 0;
+		for (int value : values) {
+			sum += value;
+		}
+		int min = values.get(0), max = values.get(values.size() - 1);
+
+		OverlayStatistics stats = db.getStatistics(parser, 10);
+		assertEquals(4, stats.getRegions());
+		assertEquals(values.size(), stats.getChunks());
+		assertEquals(min, stats.getMin());
+		assertEquals(max, stats.getMax());
+		assertEquals((double) sum / values.size(), stats.getMean(), 1e-9);
+
+		long[] histogram = new long[10];
+		for (int value : values) {
+			histogram[OverlayStatistics.getBucket(value, min, max, 10)]++;
+		}
+		long total = 0;
+		for (int i = 0; i < 10; i++) {
+			assertEquals(histogram[i], stats.getCount(i));
+			total += stats.getCount(i);
+		}
+		assertEquals(values.size(), total);
+
+		// the range is larger than the percentile buckets, so percentiles are interpolated within a bucket
+		double width = ((long) max - min + 1) / (double) OverlayStatistics.PERCENTILE_BUCKETS;
+		assertEquals(min, stats.getPercentile(0), width);
+		assertEquals(max, stats.getPercentile(100));
+		for (int p : new int[]{10, 25, 50, 75, 90}) {
+			int exact = values.get((int) Math.ceil(p / 100.0 * values.size()) - 1);
+			assertEquals(exact, stats.getPercentile(p), width + 1);
+		}
+	}
+
+	@Test
+	public void testExactPercentiles() {
+		// up to PERCENTILE_BUCKETS distinct values every value has its own bucket
+		int min = 3, max = 7;
+		int[] values = {3, 3, 4, 5, 5, 5, 7, 7};
+		long[] distribution = new long[OverlayStatistics.getPercentileBuckets(min, max)];
+		for (int value : values) {
+			distribution[OverlayStatistics.getBucket(value, min, max, distribution.length)]++;
+		}
+		OverlayStatistics stats = new OverlayStatistics(1, values.length, min, max, 39, new long[1], distribution);
+		for (int p = 1; p <= 100; p++) {
+			int exact = values[(int) Math.ceil(p / 100.0 * values.length) - 1];
+			assertEquals("percentile " + p, exact, stats.getPercentile(p));
+		}
+		assertEquals(39 / 8.0, stats.getMean(), 1e-9);
+	}
+
+	@Test
+	public void testEmpty() throws IOException, SQLException {
+		OverlayStatistics stats = db.getStatistics(parser, 5);
+		assertEquals(0, stats.getRegions());
+		assertEquals(0, stats.getChunks());
+		assertEquals(0, stats.getMean(), 0);
+		assertEquals(0, stats.getPercentile(50));
+		assertTrue(db.getTopChunks(parser, 3).isEmpty());
+	}
+
+	@Test
+	public void testTopChunks() throws IOException, SQLException {
+		int[] a = new int[OverlayDataCodec.VALUES];
+		int[] b = new int[OverlayDataCodec.VALUES];
+		Arrays.fill(a, OverlayParser.NO_CHUNK);
+		Arrays.fill(b, 5);
+		a[33] = 100;
+		a[34] = 50;
+		b[1] = 70;
+		db.setData(parser, new Point2i(0, 0), a, null);
+		db.setData(parser, new Point2i(-1, 2), b, null);
+
+		List<OverlayStatistics.ChunkValue> top = db.getTopChunks(parser, 3);
+		assertEquals(3, top.size());
+		assertEquals(new Point2i(1, 1), top.get(0).getChunk());
+		assertEquals(100, top.get(0).getValue());
+		assertEquals(new Point2i(-31, 64), top.get(1).getChunk());
+		assertEquals(70, top.get(1).getValue());
+		assertEquals(new Point2i(2, 1), top.get(2).getChunk());
+		assertEquals(50, top.get(2).getValue());
+	}
+
+	@Test
+	public void testTableWithoutSummaries() throws IOException, SQLException {
+		close();
+		// a table of an older version stored missing chunks as 0, so its data is dropped instead of summarized
+		String table = parser.name() + parser.getMultiValuesID();
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getPath());
+				Statement statement = connection.createStatement()) {
+			statement.executeUpdate(String.format("DROP TABLE %s;", table));
+			statement.executeUpdate(String.format("CREATE TABLE %s (p BIGINT PRIMARY KEY, d BLOB, m BIGINT, n BIGINT, c INTEGER);", table));
+			try (PreparedStatement ps = connection.prepareStatement(String.format("INSERT INTO %s (p, d) VALUES (?, ?);", table))) {
+				ps.setLong(1, new Point2i(0, 0).asLong());
+				ps.setBytes(2, OverlayDataCodec.encode(new int[OverlayDataCodec.VALUES]));
+				ps.execute();
+			}
+		}
+
+		db.switchTo(dbFile.getPath(), Collections.singletonList(parser));
+		assertEquals(0, db.getStatistics(parser, 5).getRegions());
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getPath());
+				Statement statement = connection.createStatement();
+				ResultSet result = statement.executeQuery(String.format("SELECT COUNT(*) FROM %s;", table))) {
+			result.next();
+			assertEquals(0, result.getInt(1));
+		}
+	}
+}
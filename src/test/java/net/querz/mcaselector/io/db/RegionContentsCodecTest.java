@@ -0,0 +1,66 @@
+package net.querz.mcaselector.io.db;
+
+import net.querz.mcaselector.filter.RegionContents;
+import org.junit.Test;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import static org.junit.Assert.*;
+
+public class RegionContentsCodecTest {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		assertRoundTrip(new RegionContents(
+				new TreeSet<>(Arrays.asList("minecraft:air", "minecraft:stone", "mod:schön_block")),
+				new TreeSet<>(Arrays.asList(Integer.MIN_VALUE, -1, 0, 1, 127, 128, Integer.MAX_VALUE)),
+				new TreeSet<>(Collections.singletonList("minecraft:zombie")),
+				new TreeSet<>(Arrays.asList("village", "mineshaft"))));
+	}
+
+	@Test
+	public void testUnknownAndEmpty() throws IOException {
+		assertRoundTrip(new RegionContents(null, null, null, null));
+		assertRoundTrip(new RegionContents(Collections.emptySet(), Collections.emptySet(), Collections.emptySet(), Collections.emptySet()));
+		assertRoundTrip(new RegionContents(null, new HashSet<>(Collections.singletonList(3)), Collections.emptySet(), null));
+	}
+
+	@Test
+	public void testInvalid() {
+		byte[] blob = RegionContentsCodec.encode(new RegionContents(
+				new TreeSet<>(Collections.singletonList("minecraft:stone")), null, null, null));
+		assertDecodeFails(new byte[0]);
+		assertDecodeFails(new byte[]{2, 0, 0, 0, 0});
+		assertDecodeFails(Arrays.copyOf(blob, blob.length - 1));
+		assertDecodeFails(Arrays.copyOf(blob, 6));
+	}
+
+	private static void assertRoundTrip(RegionContents contents) throws IOException {
+		RegionContents decoded = RegionContentsCodec.decode(RegionContentsCodec.encode(contents));
+		assertSetEquals(contents.getBlockNames(), decoded.getBlockNames());
+		assertSetEquals(contents.getBiomeIDs(), decoded.getBiomeIDs());
+		assertSetEquals(contents.getEntityIDs(), decoded.getEntityIDs());
+		assertSetEquals(contents.getStructureNames(), decoded.getStructureNames());
+	}
+
+	// an unknown set stays unknown and an empty set stays empty
+	private static <T> void assertSetEquals(Set<T> expected, Set<T> actual) {
+		if (expected == null) {
+			assertNull(actual);
+		} else {
+			assertEquals(expected, actual);
+		}
+	}
+
+	private static void assertDecodeFails(byte[] blob) {
+		try {
+			RegionContentsCodec.decode(blob);
+			fail("decoded invalid region contents " + Arrays.toString(blob));
+		} catch (IOException ex) {
+			// expected
+		}
+	}
+}
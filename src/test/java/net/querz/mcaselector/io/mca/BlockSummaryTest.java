@@ -0,0 +1,105 @@
+package net.querz.mcaselector.io.mca;
+
+import net.querz.mcaselector.MCASelectorTestCase;
+import net.querz.mcaselector.version.ChunkFilter;
+import net.querz.mcaselector.version.VersionController;
+import net.querz.nbt.tag.CompoundTag;
+import org.junit.Test;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+
+public class BlockSummaryTest {
+
+	private static final String[] OTHER_NAMES = {"minecraft:air", "minecraft:stone", "minecraft:diamond_ore", "minecraft:does_not_exist"};
+
+	@Test
+	public void testAnvil113() throws IOException {
+		testRegion("anvil113/r.0.0.mca");
+	}
+
+	@Test
+	public void testAnvil114() throws IOException {
+		testRegion("anvil114/r.0.0.mca");
+	}
+
+	@Test
+	public void testAnvil115() throws IOException {
+		testRegion("anvil115/r.0.0.mca");
+	}
+
+	@Test
+	public void testAnvil116() throws IOException {
+		testRegion("anvil116/r.0.0.mca");
+	}
+
+	@Test
+	public void testNoChunk() {
+		assertSame(BlockSummary.NO_CHUNK, BlockSummary.of(null));
+		assertFalse(BlockSummary.NO_CHUNK.hasSections());
+		assertEquals(0, BlockSummary.NO_CHUNK.getBlockAmount(new String[]{"minecraft:stone"}));
+		assertFalse(BlockSummary.NO_CHUNK.matchBlockNames(Collections.emptyList()));
+	}
+
+	// every summary has the same results as the ChunkFilter that reads the chunk
+	private void testRegion(String resource) throws IOException {
+		RegionMCAFile region = MCASelectorTestCase.loadRegionMCAFileFromResource(resource);
+		int chunks = 0;
+		for (int i = 0; i < 1024; i++) {
+			RegionChunk chunk = region.getChunk(i);
+			if (chunk == null || chunk.isEmpty()) {
+				continue;
+			}
+			CompoundTag data = chunk.getData();
+			BlockSummary summary = BlockSummary.of(chunk);
+			assertNotNull(resource + " chunk " + i, summary);
+			ChunkFilter filter = VersionController.getChunkFilter(data.getInt("DataVersion"));
+			chunks++;
+
+			List<String> names = new ArrayList<>(summary.getBlocks().keySet());
+			names.addAll(Arrays.asList(OTHER_NAMES));
+			for (String name : names) {
+				List<String> single = Collections.singletonList(name);
+				String message = resource + " chunk " + i + " " + name;
+				assertEquals(message, filter.matchBlockNames(data, single), summary.matchBlockNames(single));
+				assertEquals(message, filter.paletteEquals(data, single), summary.paletteEquals(single));
+				assertBlockAmount(message, filter, data, summary, new String[]{name});
+			}
+
+			List<String> palette = new ArrayList<>(summary.getBlocks().keySet());
+			palette.remove("minecraft:air");
+			String message = resource + " chunk " + i + " " + palette;
+			assertEquals(message, filter.matchBlockNames(data, palette), summary.matchBlockNames(palette));
+			assertTrue(message, summary.paletteEquals(palette) || !summary.hasSections());
+			assertEquals(message, filter.paletteEquals(data, palette), summary.paletteEquals(palette));
+			assertBlockAmount(message, filter, data, summary, palette.toArray(new String[0]));
+			if (!palette.isEmpty()) {
+				List<String> partial = palette.subList(1, palette.size());
+				assertEquals(message, filter.paletteEquals(data, partial), summary.paletteEquals(partial));
+				// names that are counted twice are only counted once
+				String[] twice = {palette.get(0), palette.get(0)};
+				assertBlockAmount(message, filter, data, summary, twice);
+			}
+		}
+		assertTrue(chunks > 0);
+	}
+
+	private static void assertBlockAmount(String message, ChunkFilter filter, CompoundTag data, BlockSummary summary, String[] names) {
+		Integer expected;
+		try {
+			expected = filter.getBlockAmount(data, names);
+		} catch (Exception ex) {
+			expected = null;
+		}
+		Integer actual;
+		try {
+			actual = summary.getBlockAmount(names);
+		} catch (Exception ex) {
+			actual = null;
+		}
+		assertEquals(message, expected, actual);
+	}
+}
@@ -0,0 +1,188 @@
+package net.querz.mcaselector.tiles;
+
+import net.querz.mcaselector.ui.Color;
+import org.junit.Test;
+import java.io.IOException;
+import java.util.Random;
+import static org.junit.Assert.*;
+
+public class TileEdgesTest {
+
+	@Test
+	public void testShadeSideWithNeighbours() {
+		Random random = new Random(0);
+		Terrain terrain = new Terrain(random);
+		short[][] neighbours = new short[4][];
+		for (int side = 0; side < 4; side++) {
+			neighbours[side] = randomHeights(random, Tile.SIZE);
+		}
+
+		TileEdges edges = new TileEdges();
+		edges.capture(terrain.pixels, terrain.heights, terrain.heights, neighbours);
+		for (int side = 0; side < 4; side++) {
+			assertTrue(edges.isSeamless(side));
+			assertArrayEquals(terrain.shadeBorder(side, neighbours), edges.shadeSide(side, neighbours[side]));
+		}
+	}
+
+	@Test
+	public void testShadeSideWithoutNeighbours() {
+		Terrain terrain = new Terrain(new Random(1));
+		short[][] neighbours = new short[4][];
+
+		TileEdges edges = new TileEdges();
+		edges.capture(terrain.pixels, terrain.heights, terrain.heights, neighbours);
+		for (int side = 0; side < 4; side++) {
+			assertFalse(edges.isSeamless(side));
+			assertArrayEquals(terrain.getBorder(terrain.heights, side), edges.getOuterHeights(side));
+			assertArrayEquals(terrain.shadeBorder(side, neighbours), edges.shadeSide(side, null));
+		}
+	}
+
+	@Test
+	public void testSetSeamless() {
+		Random random = new Random(2);
+		Terrain terrain = new Terrain(random);
+		short[][] neighbours = new short[4][];
+		for (int side = 0; side < 4; side++) {
+			neighbours[side] = randomHeights(random, Tile.SIZE);
+		}
+
+		// edges captured before the neighbours existed are shaded like edges captured with all neighbours
+		TileEdges edges = new TileEdges();
+		edges.capture(terrain.pixels, terrain.heights, terrain.heights, new short[4][]);
+		for (int side = 0; side < 4; side++) {
+			edges.setSeamless(side, neighbours[side]);
+		}
+		for (int side = 0; side < 4; side++) {
+			assertTrue(edges.isSeamless(side));
+			assertArrayEquals(terrain.shadeBorder(side, neighbours), edges.shadeSide(side, neighbours[side]));
+		}
+	}
+
+	@Test
+	public void testWaterIsNotShadedBySlope() {
+		Terrain terrain = new Terrain(new Random(3));
+		short[] waterHeights = terrain.heights.clone();
+		waterHeights[5] += 3;
+
+		TileEdges edges = new TileEdges();
+		edges.capture(terrain.pixels, terrain.heights, waterHeights, new short[4][]);
+		assertEquals(0, edges.shadeSide(TileEdges.NORTH, null)[5]);
+		assertNotEquals(0, edges.shadeSide(TileEdges.NORTH, null)[6]);
+	}
+
+	@Test
+	public void testPatchSide() {
+		Random random = new Random(4);
+		int[] image = new int[Tile.PIXELS];
+		for (int i = 0; i < image.length; i++) {
+			image[i] = 0xFF000000 | random.nextInt(0xFFFFFF);
+		}
+		int[] newLine = new int[Tile.SIZE];
+		for (int i = 0; i < Tile.SIZE; i++) {
+			newLine[i] = 0xFF000000 | random.nextInt(0xFFFFFF);
+		}
+
+		for (int side = 0; side < 4; side++) {
+			int[] patched = image.clone();
+			int[] oldLine = getBorder(image, side);
+			TileEdges.patchSide(patched, Tile.SIZE, side, oldLine, newLine);
+			assertArrayEquals(newLine, getBorder(patched, side));
+			// an unchanged line leaves the image unchanged
+			patched = image.clone();
+			TileEdges.patchSide(patched, Tile.SIZE, side, oldLine, oldLine);
+			assertArrayEquals(image, patched);
+		}
+	}
+
+	@Test
+	public void testReadWrite() throws IOException {
+		Random random = new Random(5);
+		Terrain terrain = new Terrain(random);
+		TileEdges edges = new TileEdges();
+		edges.capture(terrain.pixels, terrain.heights, terrain.heights, new short[4][]);
+		edges.setSeamless(TileEdges.WEST, randomHeights(random, Tile.SIZE));
+		byte[] written = edges.write();
+
+		TileEdges read = TileEdges.read(written);
+		assertNotNull(read);
+		assertArrayEquals(written, read.write());
+		for (int side = 0; side < 4; side++) {
+			assertEquals(edges.isSeamless(side), read.isSeamless(side));
+			assertArrayEquals(edges.getOuterHeights(side), read.getOuterHeights(side));
+			assertArrayEquals(edges.shadeSide(side, null), read.shadeSide(side, null));
+		}
+
+		written[0]++;
+		assertNull(TileEdges.read(written));
+	}
+
+	private static short[] randomHeights(Random random, int length) {
+		short[] heights = new short[length];
+		for (int i = 0; i < length; i++) {
+			heights[i] = (short) (60 + random.nextInt(12));
+		}
+		return heights;
+	}
+
+	private static int[] getBorder(int[] image, int side) {
+		int[] border = new int[Tile.SIZE];
+		for (int i = 0; i < Tile.SIZE; i++) {
+			border[i] = image[getIndex(side, i)];
+		}
+		return border;
+	}
+
+	private static int getIndex(int side, int i) {
+		switch (side) {
+			case TileEdges.NORTH:
+				return i;
+			case TileEdges.SOUTH:
+				return (Tile.SIZE - 1) * Tile.SIZE + i;
+			case TileEdges.WEST:
+				return i * Tile.SIZE;
+			default:
+				return i * Tile.SIZE + Tile.SIZE - 1;
+		}
+	}
+
+	// the unshaded pixels and heights of a region, shaded like TileImage shades land
+	private static class Terrain {
+
+		final int[] pixels = new int[Tile.PIXELS];
+		final short[] heights;
+
+		Terrain(Random random) {
+			heights = randomHeights(random, Tile.PIXELS);
+			for (int i = 0; i < Tile.PIXELS; i++) {
+				pixels[i] = 0xFF000000 | random.nextInt(0xFFFFFF);
+			}
+			// pixels without blocks are not shaded
+			pixels[7] = 0;
+		}
+
+		int[] shadeBorder(int side, short[][] neighbours) {
+			int[] border = new int[Tile.SIZE];
+			for (int i = 0; i < Tile.SIZE; i++) {
+				int index = getIndex(side, i);
+				if (pixels[index] == 0) {
+					continue;
+				}
+				int x = index % Tile.SIZE, z = index / Tile.SIZE;
+				int slope = TileImage.getSlopeX(heights, index, x, z, neighbours[TileEdges.WEST], neighbours[TileEdges.EAST])
+						+ TileImage.getSlopeZ(heights, index, x, z, neighbours[TileEdges.NORTH], neighbours[TileEdges.SOUTH]);
+				border[i] = Color.shade(pixels[index], TileImage.getShade(slope, heights[index]));
+			}
+			return border;
+		}
+
+		short[] getBorder(short[] values, int side) {
+			short[] border = new short[Tile.SIZE];
+			for (int i = 0; i < Tile.SIZE; i++) {
+				border[i] = values[getIndex(side, i)];
+			}
+			return border;
+		}
+	}
+}
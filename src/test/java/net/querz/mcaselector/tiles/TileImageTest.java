@@ -6,6 +6,7 @@ import javafx.scene.image.PixelFormat;
 import net.querz.mcaselector.Config;
 import net.querz.mcaselector.debug.Debug;
 import net.querz.mcaselector.io.ByteArrayPointer;
+import net.querz.mcaselector.io.ImageHelper;
 import net.querz.mcaselector.io.mca.RegionMCAFile;
 import net.querz.mcaselector.point.Point2i;
 import net.querz.mcaselector.progress.Timer;
@@ -25,7 +26,7 @@ public class TileImageTest {
 		Config.setShade(true);
 		Config.setShadeWater(true);
 		RegionMCAFile data = loadRegionMCAFileFromResource("anvil112/r.0.0.mca");
-		Image image = TileImage.generateImage(
+		int[] image = TileImage.generateImage(
 				new Tile(new Point2i(0, 0)),
 				UUID.randomUUID(),
 				(i, u) -> {},
@@ -61,7 +62,7 @@ public class TileImageTest {
 		Config.setShade(true);
 		Config.setShadeWater(true);
 		RegionMCAFile data = loadRegionMCAFileFromResource("anvil113/r.0.0.mca");
-		Image image = TileImage.generateImage(
+		int[] image = TileImage.generateImage(
 				new Tile(new Point2i(0, 0)),
 				UUID.randomUUID(),
 				(i, u) -> {},
@@ -97,7 +98,7 @@ public class TileImageTest {
 		Config.setShade(true);
 		Config.setShadeWater(true);
 		RegionMCAFile data = loadRegionMCAFileFromResource("anvil114/r.0.0.mca");
-		Image image = TileImage.generateImage(
+		int[] image = TileImage.generateImage(
 				new Tile(new Point2i(0, 0)),
 				UUID.randomUUID(),
 				(i, u) -> {},
@@ -132,7 +133,7 @@ public class TileImageTest {
 		Config.setShade(true);
 		Config.setShadeWater(true);
 		RegionMCAFile data = loadRegionMCAFileFromResource("anvil115/r.0.0.mca");
-		Image image = TileImage.generateImage(
+		int[] image = TileImage.generateImage(
 				new Tile(new Point2i(0, 0)),
 				UUID.randomUUID(),
 				(i, u) -> {},
@@ -167,7 +168,7 @@ public class TileImageTest {
 		Config.setShade(true);
 		Config.setShadeWater(true);
 		RegionMCAFile data = loadRegionMCAFileFromResource("anvil116/r.0.0.mca");
-		Image image = TileImage.generateImage(
+		int[] image = TileImage.generateImage(
 				new Tile(new Point2i(0, 0)),
 				UUID.randomUUID(),
 				(i, u) -> {},
@@ -197,18 +198,18 @@ public class TileImageTest {
 		assertImageEquals("anvil116/r.0.0-no_shade.png", image);
 	}
 
-	private void writeImage(Image image, File file) throws IOException {
+	private void writeImage(int[] image, File file) throws IOException {
 		if (!file.getParentFile().exists()) {
 			file.getParentFile().mkdirs();
 		}
-		BufferedImage bufferedImage = SwingFXUtils.fromFXImage(image, null);
+		BufferedImage bufferedImage = ImageHelper.toBufferedImage(image, Tile.SIZE);
 		ImageIO.write(bufferedImage, "png", file);
 	}
 
-	private void assertImageEquals(String expected, Image actual) throws IOException {
+	private void assertImageEquals(String expected, int[] actual) throws IOException {
 //		writeImage(actual, new File("actual/" + expected));
 		Image expectedImage = SwingFXUtils.toFXImage(ImageIO.read(getResourceFile(expected)), null);
-		assertArrayEquals(getImageData(expectedImage), getImageData(actual));
+		assertArrayEquals(getImageData(expectedImage), actual);
 	}
 
 	private int[] getImageData(Image image) {